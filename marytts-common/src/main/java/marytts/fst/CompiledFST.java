@@ -0,0 +1,530 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.fst;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A finite state transducer with an index of the arcs of each state by the first character of their input string, so that a
+ * lookup only follows the arcs that can match the next character of the word instead of trying all arcs of a state.
+ * <p>
+ * A CompiledFST is either built from an {@link FST} in memory, or read from its own file format, which can be memory-mapped:
+ * all tables are stored as flat big-endian int and char arrays that are used in place. Lookups give the same results, in the
+ * same order, as the linear search over the arcs of the FST.
+ * <p>
+ * The file format is a header of six ints (magic number, version, number of arcs, of labels, of strings and of characters),
+ * followed by the tables: the arcs packed as in the FST file format (target in the lower 20 bits, then the label in 11 bits and
+ * the last-arc flag in the top bit), the end of the state of each arc, the input and output string of each label, the start of
+ * each string in the character table and the characters, padded to an even number. Then, for analysis and for generation, the
+ * arcs of each state sorted by the first character of their input, and that character (-1 for arcs with an empty input or
+ * the final arc, which are always followed).
+ *
+ * @see FSTLookup
+ */
+public class CompiledFST {
+	/** the first int of a compiled FST file, "MCFS" */
+	public static final int MAGIC = 0x4D434653;
+	private static final int VERSION = 1;
+	private static final int HEADER_INTS = 6;
+
+	private static final int TARGET_MASK = 1048575;
+	private static final int ALWAYS = -1;
+
+	private final int numArcs;
+	private final int numLabels;
+	private final IntBuffer arcs;
+	private final IntBuffer stateEnds;
+	private final IntBuffer labelStrings;
+	private final IntBuffer stringStarts;
+	private final CharBuffer chars;
+	/** the arc index for analysis and for generation; the latter is built on first use if the FST was compiled in memory */
+	private final ArcIndex analysisIndex;
+	private volatile ArcIndex generationIndex;
+
+	/**
+	 * The arcs of each state sorted by the first character of their input string.
+	 */
+	private static final class ArcIndex {
+		/** for each state, its arcs: first the ones always followed, then the others by first character */
+		final IntBuffer sortedArcs;
+		/** the first character of the input of each sorted arc, or ALWAYS */
+		final IntBuffer keys;
+
+		ArcIndex(IntBuffer sortedArcs, IntBuffer keys) {
+			this.sortedArcs = sortedArcs;
+			this.keys = keys;
+		}
+	}
+
+	private CompiledFST(int numArcs, int numLabels, IntBuffer arcs, IntBuffer stateEnds, IntBuffer labelStrings,
+			IntBuffer stringStarts, CharBuffer chars, ArcIndex analysisIndex, ArcIndex generationIndex) {
+		this.numArcs = numArcs;
+		this.numLabels = numLabels;
+		this.arcs = arcs;
+		this.stateEnds = stateEnds;
+		this.labelStrings = labelStrings;
+		this.stringStarts = stringStarts;
+		this.chars = chars;
+		this.analysisIndex = analysisIndex != null ? analysisIndex : buildIndex(false);
+		this.generationIndex = generationIndex;
+	}
+
+	/**
+	 * Compile the given FST.
+	 *
+	 * @param fst
+	 *            the FST
+	 * @return the compiled FST, or null if the FST cannot be indexed because some arc leads into the middle of a state
+	 */
+	public static CompiledFST compile(FST fst) {
+		int n = fst.targets.length;
+		int[] arcs = new int[n];
+		int[] stateEnds = new int[n];
+		boolean[] stateStart = new boolean[n + 1];
+		stateStart[0] = true;
+		for (int i = 0; i < n; i++) {
+			arcs[i] = fst.targets[i] | fst.labels[i] << 20 | (fst.isLast[i] ? 1 << 31 : 0);
+			if (fst.isLast[i]) {
+				stateStart[i + 1] = true;
+			}
+		}
+		for (int i = n - 1, end = n; i >= 0; i--) {
+			if (fst.isLast[i]) {
+				end = i + 1;
+			}
+			stateEnds[i] = end;
+		}
+		for (int i = 0; i < n; i++) {
+			if (fst.labels[i] != 0 && !stateStart[fst.targets[i]]) {
+				return null;
+			}
+		}
+
+		int numLabels = fst.offsets.length / 2;
+		int[] labelStrings = new int[2 * numLabels];
+		for (int i = 0; i < labelStrings.length; i++) {
+			labelStrings[i] = fst.mapping[fst.offsets[i]];
+		}
+		int[] stringStarts = new int[fst.strings.size() + 1];
+		StringBuilder chars = new StringBuilder();
+		for (int i = 0; i < fst.strings.size(); i++) {
+			stringStarts[i] = chars.length();
+			chars.append(fst.strings.get(i));
+		}
+		stringStarts[fst.strings.size()] = chars.length();
+		char[] charArray = new char[chars.length()];
+		chars.getChars(0, charArray.length, charArray, 0);
+
+		return new CompiledFST(n, numLabels, IntBuffer.wrap(arcs), IntBuffer.wrap(stateEnds), IntBuffer.wrap(labelStrings),
+				IntBuffer.wrap(stringStarts), CharBuffer.wrap(charArray), null, null);
+	}
+
+	/**
+	 * Sort the arcs of every state by the first character of their input string, keeping the order of arcs with the same key.
+	 */
+	private ArcIndex buildIndex(boolean generate) {
+		int[] sortedArcs = new int[numArcs];
+		int[] keys = new int[numArcs];
+		long[] tmp = new long[0];
+		for (int start = 0; start < numArcs;) {
+			int end = stateEnds.get(start);
+			int count = end - start;
+			if (tmp.length < count) {
+				tmp = new long[count];
+			}
+			for (int i = 0; i < count; i++) {
+				// ALWAYS + 1 = 0 sorts before all characters; the arc index keeps the original order within a key
+				tmp[i] = (long) (key(start + i, generate) + 1) << 32 | (start + i);
+			}
+			Arrays.sort(tmp, 0, count);
+			for (int i = 0; i < count; i++) {
+				sortedArcs[start + i] = (int) tmp[i];
+				keys[start + i] = (int) (tmp[i] >>> 32) - 1;
+			}
+			start = end;
+		}
+		return new ArcIndex(IntBuffer.wrap(sortedArcs), IntBuffer.wrap(keys));
+	}
+
+	private int key(int arc, boolean generate) {
+		int label = label(arcs.get(arc));
+		if (label == 0) {
+			return ALWAYS;
+		}
+		int s = inputString(label, generate);
+		int start = stringStarts.get(s);
+		return start == stringStarts.get(s + 1) ? ALWAYS : chars.get(start);
+	}
+
+	private static int label(int arc) {
+		return (arc >>> 20) & 2047;
+	}
+
+	private int inputString(int label, boolean generate) {
+		return labelStrings.get(2 * label + (generate ? 1 : 0));
+	}
+
+	private int outputString(int label, boolean generate) {
+		return labelStrings.get(2 * label + (generate ? 0 : 1));
+	}
+
+	private ArcIndex index(boolean generate) {
+		if (!generate) {
+			return analysisIndex;
+		}
+		ArcIndex index = generationIndex;
+		if (index == null) {
+			index = buildIndex(true);
+			generationIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Look up a word. This method is thread-safe.
+	 *
+	 * @param word
+	 *            the word to look up.
+	 * @param generate
+	 *            whether the FST is to run in inverse direction, i.e. generating the original form from the expanded form.
+	 * @return a string array containing all expansions of word. If no expansion is found, an array of length 0 is returned.
+	 */
+	public String[] lookup(String word, boolean generate) {
+		List<String> results = new ArrayList<String>();
+		lookup(word, 0, 0, generate, index(generate), new StringBuilder(), results);
+		return results.toArray(new String[results.size()]);
+	}
+
+	/**
+	 * Look up many words at once. This method is thread-safe.
+	 *
+	 * @param words
+	 *            the words to look up.
+	 * @param generate
+	 *            whether the FST is to run in inverse direction.
+	 * @return for each word, the array of its expansions, which is of length 0 if no expansion is found.
+	 */
+	public String[][] lookup(String[] words, boolean generate) {
+		ArcIndex index = index(generate);
+		StringBuilder buffer = new StringBuilder();
+		List<String> results = new ArrayList<String>();
+		String[][] all = new String[words.length][];
+		for (int i = 0; i < words.length; i++) {
+			results.clear();
+			buffer.setLength(0);
+			lookup(words[i], 0, 0, generate, index, buffer, results);
+			all[i] = results.toArray(new String[results.size()]);
+		}
+		return all;
+	}
+
+	private void lookup(String word, int offset1, int state, boolean generate, ArcIndex index, StringBuilder buffer2,
+			List<String> results) {
+		IntBuffer sortedArcs = index.sortedArcs;
+		IntBuffer keys = index.keys;
+		int end = stateEnds.get(state);
+		// the arcs always followed come first:
+		int always = state;
+		int alwaysEnd = state;
+		while (alwaysEnd < end && keys.get(alwaysEnd) == ALWAYS) {
+			alwaysEnd++;
+		}
+		// the arcs whose input starts with the next character:
+		int matching = alwaysEnd;
+		int matchingEnd = alwaysEnd;
+		if (offset1 < word.length()) {
+			char c = word.charAt(offset1);
+			int lo = alwaysEnd;
+			int hi = end;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (keys.get(mid) < c) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			matching = lo;
+			matchingEnd = lo;
+			while (matchingEnd < end && keys.get(matchingEnd) == c) {
+				matchingEnd++;
+			}
+		}
+		// follow both in the original order of the arcs:
+		while (always < alwaysEnd || matching < matchingEnd) {
+			int arc;
+			if (matching == matchingEnd || always < alwaysEnd && sortedArcs.get(always) < sortedArcs.get(matching)) {
+				arc = sortedArcs.get(always++);
+			} else {
+				arc = sortedArcs.get(matching++);
+			}
+			follow(word, offset1, arc, generate, index, buffer2, results);
+		}
+	}
+
+	private void follow(String word, int offset1, int arc, boolean generate, ArcIndex index, StringBuilder buffer2,
+			List<String> results) {
+		int packed = arcs.get(arc);
+		int label = label(packed);
+		if (label == 0) {
+			if (offset1 == word.length()) {
+				results.add(buffer2.toString());
+			}
+			return;
+		}
+		int s1 = inputString(label, generate);
+		int start1 = stringStarts.get(s1);
+		int length1 = stringStarts.get(s1 + 1) - start1;
+		if (offset1 + length1 > word.length()) {
+			return;
+		}
+		for (int i = 0; i < length1; i++) {
+			if (chars.get(start1 + i) != word.charAt(offset1 + i)) {
+				return;
+			}
+		}
+		int offset2 = buffer2.length();
+		int s2 = outputString(label, generate);
+		for (int i = stringStarts.get(s2), end2 = stringStarts.get(s2 + 1); i < end2; i++) {
+			buffer2.append(chars.get(i));
+		}
+		lookup(word, offset1 + length1, packed & TARGET_MASK, generate, index, buffer2, results);
+		buffer2.setLength(offset2);
+	}
+
+	/**
+	 * Write this FST in the compiled file format.
+	 *
+	 * @param out
+	 *            the stream to write to
+	 * @throws IOException
+	 *             IOException
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		int numStrings = stringStarts.limit() - 1;
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(numArcs);
+		data.writeInt(numLabels);
+		data.writeInt(numStrings);
+		data.writeInt(chars.limit());
+		write(data, arcs);
+		write(data, stateEnds);
+		write(data, labelStrings);
+		write(data, stringStarts);
+		for (int i = 0; i < chars.limit(); i++) {
+			data.writeChar(chars.get(i));
+		}
+		if (chars.limit() % 2 != 0) {
+			data.writeChar(0);
+		}
+		for (boolean generate : new boolean[] { false, true }) {
+			ArcIndex index = index(generate);
+			write(data, index.sortedArcs);
+			write(data, index.keys);
+		}
+		data.flush();
+	}
+
+	private static void write(DataOutputStream data, IntBuffer ints) throws IOException {
+		for (int i = 0; i < ints.limit(); i++) {
+			data.writeInt(ints.get(i));
+		}
+	}
+
+	/**
+	 * Check whether the given stream holds a compiled FST, without consuming it.
+	 *
+	 * @param in
+	 *            a stream which supports mark and reset
+	 * @return true if the stream starts with the magic number of compiled FST files
+	 * @throws IOException
+	 *             IOException
+	 */
+	public static boolean isCompiled(InputStream in) throws IOException {
+		in.mark(4);
+		try {
+			int magic = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = in.read();
+				if (b < 0) {
+					return false;
+				}
+				magic = magic << 8 | b;
+			}
+			return magic == MAGIC;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Read a compiled FST from the given stream into memory.
+	 *
+	 * @param in
+	 *            the stream
+	 * @return the FST
+	 * @throws IOException
+	 *             if the stream does not hold a compiled FST
+	 */
+	public static CompiledFST load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		int[] header = new int[HEADER_INTS];
+		for (int i = 0; i < HEADER_INTS; i++) {
+			header[i] = data.readInt();
+		}
+		checkHeader(header);
+		byte[] body = new byte[(int) bodySize(header)];
+		data.readFully(body);
+		return fromBody(header, ByteBuffer.wrap(body));
+	}
+
+	/**
+	 * Memory-map a compiled FST file. The tables are used in place and only paged in as lookups need them.
+	 *
+	 * @param fileName
+	 *            the name of the compiled FST file
+	 * @return the FST
+	 * @throws IOException
+	 *             if the file cannot be read or does not hold a compiled FST
+	 */
+	public static CompiledFST map(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer headerBytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, 4 * HEADER_INTS);
+			int[] header = new int[HEADER_INTS];
+			for (int i = 0; i < HEADER_INTS; i++) {
+				header[i] = headerBytes.getInt(4 * i);
+			}
+			checkHeader(header);
+			long size = bodySize(header);
+			if (channel.size() < 4 * HEADER_INTS + size) {
+				throw new IOException("Compiled FST file " + fileName + " is truncated");
+			}
+			return fromBody(header, channel.map(FileChannel.MapMode.READ_ONLY, 4 * HEADER_INTS, size));
+		} finally {
+			file.close(); // the mapping stays valid
+		}
+	}
+
+	private static void checkHeader(int[] header) throws IOException {
+		if (header[0] != MAGIC) {
+			throw new IOException("Not a compiled FST");
+		}
+		if (header[1] != VERSION) {
+			throw new IOException("Cannot read compiled FST of version " + header[1]);
+		}
+	}
+
+	private static long bodySize(int[] header) {
+		long numArcs = header[2];
+		long numLabels = header[3];
+		long numStrings = header[4];
+		long numChars = header[5];
+		return 4 * (numArcs + numArcs + 2 * numLabels + numStrings + 1) + 2 * (numChars + numChars % 2) + 2 * 4 * (2 * numArcs);
+	}
+
+	private static CompiledFST fromBody(int[] header, ByteBuffer body) {
+		int numArcs = header[2];
+		int numLabels = header[3];
+		int numStrings = header[4];
+		int numChars = header[5];
+		int pos = 0;
+		IntBuffer arcs = ints(body, pos, numArcs);
+		pos += 4 * numArcs;
+		IntBuffer stateEnds = ints(body, pos, numArcs);
+		pos += 4 * numArcs;
+		IntBuffer labelStrings = ints(body, pos, 2 * numLabels);
+		pos += 4 * 2 * numLabels;
+		IntBuffer stringStarts = ints(body, pos, numStrings + 1);
+		pos += 4 * (numStrings + 1);
+		CharBuffer chars = slice(body, pos, 2 * numChars).asCharBuffer();
+		pos += 2 * (numChars + numChars % 2);
+		ArcIndex[] indexes = new ArcIndex[2];
+		for (int i = 0; i < 2; i++) {
+			IntBuffer sortedArcs = ints(body, pos, numArcs);
+			pos += 4 * numArcs;
+			IntBuffer keys = ints(body, pos, numArcs);
+			pos += 4 * numArcs;
+			indexes[i] = new ArcIndex(sortedArcs, keys);
+		}
+		return new CompiledFST(numArcs, numLabels, arcs, stateEnds, labelStrings, stringStarts, chars, indexes[0], indexes[1]);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int pos, int length) {
+		ByteBuffer b = buffer.duplicate();
+		b.position(pos);
+		b.limit(pos + length);
+		return b.slice();
+	}
+
+	private static IntBuffer ints(ByteBuffer buffer, int pos, int count) {
+		return slice(buffer, pos, 4 * count).asIntBuffer();
+	}
+
+	/**
+	 * Compile an FST file into a compiled FST file.
+	 *
+	 * @param args
+	 *            the FST file and the compiled FST file to write
+	 * @throws IOException
+	 *             IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: java marytts.fst.CompiledFST FstFile CompiledFstFile");
+			System.exit(-1);
+		}
+		CompiledFST compiled;
+		FileInputStream in = new FileInputStream(args[0]);
+		try {
+			compiled = compile(new FST(in));
+		} finally {
+			in.close();
+		}
+		if (compiled == null) {
+			System.err.println(args[0] + " cannot be compiled: some arcs lead into the middle of a state");
+			System.exit(1);
+		}
+		FileOutputStream out = new FileOutputStream(args[1]);
+		try {
+			compiled.write(out);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -19,32 +19,42 @@
  */
 package marytts.fst;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * An implementation of a finite state transducer lookup.
+ * An implementation of a finite state transducer lookup. FSTs are compiled into a {@link CompiledFST} when they are loaded,
+ * which only follows the arcs matching the next character of a word; files in the compiled format are memory-mapped.
  * 
  * @author Andreas Eisele
  */
 public class FSTLookup {
 	// ///////////////////// Static FST repository ////////////////////
 	/**
-	 * Map "filename encoding" or "filename" to FST.
+	 * Map "filename encoding" or "filename" to FST. FSTs are loaded without holding any lock; if two threads load the same FST at
+	 * the same time, the first one to finish is kept and used by both.
 	 */
-	private static Map<String, FST> knownFSTs = new HashMap<String, FST>();
+	private static ConcurrentMap<String, FST> knownFSTs = new ConcurrentHashMap<String, FST>();
+	/**
+	 * Map "filename encoding" or "filename" to compiled FST.
+	 */
+	private static ConcurrentMap<String, CompiledFST> knownCompiledFSTs = new ConcurrentHashMap<String, CompiledFST>();
 
 	// //////////////////// An individual FSTLookup class //////////////
 
+	/** the FST, if it could not be compiled */
 	private FST fst;
+	private CompiledFST compiled;
 
 	/**
 	 * Initialise the finite state transducer lookup. This constructor will assume that the file contains a header indicating the
@@ -56,6 +66,14 @@ public class FSTLookup {
 	 *             if the FST cannot be loaded from the given file.
 	 */
 	public FSTLookup(String fileName) throws IOException {
+		compiled = knownCompiledFSTs.get(fileName);
+		if (compiled == null && !knownFSTs.containsKey(fileName) && isCompiledFile(fileName)) {
+			compiled = CompiledFST.map(fileName);
+			remember(fileName);
+		}
+		if (compiled != null) {
+			return;
+		}
 		InputStream inStream = new FileInputStream(fileName);
 		try {
 			init(inStream, fileName);
@@ -64,6 +82,18 @@ public class FSTLookup {
 		}
 	}
 
+	private static boolean isCompiledFile(String fileName) throws IOException {
+		if (new File(fileName).length() < 4) {
+			return false;
+		}
+		InputStream in = new BufferedInputStream(new FileInputStream(fileName));
+		try {
+			return CompiledFST.isCompiled(in);
+		} finally {
+			in.close();
+		}
+	}
+
 	/**
 	 * Initialise the finite state transducer lookup. This constructor will assume that the stream contains a header indicating
 	 * the proper encoding.
@@ -80,12 +110,42 @@ public class FSTLookup {
 	}
 
 	private void init(InputStream inStream, String identifier) throws IOException {
-		fst = knownFSTs.get(identifier);
-		if (fst == null) {
-			fst = new FST(inStream);
-			knownFSTs.put(identifier, fst);
+		if (findKnown(identifier)) {
+			return;
 		}
+		InputStream in = new BufferedInputStream(inStream);
+		if (CompiledFST.isCompiled(in)) {
+			compiled = CompiledFST.load(in);
+		} else {
+			fst = new FST(in);
+			compiled = CompiledFST.compile(fst);
+		}
+		remember(identifier);
+	}
 
+	private boolean findKnown(String key) {
+		compiled = knownCompiledFSTs.get(key);
+		fst = knownFSTs.get(key);
+		return compiled != null || fst != null;
+	}
+
+	/**
+	 * Remember the FST under the given key; if it was compiled, the FST itself is no longer needed. If another thread has
+	 * remembered an FST under that key in the meantime, that one is used instead.
+	 */
+	private void remember(String key) {
+		if (compiled != null) {
+			fst = null;
+			CompiledFST known = knownCompiledFSTs.putIfAbsent(key, compiled);
+			if (known != null) {
+				compiled = known;
+			}
+		} else {
+			FST known = knownFSTs.putIfAbsent(key, fst);
+			if (known != null) {
+				fst = known;
+			}
+		}
 	}
 
 	/**
@@ -129,11 +189,12 @@ public class FSTLookup {
 
 	private void init(InputStream inStream, String identifier, String encoding) throws IOException, UnsupportedEncodingException {
 		String key = identifier + " " + encoding;
-		fst = knownFSTs.get(key);
-		if (fst == null) {
-			fst = new FST(inStream, encoding);
-			knownFSTs.put(key, fst);
+		if (findKnown(key)) {
+			return;
 		}
+		fst = new FST(inStream, encoding);
+		compiled = CompiledFST.compile(fst);
+		remember(key);
 	}
 
 	/**
@@ -158,6 +219,9 @@ public class FSTLookup {
 	 * @return a string array containing all expansions of word. If no expansion is found, an array of length 0 is returned.
 	 */
 	public String[] lookup(String word, boolean generate) {
+		if (compiled != null) {
+			return compiled.lookup(word, generate);
+		}
 		StringBuilder buffer2 = new StringBuilder();
 		List<String> results = new ArrayList<String>();
 
@@ -168,6 +232,37 @@ public class FSTLookup {
 		return resultArray;
 	}
 
+	/**
+	 * Look up many words in the FST at once. The FST runs in normal mode. This method is thread-safe.
+	 * 
+	 * @param words
+	 *            the words to look up.
+	 * @return for each word, a string array containing all its expansions, which is of length 0 if no expansion is found.
+	 */
+	public String[][] lookup(String[] words) {
+		return lookup(words, false);
+	}
+
+	/**
+	 * Look up many words in the FST at once. This method is thread-safe.
+	 * 
+	 * @param words
+	 *            the words to look up.
+	 * @param generate
+	 *            whether the FST is to run in inverse direction, i.e. generating the original form from the expanded form.
+	 * @return for each word, a string array containing all its expansions, which is of length 0 if no expansion is found.
+	 */
+	public String[][] lookup(String[] words, boolean generate) {
+		if (compiled != null) {
+			return compiled.lookup(words, generate);
+		}
+		String[][] results = new String[words.length][];
+		for (int i = 0; i < words.length; i++) {
+			results[i] = lookup(words[i], generate);
+		}
+		return results;
+	}
+
 	private void lookup(String word, int offset1, int arc, boolean generate, StringBuilder buffer2, List<String> results) {
 		do {
 			int label = fst.labels[arc];
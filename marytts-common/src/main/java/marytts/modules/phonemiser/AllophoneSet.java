@@ -27,7 +27,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -36,6 +35,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.util.MaryUtils;
@@ -47,7 +47,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.traversal.NodeIterator;
 
 public class AllophoneSet {
-	private static Map<String, AllophoneSet> allophoneSets = new HashMap<String, AllophoneSet>();
+	private static Map<String, AllophoneSet> allophoneSets = new ConcurrentHashMap<String, AllophoneSet>();
 
 	/**
 	 * Return the allophone set specified by the given filename. It will only be loaded if it was not loaded before.
@@ -107,7 +107,7 @@ public class AllophoneSet {
 	 *             if no allophone set can be loaded from the given file.
 	 */
 
-	public static AllophoneSet getAllophoneSet(InputStream inStream, String identifier) throws MaryConfigurationException {
+	public static synchronized AllophoneSet getAllophoneSet(InputStream inStream, String identifier) throws MaryConfigurationException {
 		AllophoneSet as = allophoneSets.get(identifier);
 		if (as == null) {
 			// Need to load it:
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.fst;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the compiled FST finds the same expansions, in the same order, as following every arc of the FST.
+ */
+public class CompiledFSTTest {
+	private static final String[][] ENTRIES = new String[][] {
+			// input chunks and output chunks of each alignment
+			{ "h", "h", "au", "aU", "s", "s" }, //
+			{ "h", "h", "au", "aU", "s", "s", "e", "@" }, //
+			{ "h", "h", "a", "a:", "s", "s", "e", "@" }, //
+			{ "h", "h", "a", "a", "s", "s", "e", "@" }, //
+			{ "b", "b", "au", "aU", "m", "m" }, //
+			{ "b", "b", "a", "a", "u", "U", "m", "m" }, //
+			{ "b", "b", "", "?", "ä", "E", "r", "6" }, //
+			{ "ä", "E:", "", "-", "ß", "s" }, //
+			{ "x", "k s", "", "" }, //
+			{ "", "?", "o", "o:" } };
+
+	private static final String[] WORDS = new String[] { "haus", "hause", "hase", "baum", "bär", "bär", "äß", "x", "o", "", "h",
+			"hausen", "zebra" };
+
+	private byte[] fstBytes;
+	private FST fst;
+
+	@Before
+	public void setUp() throws Exception {
+		TransducerTrie trie = new TransducerTrie();
+		for (String[] entry : ENTRIES) {
+			StringPair[] alignment = new StringPair[entry.length / 2];
+			for (int i = 0; i < alignment.length; i++) {
+				alignment[i] = new StringPair(entry[2 * i], entry[2 * i + 1]);
+			}
+			trie.add(alignment);
+		}
+		trie.computeMinimization();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		trie.writeFST(out, "UTF-8");
+		out.close();
+		fstBytes = bytes.toByteArray();
+		fst = new FST(new ByteArrayInputStream(fstBytes));
+	}
+
+	/** The expansions found by following every arc, as FSTLookup did before FSTs were compiled. */
+	private String[] linearLookup(String word, boolean generate) {
+		List<String> results = new ArrayList<String>();
+		linearLookup(word, 0, 0, generate, new StringBuilder(), results);
+		return results.toArray(new String[results.size()]);
+	}
+
+	private void linearLookup(String word, int offset1, int arc, boolean generate, StringBuilder buffer2, List<String> results) {
+		do {
+			int label = fst.labels[arc];
+			int offset2 = buffer2.length();
+			if (label == 0) {
+				if (offset1 == word.length()) {
+					results.add(buffer2.toString());
+				}
+			} else {
+				String s1 = (String) fst.strings.get(fst.mapping[fst.offsets[2 * label + (generate ? 1 : 0)]]);
+				if (word.startsWith(s1, offset1)) {
+					buffer2.append((String) fst.strings.get(fst.mapping[fst.offsets[2 * label + (generate ? 0 : 1)]]));
+					linearLookup(word, offset1 + s1.length(), fst.targets[arc], generate, buffer2, results);
+					buffer2.setLength(offset2);
+				}
+			}
+		} while (!fst.isLast[arc++]);
+	}
+
+	private void assertSameLookups(CompiledFST compiled) {
+		for (String word : WORDS) {
+			assertArrayEquals(word, linearLookup(word, false), compiled.lookup(word, false));
+		}
+		for (String[] entry : ENTRIES) {
+			StringBuilder output = new StringBuilder();
+			for (int i = 1; i < entry.length; i += 2) {
+				output.append(entry[i]);
+			}
+			String transcription = output.toString();
+			assertArrayEquals(transcription, linearLookup(transcription, true), compiled.lookup(transcription, true));
+		}
+	}
+
+	@Test
+	public void findsSameExpansionsAsArcs() throws Exception {
+		CompiledFST compiled = CompiledFST.compile(fst);
+		assertNotNull(compiled);
+		assertEquals(2, compiled.lookup("hase", false).length);
+		assertSameLookups(compiled);
+	}
+
+	@Test
+	public void loadsWrittenForm() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CompiledFST.compile(fst).write(bytes);
+		InputStream in = new ByteArrayInputStream(bytes.toByteArray());
+		assertTrue(CompiledFST.isCompiled(in));
+		assertSameLookups(CompiledFST.load(in));
+		assertFalse(CompiledFST.isCompiled(new ByteArrayInputStream(fstBytes)));
+	}
+
+	@Test
+	public void mapsWrittenFile() throws Exception {
+		File file = File.createTempFile("compiled", ".fst");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			CompiledFST.compile(fst).write(out);
+		} finally {
+			out.close();
+		}
+		assertSameLookups(CompiledFST.map(file.getPath()));
+		FSTLookup lookup = new FSTLookup(file.getPath());
+		assertArrayEquals(linearLookup("hause", false), lookup.lookup("hause"));
+	}
+
+	@Test(timeout = 10000)
+	public void loadsWithoutBlockingOtherFSTs() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final InputStream slow = new ByteArrayInputStream(fstBytes) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.read(b, off, len);
+			}
+		};
+		final FSTLookup[] slowLookup = new FSTLookup[1];
+		Thread loader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					slowLookup[0] = new FSTLookup(slow, "slow" + System.nanoTime());
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		loader.start();
+		// while the first FST is still being read, another one can be loaded:
+		FSTLookup fast = new FSTLookup(new ByteArrayInputStream(fstBytes), "fast" + System.nanoTime());
+		assertArrayEquals(linearLookup("hause", false), fast.lookup("hause"));
+		release.countDown();
+		loader.join();
+		assertArrayEquals(linearLookup("hause", false), slowLookup[0].lookup("hause"));
+	}
+
+	@Test
+	public void looksUpBatches() throws Exception {
+		CompiledFST compiled = CompiledFST.compile(fst);
+		String[][] expansions = compiled.lookup(WORDS, false);
+		assertEquals(WORDS.length, expansions.length);
+		for (int i = 0; i < WORDS.length; i++) {
+			assertArrayEquals(WORDS[i], linearLookup(WORDS[i], false), expansions[i]);
+		}
+	}
+}
@@ -431,8 +431,9 @@ public class LocalMaryInterface implements MaryInterface {
 	}
 
 	private MaryData process(MaryData in) throws SynthesisException {
+		// the audio is only handed out after process() has returned, so nobody reads it while it is being synthesised:
 		Request r = new Request(inputType, outputType, locale, voice, effects, style, 1, audioFileFormat, isStreaming,
-				outputTypeParams);
+				outputTypeParams, false);
 		r.setInputData(in);
 		try {
 			r.process();
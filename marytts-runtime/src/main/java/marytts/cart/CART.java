@@ -115,6 +115,12 @@ public class CART extends DirectedGraph {
 	 * @return the Node
 	 */
 	public Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+		FlatCART f = flat;
+		if (f != null) {
+			Node node = f.interpretToNode(featureVector, minNumberOfData);
+			assert node.getNumberOfData() >= minNumberOfData || node == rootNode;
+			return node;
+		}
 		Node currentNode = rootNode;
 		Node prevNode = null;
 
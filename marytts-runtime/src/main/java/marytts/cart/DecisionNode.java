@@ -561,6 +561,13 @@ public abstract class DecisionNode extends Node {
 			return value;
 		}
 
+		/**
+		 * @return true if the feature is a byte feature compared as a float
+		 */
+		public boolean isByteFeature() {
+			return isByteFeature;
+		}
+
 		public String getCriterionValueAsString() {
 			return String.valueOf(value);
 		}
@@ -49,6 +49,9 @@ public class DirectedGraph {
 
 	protected Properties properties;
 
+	// the flat form used for interpreting, if compiled
+	protected FlatCART flat;
+
 	/**
 	 * Build a new empty directed graph
 	 * 
@@ -108,9 +111,34 @@ public class DirectedGraph {
 	 *         along the fv's path.
 	 */
 	public Object interpret(FeatureVector fv) {
+		FlatCART f = flat;
+		if (f != null) {
+			return f.interpret(fv);
+		}
 		return interpret(rootNode, fv);
 	}
 
+	/**
+	 * Compile the graph into flat arrays, which are used for interpreting from now on. Call this once the graph is complete;
+	 * changes to the nodes after compiling are not seen by {@link #interpret(FeatureVector)} until the graph is compiled again.
+	 * Setting a new root node discards the flat form.
+	 * 
+	 * @return the flat form of this graph
+	 */
+	public FlatCART compile() {
+		flat = new FlatCART(rootNode);
+		return flat;
+	}
+
+	/**
+	 * Get the flat form of this graph
+	 * 
+	 * @return the flat form, or null if the graph has not been compiled
+	 */
+	public FlatCART getFlatCART() {
+		return flat;
+	}
+
 	/**
 	 * Follow the directed graph down to the most specific leaf with data, starting from node n. This is recursively calling
 	 * itself.
@@ -255,6 +283,7 @@ public class DirectedGraph {
 	 */
 	public void setRootNode(Node rNode) {
 		rootNode = rNode;
+		flat = null;
 	}
 
 	public FeatureDefinition getFeatureDefinition() {
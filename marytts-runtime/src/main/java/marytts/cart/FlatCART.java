@@ -0,0 +1,252 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import marytts.features.FeatureVector;
+
+/**
+ * A directed graph or CART compiled into flat arrays. Each node is a row in a set of parallel arrays holding an opcode, the
+ * feature index, the value to compare with and the offset of the node's daughters in a common array, so that walking down the
+ * graph is a loop over primitive arrays instead of virtual calls on node objects. The leaves are kept as the original
+ * {@link Node} objects, and interpreting the flat form returns exactly the same nodes and data as interpreting the graph.
+ * <p>
+ * A FlatCART is a snapshot of the graph at the time it was compiled; later changes to the nodes are not seen.
+ *
+ * @see DirectedGraph#compile()
+ */
+public class FlatCART {
+	private static final byte LEAF = 0;
+	private static final byte BINARY_BYTE = 1;
+	private static final byte BINARY_SHORT = 2;
+	private static final byte BINARY_FLOAT_ON_BYTE = 3;
+	private static final byte BINARY_FLOAT = 4;
+	private static final byte BYTE = 5;
+	private static final byte SHORT = 6;
+	private static final byte GRAPH = 7;
+
+	private static final int NONE = -1;
+
+	private final int root;
+	private final byte[] opcode;
+	private final int[] feature;
+	private final int[] value; // for the binary byte and short nodes
+	private final float[] threshold; // for the binary float nodes
+	private final int[] firstDaughter; // offset into daughters
+	private final int[] numDaughters;
+	private final int[] numberOfData;
+	private final int[] daughters; // node numbers, or NONE
+	private final Node[] nodes;
+
+	/**
+	 * Compile the graph below the given root node.
+	 *
+	 * @param rootNode
+	 *            the root node, or null for an empty graph
+	 */
+	public FlatCART(Node rootNode) {
+		Compiler c = new Compiler();
+		root = c.add(rootNode);
+		int n = c.nodes.size();
+		nodes = c.nodes.toArray(new Node[n]);
+		opcode = new byte[n];
+		feature = new int[n];
+		value = new int[n];
+		threshold = new float[n];
+		firstDaughter = new int[n];
+		numDaughters = new int[n];
+		numberOfData = new int[n];
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			firstDaughter[i] = total;
+			total += c.daughters.get(i).length;
+		}
+		daughters = new int[total];
+		for (int i = 0; i < n; i++) {
+			Node node = nodes[i];
+			int[] d = c.daughters.get(i);
+			System.arraycopy(d, 0, daughters, firstDaughter[i], d.length);
+			numDaughters[i] = d.length;
+			numberOfData[i] = node.getNumberOfData();
+			if (node instanceof DecisionNode) {
+				feature[i] = ((DecisionNode) node).getFeatureIndex();
+			}
+			if (node instanceof DecisionNode.BinaryByteDecisionNode) {
+				opcode[i] = BINARY_BYTE;
+				value[i] = ((DecisionNode.BinaryByteDecisionNode) node).getCriterionValueAsByte();
+			} else if (node instanceof DecisionNode.BinaryShortDecisionNode) {
+				opcode[i] = BINARY_SHORT;
+				value[i] = ((DecisionNode.BinaryShortDecisionNode) node).getCriterionValueAsShort();
+			} else if (node instanceof DecisionNode.BinaryFloatDecisionNode) {
+				DecisionNode.BinaryFloatDecisionNode floatNode = (DecisionNode.BinaryFloatDecisionNode) node;
+				opcode[i] = floatNode.isByteFeature() ? BINARY_FLOAT_ON_BYTE : BINARY_FLOAT;
+				threshold[i] = floatNode.getCriterionValueAsFloat();
+			} else if (node instanceof DecisionNode.ByteDecisionNode) {
+				opcode[i] = BYTE;
+			} else if (node instanceof DecisionNode.ShortDecisionNode) {
+				opcode[i] = SHORT;
+			} else if (node instanceof DirectedGraphNode) {
+				opcode[i] = GRAPH;
+			} else if (node instanceof LeafNode) {
+				opcode[i] = LEAF;
+			} else {
+				throw new IllegalArgumentException("Cannot compile node type " + node.getClass());
+			}
+		}
+	}
+
+	/**
+	 * Assigns numbers to the nodes in depth-first order, so that the nodes on a path tend to be close together in the arrays.
+	 * Nodes with several mothers get a single number.
+	 */
+	private static class Compiler {
+		List<Node> nodes = new ArrayList<Node>();
+		List<int[]> daughters = new ArrayList<int[]>();
+		Map<Node, Integer> numbers = new IdentityHashMap<Node, Integer>();
+
+		int add(Node node) {
+			if (node == null) {
+				return NONE;
+			}
+			Integer known = numbers.get(node);
+			if (known != null) {
+				return known;
+			}
+			int number = nodes.size();
+			numbers.put(node, number);
+			nodes.add(node);
+			daughters.add(null);
+			int[] d;
+			if (node instanceof DecisionNode) {
+				DecisionNode decisionNode = (DecisionNode) node;
+				d = new int[decisionNode.getNumberOfDaugthers()];
+				for (int i = 0; i < d.length; i++) {
+					d[i] = add(decisionNode.getDaughter(i));
+				}
+			} else if (node instanceof DirectedGraphNode) {
+				DirectedGraphNode graphNode = (DirectedGraphNode) node;
+				d = new int[] { add(graphNode.getDecisionNode()), add(graphNode.getLeafNode()) };
+			} else {
+				d = new int[0];
+			}
+			daughters.set(number, d);
+			return number;
+		}
+	}
+
+	/**
+	 * The number of the daughter of decision node n selected by the feature vector.
+	 */
+	private int next(int n, byte[] bytes, short[] shorts, float[] floats) {
+		int f = feature[n];
+		switch (opcode[n]) {
+		case BINARY_BYTE:
+			return bytes[f] == value[n] ? daughters[firstDaughter[n]] : daughters[firstDaughter[n] + 1];
+		case BINARY_SHORT:
+			return shorts[f - bytes.length] == value[n] ? daughters[firstDaughter[n]] : daughters[firstDaughter[n] + 1];
+		case BINARY_FLOAT_ON_BYTE:
+			return (float) bytes[f] < threshold[n] ? daughters[firstDaughter[n]] : daughters[firstDaughter[n] + 1];
+		case BINARY_FLOAT:
+			return floats[f - bytes.length - shorts.length] < threshold[n] ? daughters[firstDaughter[n]]
+					: daughters[firstDaughter[n] + 1];
+		case BYTE:
+			return daughter(n, bytes[f]);
+		case SHORT:
+			return daughter(n, shorts[f - bytes.length]);
+		default:
+			throw new ClassCastException(nodes[n].getClass().getName() + " is not a decision node");
+		}
+	}
+
+	private int daughter(int n, int index) {
+		if (index < 0 || index >= numDaughters[n]) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		return daughters[firstDaughter[n] + index];
+	}
+
+	/**
+	 * Walk down the CART as {@link CART#interpretToNode(FeatureVector, int)} does.
+	 *
+	 * @param featureVector
+	 *            the feature vector
+	 * @param minNumberOfData
+	 *            the minimum number of data requested. If this is 0, walk down the CART until the leaf level.
+	 * @return the node
+	 */
+	public Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+		byte[] bytes = featureVector.byteValuedDiscreteFeatures;
+		short[] shorts = featureVector.shortValuedDiscreteFeatures;
+		float[] floats = featureVector.continuousFeatures;
+		int current = root;
+		int prev = NONE;
+		while (current != NONE && numberOfData[current] > minNumberOfData && opcode[current] != LEAF) {
+			prev = current;
+			current = next(current, bytes, shorts, floats);
+		}
+		// Now usually we will have gone down one level too far
+		if (current == NONE || numberOfData[current] < minNumberOfData && prev != NONE) {
+			current = prev;
+		}
+		return current == NONE ? null : nodes[current];
+	}
+
+	/**
+	 * Walk down the graph as {@link DirectedGraph#interpret(FeatureVector)} does.
+	 *
+	 * @param featureVector
+	 *            the feature vector
+	 * @return the most specific non-null leaf node data along the path, or null
+	 */
+	public Object interpret(FeatureVector featureVector) {
+		return interpret(root, featureVector.byteValuedDiscreteFeatures, featureVector.shortValuedDiscreteFeatures,
+				featureVector.continuousFeatures);
+	}
+
+	private Object interpret(int n, byte[] bytes, short[] shorts, float[] floats) {
+		while (n != NONE) {
+			switch (opcode[n]) {
+			case LEAF:
+				return nodes[n].getAllData();
+			case GRAPH:
+				Object data = interpret(daughters[firstDaughter[n]], bytes, shorts, floats);
+				if (data != null) { // OK, found something more specific
+					return data;
+				}
+				n = daughters[firstDaughter[n] + 1];
+				break;
+			default:
+				n = next(n, bytes, shorts, floats);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of distinct nodes in the compiled graph
+	 */
+	public int getNumberOfNodes() {
+		return nodes.length;
+	}
+}
@@ -34,13 +34,13 @@ import java.util.Locale;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 
 import com.google.common.base.MoreObjects;
 import marytts.modules.synthesis.Voice;
+import marytts.server.AudioEncoding;
 import marytts.server.MaryProperties;
 import marytts.util.MaryUtils;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
@@ -286,9 +286,7 @@ public class MaryData {
 			writeTo(new OutputStreamWriter(os, "UTF-8"));
 		} else { // audio
 			logger.debug("Writing audio output, frame length " + audio.getFrameLength());
-			AudioSystem.write(audio, audioFileFormat.getType(), os);
-			os.flush();
-			os.close();
+			AudioEncoding.write(audio, audioFileFormat.getType(), os, logger);
 		}
 	}
 
@@ -22,17 +22,19 @@ package marytts.features;
 
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import marytts.modules.synthesis.Voice;
 
-import org.apache.commons.collections.map.MultiKeyMap;
-
 /**
+ * The registry of feature processor managers and target feature computers. All lookups are safe to call concurrently from
+ * request threads and take no global locks; target feature computers are created once per manager and list of features.
+ * 
  * @author marc
  *
  */
@@ -43,10 +45,12 @@ public class FeatureRegistry {
 	private FeatureRegistry() {
 	}
 
-	private static Map<Locale, FeatureProcessorManager> managersByLocale = new HashMap<Locale, FeatureProcessorManager>();
-	private static Map<Voice, FeatureProcessorManager> managersByVoice = new HashMap<Voice, FeatureProcessorManager>();
-	private static FeatureProcessorManager fallbackManager = null;
-	private static MultiKeyMap/* <Locale+String listing features, TargetFeatureComputer> */computers = new MultiKeyMap();
+	private static Map<Locale, FeatureProcessorManager> managersByLocale = new ConcurrentHashMap<Locale, FeatureProcessorManager>();
+	private static Map<Voice, FeatureProcessorManager> managersByVoice = new ConcurrentHashMap<Voice, FeatureProcessorManager>();
+	private static volatile FeatureProcessorManager fallbackManager = null;
+	// for each manager, the computers by String listing features:
+	private static ConcurrentMap<FeatureProcessorManager, ConcurrentMap<String, TargetFeatureComputer>> computers =
+			new ConcurrentHashMap<FeatureProcessorManager, ConcurrentMap<String, TargetFeatureComputer>>();
 
 	/**
 	 * Set the given feature processor manager as the one to use for the given locale.
@@ -194,7 +198,17 @@ public class FeatureRegistry {
 	public static TargetFeatureComputer getTargetFeatureComputer(FeatureProcessorManager mgr, String features) {
 		if (features == null) {
 			features = mgr.listFeatureProcessorNames();
-		} else {
+		}
+		ConcurrentMap<String, TargetFeatureComputer> computersOfManager = computers.get(mgr);
+		if (computersOfManager == null) {
+			computersOfManager = new ConcurrentHashMap<String, TargetFeatureComputer>();
+			ConcurrentMap<String, TargetFeatureComputer> known = computers.putIfAbsent(mgr, computersOfManager);
+			if (known != null) {
+				computersOfManager = known;
+			}
+		}
+		TargetFeatureComputer tfc = computersOfManager.get(features);
+		if (tfc == null) {
 			// verify that each feature is known to the mgr
 			StringTokenizer st = new StringTokenizer(features);
 			while (st.hasMoreTokens()) {
@@ -205,10 +219,11 @@ public class FeatureRegistry {
 				}
 
 			}
-		}
-		TargetFeatureComputer tfc = (TargetFeatureComputer) computers.get(mgr, features);
-		if (tfc == null) {
 			tfc = new TargetFeatureComputer(mgr, features);
+			TargetFeatureComputer known = computersOfManager.putIfAbsent(features, tfc);
+			if (known != null) { // another thread was faster
+				tfc = known;
+			}
 		}
 		return tfc;
 	}
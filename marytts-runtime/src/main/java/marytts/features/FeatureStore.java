@@ -0,0 +1,234 @@
+/**
+ * Copyright 2000-2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The feature values of all units in a voice database, stored as one contiguous array per feature type rather than as one
+ * {@link FeatureVector} object per unit. The byte-valued features of unit <code>u</code> are
+ * <code>getByteFeatures()[u * getNumberOfByteFeatures() + i]</code>, and similarly for short-valued and continuous features,
+ * where <code>i</code> counts from 0 within each type.
+ * <p>
+ * This avoids three small arrays and an object header per unit, and lets cost functions iterate over the features of a unit in
+ * contiguous memory. {@link #getFeatureVector(int)} creates a FeatureVector for code that needs one.
+ */
+public class FeatureStore {
+	private final int numberOfUnits;
+	private final int numByteFeatures;
+	private final int numShortFeatures;
+	private final int numContinuousFeatures;
+	private final byte[] byteFeatures;
+	private final short[] shortFeatures;
+	private final float[] continuousFeatures;
+
+	/**
+	 * Create an empty store for the given number of units.
+	 *
+	 * @param featureDefinition
+	 *            the feature definition determining the number of features of each type
+	 * @param numberOfUnits
+	 *            the number of units
+	 */
+	public FeatureStore(FeatureDefinition featureDefinition, int numberOfUnits) {
+		this.numberOfUnits = numberOfUnits;
+		this.numByteFeatures = featureDefinition.getNumberOfByteFeatures();
+		this.numShortFeatures = featureDefinition.getNumberOfShortFeatures();
+		this.numContinuousFeatures = featureDefinition.getNumberOfContinuousFeatures();
+		this.byteFeatures = new byte[numberOfUnits * numByteFeatures];
+		this.shortFeatures = new short[numberOfUnits * numShortFeatures];
+		this.continuousFeatures = new float[numberOfUnits * numContinuousFeatures];
+	}
+
+	/**
+	 * Create a store holding the values of the given feature vectors.
+	 *
+	 * @param featureDefinition
+	 *            the feature definition to which the feature vectors conform
+	 * @param featureVectors
+	 *            the feature vectors, indexed by unit index
+	 */
+	public FeatureStore(FeatureDefinition featureDefinition, FeatureVector[] featureVectors) {
+		this(featureDefinition, featureVectors.length);
+		for (int u = 0; u < numberOfUnits; u++) {
+			FeatureVector fv = featureVectors[u];
+			System.arraycopy(fv.byteValuedDiscreteFeatures, 0, byteFeatures, u * numByteFeatures, numByteFeatures);
+			System.arraycopy(fv.shortValuedDiscreteFeatures, 0, shortFeatures, u * numShortFeatures, numShortFeatures);
+			System.arraycopy(fv.continuousFeatures, 0, continuousFeatures, u * numContinuousFeatures, numContinuousFeatures);
+		}
+	}
+
+	/**
+	 * Read the feature values of all units, in the format written by {@link FeatureVector#writeTo(java.io.DataOutput)}.
+	 *
+	 * @param bb
+	 *            the byte buffer to read from, positioned at the first feature vector
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public void readFrom(ByteBuffer bb) throws IOException {
+		for (int u = 0; u < numberOfUnits; u++) {
+			bb.get(byteFeatures, u * numByteFeatures, numByteFeatures);
+			for (int i = u * numShortFeatures, n = i + numShortFeatures; i < n; i++) {
+				shortFeatures[i] = bb.getShort();
+			}
+			for (int i = u * numContinuousFeatures, n = i + numContinuousFeatures; i < n; i++) {
+				continuousFeatures[i] = bb.getFloat();
+			}
+		}
+	}
+
+	/**
+	 * Read the feature values of all units, in the format written by {@link FeatureVector#writeTo(java.io.DataOutput)}.
+	 *
+	 * @param input
+	 *            a DataInputStream or RandomAccessFile positioned at the first feature vector
+	 * @throws IOException
+	 *             if the data cannot be read
+	 */
+	public void readFrom(DataInput input) throws IOException {
+		for (int u = 0; u < numberOfUnits; u++) {
+			input.readFully(byteFeatures, u * numByteFeatures, numByteFeatures);
+			for (int i = u * numShortFeatures, n = i + numShortFeatures; i < n; i++) {
+				shortFeatures[i] = input.readShort();
+			}
+			for (int i = u * numContinuousFeatures, n = i + numContinuousFeatures; i < n; i++) {
+				continuousFeatures[i] = input.readFloat();
+			}
+		}
+	}
+
+	public int getNumberOfUnits() {
+		return numberOfUnits;
+	}
+
+	public int getNumberOfByteFeatures() {
+		return numByteFeatures;
+	}
+
+	public int getNumberOfShortFeatures() {
+		return numShortFeatures;
+	}
+
+	public int getNumberOfContinuousFeatures() {
+		return numContinuousFeatures;
+	}
+
+	/**
+	 * The byte-valued features of all units, <code>getNumberOfByteFeatures()</code> values per unit. Callers must not modify the
+	 * array.
+	 *
+	 * @return the internal array of byte-valued features
+	 */
+	public byte[] getByteFeatures() {
+		return byteFeatures;
+	}
+
+	/**
+	 * The short-valued features of all units, <code>getNumberOfShortFeatures()</code> values per unit. Callers must not modify
+	 * the array.
+	 *
+	 * @return the internal array of short-valued features
+	 */
+	public short[] getShortFeatures() {
+		return shortFeatures;
+	}
+
+	/**
+	 * The continuous features of all units, <code>getNumberOfContinuousFeatures()</code> values per unit. Callers must not modify
+	 * the array.
+	 *
+	 * @return the internal array of continuous features
+	 */
+	public float[] getContinuousFeatures() {
+		return continuousFeatures;
+	}
+
+	/**
+	 * Get a byte-valued feature of a unit.
+	 *
+	 * @param unitIndex
+	 *            the index of the unit
+	 * @param index
+	 *            the feature index, as in {@link FeatureVector#getByteFeature(int)}
+	 * @return the feature value
+	 */
+	public final byte getByteFeature(int unitIndex, int index) {
+		return byteFeatures[unitIndex * numByteFeatures + index];
+	}
+
+	/**
+	 * Get a short-valued feature of a unit.
+	 *
+	 * @param unitIndex
+	 *            the index of the unit
+	 * @param index
+	 *            the feature index, as in {@link FeatureVector#getShortFeature(int)}
+	 * @return the feature value
+	 */
+	public final short getShortFeature(int unitIndex, int index) {
+		return shortFeatures[unitIndex * numShortFeatures + index - numByteFeatures];
+	}
+
+	/**
+	 * Get a continuous feature of a unit.
+	 *
+	 * @param unitIndex
+	 *            the index of the unit
+	 * @param index
+	 *            the feature index, as in {@link FeatureVector#getContinuousFeature(int)}
+	 * @return the feature value
+	 */
+	public final float getContinuousFeature(int unitIndex, int index) {
+		return continuousFeatures[unitIndex * numContinuousFeatures + index - numByteFeatures - numShortFeatures];
+	}
+
+	/**
+	 * Create a feature vector holding a copy of the features of the given unit.
+	 *
+	 * @param unitIndex
+	 *            the index of the unit
+	 * @return a new feature vector
+	 */
+	public FeatureVector getFeatureVector(int unitIndex) {
+		byte[] bytes = new byte[numByteFeatures];
+		System.arraycopy(byteFeatures, unitIndex * numByteFeatures, bytes, 0, numByteFeatures);
+		short[] shorts = new short[numShortFeatures];
+		System.arraycopy(shortFeatures, unitIndex * numShortFeatures, shorts, 0, numShortFeatures);
+		float[] floats = new float[numContinuousFeatures];
+		System.arraycopy(continuousFeatures, unitIndex * numContinuousFeatures, floats, 0, numContinuousFeatures);
+		return new FeatureVector(bytes, shorts, floats, unitIndex);
+	}
+
+	/**
+	 * Create feature vectors for all units.
+	 *
+	 * @return a new array of new feature vectors, indexed by unit index
+	 */
+	public FeatureVector[] toFeatureVectors() {
+		FeatureVector[] featureVectors = new FeatureVector[numberOfUnits];
+		for (int u = 0; u < numberOfUnits; u++) {
+			featureVectors[u] = getFeatureVector(u);
+		}
+		return featureVectors;
+	}
+}
@@ -95,6 +95,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getSegment(target.getSentenceIndex() - 1);
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -116,6 +119,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getSegment(target.getSentenceIndex() - 2);
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -138,6 +144,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getSegment(target.getSentenceIndex() + 1);
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -159,6 +168,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getSegment(target.getSentenceIndex() + 2);
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -179,6 +191,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getFirstPhoneInWord(target.getSentenceIndex());
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
@@ -201,6 +216,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getLastPhoneInWord(target.getSentenceIndex());
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
@@ -223,6 +241,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getFirstSyllableInWord(target.getSentenceIndex());
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
@@ -245,6 +266,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getLastSyllableInWord(target.getSentenceIndex());
 			Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
 			if (word == null)
 				return null;
@@ -291,6 +315,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getSyllableBefore(target.getSentenceIndex(), 1);
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -325,6 +352,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getSyllableBefore(target.getSentenceIndex(), 2);
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -360,6 +390,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getSyllableAfter(target.getSentenceIndex(), 1);
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -394,6 +427,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getSyllableAfter(target.getSentenceIndex(), 2);
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element syllable = (Element) segment.getParentNode();
@@ -444,6 +480,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getLastSyllableInPhrase(target.getSentenceIndex());
 			Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
 			if (phrase == null)
 				return null;
@@ -462,6 +501,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getNextWord(target.getSentenceIndex());
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
@@ -498,6 +540,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getPrevWord(target.getSentenceIndex());
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
@@ -534,6 +579,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getFirstPhoneInNextWord(target.getSentenceIndex());
 			Element current;
 			if (segment.getTagName().equals(MaryXML.PHONE)) {
 				Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
@@ -577,6 +625,9 @@ public class MaryGenericFeatureProcessors {
 			Element segment = target.getMaryxmlElement();
 			if (segment == null)
 				return null;
+			SentenceStructure structure = target.getSentenceStructure();
+			if (structure != null)
+				return structure.getLastWord();
 			Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
 			if (sentence == null)
 				return null;
@@ -0,0 +1,426 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import marytts.datatypes.MaryXML;
+import marytts.unitselection.select.DiphoneTarget;
+import marytts.unitselection.select.Target;
+import marytts.util.dom.MaryDomUtils;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An index-based view of the segments, syllables, tokens and phrases of one sentence in a MaryXML document. It is built once
+ * per sentence by a single traversal of the tree, so that the target element navigators in {@link MaryGenericFeatureProcessors}
+ * can find neighbouring elements by index instead of walking the DOM with a TreeWalker for every feature of every target.
+ * <p>
+ * All elements are numbered in document order. The navigation methods return the same elements as the TreeWalker-based code
+ * in the navigators. The structure is a snapshot: it must not be used after phones, syllables, tokens or boundaries of the
+ * sentence have been added or removed. Attributes are read from the live elements, though.
+ *
+ * @see #attach(List)
+ */
+public class SentenceStructure {
+	private final Element[] segments;
+	private final Element[] syllables;
+	private final Element[] tokens;
+	private final Map<Element, Integer> segmentIndex;
+
+	// per segment:
+	private final int[] segmentToken; // closest token ancestor, or -1
+	private final int[] prevSyllable; // index of the preceding syllable; may be out of range
+	private final int[] nextSyllable; // index of the following syllable; may be out of range
+	private final int[] prevToken; // index of the token preceding the segment or its token
+	private final int[] nextToken; // index of the token following the segment or its token
+	private final int[] phraseLastSyllable; // last syllable in the closest phrase ancestor, or -1
+
+	// per token:
+	private final int[] firstPhone;
+	private final int[] lastPhone;
+	private final int[] firstSyllable;
+	private final int[] lastSyllable;
+
+	private final int lastTopLevelToken;
+
+	/**
+	 * Build the structure of the given sentence.
+	 *
+	 * @param sentence
+	 *            a sentence element
+	 */
+	public SentenceStructure(Element sentence) {
+		Builder b = new Builder();
+		b.visitChildren(sentence, -1, -1, -1, 0);
+		segments = b.segments.toArray(new Element[b.segments.size()]);
+		syllables = b.syllables.toArray(new Element[b.syllables.size()]);
+		tokens = b.tokens.toArray(new Element[b.tokens.size()]);
+		segmentIndex = new IdentityHashMap<Element, Integer>(segments.length * 2);
+		for (int i = 0; i < segments.length; i++) {
+			segmentIndex.put(segments[i], i);
+		}
+		segmentToken = toArray(b.segmentToken);
+		prevSyllable = toArray(b.prevSyllable);
+		nextSyllable = toArray(b.nextSyllable);
+		prevToken = toArray(b.prevToken);
+		nextToken = toArray(b.nextToken);
+		phraseLastSyllable = new int[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			int phrase = b.segmentPhrase.get(i);
+			phraseLastSyllable[i] = phrase < 0 ? -1 : b.phraseSyllableEnd.get(phrase) - 1;
+			if (phrase >= 0 && phraseLastSyllable[i] < b.phraseSyllableStart.get(phrase)) {
+				phraseLastSyllable[i] = -1;
+			}
+		}
+		firstPhone = new int[tokens.length];
+		lastPhone = new int[tokens.length];
+		firstSyllable = new int[tokens.length];
+		lastSyllable = new int[tokens.length];
+		int lastTop = -1;
+		for (int t = 0; t < tokens.length; t++) {
+			int phoneStart = b.tokenPhoneStart.get(t);
+			int phoneEnd = b.tokenPhoneEnd.get(t);
+			firstPhone[t] = phoneEnd > phoneStart ? b.phones.get(phoneStart) : -1;
+			lastPhone[t] = phoneEnd > phoneStart ? b.phones.get(phoneEnd - 1) : -1;
+			int syllableStart = b.tokenSyllableStart.get(t);
+			int syllableEnd = b.tokenSyllableEnd.get(t);
+			firstSyllable[t] = syllableEnd > syllableStart ? syllableStart : -1;
+			lastSyllable[t] = syllableEnd > syllableStart ? syllableEnd - 1 : -1;
+			if (b.tokenParent.get(t) < 0) {
+				lastTop = t;
+			}
+		}
+		lastTopLevelToken = lastTop;
+	}
+
+	/**
+	 * Build one structure for each sentence of the given targets, and attach it to the targets. Targets without a MaryXML
+	 * element or outside a sentence are left alone; the halves of diphone targets are attached individually.
+	 *
+	 * @param targets
+	 *            targets whose features are about to be computed
+	 */
+	public static void attach(List<? extends Target> targets) {
+		Map<Node, SentenceStructure> structures = new IdentityHashMap<Node, SentenceStructure>();
+		for (Target target : targets) {
+			if (target instanceof DiphoneTarget) {
+				attach(((DiphoneTarget) target).left, structures);
+				attach(((DiphoneTarget) target).right, structures);
+			} else {
+				attach(target, structures);
+			}
+		}
+	}
+
+	private static void attach(Target target, Map<Node, SentenceStructure> structures) {
+		Element segment = target.getMaryxmlElement();
+		if (segment == null) {
+			return;
+		}
+		Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
+		if (sentence == null) {
+			return;
+		}
+		SentenceStructure structure = structures.get(sentence);
+		if (structure == null) {
+			structure = new SentenceStructure(sentence);
+			structures.put(sentence, structure);
+		}
+		int index = structure.indexOf(segment);
+		if (index >= 0) {
+			target.setSentenceStructure(structure, index);
+		}
+	}
+
+	/**
+	 * Remove the structures from the given targets, after which their features are computed on the DOM again. Call this once
+	 * the features are computed, so that the targets do not keep a structure that may become stale.
+	 *
+	 * @param targets
+	 *            targets
+	 */
+	public static void detach(List<? extends Target> targets) {
+		for (Target target : targets) {
+			if (target instanceof DiphoneTarget) {
+				((DiphoneTarget) target).left.setSentenceStructure(null, -1);
+				((DiphoneTarget) target).right.setSentenceStructure(null, -1);
+			} else {
+				target.setSentenceStructure(null, -1);
+			}
+		}
+	}
+
+	/**
+	 * The index of the given phone or boundary element in this sentence.
+	 *
+	 * @param segment
+	 *            segment
+	 * @return the index, or -1 if the element is not a segment of this sentence
+	 */
+	public int indexOf(Element segment) {
+		Integer index = segmentIndex.get(segment);
+		return index == null ? -1 : index;
+	}
+
+	public int getNumberOfSegments() {
+		return segments.length;
+	}
+
+	/**
+	 * @param index
+	 *            segment index
+	 * @return the segment with the given index, or null if the index is out of range
+	 */
+	public Element getSegment(int index) {
+		return index >= 0 && index < segments.length ? segments[index] : null;
+	}
+
+	/**
+	 * The n-th syllable before the syllable of the given segment, or before the segment itself if it is not in a syllable.
+	 *
+	 * @param segment
+	 *            segment index
+	 * @param n
+	 *            1 for the previous syllable, 2 for the one before, etc.
+	 * @return the syllable, or null
+	 */
+	public Element getSyllableBefore(int segment, int n) {
+		return syllable(prevSyllable[segment] - n + 1);
+	}
+
+	/**
+	 * The n-th syllable after the syllable of the given segment, or after the segment itself if it is not in a syllable.
+	 *
+	 * @param segment
+	 *            segment index
+	 * @param n
+	 *            1 for the next syllable, 2 for the one after, etc.
+	 * @return the syllable, or null
+	 */
+	public Element getSyllableAfter(int segment, int n) {
+		return syllable(nextSyllable[segment] + n - 1);
+	}
+
+	public Element getFirstPhoneInWord(int segment) {
+		int token = segmentToken[segment];
+		return token < 0 ? null : getSegment(firstPhone[token]);
+	}
+
+	public Element getLastPhoneInWord(int segment) {
+		int token = segmentToken[segment];
+		return token < 0 ? null : getSegment(lastPhone[token]);
+	}
+
+	public Element getFirstSyllableInWord(int segment) {
+		int token = segmentToken[segment];
+		return token < 0 ? null : syllable(firstSyllable[token]);
+	}
+
+	public Element getLastSyllableInWord(int segment) {
+		int token = segmentToken[segment];
+		return token < 0 ? null : syllable(lastSyllable[token]);
+	}
+
+	public Element getLastSyllableInPhrase(int segment) {
+		return syllable(phraseLastSyllable[segment]);
+	}
+
+	/**
+	 * The first token with a "ph" attribute after the token of the given phone, or after the given boundary.
+	 *
+	 * @param segment
+	 *            segment index
+	 * @return the word, or null
+	 */
+	public Element getNextWord(int segment) {
+		int word = nextWord(segment);
+		return word < 0 ? null : tokens[word];
+	}
+
+	/**
+	 * The last token with a "ph" attribute before the token of the given phone, or before the given boundary.
+	 *
+	 * @param segment
+	 *            segment index
+	 * @return the word, or null
+	 */
+	public Element getPrevWord(int segment) {
+		if (isPhoneOutsideToken(segment)) {
+			return null;
+		}
+		for (int t = prevToken[segment]; t >= 0; t--) {
+			if (tokens[t].hasAttribute("ph")) {
+				return tokens[t];
+			}
+		}
+		return null;
+	}
+
+	public Element getFirstPhoneInNextWord(int segment) {
+		int word = nextWord(segment);
+		return word < 0 ? null : getSegment(firstPhone[word]);
+	}
+
+	/**
+	 * @return the last token in the sentence which has a "ph" attribute, or null
+	 */
+	public Element getLastWord() {
+		for (int t = lastTopLevelToken; t >= 0; t--) {
+			if (tokens[t].hasAttribute("ph")) {
+				return tokens[t];
+			}
+		}
+		return null;
+	}
+
+	private int nextWord(int segment) {
+		if (isPhoneOutsideToken(segment)) {
+			return -1;
+		}
+		for (int t = nextToken[segment]; t < tokens.length; t++) {
+			if (tokens[t].hasAttribute("ph")) {
+				return t;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isPhoneOutsideToken(int segment) {
+		return segmentToken[segment] < 0 && segments[segment].getTagName().equals(MaryXML.PHONE);
+	}
+
+	private Element syllable(int index) {
+		return index >= 0 && index < syllables.length ? syllables[index] : null;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Collects the elements of a sentence in document order.
+	 */
+	private static class Builder {
+		List<Element> segments = new ArrayList<Element>();
+		List<Element> syllables = new ArrayList<Element>();
+		List<Element> tokens = new ArrayList<Element>();
+		List<Integer> phones = new ArrayList<Integer>(); // segment indexes of the phones
+
+		List<Integer> segmentToken = new ArrayList<Integer>();
+		List<Integer> segmentPhrase = new ArrayList<Integer>();
+		List<Integer> prevSyllable = new ArrayList<Integer>();
+		List<Integer> nextSyllable = new ArrayList<Integer>();
+		List<Integer> prevToken = new ArrayList<Integer>();
+		List<Integer> nextToken = new ArrayList<Integer>();
+
+		List<Integer> tokenParent = new ArrayList<Integer>();
+		List<Integer> tokenPhoneStart = new ArrayList<Integer>();
+		List<Integer> tokenPhoneEnd = new ArrayList<Integer>();
+		List<Integer> tokenSyllableStart = new ArrayList<Integer>();
+		List<Integer> tokenSyllableEnd = new ArrayList<Integer>();
+
+		List<Integer> phraseSyllableStart = new ArrayList<Integer>();
+		List<Integer> phraseSyllableEnd = new ArrayList<Integer>();
+
+		/**
+		 * Visit the child elements of e.
+		 *
+		 * @param e
+		 *            the parent element
+		 * @param token
+		 *            the closest token ancestor, or -1
+		 * @param phrase
+		 *            the closest phrase ancestor, or -1
+		 * @param syllable
+		 *            the index of e if it is a syllable, or -1
+		 * @param syllablesBefore
+		 *            the number of syllables before e
+		 */
+		void visitChildren(Element e, int token, int phrase, int syllable, int syllablesBefore) {
+			for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+				if (n.getNodeType() == Node.ELEMENT_NODE) {
+					visit((Element) n, token, phrase, syllable, syllablesBefore);
+				}
+			}
+		}
+
+		private void visit(Element e, int token, int phrase, int parentSyllable, int parentSyllablesBefore) {
+			String name = e.getTagName();
+			if (name.equals(MaryXML.PHONE) || name.equals(MaryXML.BOUNDARY)) {
+				int index = segments.size();
+				segments.add(e);
+				segmentToken.add(token);
+				segmentPhrase.add(phrase);
+				if (name.equals(MaryXML.PHONE)) {
+					phones.add(index);
+					// the neighbours of the syllable, or of whatever else the parent is:
+					if (parentSyllable >= 0) {
+						prevSyllable.add(parentSyllable - 1);
+						nextSyllable.add(parentSyllable + 1);
+					} else {
+						prevSyllable.add(parentSyllablesBefore - 1);
+						nextSyllable.add(parentSyllablesBefore);
+					}
+					// the neighbours of the token:
+					prevToken.add(token - 1);
+					nextToken.add(token + 1);
+				} else { // boundary
+					prevSyllable.add(syllables.size() - 1);
+					nextSyllable.add(syllables.size());
+					prevToken.add(tokens.size() - 1);
+					nextToken.add(tokens.size());
+				}
+				visitChildren(e, token, phrase, -1, syllables.size());
+			} else if (name.equals(MaryXML.SYLLABLE)) {
+				int index = syllables.size();
+				syllables.add(e);
+				visitChildren(e, token, phrase, index, index);
+			} else if (name.equals(MaryXML.TOKEN)) {
+				int index = tokens.size();
+				tokens.add(e);
+				tokenParent.add(token);
+				tokenPhoneStart.add(phones.size());
+				tokenSyllableStart.add(syllables.size());
+				tokenPhoneEnd.add(-1);
+				tokenSyllableEnd.add(-1);
+				visitChildren(e, index, phrase, -1, syllables.size());
+				tokenPhoneEnd.set(index, phones.size());
+				tokenSyllableEnd.set(index, syllables.size());
+			} else if (name.equals(MaryXML.PHRASE)) {
+				int index = phraseSyllableStart.size();
+				phraseSyllableStart.add(syllables.size());
+				phraseSyllableEnd.add(-1);
+				visitChildren(e, token, index, -1, syllables.size());
+				phraseSyllableEnd.set(index, syllables.size());
+			} else {
+				visitChildren(e, token, phrase, -1, syllables.size());
+			}
+		}
+	}
+}
@@ -39,9 +39,10 @@ public class TargetFeatureComputer {
 	protected ShortValuedFeatureProcessor[] shortValuedDiscreteFeatureProcessors;
 	protected ContinuousFeatureProcessor[] continuousFeatureProcessors;
 
-	protected String pauseSymbol = null;
+	// computed on first use; volatile because target feature computers are shared between request threads
+	protected volatile String pauseSymbol = null;
 
-	protected FeatureDefinition featureDefinition = null;
+	protected volatile FeatureDefinition featureDefinition = null;
 
 	/**
 	 * Construct a TargetFeatureComputer that knows how to compute features for a Target using the given set of feature processor
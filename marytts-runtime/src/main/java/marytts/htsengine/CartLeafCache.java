@@ -0,0 +1,206 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import java.util.Arrays;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.LeafNode.PdfLeafNode;
+import marytts.cart.Node;
+import marytts.features.FeatureVector;
+import marytts.util.DirectMappedTable;
+
+/**
+ * A bounded cache of the leaves found in the per-state CART trees of one HMM stream, to be shared by all requests for one voice.
+ * <p>
+ * The leaf selected in a tree only depends on the values of the features asked by its decision nodes, so the cache is keyed by
+ * the values of the features asked anywhere in the trees of the stream. Phone contexts which agree on these features, and
+ * which recur constantly in real text, then skip the tree traversal. The contexts are kept in a {@link DirectMappedTable}, in
+ * which a context replaces the one found in its slot, together with the leaves of all states.
+ */
+public class CartLeafCache {
+	private final CART[] trees;
+	private final int minNumberOfData;
+	private final int[] features;
+
+	private final DirectMappedTable<Entry> table;
+
+	/**
+	 * Create an empty cache for the given trees.
+	 *
+	 * @param trees
+	 *            the trees of the stream, one per state
+	 * @param minNumberOfData
+	 *            the minimum number of data passed to {@link CART#interpretToNode(FeatureVector, int)}
+	 * @param capacity
+	 *            the maximum number of contexts to remember; rounded up to a power of two
+	 */
+	public CartLeafCache(CART[] trees, int minNumberOfData, int capacity) {
+		table = new DirectMappedTable<Entry>(capacity);
+		this.trees = trees;
+		this.minNumberOfData = minNumberOfData;
+		boolean[] asked = new boolean[0];
+		for (CART tree : trees) {
+			asked = collectFeatures(tree.getRootNode(), asked);
+		}
+		int numFeatures = 0;
+		for (boolean a : asked) {
+			if (a) {
+				numFeatures++;
+			}
+		}
+		features = new int[numFeatures];
+		for (int f = 0, i = 0; f < asked.length; f++) {
+			if (asked[f]) {
+				features[i++] = f;
+			}
+		}
+	}
+
+	/**
+	 * Mark the features asked by the decision nodes below node.
+	 *
+	 * @return asked, or a longer copy of it if a feature with a higher index was found
+	 */
+	private static boolean[] collectFeatures(Node node, boolean[] asked) {
+		if (node instanceof DecisionNode) {
+			DecisionNode decisionNode = (DecisionNode) node;
+			int f = decisionNode.getFeatureIndex();
+			if (f >= asked.length) {
+				asked = Arrays.copyOf(asked, f + 1);
+			}
+			asked[f] = true;
+			for (int i = 0; i < decisionNode.getNumberOfDaugthers(); i++) {
+				asked = collectFeatures(decisionNode.getDaughter(i), asked);
+			}
+		}
+		return asked;
+	}
+
+	/**
+	 * The value of feature f in fv, as an int.
+	 */
+	private static int value(FeatureVector fv, int f) {
+		byte[] bytes = fv.byteValuedDiscreteFeatures;
+		if (f < bytes.length) {
+			return bytes[f];
+		}
+		short[] shorts = fv.shortValuedDiscreteFeatures;
+		if (f < bytes.length + shorts.length) {
+			return shorts[f - bytes.length];
+		}
+		return Float.floatToIntBits(fv.continuousFeatures[f - bytes.length - shorts.length]);
+	}
+
+	private int hash(FeatureVector fv) {
+		int h = 1;
+		for (int f : features) {
+			h = 31 * h + value(fv, f);
+		}
+		return h;
+	}
+
+	private boolean matches(int[] key, FeatureVector fv) {
+		for (int i = 0; i < features.length; i++) {
+			if (key[i] != value(fv, features[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the leaves selected by the given feature vector in all trees, from the cache if possible. Leaves not found in the
+	 * cache are looked up in the trees and added to the cache.
+	 *
+	 * @param fv
+	 *            the context feature vector
+	 * @return the leaf of each tree, in the order of the trees. The array is shared and must not be modified.
+	 */
+	public PdfLeafNode[] lookup(FeatureVector fv) {
+		int hash = hash(fv);
+		int slot = table.slot(hash);
+		Entry e = table.get(slot);
+		if (e != null && e.hash == hash && matches(e.key, fv)) {
+			table.hit();
+			return e.leaves;
+		}
+		table.miss();
+		PdfLeafNode[] leaves = new PdfLeafNode[trees.length];
+		for (int s = 0; s < trees.length; s++) {
+			leaves[s] = (PdfLeafNode) trees[s].interpretToNode(fv, minNumberOfData);
+		}
+		int[] key = new int[features.length];
+		for (int i = 0; i < features.length; i++) {
+			key[i] = value(fv, features[i]);
+		}
+		table.set(slot, new Entry(hash, key, leaves));
+		return leaves;
+	}
+
+	/**
+	 * The indexes of the features which the cache is keyed by.
+	 *
+	 * @return the feature indexes asked in the trees, in ascending order
+	 */
+	public int[] getFeatureIndexes() {
+		return features.clone();
+	}
+
+	/**
+	 * The number of lookups which found the leaves of their context without traversing the trees.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return table.getHits();
+	}
+
+	/**
+	 * The number of lookups which had to traverse the trees.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return table.getMisses();
+	}
+
+	/**
+	 * The share of lookups which skipped the tree traversal.
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if there were no lookups yet
+	 */
+	public double getHitRate() {
+		return table.getHitRate();
+	}
+
+	private static final class Entry {
+		final int hash;
+		final int[] key;
+		final PdfLeafNode[] leaves;
+
+		Entry(int hash, int[] key, PdfLeafNode[] leaves) {
+			this.hash = hash;
+			this.key = key;
+			this.leaves = leaves;
+		}
+	}
+}
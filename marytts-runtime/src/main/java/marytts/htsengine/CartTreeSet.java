@@ -91,6 +91,13 @@ public class CartTreeSet {
 	private CART[] strTree; // CART trees for strengths
 	private CART[] magTree; // CART trees for Fourier magnitudes
 
+	/* caches of the leaves found for recent contexts, or null */
+	private CartLeafCache durCache;
+	private CartLeafCache lf0Cache;
+	private CartLeafCache mgcCache;
+	private CartLeafCache strCache;
+	private CartLeafCache magCache;
+
 	private int numStates; /* # of HMM states for individual HMM */
 	private int lf0Stream; /* # of stream for log f0 modeling */
 	private int mcepVsize; /* vector size for mcep modeling */
@@ -188,6 +195,83 @@ public class CartTreeSet {
 					featureDef, phTranslator);
 			magVsize = htsReader.getVectorSize();
 		}
+		compile(durTree);
+		compile(lf0Tree);
+		compile(mgcTree);
+		compile(strTree);
+		compile(magTree);
+
+		int cacheSize = htsData.getModelCacheSize();
+		durCache = createCache(durTree, 0, cacheSize);
+		lf0Cache = createCache(lf0Tree, 1, cacheSize);
+		mgcCache = createCache(mgcTree, 1, cacheSize);
+		strCache = createCache(strTree, 1, cacheSize);
+		magCache = createCache(magTree, 1, cacheSize);
+	}
+
+	private static void compile(CART[] trees) {
+		if (trees != null) {
+			for (CART tree : trees) {
+				tree.compile();
+			}
+		}
+	}
+
+	private static CartLeafCache createCache(CART[] trees, int minNumberOfData, int cacheSize) {
+		return trees == null || cacheSize <= 0 ? null : new CartLeafCache(trees, minNumberOfData, cacheSize);
+	}
+
+	/**
+	 * The leaf of each tree selected by fv, from the cache if there is one.
+	 */
+	private static PdfLeafNode[] findLeaves(CART[] trees, CartLeafCache cache, FeatureVector fv, int minNumberOfData,
+			int numTrees) {
+		if (cache != null) {
+			return cache.lookup(fv);
+		}
+		PdfLeafNode[] leaves = new PdfLeafNode[numTrees];
+		for (int s = 0; s < numTrees; s++) {
+			leaves[s] = (PdfLeafNode) trees[s].interpretToNode(fv, minNumberOfData);
+		}
+		return leaves;
+	}
+
+	/**
+	 * Look up the given context feature vectors in all trees, so that the caches hold their leaves before the first request.
+	 * 
+	 * @param contexts
+	 *            the context feature vectors
+	 */
+	public void warmUpCaches(Iterable<FeatureVector> contexts) {
+		CartLeafCache[] caches = new CartLeafCache[] { durCache, lf0Cache, mgcCache, strCache, magCache };
+		for (FeatureVector fv : contexts) {
+			for (CartLeafCache cache : caches) {
+				if (cache != null) {
+					cache.lookup(fv);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A summary of the hits and misses of the leaf caches, for logging.
+	 * 
+	 * @return the statistics of each stream's cache, or an empty string if there are no caches
+	 */
+	public String getCacheStatistics() {
+		StringBuilder sb = new StringBuilder();
+		String[] names = new String[] { "dur", "lf0", "mgc", "str", "mag" };
+		CartLeafCache[] caches = new CartLeafCache[] { durCache, lf0Cache, mgcCache, strCache, magCache };
+		for (int i = 0; i < caches.length; i++) {
+			if (caches[i] != null) {
+				if (sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append(String.format("%s %d hits %d misses (%.1f%%)", names[i], caches[i].getHits(), caches[i].getMisses(),
+						100 * caches[i].getHitRate()));
+			}
+		}
+		return sb.toString();
 	}
 
 	/***
@@ -214,7 +298,7 @@ public class CartTreeSet {
 		double durscale = htsData.getDurationScale();
 		double meanVector[], varVector[];
 		// the duration tree has only one state
-		PdfLeafNode node = (PdfLeafNode) durTree[0].interpretToNode(fv, 0);
+		PdfLeafNode node = findLeaves(durTree, durCache, fv, 0, 1)[0];
 
 		meanVector = node.getMean();
 		varVector = node.getVariance();
@@ -257,8 +341,9 @@ public class CartTreeSet {
 	 *            uvthresh
 	 */
 	public void searchLf0InCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef, double uvthresh) {
+		PdfLeafNode[] leaves = findLeaves(lf0Tree, lf0Cache, fv, 1, numStates);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) lf0Tree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves[s];
 			m.setLf0Mean(s, node.getMean());
 			m.setLf0Variance(s, node.getVariance());
 			// set voiced or unvoiced
@@ -281,8 +366,9 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchMgcInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = findLeaves(mgcTree, mgcCache, fv, 1, numStates);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) mgcTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves[s];
 			m.setMcepMean(s, node.getMean());
 			m.setMcepVariance(s, node.getVariance());
 		}
@@ -299,8 +385,9 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchStrInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = findLeaves(strTree, strCache, fv, 1, numStates);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) strTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves[s];
 			m.setStrMean(s, node.getMean());
 			m.setStrVariance(s, node.getVariance());
 		}
@@ -317,8 +404,9 @@ public class CartTreeSet {
 	 *            Feature definition
 	 */
 	public void searchMagInCartTree(HTSModel m, FeatureVector fv, FeatureDefinition featureDef) {
+		PdfLeafNode[] leaves = findLeaves(magTree, magCache, fv, 1, numStates);
 		for (int s = 0; s < numStates; s++) {
-			PdfLeafNode node = (PdfLeafNode) magTree[s].interpretToNode(fv, 1);
+			PdfLeafNode node = leaves[s];
 			m.setMagMean(s, node.getMean());
 			m.setMagVariance(s, node.getVariance());
 		}
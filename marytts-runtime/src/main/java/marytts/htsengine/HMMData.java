@@ -71,8 +71,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
@@ -83,10 +85,13 @@ import java.util.Vector;
 import marytts.config.MaryConfig;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.modules.HTSEngine;
 import marytts.server.MaryProperties;
 import marytts.util.FeatureUtils;
 import marytts.htsengine.HMMData.FeatureType;
 import marytts.util.MaryUtils;
+import marytts.unitselection.select.Target;
 import marytts.util.io.PropertiesAccessor;
 
 import org.apache.logging.log4j.Logger;
@@ -159,6 +164,17 @@ public class HMMData {
 
 	private boolean useAcousticModels = false; /* true is using AcousticModeller, is true for MARY 4.1 voices */
 
+	/** Incremental synthesis settings */
+	private boolean incrementalSynthesis = false; /* generate and vocode parameters block by block */
+	private int incrementalBlockFrames = 40; /* number of frames generated per block, default: 0.2sec */
+	private int incrementalContextFrames = 20; /* frames of left and right context solved with each block */
+
+	/** Solve the parameter streams and their orders concurrently */
+	private boolean parallelParameterGeneration = false;
+
+	/** Number of contexts whose tree leaves are remembered per stream (0 = search the trees for every phone) */
+	private int modelCacheSize = 4096;
+
 	/**
 	 * variables for controlling generation of speech in the vocoder these variables have default values but can be fixed and read
 	 * from the audio effects component. [Default][min--max]
@@ -336,6 +352,26 @@ public class HMMData {
 		return useGV;
 	}
 
+	public boolean getIncrementalSynthesis() {
+		return incrementalSynthesis;
+	}
+
+	public int getIncrementalBlockFrames() {
+		return incrementalBlockFrames;
+	}
+
+	public int getIncrementalContextFrames() {
+		return incrementalContextFrames;
+	}
+
+	public boolean getParallelParameterGeneration() {
+		return parallelParameterGeneration;
+	}
+
+	public int getModelCacheSize() {
+		return modelCacheSize;
+	}
+
 	public boolean getUseContextDependentGV() {
 		return useContextDependentGV;
 	}
@@ -488,6 +524,26 @@ public class HMMData {
 		useFourierMag = bval;
 	}
 
+	public void setIncrementalSynthesis(boolean bval) {
+		incrementalSynthesis = bval;
+	}
+
+	public void setIncrementalBlockFrames(int ival) {
+		incrementalBlockFrames = ival;
+	}
+
+	public void setIncrementalContextFrames(int ival) {
+		incrementalContextFrames = ival;
+	}
+
+	public void setParallelParameterGeneration(boolean bval) {
+		parallelParameterGeneration = bval;
+	}
+
+	public void setModelCacheSize(int ival) {
+		modelCacheSize = ival;
+	}
+
 	public void setUseGV(boolean bval) {
 		useGV = bval;
 	}
@@ -539,6 +595,31 @@ public class HMMData {
 		cart.loadTreeSet(this, feaDef, trickyPhones);
 	}
 
+	/**
+	 * Fill the caches of the tree set with the contexts in the given file, e.g. the phones of frequent prompts, so that they
+	 * are found in the cache from the first request on.
+	 * 
+	 * @param warmupStream
+	 *            a context feature file in TARGETFEATURES format, as for FeaFile, or null for no warmup
+	 * @throws IOException
+	 *             IOException
+	 */
+	public void warmUpModelCache(InputStream warmupStream) throws IOException {
+		if (warmupStream == null || modelCacheSize <= 0)
+			return;
+		List<FeatureVector> contexts = new ArrayList<FeatureVector>();
+		Scanner s = new Scanner(new BufferedReader(new InputStreamReader(warmupStream, "UTF-8")));
+		try {
+			for (Target target : HTSEngine.getTargets(s, this)) {
+				contexts.add(target.getFeatureVector());
+			}
+		} finally {
+			s.close();
+		}
+		cart.warmUpCaches(contexts);
+		logger.debug("Warmed up the model cache with " + contexts.size() + " contexts");
+	}
+
 	public void loadGVModelSet() throws IOException {
 		gv.loadGVModelSet(this, feaDef);
 	}
@@ -606,6 +687,17 @@ public class HMMData {
 			pdfMagGVStream = p.getStream(prefix + ".Fgva"); /* GV Model MAG */
 		}
 
+		/* Incremental synthesis: generate and vocode the parameters in blocks of frames */
+		incrementalSynthesis = p.getBoolean(prefix + ".incrementalSynthesis", incrementalSynthesis);
+		incrementalBlockFrames = p.getInteger(prefix + ".incrementalBlockFrames", incrementalBlockFrames);
+		incrementalContextFrames = p.getInteger(prefix + ".incrementalContextFrames", incrementalContextFrames);
+
+		/* Parallel parameter generation: solve the streams and their orders on the common fork-join pool */
+		parallelParameterGeneration = p.getBoolean(prefix + ".parallelParameterGeneration", parallelParameterGeneration);
+
+		/* Cache of the tree leaves found for recent contexts */
+		modelCacheSize = p.getInteger(prefix + ".modelCacheSize", modelCacheSize);
+
 		/* targetfeatures file, for testing */
 		/* Example context feature file in TARGETFEATURES format */
 		InputStream featureStream = p.getStream(prefix + ".FeaFile");
@@ -625,6 +717,7 @@ public class HMMData {
 		/* Load TreeSet in CARTs. */
 		logger.debug("Loading Tree Set in CARTs:");
 		loadCartTreeSet();
+		warmUpModelCache(p.getStream(prefix + ".modelCacheWarmupFile"));
 
 		/* Load GV ModelSet gv */
 		logger.debug("Loading GV Model Set:");
@@ -694,6 +787,8 @@ public class HMMData {
 
 		}
 
+		modelCacheSize = p.getInteger(prefix + ".modelCacheSize", modelCacheSize);
+
 		/* Example context feature file in MARY format */
 		InputStream feaStream = p.getStream(prefix + ".FeaFile");
 		feaDef = FeatureUtils.readFeatureDefinition(feaStream);
@@ -709,6 +804,7 @@ public class HMMData {
 		/* Load TreeSet ts and ModelSet ms for current voice */
 		logger.info("Loading Tree Set in CARTs:");
 		cart.loadTreeSet(this, feaDef, trickyPhones);
+		warmUpModelCache(p.getStream(prefix + ".modelCacheWarmupFile"));
 
 		logger.info("Loading GV Model Set:");
 		gv.loadGVModelSet(this, feaDef);
@@ -64,7 +64,13 @@
 package marytts.htsengine;
 
 import marytts.util.MaryUtils;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.Logger;
 
@@ -99,16 +105,11 @@ public class HTSPStream {
 	private double par[][];
 
 	/* ____________________Matrices for parameter generation____________________ */
-	/** sequence of mean vector */
+	/** sequence of mean vector; frames without a mean of their own share the row zeros */
 	private double mseq[][];
-	/** sequence of inversed variance vector */
-	private double ivseq[][];
-	/** for forward substitution */
-	private double g[];
-	/** W' U^-1 W */
-	private double wuw[][];
-	/** W' U^-1 mu */
-	private double wum[];
+	private final double zeros[];
+	/** sequence of inversed variance vector, frame i at ivseq[i * vSize] to ivseq[i * vSize + vSize - 1] */
+	private double ivseq[];
 
 	/* ____________________Dynamic window ____________________ */
 	// private final HTSDWin dw; /* Windows used to calculate dynamic features, delta and delta-delta */
@@ -127,8 +128,6 @@ public class HTSPStream {
 
 	/* ____________________ GV related variables ____________________ */
 	/* GV: Global mean and covariance (diagonal covariance only) */
-	/** mean and variance for current utt eqs: (16), (17) */
-	private double mean, var;
 	/** max iterations in the speech parameter generation considering GV */
 	private final int maxGVIter;
 	/** convergence factor for GV iteration */
@@ -147,15 +146,14 @@ public class HTSPStream {
 	private final static double w2 = 1.0;
 	/** ~log(0) */
 	private final static double lzero = (-1.0e+10);
-	private double norm = 0.0;
-	private double GVobj = 0.0;
-	private double HMMobj = 0.0;
 	private double gvmean[];
 	private double gvcovInv[];
 	/** GV flag sequence, to consider or not the frame in gv */
 	private boolean gvSwitch[];
 	/** this will be the number of frames for which gv can be calculated */
 	private int gvLength;
+	/** running count, sum and sum of squares per order of the frames generated so far in incremental mode */
+	private double gvRunningStats[][];
 
 	private Logger logger = MaryUtils.getLogger("PStream");
 
@@ -174,11 +172,10 @@ public class HTSPStream {
 		par = new double[nT][order];
 
 		/* ___________________________Matrices initialisation___________________ */
-		mseq = new double[nT][vSize];
-		ivseq = new double[nT][vSize];
-		g = new double[nT];
-		wuw = new double[nT][WIDTH];
-		wum = new double[nT];
+		zeros = new double[vSize];
+		mseq = new double[nT][];
+		Arrays.fill(mseq, zeros);
+		ivseq = new double[nT * vSize];
 
 		/* GV Switch sequence initialisation */
 		gvSwitch = new boolean[nT];
@@ -188,6 +185,72 @@ public class HTSPStream {
 
 	}
 
+	/**
+	 * The band matrix, vectors and GV statistics used while solving for one parameter order, for up to capacity frames. The
+	 * band of W'U^-1W is stored flat, row t at wuw[t * WIDTH] to wuw[t * WIDTH + WIDTH - 1], and is factorized in place.
+	 * Orders solved concurrently each need their own workspace. Each thread keeps the largest workspace it has used for reuse
+	 * in later utterances, unless it is larger than MAX_CACHED_BYTES; longer utterances get a workspace of their own.
+	 */
+	private static final class Workspace {
+		/** bytes of workspace per frame */
+		private static final int FRAME_BYTES = 8 * (WIDTH + 4);
+		/** largest workspace kept per thread: 8 MB, some 150000 frames or 12 minutes of speech at 5 ms per frame */
+		private static final long MAX_CACHED_BYTES = 8L << 20;
+		private static final ThreadLocal<Workspace> cached = new ThreadLocal<Workspace>();
+
+		final int capacity;
+		/** W' U^-1 W, or its LDL factorization */
+		final double wuw[];
+		/** W' U^-1 mu */
+		final double wum[];
+		/** for forward substitution */
+		final double g[];
+		/** a parameter column: the original parameters during GV optimisation, or the solution of an incremental block */
+		final double c[];
+		/** previous gradient during GV optimisation */
+		final double diag[];
+		/** mean and variance for current utt eqs: (16), (17) */
+		double mean, var;
+		double norm = 0.0;
+		double GVobj = 0.0;
+		double HMMobj = 0.0;
+
+		private Workspace(int capacity) {
+			this.capacity = capacity;
+			wuw = new double[capacity * WIDTH];
+			wum = new double[capacity];
+			g = new double[capacity];
+			c = new double[capacity];
+			diag = new double[capacity];
+		}
+
+		/**
+		 * Get a workspace for at least nT frames, the one cached for this thread if it is large enough. Must be given back with
+		 * {@link #release(Workspace)}.
+		 */
+		static Workspace acquire(int nT) {
+			Workspace ws = cached.get();
+			if (ws != null && ws.capacity >= nT) {
+				cached.set(null);
+				return ws;
+			}
+			return new Workspace(nT);
+		}
+
+		/**
+		 * Give back a workspace, which this thread keeps if it is the largest one so far and not above the memory cap.
+		 */
+		static void release(Workspace ws) {
+			if ((long) ws.capacity * FRAME_BYTES > MAX_CACHED_BYTES) {
+				return;
+			}
+			Workspace old = cached.get();
+			if (old == null || old.capacity < ws.capacity) {
+				cached.set(ws);
+			}
+		}
+	}
+
 	public int getVsize() {
 		return vSize;
 	}
@@ -213,6 +276,8 @@ public class HTSPStream {
 	}
 
 	public void setMseq(int i, int j, double val) {
+		if (mseq[i] == zeros)
+			mseq[i] = new double[vSize];
 		mseq[i][j] = val;
 	}
 
@@ -221,14 +286,14 @@ public class HTSPStream {
 	}
 
 	public void setVseq(int i, double[] vec) {
-		assert vec.length == ivseq[i].length;
-		for (int j = 0; j < ivseq[i].length; j++) {
-			ivseq[i][j] = HTSParameterGeneration.finv(vec[j]);
+		assert vec.length == vSize;
+		for (int j = 0; j < vSize; j++) {
+			ivseq[i * vSize + j] = HTSParameterGeneration.finv(vec[j]);
 		}
 	}
 
 	public void setIvseq(int i, int j, double val) {
-		ivseq[i][j] = val;
+		ivseq[i * vSize + j] = val;
 	}
 
 	public void setGvMeanVar(double[] mean, double[] ivar) {
@@ -252,9 +317,9 @@ public class HTSPStream {
 		}
 	}
 
-	private void printWUW(int t) {
+	private void printWUW(int t, Workspace ws) {
 		for (int i = 0; i < WIDTH; i++)
-			System.out.print("WUW[" + t + "][" + i + "]=" + wuw[t][i] + "  ");
+			System.out.print("WUW[" + t + "][" + i + "]=" + ws.wuw[t * WIDTH + i] + "  ");
 		System.out.println("");
 	}
 
@@ -266,35 +331,138 @@ public class HTSPStream {
 	 * mlpg: generate sequence of speech parameter vector maximizing its output probability for given pdf sequence
 	 */
 	public void mlpg(HMMData htsData, boolean useGV) {
+		mlpg(htsData, useGV, null);
+	}
+
+	/**
+	 * Generate the sequence of speech parameter vectors, solving for the parameter orders concurrently on the given pool. Each
+	 * order is solved exactly as in the sequential case, so the result is the same.
+	 * 
+	 * @param htsData
+	 *            htsData
+	 * @param useGV
+	 *            useGV
+	 * @param pool
+	 *            the pool on which to solve the orders, or null to solve them one after another in the calling thread
+	 */
+	public void mlpg(final HMMData htsData, final boolean useGV, ForkJoinPool pool) {
 
 		if (htsData.getUseContextDependentGV())
 			logger.info("Context-dependent global variance optimization: gvLength = " + gvLength);
 		else
 			logger.info("Global variance optimization");
 
-		for (int m = 0; m < order; m++) {
-			calcWUWandWUM(m);
-			double[][] mywuw = new double[nT][];
-			for (int x = 0; x < wuw.length; x++) {
-				mywuw[x] = Arrays.copyOf(wuw[x], wuw[x].length);
+		int numTasks = pool == null ? 1 : Math.min(order, pool.getParallelism());
+		if (numTasks <= 1) {
+			Workspace ws = Workspace.acquire(nT);
+			try {
+				for (int m = 0; m < order; m++) {
+					mlpg(htsData, useGV, m, ws);
+				}
+			} finally {
+				Workspace.release(ws);
+			}
+			return;
+		}
+		// each task solves a contiguous block of orders, so that tasks do not write next to each other in the rows of par:
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numTasks);
+		for (int i = 0; i < numTasks; i++) {
+			final int first = i * order / numTasks;
+			final int end = (i + 1) * order / numTasks;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					Workspace ws = Workspace.acquire(nT);
+					try {
+						for (int m = first; m < end; m++) {
+							mlpg(htsData, useGV, m, ws);
+						}
+					} finally {
+						Workspace.release(ws);
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<Object> f : pool.invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted during parameter generation", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Parameter generation failed", e.getCause());
 			}
-			double[] mywum = Arrays.copyOf(wum, wum.length);
-			ldlFactorization(mywuw); /* LDL factorization */
-			forwardSubstitution(mywum, mywuw); /* forward substitution in Cholesky decomposition */
-			backwardSubstitution(m, mywuw); /* backward substitution in Cholesky decomposition */
-
-			/* Global variance optimisation for MCP and LF0 */
-			if (useGV && gvLength > 0) {
-				if (htsData.getGvMethodGradient())
-					gvParmGenGradient(m, false); // this is the previous method we have in MARY, using the Gradient as in the
+		}
+	} /* method mlpg */
+
+	/**
+	 * Solve for parameter order m, using the matrices in ws.
+	 */
+	private void mlpg(HMMData htsData, boolean useGV, int m, Workspace ws) {
+		calcWUWandWUM(m, ws);
+		/* the GV optimisation recalculates WUW, so it can be factorized in place */
+		ldlFactorization(ws.wuw, nT); /* LDL factorization */
+		forwardSubstitution(ws.wum, ws.wuw, ws.g, nT); /* forward substitution in Cholesky decomposition */
+		backwardSubstitution(m, ws); /* backward substitution in Cholesky decomposition */
+
+		/* Global variance optimisation for MCP and LF0 */
+		if (useGV && gvLength > 0) {
+			if (htsData.getGvMethodGradient())
+				gvParmGenGradient(m, false, ws); // this is the previous method we have in MARY, using the Gradient as in the
 													// Paper of Toda et. al. IEICE 2007
 													// if using this method the variances have to be inverse (see note in GVModel
 													// set: case NEWTON in gv optimization)
 													// this method seems to give a better result
-				else
-					gvParmGenDerivative(m, false); // this is the method in the hts_engine 1.04 the variances are not inverse
+			else
+				gvParmGenDerivative(m, false, ws); // this is the method in the hts_engine 1.04 the variances are not inverse
+
+		}
+	}
 
+	/**
+	 * Incremental variant of {@link #mlpg(HMMData, boolean)}: generate the parameters for frames <code>start</code> to
+	 * <code>end</code> (exclusive) only. The MLPG equations are solved over the block extended by <code>context</code> frames
+	 * on either side, so that the result near the block borders is close to the one obtained for the whole utterance. Blocks
+	 * must be generated in order, starting with <code>start</code> = 0.
+	 * 
+	 * The GV optimisation needs the whole utterance; when <code>useGV</code> is true it is approximated by scaling each block
+	 * with the ratio between the GV mean and the variance of all frames generated so far, as done for the initial value of the
+	 * full GV optimisation (eq. (34) in Toda and Tokuda IEICE-2007 paper).
+	 * 
+	 * @param htsData
+	 *            htsData
+	 * @param useGV
+	 *            useGV
+	 * @param start
+	 *            first frame to generate
+	 * @param end
+	 *            frame after the last frame to generate
+	 * @param context
+	 *            number of frames solved together with the block on either side
+	 */
+	public void mlpg(HMMData htsData, boolean useGV, int start, int end, int context) {
+		assert 0 <= start && start <= end && end <= nT;
+		if (start == 0)
+			gvRunningStats = new double[order][3];
+
+		int t0 = Math.max(0, start - context);
+		int len = Math.min(nT, end + context) - t0;
+		Workspace ws = Workspace.acquire(len);
+		try {
+			for (int m = 0; m < order; m++) {
+				calcWUWandWUM(m, t0, len, ws);
+				ldlFactorization(ws.wuw, len); /* LDL factorization */
+				forwardSubstitution(ws.wum, ws.wuw, ws.g, len); /* forward substitution in Cholesky decomposition */
+				backwardSubstitution(ws.g, ws.wuw, ws.c, len); /* backward substitution in Cholesky decomposition */
+				for (int t = start; t < end; t++)
+					par[t][m] = ws.c[t - t0];
+
+				/* Approximated global variance for the generated block */
+				if (useGV && gvmean != null && gvLength > 0)
+					convGVRunning(m, start, end);
 			}
+		} finally {
+			Workspace.release(ws);
 		}
 	} /* method mlpg */
 
@@ -310,29 +478,37 @@ public class HTSPStream {
 	/* L'C = y , solve for C using backward substitution */
 	/* So having A and B we can find the parameters C. */
 	/* U^{-1} = inverse covariance : inseq[][] */
-	private void calcWUWandWUM(int m) {
+	private void calcWUWandWUM(int m, Workspace ws) {
+		calcWUWandWUM(m, 0, nT, ws);
+	}
+
+	/**
+	 * Calculate W'U^{-1}W and W'U^{-1}M for the len frames starting at t0, into the first len rows of ws.
+	 */
+	private void calcWUWandWUM(int m, int t0, int len, Workspace ws) {
+		double[] mywuw = ws.wuw;
+		double[] mywum = ws.wum;
 		/* initialise */
-		Arrays.fill(wum, 0, nT, 0.0);
+		Arrays.fill(mywum, 0, len, 0.0);
+		Arrays.fill(mywuw, 0, len * WIDTH, 0.0);
 		/* for all frames: */
-		for (int t = 0; t < nT; t++) {
-			/* initialise */
-			Arrays.fill(wuw[t], 0.0);
+		for (int t = 0; t < len; t++) {
 			/* calc WUW & WUM, U is already inverse */
 			for (int i = 0; i < NUM; i++) {
 				int dwWidth_iright = rightWidths[i];
 				int iorder = i * order + m;
 				for (int j = leftWidths[i]; j <= dwWidth_iright; j++) {
-					if ((t + j >= 0) && (t + j < nT)) {
+					if ((t + j >= 0) && (t + j < len)) {
 						double dwCoef_ij = xcoefs[1 + i * NUM - j];
 						if (dwCoef_ij != 0.0) {
-							double WU = dwCoef_ij * ivseq[t + j][iorder];
+							double WU = dwCoef_ij * ivseq[(t0 + t + j) * vSize + iorder];
 
-							wum[t] += WU * mseq[t + j][iorder];
-							for (int k = 0; (k < WIDTH) && (t + k < nT); k++) {
+							mywum[t] += WU * mseq[t0 + t + j][iorder];
+							for (int k = 0; (k < WIDTH) && (t + k < len); k++) {
 								if (k - j <= dwWidth_iright) {
 									double dwCoef_ikj = xcoefs[1 + i * NUM + k - j];
 									if (dwCoef_ikj != 0.0) {
-										wuw[t][k] += WU * dwCoef_ikj;
+										mywuw[t * WIDTH + k] += WU * dwCoef_ikj;
 									}
 								}
 							} /* for k */
@@ -348,8 +524,9 @@ public class HTSPStream {
 	}
 
 	/** ldlFactorization: Factorize W'*U^{-1}*W to L*D*L' (L: lower triangular, D: diagonal) */
-	private static void ldlFactorization(double[][] mywuw) {
-		for (int t = 0; t < mywuw.length; t++) {
+	private static void ldlFactorization(double[] mywuw, int len) {
+		for (int t = 0; t < len; t++) {
+			int row = t * WIDTH;
 
 			/*
 			 * if(debug){ System.out.println("WUW calculation:"); printWUW(t); }
@@ -359,13 +536,17 @@ public class HTSPStream {
 			 * I need i=1 for the delay in t, but the indexes i in WUW[t][i] go from 0 to 2 so wherever i is used as index i=i-1
 			 * (this is just to keep somehow the original c implementation).
 			 */
-			for (int i = 1; (i < WIDTH) && (t - i >= 0); i++)
-				mywuw[t][0] -= mywuw[t - i][i] * mywuw[t - i][i] * mywuw[t - i][0];
+			for (int i = 1; (i < WIDTH) && (t - i >= 0); i++) {
+				int prev = row - i * WIDTH;
+				mywuw[row] -= mywuw[prev + i] * mywuw[prev + i] * mywuw[prev];
+			}
 
 			for (int i = 2; i <= WIDTH; i++) {
-				for (int j = 1; (i + j <= WIDTH) && (t - j >= 0); j++)
-					mywuw[t][i - 1] -= mywuw[t - j][j] * mywuw[t - j][i + j - 1] * mywuw[t - j][0];
-				mywuw[t][i - 1] /= mywuw[t][0];
+				for (int j = 1; (i + j <= WIDTH) && (t - j >= 0); j++) {
+					int prev = row - j * WIDTH;
+					mywuw[row + i - 1] -= mywuw[prev + j] * mywuw[prev + i + j - 1] * mywuw[prev];
+				}
+				mywuw[row + i - 1] /= mywuw[row];
 
 			}
 			/*
@@ -375,59 +556,93 @@ public class HTSPStream {
 
 	}
 
-	/** forward_Substitution */
-	private void forwardSubstitution(double[] mywum, double[][] mywuw) {
-		System.arraycopy(mywum, 0, g, 0, mywum.length);
-		for (int t = 0; t < nT; t++) {
+	/** forward_Substitution of the first len frames into myg */
+	private static void forwardSubstitution(double[] mywum, double[] mywuw, double[] myg, int len) {
+		System.arraycopy(mywum, 0, myg, 0, len);
+		for (int t = 0; t < len; t++) {
 			for (int i = 1; (i < WIDTH) && (t - i >= 0); i++)
-				g[t] -= mywuw[t - i][i] * g[t - i]; /* i as index should be i-1 */
+				myg[t] -= mywuw[(t - i) * WIDTH + i] * myg[t - i]; /* i as index should be i-1 */
 			// System.out.println("  g[" + t + "]=" + g[t]);
 		}
-		/*
-		 * for(t=0; t<nT; t++) System.out.format("%f ", g[t]); System.out.println();
-		 */
 	}
 
 	/** backward_Substitution */
-	private void backwardSubstitution(int m, double[][] mywuw) {
+	private void backwardSubstitution(int m, Workspace ws) {
+		double[] mywuw = ws.wuw;
 		for (int t = (nT - 1); t >= 0; t--) {
-			par[t][m] = g[t] / mywuw[t][0];
+			par[t][m] = ws.g[t] / mywuw[t * WIDTH];
 			for (int i = 1; (i < WIDTH) && (t + i < nT); i++) {
-				par[t][m] -= mywuw[t][i] * par[t + i][m]; /* i as index should be i-1 */
+				par[t][m] -= mywuw[t * WIDTH + i] * par[t + i][m]; /* i as index should be i-1 */
 			}
 			// System.out.println("  par[" + t + "]["+ m + "]=" + par[t][m]);
 		}
 
 	}
 
+	/** backward_Substitution of the first len frames into the parameter column c */
+	private static void backwardSubstitution(double[] myg, double[] mywuw, double[] c, int len) {
+		for (int t = (len - 1); t >= 0; t--) {
+			c[t] = myg[t] / mywuw[t * WIDTH];
+			for (int i = 1; (i < WIDTH) && (t + i < len); i++) {
+				c[t] -= mywuw[t * WIDTH + i] * c[t + i]; /* i as index should be i-1 */
+			}
+		}
+	}
+
 	/*----------------- GV functions  -----------------------------*/
-	private void gvParmGenDerivative(int m, boolean debug) {
+	/**
+	 * Scale frames start to end of parameter m towards the GV mean, using the mean and variance of all frames generated so far.
+	 */
+	private void convGVRunning(int m, int start, int end) {
+		double[] stats = gvRunningStats[m];
+		for (int t = start; t < end; t++) {
+			if (gvSwitch[t]) {
+				stats[0] += 1;
+				stats[1] += par[t][m];
+				stats[2] += par[t][m] * par[t][m];
+			}
+		}
+		if (stats[0] < 2)
+			return;
+		double runningMean = stats[1] / stats[0];
+		double runningVar = stats[2] / stats[0] - runningMean * runningMean;
+		if (runningVar <= 0.0)
+			return;
+		double ratio = Math.sqrt(gvmean[m] / runningVar);
+		/* c'[t][d] = ratio * (c[t][d]-mean[d]) + mean[d] eq. (34) in Toda and Tokuda IEICE-2007 paper. */
+		for (int t = start; t < end; t++) {
+			if (gvSwitch[t])
+				par[t][m] = ratio * (par[t][m] - runningMean) + runningMean;
+		}
+	}
+
+	private void gvParmGenDerivative(int m, boolean debug, Workspace ws) {
 		int t, iter;
 		double step = stepInit;
 		double prev = -lzero;
 		double obj = 0.0;
-		double diag[] = new double[nT];
-		double par_ori[] = new double[nT];
-		mean = 0.0;
-		var = 0.0;
+		double diag[] = ws.diag;
+		double par_ori[] = ws.c;
+		ws.mean = 0.0;
+		ws.var = 0.0;
 		int numDown = 0;
 
 		/* make a copy in case there is problems during optimisation */
 		for (t = 0; t < nT; t++) {
-			g[t] = 0.0;
+			ws.g[t] = 0.0;
 			par_ori[t] = par[t][m];
 		}
 
 		/* first convert c (c=par) according to GV pdf and use it as the initial value */
-		convGV(m);
+		convGV(m, ws);
 
 		/* recalculate R=WUW and r=WUM */
-		calcWUWandWUM(m);
+		calcWUWandWUM(m, ws);
 
 		/* iteratively optimize c */
 		for (iter = 1; iter <= maxGVIter; iter++) {
 			/* calculate GV objective and its derivative with respect to c */
-			obj = calcDerivative(m);
+			obj = calcDerivative(m, ws);
 
 			/* objective function improved -> increase step size */
 			if (obj > prev)
@@ -439,7 +654,7 @@ public class HTSPStream {
 
 			/* steepest ascent and quasy Newton c(i+1) = c(i) + alpha * grad(c(i)) */
 			for (t = 0; t < nT; t++)
-				par[t][m] += step * g[t];
+				par[t][m] += step * ws.g[t];
 
 			// System.out.format("iter=%d  prev=%f  obj=%f \n", iter, prev, obj);
 			prev = obj;
@@ -448,34 +663,34 @@ public class HTSPStream {
 
 	}
 
-	private void gvParmGenGradient(int m, boolean debug) {
+	private void gvParmGenGradient(int m, boolean debug, Workspace ws) {
 		int t, iter;
 		double step = stepInit;
 		double obj = 0.0, prev = 0.0;
-		double diag[] = new double[nT];
-		double par_ori[] = new double[nT];
-		mean = 0.0;
-		var = 0.0;
+		double diag[] = ws.diag;
+		double par_ori[] = ws.c;
+		ws.mean = 0.0;
+		ws.var = 0.0;
 		int numDown = 0;
 		int totalNumIter = 0;
 		int firstIter = 0;
 
 		/* make a copy in case there is problems during optimisation */
 		for (t = 0; t < nT; t++) {
-			g[t] = 0.0;
+			ws.g[t] = 0.0;
 			par_ori[t] = par[t][m];
 		}
 
 		/* first convert c (c=par) according to GV pdf and use it as the initial value */
-		convGV(m);
+		convGV(m, ws);
 
 		/* recalculate R=WUW and r=WUM */
-		calcWUWandWUM(m);
+		calcWUWandWUM(m, ws);
 
 		/* iteratively optimize c */
 		for (iter = 1; iter <= maxGVIter; iter++) {
 			/* calculate GV objective and its derivative with respect to c */
-			obj = calcGradient(m);
+			obj = calcGradient(m, ws);
 			/* accelerate/decelerate step size */
 			if (iter > 1) {
 				/* objective function improved -> increase step size */
@@ -505,28 +720,28 @@ public class HTSPStream {
 				}
 			} else {
 				if (debug)
-					logger.info("  First iteration:  GVobj=" + obj + " (HMMobj=" + HMMobj + "  GVobj=" + GVobj + ")");
+					logger.info("  First iteration:  ws.GVobj=" + obj + " (ws.HMMobj=" + ws.HMMobj + "  ws.GVobj=" + ws.GVobj + ")");
 			}
 			/* convergence check (Euclid norm, objective function) */
-			if (norm < minEucNorm || (iter > 1 && Math.abs(obj - prev) < GVepsilon)) {
+			if (ws.norm < minEucNorm || (iter > 1 && Math.abs(obj - prev) < GVepsilon)) {
 				if (debug)
-					logger.info("  Number of iterations: [   " + iter + "   ] GVobj=" + obj + " (HMMobj=" + HMMobj + "  GVobj="
-							+ GVobj + ")");
+					logger.info("  Number of iterations: [   " + iter + "   ] ws.GVobj=" + obj + " (ws.HMMobj=" + ws.HMMobj + "  ws.GVobj="
+							+ ws.GVobj + ")");
 				totalNumIter++; // gv.incTotalNumIter(iter);
 				if (m == 0)
 					firstIter = iter;// gv.setFirstIter(iter);
 				if (debug) {
 					if (iter > 1)
-						logger.info("  Converged (norm=" + norm + ", change=" + Math.abs(obj - prev) + ")");
+						logger.info("  Converged (ws.norm=" + ws.norm + ", change=" + Math.abs(obj - prev) + ")");
 					else
-						logger.info("  Converged (norm=" + norm + ")");
+						logger.info("  Converged (ws.norm=" + ws.norm + ")");
 				}
 				break;
 			}
 			/* steepest ascent and quasy Newton c(i+1) = c(i) + alpha * grad(c(i)) */
 			for (t = 0; t < nT; t++) {
-				par[t][m] += step * g[t];
-				diag[t] = g[t];
+				par[t][m] += step * ws.g[t];
+				diag[t] = ws.g[t];
 			}
 			prev = obj;
 		}
@@ -543,149 +758,149 @@ public class HTSPStream {
 		logger.info("Gradient GV optimization for feature: (" + m + ")  number of iterations=" + totalNumIter);
 	}
 
-	private double calcGradient(int m) {
+	private double calcGradient(int m, Workspace ws) {
 		int t, i, k;
 		double vd;
 		double h, aux;
 		double w = 1.0 / (NUM * nT);
 
 		/* recalculate GV of the current c = par */
-		calcGV(m);
+		calcGV(m, ws);
 
 		/* GV objective function and its derivative with respect to c */
 		/* -1/2 * v(c)' U^-1 v(c) + v(c)' U^-1 mu + K --> second part of eq (20) in Toda and Tokuda IEICE-2007 paper. */
-		GVobj = -0.5 * w2 * (var - gvmean[m]) * gvcovInv[m] * (var - gvmean[m]);
-		vd = gvcovInv[m] * (var - gvmean[m]);
+		ws.GVobj = -0.5 * w2 * (ws.var - gvmean[m]) * gvcovInv[m] * (ws.var - gvmean[m]);
+		vd = gvcovInv[m] * (ws.var - gvmean[m]);
 
 		/* calculate g = R*c = WUW*c */
 		for (t = 0; t < nT; t++) {
-			g[t] = wuw[t][0] * par[t][m];
+			ws.g[t] = ws.wuw[t * WIDTH] * par[t][m];
 			for (i = 2; i <= WIDTH; i++) { /* WIDTH goes from 0 to 2 WIDTH=3 */
 				if (t + i - 1 < nT)
-					g[t] += wuw[t][i - 1] * par[t + i - 1][m]; /* i as index should be i-1 */
+					ws.g[t] += ws.wuw[t * WIDTH + i - 1] * par[t + i - 1][m]; /* i as index should be i-1 */
 				if (t - i + 1 >= 0)
-					g[t] += wuw[t - i + 1][i - 1] * par[t - i + 1][m]; /* i as index should be i-1 */
+					ws.g[t] += ws.wuw[(t - i + 1) * WIDTH + i - 1] * par[t - i + 1][m]; /* i as index should be i-1 */
 			}
 		}
 
-		for (t = 0, HMMobj = 0.0, norm = 0.0; t < nT; t++) {
+		for (t = 0, ws.HMMobj = 0.0, ws.norm = 0.0; t < nT; t++) {
 
-			HMMobj += -0.5 * w1 * w * par[t][m] * (g[t] - 2.0 * wum[t]);
+			ws.HMMobj += -0.5 * w1 * w * par[t][m] * (ws.g[t] - 2.0 * ws.wum[t]);
 
 			/* case STEEPEST: do not use hessian */
 			// h = 1.0;
 			/* case NEWTON */
 			/* only diagonal elements of Hessian matrix are used */
-			h = ((nT - 1) * vd + 2.0 * gvcovInv[m] * (par[t][m] - mean) * (par[t][m] - mean));
-			h = -w1 * w * wuw[t][1 - 1] - w2 * 2.0 / (nT * nT) * h;
+			h = ((nT - 1) * vd + 2.0 * gvcovInv[m] * (par[t][m] - ws.mean) * (par[t][m] - ws.mean));
+			h = -w1 * w * ws.wuw[t * WIDTH] - w2 * 2.0 / (nT * nT) * h;
 
 			h = -1.0 / h;
 
 			/* gradient vector */
 			if (gvSwitch[t]) {
-				aux = (par[t][m] - mean) * vd;
-				g[t] = h * (w1 * w * (-g[t] + wum[t]) + w2 * -2.0 / nT * aux);
+				aux = (par[t][m] - ws.mean) * vd;
+				ws.g[t] = h * (w1 * w * (-ws.g[t] + ws.wum[t]) + w2 * -2.0 / nT * aux);
 			} else
-				g[t] = h * (w1 * w * (-g[t] + wum[t]));
+				ws.g[t] = h * (w1 * w * (-ws.g[t] + ws.wum[t]));
 
 			/* Euclidian norm of gradient vector */
-			norm += g[t] * g[t];
+			ws.norm += ws.g[t] * ws.g[t];
 
 		}
 
-		norm = Math.sqrt(norm);
+		ws.norm = Math.sqrt(ws.norm);
 		// logger.info("HMMobj=" + HMMobj + "  GVobj=" + GVobj + "  norm=" + norm);
 
-		return (HMMobj + GVobj);
+		return (ws.HMMobj + ws.GVobj);
 
 	}
 
-	private double calcDerivative(int m) {
+	private double calcDerivative(int m, Workspace ws) {
 		int t, i, k;
 		double vd;
 		double h, aux;
 		double w = 1.0 / (NUM * nT);
 
 		/* recalculate GV of the current c = par */
-		calcGV(m);
+		calcGV(m, ws);
 
 		/* GV objective function and its derivative with respect to c */
 		/* -1/2 * v(c)' U^-1 v(c) + v(c)' U^-1 mu + K --> second part of eq (20) in Toda and Tokuda IEICE-2007 paper. */
-		GVobj = -0.5 * w2 * var * gvcovInv[m] * (var - 2.0 * gvmean[m]);
-		vd = -2.0 * gvcovInv[m] * (var - gvmean[m]) / nT;
+		ws.GVobj = -0.5 * w2 * ws.var * gvcovInv[m] * (ws.var - 2.0 * gvmean[m]);
+		vd = -2.0 * gvcovInv[m] * (ws.var - gvmean[m]) / nT;
 		// System.out.format("GVobj=%f  vd=%f \n", GVobj, vd);
 
 		/* calculate g = R*c = WUW*c */
 		for (t = 0; t < nT; t++) {
-			g[t] = wuw[t][0] * par[t][m];
+			ws.g[t] = ws.wuw[t * WIDTH] * par[t][m];
 			for (i = 2; i <= WIDTH; i++) { /* WIDTH goes from 0 to 2 WIDTH=3 */
 				if (t + i - 1 < nT)
-					g[t] += wuw[t][i - 1] * par[t + i - 1][m]; /* i as index should be i-1 */
+					ws.g[t] += ws.wuw[t * WIDTH + i - 1] * par[t + i - 1][m]; /* i as index should be i-1 */
 				if (t - i + 1 >= 0)
-					g[t] += wuw[t - i + 1][i - 1] * par[t - i + 1][m]; /* i as index should be i-1 */
+					ws.g[t] += ws.wuw[(t - i + 1) * WIDTH + i - 1] * par[t - i + 1][m]; /* i as index should be i-1 */
 			}
 		}
 
-		for (t = 0, HMMobj = 0.0; t < nT; t++) {
+		for (t = 0, ws.HMMobj = 0.0; t < nT; t++) {
 
-			HMMobj += w1 * w * par[t][m] * (wum[t] - 0.5 * g[t]);
+			ws.HMMobj += w1 * w * par[t][m] * (ws.wum[t] - 0.5 * ws.g[t]);
 
-			h = -w1 * w * wuw[t][1 - 1] - w2 * 2.0 / (nT * nT)
-					* ((nT - 1) * gvcovInv[m] * (var - gvmean[m]) + 2.0 * gvcovInv[m] * (par[t][m] - mean) * (par[t][m] - mean));
+			h = -w1 * w * ws.wuw[t * WIDTH] - w2 * 2.0 / (nT * nT)
+					* ((nT - 1) * gvcovInv[m] * (ws.var - gvmean[m]) + 2.0 * gvcovInv[m] * (par[t][m] - ws.mean) * (par[t][m] - ws.mean));
 
 			// System.out.format("HMMobj=%f  h=%f \n", HMMobj, h);
 			/* gradient vector */
 			if (gvSwitch[t]) {
-				g[t] = 1.0 / h * (w1 * w * (-g[t] + wum[t]) + w2 * vd * (par[t][m] - mean));
+				ws.g[t] = 1.0 / h * (w1 * w * (-ws.g[t] + ws.wum[t]) + w2 * vd * (par[t][m] - ws.mean));
 
 			} else
-				g[t] = 1.0 / h * (w1 * w * (-g[t] + wum[t]));
+				ws.g[t] = 1.0 / h * (w1 * w * (-ws.g[t] + ws.wum[t]));
 
 		}
 
-		return (-(HMMobj + GVobj));
+		return (-(ws.HMMobj + ws.GVobj));
 
 	}
 
-	private void convGV(int m) {
+	private void convGV(int m, Workspace ws) {
 		int t, k;
 		double ratio, mixmean;
 		/* calculate GV of c */
-		calcGV(m);
+		calcGV(m, ws);
 
-		ratio = Math.sqrt(gvmean[m] / var);
+		ratio = Math.sqrt(gvmean[m] / ws.var);
 		// System.out.format("    mean=%f vari=%f ratio=%f \n", mean, var, ratio);
 
 		/* c'[t][d] = ratio * (c[t][d]-mean[d]) + mean[d] eq. (34) in Toda and Tokuda IEICE-2007 paper. */
 		for (t = 0; t < nT; t++) {
 			if (gvSwitch[t])
-				par[t][m] = ratio * (par[t][m] - mean) + mean;
+				par[t][m] = ratio * (par[t][m] - ws.mean) + ws.mean;
 		}
 
 	}
 
-	private void calcGV(int m) {
+	private void calcGV(int m, Workspace ws) {
 		int t, i;
-		mean = 0.0;
-		var = 0.0;
+		ws.mean = 0.0;
+		ws.var = 0.0;
 
 		/* mean */
 		for (t = 0; t < nT; t++)
 			if (gvSwitch[t]) {
-				mean += par[t][m];
+				ws.mean += par[t][m];
 				// System.out.format("(%d)%f ", t, par[t][m]);
 			}
-		mean = mean / gvLength;
+		ws.mean = ws.mean / gvLength;
 		// System.out.format("  --- gvlength=%d  mean=%f\n", gvLength, mean);
 
 		/* variance */
 		for (t = 0; t < nT; t++)
 			if (gvSwitch[t]) {
-				var += (par[t][m] - mean) * (par[t][m] - mean);
+				ws.var += (par[t][m] - ws.mean) * (par[t][m] - ws.mean);
 				// System.out.format("(%d)%f ", t, var);
 			}
 		// System.out.format("\n");
-		var = var / gvLength;
+		ws.var = ws.var / gvLength;
 
 	}
 
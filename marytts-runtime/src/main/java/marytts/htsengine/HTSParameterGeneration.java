@@ -69,13 +69,17 @@ import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -109,6 +113,12 @@ public class HTSParameterGeneration {
 	private int totalUttFrame; // total number of frames in a mcep, str or mag Pst
 	private int totalLf0Frame; // total number of f0 voiced frames in a lf0 Pst
 
+	/* incremental generation: MGC, STR and MAG are generated block by block while vocoding */
+	private boolean incremental = false;
+	private int generatedFrames; // number of frames for which MGC, STR and MAG have been generated
+	private HMMData incrementalData;
+	private boolean useGVMgc, useGVStr, useGVMag;
+
 	private Logger logger = MaryUtils.getLogger("ParameterGeneration");
 
 	public HTSPStream getMcepPst() {
@@ -151,6 +161,25 @@ public class HTSParameterGeneration {
 		voiced = var;
 	} // only used in HTSEngineTest
 
+	/**
+	 * Whether the MGC, STR and MAG parameters are still being generated block by block, see
+	 * {@link #htsIncrementalParameterGeneration(HTSUttModel, HMMData)}.
+	 * 
+	 * @return incremental
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * In incremental mode, the number of frames for which the MGC, STR and MAG parameters have been generated so far.
+	 * 
+	 * @return generatedFrames
+	 */
+	public int getGeneratedFrames() {
+		return incremental ? generatedFrames : totalUttFrame;
+	}
+
 	/* Inverse of a given double */
 	/* We actually need the inverse of the matrix of covariance, but since this matrix */
 	/* is a diagonal matrix, then we just need to calculate the inverse of each of the */
@@ -181,7 +210,145 @@ public class HTSParameterGeneration {
 	 *             Exception
 	 */
 	public void htsMaximumLikelihoodParameterGeneration(HTSUttModel um, final HMMData htsData) throws Exception {
+		initialiseParameterStreams(um, htsData);
+		GVModelSet gvms = htsData.getGVModelSet();
+		// with parallel generation, MGC, STR and MAG are generated on the pool while LF0 is generated here:
+		ForkJoinPool pool = htsData.getParallelParameterGeneration() ? ForkJoinPool.commonPool() : null;
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+
+		// Step 3: optimize individual parameter streams
+
+		/* parameter generation for mcep */
+		if (mcepPst != null) {
+			logger.info("Parameter generation for MGC: ");
+			if (htsData.getUseGV() && (htsData.getPdfMgcGVStream() != null))
+				mcepPst.setGvMeanVar(gvms.getGVmeanMgc(), gvms.getGVcovInvMgc());
+			mlpg(mcepPst, htsData, htsData.getUseGV(), pool, tasks);
+		}
+
+		/* parameter generation for str */
+		boolean useGV = false;
+		if (strPst != null) {
+			logger.debug("Parameter generation for STR ");
+			if (htsData.getUseGV() && (htsData.getPdfStrGVStream() != null)) {
+				useGV = true;
+				strPst.setGvMeanVar(gvms.getGVmeanStr(), gvms.getGVcovInvStr());
+			}
+			mlpg(strPst, htsData, useGV, pool, tasks);
+		}
+
+		/* parameter generation for mag */
+		useGV = false;
+		if (magPst != null) {
+			logger.info("Parameter generation for MAG ");
+			if (htsData.getUseGV() && (htsData.getPdfMagGVStream() != null)) {
+				useGV = true;
+				magPst.setGvMeanVar(gvms.getGVmeanMag(), gvms.getGVcovInvMag());
+			}
+			mlpg(magPst, htsData, useGV, pool, tasks);
+		}
+
+		// parameter generation for lf0 */
+		boolean done = false;
+		try {
+			generateLf0(um, htsData, pool);
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+			done = true;
+		} finally {
+			if (!done) {
+				// cancel the streams not started yet, and do not leave the ones already running behind:
+				for (ForkJoinTask<?> task : tasks) {
+					task.cancel(true);
+				}
+				for (ForkJoinTask<?> task : tasks) {
+					task.quietlyJoin();
+				}
+			}
+		}
+
+	} /* method htsMaximumLikelihoodParameterGeneration */
+
+	/**
+	 * Generate the parameters of one stream: right away if pool is null, else as a task on the pool which is added to tasks.
+	 */
+	private void mlpg(final HTSPStream pst, final HMMData htsData, final boolean useGV, final ForkJoinPool pool,
+			List<ForkJoinTask<?>> tasks) {
+		if (pool == null) {
+			pst.mlpg(htsData, useGV);
+		} else {
+			tasks.add(pool.submit(new Runnable() {
+				public void run() {
+					pst.mlpg(htsData, useGV, pool);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * HTS parameter generation for incremental synthesis. LF0 is generated for the whole utterance right away, since it is cheap
+	 * and needed for the realised prosody; MGC, STR and MAG are only prepared here and must then be generated block by block
+	 * through {@link #generateNextBlock()}, normally by the vocoder just before it needs them.
+	 * 
+	 * @param um
+	 *            : utterance model sequence after processing Mary context features
+	 * @param htsData
+	 *            : HMM pdfs model set.
+	 * @throws Exception
+	 *             Exception
+	 */
+	public void htsIncrementalParameterGeneration(HTSUttModel um, final HMMData htsData) throws Exception {
+		initialiseParameterStreams(um, htsData);
+		GVModelSet gvms = htsData.getGVModelSet();
+
+		useGVMgc = htsData.getUseGV() && (htsData.getPdfMgcGVStream() != null);
+		if (mcepPst != null && useGVMgc)
+			mcepPst.setGvMeanVar(gvms.getGVmeanMgc(), gvms.getGVcovInvMgc());
+		useGVStr = htsData.getUseGV() && (htsData.getPdfStrGVStream() != null);
+		if (strPst != null && useGVStr)
+			strPst.setGvMeanVar(gvms.getGVmeanStr(), gvms.getGVcovInvStr());
+		useGVMag = htsData.getUseGV() && (htsData.getPdfMagGVStream() != null);
+		if (magPst != null && useGVMag)
+			magPst.setGvMeanVar(gvms.getGVmeanMag(), gvms.getGVcovInvMag());
+
+		generateLf0(um, htsData, null);
+
+		incrementalData = htsData;
+		generatedFrames = 0;
+		incremental = true;
+		logger.debug("Incremental parameter generation for " + totalUttFrame + " frames in blocks of "
+				+ htsData.getIncrementalBlockFrames() + " frames");
+	}
+
+	/**
+	 * In incremental mode, generate the MGC, STR and MAG parameters for the next block of frames.
+	 * 
+	 * @return the number of frames for which parameters are available after this call
+	 */
+	public int generateNextBlock() {
+		if (!incremental || generatedFrames >= totalUttFrame)
+			return getGeneratedFrames();
+		int start = generatedFrames;
+		int end = Math.min(totalUttFrame, start + Math.max(1, incrementalData.getIncrementalBlockFrames()));
+		int context = incrementalData.getIncrementalContextFrames();
+		if (mcepPst != null)
+			mcepPst.mlpg(incrementalData, useGVMgc, start, end, context);
+		if (strPst != null)
+			strPst.mlpg(incrementalData, useGVStr, start, end, context);
+		if (magPst != null)
+			magPst.mlpg(incrementalData, useGVMag, start, end, context);
+		generatedFrames = end;
+		return end;
+	}
+
+	/**
+	 * Steps 1 and 2 of the parameter generation: create the parameter streams for the utterance and copy the pdfs into them.
+	 */
+	private void initialiseParameterStreams(HTSUttModel um, final HMMData htsData) throws Exception {
 		CartTreeSet ms = htsData.getCartTreeSet();
+		incremental = false;
+		totalUttFrame = um.getTotalFrame();
 
 		/* Initialisation of PStream objects */
 		/* Initialise Parameter generation using UttModel um and Modelset ms */
@@ -292,7 +459,7 @@ public class HTSParameterGeneration {
 			} /* for each state in this model */
 		} /* for each model in this utterance */
 
-		GVModelSet gvms = htsData.getGVModelSet();
+		totalLf0Frame = lf0Frame;
 
 		// Step 2: set dynamic features to infinity on the borders for MGC/STR/MAG
 		if (mcepPst != null)
@@ -302,51 +469,22 @@ public class HTSParameterGeneration {
 		if (magPst != null)
 			magPst.fixDynFeatOnBoundaries();
 
-		// Step 3: optimize individual parameter streams
+	} /* method initialiseParameterStreams */
 
-		/* parameter generation for mcep */
-		if (mcepPst != null) {
-			logger.info("Parameter generation for MGC: ");
-			if (htsData.getUseGV() && (htsData.getPdfMgcGVStream() != null))
-				mcepPst.setGvMeanVar(gvms.getGVmeanMgc(), gvms.getGVcovInvMgc());
-			mcepPst.mlpg(htsData, htsData.getUseGV());
-		}
-
-		// parameter generation for lf0 */
+	/* parameter generation for lf0, either from the HMMs or from the maryXML acoustparams */
+	private void generateLf0(HTSUttModel um, final HMMData htsData, ForkJoinPool pool) throws Exception {
 		if (htsData.getUseAcousticModels())
 			loadMaryXmlF0(um, htsData);
 		else if (lf0Pst != null) {
 			logger.info("Parameter generation for LF0: ");
+			GVModelSet gvms = htsData.getGVModelSet();
 			if (htsData.getUseGV() && (htsData.getPdfLf0GVStream() != null))
 				lf0Pst.setGvMeanVar(gvms.getGVmeanLf0(), gvms.getGVcovInvLf0());
-			lf0Pst.mlpg(htsData, htsData.getUseGV());
+			lf0Pst.mlpg(htsData, htsData.getUseGV(), pool);
 			// here we need set realisedF0
-			setRealisedF0(lf0Pst, um, msNumStates);
-		}
-
-		/* parameter generation for str */
-		boolean useGV = false;
-		if (strPst != null) {
-			logger.debug("Parameter generation for STR ");
-			if (htsData.getUseGV() && (htsData.getPdfStrGVStream() != null)) {
-				useGV = true;
-				strPst.setGvMeanVar(gvms.getGVmeanStr(), gvms.getGVcovInvStr());
-			}
-			strPst.mlpg(htsData, useGV);
+			setRealisedF0(lf0Pst, um, htsData.getCartTreeSet().getNumStates());
 		}
-
-		/* parameter generation for mag */
-		useGV = false;
-		if (magPst != null) {
-			logger.info("Parameter generation for MAG ");
-			if (htsData.getUseGV() && (htsData.getPdfMagGVStream() != null)) {
-				useGV = true;
-				magPst.setGvMeanVar(gvms.getGVmeanMag(), gvms.getGVcovInvMag());
-			}
-			magPst.mlpg(htsData, useGV);
-		}
-
-	} /* method htsMaximumLikelihoodParameterGeneration */
+	}
 
 	/* Save generated parameters in a binary file */
 	public void saveParamMaryFormat(String fileName, HTSPStream par, HMMData.FeatureType type) {
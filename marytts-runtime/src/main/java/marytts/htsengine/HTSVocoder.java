@@ -77,9 +77,11 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
 import marytts.signalproc.process.AmplitudeNormalizer;
+import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.data.BufferedDoubleDataSource;
 import marytts.util.data.ProducingDoubleDataSource;
+import marytts.util.data.ProducingFloatDataSource;
 import marytts.util.data.audio.AudioPlayer;
 import marytts.util.data.audio.DDSAudioInputStream;
 import marytts.util.io.FileUtils;
@@ -206,6 +208,11 @@ public class HTSVocoder {
 	public AudioInputStream htsMLSAVocoder(HTSParameterGeneration pdf2par, HMMData htsData) throws Exception {
 
 		int audioSize = computeAudioSize(pdf2par.getMcepPst(), htsData);
+		if (MaryRuntimeUtils.useFloatAudio()) {
+			HTSVocoderFloatDataProducer producer = new HTSVocoderFloatDataProducer(audioSize, pdf2par, htsData);
+			producer.start();
+			return new DDSAudioInputStream(producer, getHTSAudioFormat(htsData));
+		}
 		HTSVocoderDataProducer producer = new HTSVocoderDataProducer(audioSize, pdf2par, htsData);
 		producer.start();
 		return new DDSAudioInputStream(producer, getHTSAudioFormat(htsData));
@@ -244,8 +251,24 @@ public class HTSVocoder {
 		return af;
 	}
 
+	/**
+	 * Synthesis of speech out of the given parameter streams.
+	 *
+	 * @return the audio samples, or null if audioProducer is not null: the samples are then only sent to audioProducer
+	 */
 	public double[] htsMLSAVocoder(HTSPStream lf0Pst, HTSPStream mcepPst, HTSPStream strPst, HTSPStream magPst, boolean[] voiced,
 			HMMData htsData, HTSVocoderDataProducer audioProducer) throws Exception {
+		return htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, audioProducer, null);
+	}
+
+	/**
+	 * Synthesis of speech out of the given parameter streams. If <code>incrementalGenerator</code> is not null, the MGC, STR and
+	 * MAG parameters are generated block by block through it, just before the frames are vocoded. If <code>audioProducer</code>
+	 * is not null, the samples are only sent to it, and null is returned.
+	 */
+	private double[] htsMLSAVocoder(HTSPStream lf0Pst, HTSPStream mcepPst, HTSPStream strPst, HTSPStream magPst,
+			boolean[] voiced, HMMData htsData, SampleConsumer audioProducer, HTSParameterGeneration incrementalGenerator)
+			throws Exception {
 
 		double inc, x, MaxSample;
 		double xp = 0.0, xn = 0.0, fxp, fxn, mix; /* samples for pulse and for noise and the filtered ones */
@@ -327,12 +350,17 @@ public class HTSVocoder {
 		int s = 0; /* number of samples */
 		int s_double = 0;
 		int audio_size = computeAudioSize(mcepPst, htsData); /* audio size in samples, calculated as num frames * frame period */
-		double[] audio_double = new double[audio_size]; /* initialise buffer for audio */
+		/* initialise buffer for audio, unless it is streamed to audioProducer: */
+		double[] audio_double = audioProducer == null ? new double[audio_size] : null;
 
 		magSample = 1;
 		magPulseSize = 0;
 		for (mcepframe = 0, lf0frame = 0; mcepframe < mcepPst.getT(); mcepframe++) { /* for each mcep frame */
 
+			/* incremental synthesis: generate the parameters of the next block when we get there */
+			if (incrementalGenerator != null && mcepframe >= incrementalGenerator.getGeneratedFrames())
+				incrementalGenerator.generateNextBlock();
+
 			/** feature vector for a particular frame */
 			double mc[] = new double[m]; /* feature vector for a particular frame */
 			/* get current feature vector mgc */
@@ -507,9 +535,10 @@ public class HTSVocoder {
 				}
 
 				// System.out.format("%f ", x);
-				audio_double[s_double] = x;
 				if (audioProducer != null) {
 					audioProducer.putOneDataPoint(x);
+				} else {
+					audio_double[s_double] = x;
 				}
 
 				s_double++;
@@ -1791,7 +1820,14 @@ public class HTSVocoder {
 
 	}
 
-	protected class HTSVocoderDataProducer extends ProducingDoubleDataSource {
+	/**
+	 * Takes the samples of the vocoder one by one.
+	 */
+	private interface SampleConsumer {
+		void putOneDataPoint(double value);
+	}
+
+	protected class HTSVocoderDataProducer extends ProducingDoubleDataSource implements SampleConsumer {
 		private static final double INITIAL_MAX_AMPLITUDE = 17000.;
 
 		// Values used by the synthesis thread
@@ -1801,6 +1837,7 @@ public class HTSVocoder {
 		private HTSPStream magPst;
 		private boolean[] voiced;
 		private HMMData htsData;
+		private HTSParameterGeneration incrementalGenerator;
 
 		public HTSVocoderDataProducer(int audioSize, HTSParameterGeneration pdf2par, HMMData htsData) {
 			super(audioSize, new AmplitudeNormalizer(INITIAL_MAX_AMPLITUDE));
@@ -1810,12 +1847,14 @@ public class HTSVocoder {
 			magPst = pdf2par.getMagPst();
 			voiced = pdf2par.getVoicedArray();
 			this.htsData = htsData;
+			if (pdf2par.isIncremental())
+				incrementalGenerator = pdf2par;
 
 		}
 
 		public void run() {
 			try {
-				htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this);
+				htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this, incrementalGenerator);
 				putEndOfStream();
 			} catch (Exception e) {
 				logger.error("Cannot vocode", e);
@@ -1824,4 +1863,54 @@ public class HTSVocoder {
 
 	}
 
+	/**
+	 * Produces the samples as floats, if synthesis.floataudio is set. They are normalised as by the AmplitudeNormalizer of
+	 * {@link HTSVocoderDataProducer}, block by block in the vocoder thread.
+	 */
+	protected class HTSVocoderFloatDataProducer extends ProducingFloatDataSource implements SampleConsumer {
+		// Values used by the synthesis thread
+		private HTSPStream lf0Pst;
+		private HTSPStream mcepPst;
+		private HTSPStream strPst;
+		private HTSPStream magPst;
+		private boolean[] voiced;
+		private HMMData htsData;
+		private HTSParameterGeneration incrementalGenerator;
+		private float maxAmplitude = (float) HTSVocoderDataProducer.INITIAL_MAX_AMPLITUDE;
+
+		public HTSVocoderFloatDataProducer(int audioSize, HTSParameterGeneration pdf2par, HMMData htsData) {
+			super(audioSize);
+			lf0Pst = pdf2par.getlf0Pst();
+			mcepPst = pdf2par.getMcepPst();
+			strPst = pdf2par.getStrPst();
+			magPst = pdf2par.getMagPst();
+			voiced = pdf2par.getVoicedArray();
+			this.htsData = htsData;
+			if (pdf2par.isIncremental())
+				incrementalGenerator = pdf2par;
+		}
+
+		@Override
+		protected void processBlock(float[] data, int off, int len) {
+			for (int i = off; i < off + len; i++) {
+				float abs = Math.abs(data[i]);
+				if (abs > maxAmplitude) {
+					maxAmplitude = abs;
+				}
+			}
+			for (int i = off; i < off + len; i++) {
+				data[i] /= maxAmplitude;
+			}
+		}
+
+		public void run() {
+			try {
+				htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this, incrementalGenerator);
+				putEndOfStream();
+			} catch (Exception e) {
+				logger.error("Cannot vocode", e);
+			}
+		}
+	}
+
 } /* class HTSVocoder */
@@ -123,6 +123,7 @@ public class CARTDurationModeller extends InternalModule {
 		if (cartFilename != null) { // there is a default model for the language
 			File cartFile = new File(cartFilename);
 			cart = new DirectedGraphReader().load(cartFile.getAbsolutePath());
+			cart.compile();
 			featureComputer = FeatureRegistry.getTargetFeatureComputer(featureProcessorManager, cart.getFeatureDefinition()
 					.getFeatureNames());
 		} else {
@@ -146,6 +146,9 @@ public class CARTF0Modeller extends InternalModule {
 			// rightCart = new CART();
 			// rightCart.setRootNode(wagonReader.load(new BufferedReader(new FileReader(rightCartFile)), featureDefinition));
 			rightCart = (new MaryCARTReader()).load(rightCartFile.getAbsolutePath());
+			leftCart.compile();
+			midCart.compile();
+			rightCart.compile();
 			featureComputer = new TargetFeatureComputer(featureProcessorManager, featureDefinition.getFeatureNames());
 		}
 	}
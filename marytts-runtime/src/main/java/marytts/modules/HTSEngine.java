@@ -199,6 +199,34 @@ public class HTSEngine extends InternalModule {
 	 */
 	public MaryData process(MaryData d, List<Target> targetFeaturesList, List<Element> segmentsAndBoundaries,
 			List<Element> tokensAndBoundaries) throws Exception {
+		Voice v = d.getDefaultVoice(); /* This is the way of getting a Voice through a MaryData type */
+		assert v instanceof HMMVoice;
+		return process(d, targetFeaturesList, segmentsAndBoundaries, tokensAndBoundaries, ((HMMVoice) v).getHMMData()
+				.getIncrementalSynthesis());
+	}
+
+	/**
+	 * Same as {@link #process(MaryData, List, List, List)}, but allows to choose incremental synthesis for this call. In
+	 * incremental mode the MGC, STR and MAG parameters are generated block by block while the vocoder runs, so that the first
+	 * audio is available after the first block rather than after the whole utterance; global variance is then approximated (see
+	 * {@link marytts.htsengine.HTSPStream#mlpg(HMMData, boolean, int, int, int)}).
+	 *
+	 * @param d
+	 *            : to get the default voice and locale
+	 * @param targetFeaturesList
+	 *            : the actual input data to HTS based synthesis
+	 * @param segmentsAndBoundaries
+	 *            : to update segment timings that are influenced by HMM state selection
+	 * @param tokensAndBoundaries
+	 *            :
+	 * @param incremental
+	 *            : whether to generate and vocode the parameters block by block
+	 * @throws Exception
+	 *             Exception
+	 * @return output
+	 */
+	public MaryData process(MaryData d, List<Target> targetFeaturesList, List<Element> segmentsAndBoundaries,
+			List<Element> tokensAndBoundaries, boolean incremental) throws Exception {
 
 		Voice v = d.getDefaultVoice(); /* This is the way of getting a Voice through a MaryData type */
 		assert v instanceof HMMVoice;
@@ -215,7 +243,11 @@ public class HTSEngine extends InternalModule {
 		HTSParameterGeneration pdf2par = new HTSParameterGeneration();
 
 		/* Generate sequence of speech parameter vectors, generate parameters out of sequence of pdf's */
-		pdf2par.htsMaximumLikelihoodParameterGeneration(um, hmmv.getHMMData());
+		/* in incremental mode, only LF0 is generated here and the rest while vocoding */
+		if (incremental)
+			pdf2par.htsIncrementalParameterGeneration(um, hmmv.getHMMData());
+		else
+			pdf2par.htsMaximumLikelihoodParameterGeneration(um, hmmv.getHMMData());
 
 		/* set parameters for generation: f0Std, f0Mean and length, default values 1.0, 0.0 and 0.0 */
 		/* These values are fixed in HMMVoice */
@@ -596,6 +628,8 @@ public class HTSEngine extends InternalModule {
 		loggerHts.info("Number of models in sentence numModel=" + um.getNumModel() + "  Total number of states numState="
                        + um.getNumState());
 		loggerHts.info("Total number of frames=" + um.getTotalFrame() + "  Number of voiced frames=" + um.getLf0Frame());
+		if (loggerHts.isDebugEnabled())
+			loggerHts.debug("Model cache: " + cart.getCacheStatistics());
 
 		// System.out.println("REALISED DURATIONS:" + realisedDurations);
 
@@ -39,6 +39,7 @@ import marytts.datatypes.MaryXML;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.fst.FSTLookup;
 import marytts.modules.phonemiser.AllophoneSet;
+import marytts.modules.phonemiser.PronunciationCache;
 import marytts.modules.phonemiser.TrainedLTS;
 import marytts.server.MaryProperties;
 import marytts.util.MaryRuntimeUtils;
@@ -69,6 +70,10 @@ public class JPhonemiser extends InternalModule {
 	protected Pattern punctuationPosRegex;
 	protected Pattern unpronounceablePosRegex;
 
+	/** the pronunciations of the locale, or null if they are not cached */
+	protected PronunciationCache pronunciationCache;
+	private File pronunciationCacheFile;
+
 	public JPhonemiser(String propertyPrefix) throws IOException, MaryConfigurationException {
 		this("JPhonemiser", MaryDataType.PARTSOFSPEECH, MaryDataType.PHONEMES, propertyPrefix + "allophoneset", propertyPrefix
 				+ "userdict", propertyPrefix + "lexicon", propertyPrefix + "lettertosound", propertyPrefix
@@ -141,19 +146,54 @@ public class JPhonemiser extends InternalModule {
 						+ "' does not exist. Ignoring.");
 			}
 		}
-		InputStream lexiconStream = MaryProperties.needStream(lexiconProperty);
-		lexicon = new FSTLookup(lexiconStream, lexiconProperty);
+		String lexiconFilename = MaryProperties.getFilename(lexiconProperty);
+		if (lexiconFilename != null && !lexiconFilename.startsWith("jar:") && new File(lexiconFilename).isFile()) {
+			// read from the file, so that a compiled lexicon is memory-mapped:
+			lexicon = new FSTLookup(lexiconFilename);
+		} else {
+			InputStream lexiconStream = MaryProperties.needStream(lexiconProperty);
+			lexicon = new FSTLookup(lexiconStream, lexiconProperty);
+		}
 		InputStream ltsStream = MaryProperties.needStream(ltsProperty);
 		if (removetrailingonefromphonesProperty != null) {
 			this.removeTrailingOneFromPhones = MaryProperties.getBoolean(removetrailingonefromphonesProperty, true);
 		}
 		lts = new TrainedLTS(allophoneSet, ltsStream, this.removeTrailingOneFromPhones);
+		int cacheSize = MaryProperties.getInteger(getLocale() + ".pronunciationCacheSize",
+				MaryProperties.getInteger("phonemiser.pronunciationCacheSize", 50000));
+		if (cacheSize > 0) {
+			pronunciationCache = PronunciationCache.getCache(getLocale(), cacheSize);
+			String cacheFilename = MaryProperties.getFilename(getLocale() + ".pronunciationCacheFile");
+			if (cacheFilename != null) {
+				pronunciationCacheFile = new File(cacheFilename);
+			}
+		}
 	}
 
 	public void startup() throws Exception {
 		super.startup();
 		setPunctuationPosRegex();
 		setUnpronounceablePosRegex();
+		if (pronunciationCacheFile != null && pronunciationCacheFile.exists()) {
+			try {
+				int n = pronunciationCache.load(pronunciationCacheFile);
+				logger.info("Preloaded " + n + " pronunciations from " + pronunciationCacheFile);
+			} catch (IOException e) {
+				logger.warn("Cannot preload pronunciations from " + pronunciationCacheFile, e);
+			}
+		}
+	}
+
+	public void shutdown() {
+		if (pronunciationCacheFile != null) {
+			try {
+				int n = pronunciationCache.save(pronunciationCacheFile);
+				logger.info("Saved " + n + " pronunciations to " + pronunciationCacheFile);
+			} catch (IOException e) {
+				logger.warn("Cannot save pronunciations to " + pronunciationCacheFile, e);
+			}
+		}
+		super.shutdown();
 	}
 
 	public MaryData process(MaryData d) throws Exception {
@@ -232,6 +272,34 @@ public class JPhonemiser extends InternalModule {
 	 * @return a phonemisation of the text if one can be generated, or null if no phonemisation method was successful.
 	 */
 	public String phonemise(String text, String pos, StringBuilder g2pMethod) {
+		if (pronunciationCache == null) {
+			return phonemiseUncached(text, pos, g2pMethod);
+		}
+		PronunciationCache.Pronunciation p = pronunciationCache.get(text, pos);
+		if (p == null) {
+			StringBuilder method = new StringBuilder();
+			String result = phonemiseUncached(text, pos, method);
+			p = pronunciationCache.put(text, pos, result, method.toString());
+		}
+		if (p.getTranscription() != null) {
+			g2pMethod.append(p.getG2pMethod());
+		}
+		return p.getTranscription();
+	}
+
+	/**
+	 * Phonemise the word text without consulting the pronunciation cache.
+	 *
+	 * @param text
+	 *            the textual (graphemic) form of a word.
+	 * @param pos
+	 *            the part-of-speech of the word
+	 * @param g2pMethod
+	 *            filled with the method of phonemisation, if one is found
+	 * @return a phonemisation of the text if one can be generated, or null if no phonemisation method was successful.
+	 * @see #phonemise(String, String, StringBuilder)
+	 */
+	protected String phonemiseUncached(String text, String pos, StringBuilder g2pMethod) {
 		// First, try a simple userdict and lexicon lookup:
 
 		String result = userdictLookup(text, pos);
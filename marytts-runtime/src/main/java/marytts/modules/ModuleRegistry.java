@@ -27,6 +27,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import marytts.datatypes.MaryDataType;
 import marytts.exceptions.MaryConfigurationException;
@@ -53,6 +58,8 @@ public class ModuleRegistry {
 	private static Logger logger;
 
 	private static List<MaryModule> preferredModules;
+	/** the latest start of each module, see {@link #startModule(MaryModule)} */
+	private static final ConcurrentMap<MaryModule, ModuleStart> starts = new ConcurrentHashMap<MaryModule, ModuleStart>();
 
 	private ModuleRegistry() {
 	}
@@ -246,6 +253,77 @@ public class ModuleRegistry {
 		return null;
 	}
 
+	/**
+	 * Start the given module unless it is already running. Modules are started concurrently, and some modules start the modules
+	 * they depend on; this makes sure that each module is started only once, and that a module being started by another thread
+	 * is running when this method returns. No lock is held while the module starts up; other threads wait for its start to
+	 * complete. If the start fails, all threads waiting for it get the exception, and the next call tries again.
+	 *
+	 * @param module
+	 *            the module to start
+	 * @throws Exception
+	 *             if the module cannot be started
+	 */
+	public static void startModule(MaryModule module) throws Exception {
+		ModuleStart start;
+		while (true) {
+			start = starts.get(module);
+			if (start != null && !(start.isDone() && module.getState() == MaryModule.MODULE_OFFLINE)) {
+				break; // started, or being started
+			}
+			// never started, failed to start, or shut down since:
+			ModuleStart newStart = new ModuleStart(module);
+			if (start == null ? starts.putIfAbsent(module, newStart) == null : starts.replace(module, start, newStart)) {
+				start = newStart;
+				start.run();
+				break;
+			}
+		}
+		if (start.runner == Thread.currentThread()) {
+			return; // the module's own startup starts it again
+		}
+		try {
+			start.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * The start of a module, which remembers the thread starting it.
+	 */
+	private static class ModuleStart extends FutureTask<Void> {
+		volatile Thread runner;
+
+		ModuleStart(final MaryModule module) {
+			super(new Callable<Void>() {
+				public Void call() throws Exception {
+					if (module.getState() == MaryModule.MODULE_OFFLINE) {
+						module.startup();
+					}
+					return null;
+				}
+			});
+		}
+
+		@Override
+		public void run() {
+			runner = Thread.currentThread();
+			try {
+				super.run();
+			} finally {
+				runner = null;
+			}
+		}
+	}
+
 	/**
 	 * A method for determining the list of modules required to transform the given source data type into the requested target
 	 * data type.
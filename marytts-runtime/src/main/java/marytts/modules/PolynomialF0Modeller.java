@@ -107,6 +107,7 @@ public class PolynomialF0Modeller extends InternalModule {
 
 		contourFeatures = new FeatureFileReader(MaryProperties.needFilename(propertyPrefix + "contours"));
 		contourGraph = new DirectedGraphReader().load(MaryProperties.needFilename(propertyPrefix + "graph"));
+		contourGraph.compile();
 		featureComputer = new TargetFeatureComputer(featureProcessorManager, contourGraph.getFeatureDefinition()
 				.getFeatureNames());
 	}
@@ -28,6 +28,7 @@ import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
 import marytts.features.FeatureRegistry;
 import marytts.features.FeatureVector;
+import marytts.features.SentenceStructure;
 import marytts.features.TargetFeatureComputer;
 import marytts.modules.synthesis.Voice;
 import marytts.unitselection.select.Target;
@@ -98,10 +99,15 @@ public class TargetFeatureLister extends InternalModule {
 		String header = featureComputer.getAllFeatureProcessorNamesAndValues();
 		StringBuilder text = new StringBuilder();
 		StringBuilder bin = new StringBuilder();
-		for (Target target : targets) {
-			FeatureVector features = featureComputer.computeFeatureVector(target);
-			text.append(featureComputer.toStringValues(features)).append("\n");
-			bin.append(features.toString()).append("\n");
+		SentenceStructure.attach(targets);
+		try {
+			for (Target target : targets) {
+				FeatureVector features = featureComputer.computeFeatureVector(target);
+				text.append(featureComputer.toStringValues(features)).append("\n");
+				bin.append(features.toString()).append("\n");
+			}
+		} finally {
+			SentenceStructure.detach(targets);
 		}
 
 		// Leave an empty line between sections:
@@ -121,11 +127,16 @@ public class TargetFeatureLister extends InternalModule {
 	public List<Target> getListTargetFeatures(TargetFeatureComputer featureComputer, List<Element> segmentsAndBoundaries) {
 		String pauseSymbol = featureComputer.getPauseSymbol();
 		List<Target> targets = overridableCreateTargetsWithPauses(segmentsAndBoundaries, pauseSymbol);
-		for (Target target : targets) {
-			if (!target.hasFeatureVector()) {
-				FeatureVector features = featureComputer.computeFeatureVector(target);
-				target.setFeatureVector(features);
+		SentenceStructure.attach(targets);
+		try {
+			for (Target target : targets) {
+				if (!target.hasFeatureVector()) {
+					FeatureVector features = featureComputer.computeFeatureVector(target);
+					target.setFeatureVector(features);
+				}
 			}
+		} finally {
+			SentenceStructure.detach(targets);
 		}
 		return targets;
 	}
@@ -53,6 +53,7 @@ public class CARTModel extends Model {
 	@Override
 	protected void loadData() throws IOException, MaryConfigurationException {
 		cart = new DirectedGraphReader().load(dataStream);
+		cart.compile();
 		try {
 			predictionFeatureNames = cart.getFeatureDefinition().getFeatureNames();
 		} catch (NullPointerException e) {
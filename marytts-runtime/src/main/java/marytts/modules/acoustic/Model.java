@@ -30,6 +30,7 @@ import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.features.FeatureVector;
+import marytts.features.SentenceStructure;
 import marytts.features.TargetFeatureComputer;
 import marytts.unitselection.select.Target;
 import marytts.unitselection.select.UnitSelector;
@@ -253,12 +254,18 @@ public abstract class Model {
 		for (Element element : elements) {
 			assert element.getTagName() == MaryXML.PHONE;
 			String phone = UnitSelector.getPhoneSymbol(element);
-			Target target = new Target(phone, element);
-			targets.add(target);
-			// compute FeatureVectors for Targets:
-			FeatureVector targetFeatureVector = featureComputer.computeFeatureVector(target);
-			target.setFeatureVector(targetFeatureVector); // this is critical!
-			element.setUserData("target", target, Target.targetFeatureCloner);
+			targets.add(new Target(phone, element));
+		}
+		SentenceStructure.attach(targets);
+		try {
+			for (Target target : targets) {
+				// compute FeatureVectors for Targets:
+				FeatureVector targetFeatureVector = featureComputer.computeFeatureVector(target);
+				target.setFeatureVector(targetFeatureVector); // this is critical!
+				target.getMaryxmlElement().setUserData("target", target, Target.targetFeatureCloner);
+			}
+		} finally {
+			SentenceStructure.detach(targets);
 		}
 		return targets;
 	}
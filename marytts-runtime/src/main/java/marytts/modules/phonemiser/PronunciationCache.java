@@ -0,0 +1,347 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.phonemiser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the pronunciations found by a phonemiser, shared by all requests for one locale. Words recur constantly in
+ * real text, so most tokens can skip the userdict and lexicon lookups and the letter-to-sound rules.
+ * <p>
+ * The cache maps a word and its part-of-speech to its transcription and the method that found it; words that could not be
+ * phonemised are remembered as well. It is split into segments by the hash of the word, each of which is a least recently used
+ * map with its own lock, so that concurrent requests rarely wait for each other.
+ * <p>
+ * The cache can be saved to a text file, one entry per line (word, part-of-speech, method, transcription, separated by tabs),
+ * and loaded again when the server starts.
+ */
+public class PronunciationCache {
+	private static final int NUM_SEGMENTS = 16;
+
+	private static Map<Locale, PronunciationCache> caches = new TreeMap<Locale, PronunciationCache>(
+			new Comparator<Locale>() {
+				public int compare(Locale l1, Locale l2) {
+					return l1.toString().compareTo(l2.toString());
+				}
+			});
+
+	/**
+	 * Get the cache for the given locale, creating it if it does not exist yet.
+	 *
+	 * @param locale
+	 *            the locale of the phonemiser
+	 * @param capacity
+	 *            the maximum number of pronunciations to remember, if the cache is created
+	 * @return the cache shared by all phonemisers for locale
+	 */
+	public static synchronized PronunciationCache getCache(Locale locale, int capacity) {
+		PronunciationCache cache = caches.get(locale);
+		if (cache == null) {
+			cache = new PronunciationCache(capacity);
+			caches.put(locale, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Describe the size and hit rate of the cache of each locale, one property per line.
+	 *
+	 * @return the statistics of all caches, or an empty string if there are none
+	 */
+	public static synchronized String getStatistics() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<Locale, PronunciationCache> e : caches.entrySet()) {
+			PronunciationCache cache = e.getValue();
+			String locale = e.getKey().toString();
+			sb.append(locale).append(".size ").append(cache.size()).append('\n');
+			sb.append(locale).append(".capacity ").append(cache.getCapacity()).append('\n');
+			sb.append(locale).append(".hits ").append(cache.getHits()).append('\n');
+			sb.append(locale).append(".misses ").append(cache.getMisses()).append('\n');
+			sb.append(locale).append(".hitrate ").append(String.format(Locale.US, "%.4f", cache.getHitRate())).append('\n');
+		}
+		return sb.toString();
+	}
+
+	// //////////////////////////// non-static code /////////////////////////////
+
+	private final int capacity;
+	private final Segment[] segments;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Create an empty cache. User code should normally call {@link #getCache(Locale, int)} instead, so that the cache is shared.
+	 *
+	 * @param capacity
+	 *            the maximum number of pronunciations to remember
+	 */
+	public PronunciationCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive, but is " + capacity);
+		}
+		this.capacity = capacity;
+		// fewer segments for a small capacity, so that each can hold at least one word:
+		int numSegments = Math.min(NUM_SEGMENTS, capacity);
+		segments = new Segment[numSegments];
+		for (int i = 0; i < numSegments; i++) {
+			// spread the capacity over the segments, rounding up:
+			segments[i] = new Segment((capacity + numSegments - 1 - i) / numSegments);
+		}
+	}
+
+	private static String key(String text, String pos) {
+		return pos == null ? text : text + '\t' + pos;
+	}
+
+	private Segment segment(String text) {
+		int h = text.hashCode();
+		h ^= h >>> 16;
+		return segments[(h & 0x7fffffff) % segments.length];
+	}
+
+	/**
+	 * Look up the pronunciation of a word.
+	 *
+	 * @param text
+	 *            the word
+	 * @param pos
+	 *            its part-of-speech, or null
+	 * @return the pronunciation remembered for the word, or null if it is not in the cache
+	 */
+	public Pronunciation get(String text, String pos) {
+		Segment segment = segment(text);
+		Pronunciation p;
+		synchronized (segment) {
+			p = segment.get(key(text, pos));
+		}
+		if (p != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return p;
+	}
+
+	/**
+	 * Remember the pronunciation of a word, possibly replacing the least recently used one.
+	 *
+	 * @param text
+	 *            the word
+	 * @param pos
+	 *            its part-of-speech, or null
+	 * @param transcription
+	 *            the transcription of the word, or null if it could not be phonemised
+	 * @param g2pMethod
+	 *            the method which found the transcription
+	 * @return the new entry
+	 */
+	public Pronunciation put(String text, String pos, String transcription, String g2pMethod) {
+		Pronunciation p = new Pronunciation(transcription, g2pMethod);
+		Segment segment = segment(text);
+		synchronized (segment) {
+			segment.put(key(text, pos), p);
+		}
+		return p;
+	}
+
+	/**
+	 * The number of pronunciations currently in the cache.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * The maximum number of pronunciations in the cache.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * The number of words whose pronunciation was found in the cache, so that the phonemiser skipped its lexicon and rules.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * The number of words which the phonemiser had to transcribe because they were not in the cache.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * The share of words looked up so far whose pronunciation was remembered.
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if no word was looked up yet
+	 */
+	public double getHitRate() {
+		long found = getHits();
+		long total = found + getMisses();
+		return total == 0 ? 0 : found / (double) total;
+	}
+
+	/**
+	 * Add the entries saved in the given file to the cache. Lines which are not in the format written by {@link #save(File)} are
+	 * ignored.
+	 *
+	 * @param file
+	 *            the file to read
+	 * @return the number of entries read
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public int load(File file) throws IOException {
+		int count = 0;
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] parts = line.split("\t", -1);
+				if (parts.length != 4 || parts[0].length() == 0) {
+					continue;
+				}
+				String pos = parts[1].length() == 0 ? null : parts[1];
+				String transcription = parts[3].length() == 0 ? null : parts[3];
+				put(parts[0], pos, transcription, parts[2]);
+				count++;
+			}
+		} finally {
+			in.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Write the entries of the cache to the given file, the least recently used ones first, so that loading the file again
+	 * preserves their order.
+	 *
+	 * @param file
+	 *            the file to write
+	 * @return the number of entries written
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public int save(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				for (Map.Entry<String, Pronunciation> e : segment.entrySet()) {
+					Pronunciation p = e.getValue();
+					String key = e.getKey();
+					if (key.indexOf('\t') < 0) {
+						key += '\t';
+					}
+					lines.add(key + '\t' + p.getG2pMethod() + '\t' + (p.getTranscription() == null ? "" : p.getTranscription()));
+				}
+			}
+		}
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			for (String line : lines) {
+				out.print(line);
+				out.print('\n');
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Cannot write pronunciation cache to " + file);
+		}
+		return lines.size();
+	}
+
+	/**
+	 * A transcription and the method which found it.
+	 */
+	public static final class Pronunciation {
+		private final String transcription;
+		private final String g2pMethod;
+
+		Pronunciation(String transcription, String g2pMethod) {
+			this.transcription = transcription;
+			this.g2pMethod = g2pMethod;
+		}
+
+		/**
+		 * The transcription.
+		 *
+		 * @return the transcription, or null if the word could not be phonemised
+		 */
+		public String getTranscription() {
+			return transcription;
+		}
+
+		/**
+		 * The method which found the transcription ("userdict", "lexicon", "rules").
+		 *
+		 * @return the g2p method
+		 */
+		public String getG2pMethod() {
+			return g2pMethod;
+		}
+	}
+
+	private static final class Segment extends LinkedHashMap<String, Pronunciation> {
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pronunciation> eldest) {
+			return size() > capacity;
+		}
+	}
+}
@@ -24,12 +24,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Properties;
-
-import org.hsqldb.error.Error;
+import java.util.TreeSet;
 
 import marytts.cart.CART;
+import marytts.cart.FlatCART;
+import marytts.cart.LeafNode;
 import marytts.cart.LeafNode.StringAndFloatLeafNode;
+import marytts.cart.Node;
 import marytts.cart.io.MaryCARTReader;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -38,6 +43,11 @@ import marytts.features.FeatureVector;
 /**
  * 
  * This predicts pronunciation from a model trained with LTSTrainer.
+ * <p>
+ * The features of the tree are the graphemes at the positions around the current one. When the tree is loaded, the byte value
+ * of every grapheme at every position is put in a table, the tree is compiled into a {@link FlatCART}, and the phones predicted
+ * by every leaf are looked up once, so that predicting a pronunciation takes no feature value lookups and only allocates the
+ * feature window and the result.
  * 
  * @author benjaminroth
  * 
@@ -53,6 +63,16 @@ public class TrainedLTS {
 	private boolean convertToLowercase;
 	protected boolean removeTrailingOneFromPhones = true;
 
+	private FlatCART flatTree;
+	/** the graphemes which are feature values, sorted */
+	private char[] alphabet;
+	/** the alphabet index of the ASCII characters, or alphabet.length if they are not in the alphabet */
+	private int[] asciiIndex;
+	/** for each context position, the feature value of each alphabet index, and of "null" at alphabet.length */
+	private byte[][] codes;
+	/** the phones predicted by each leaf, without the enclosing characters */
+	private Map<Node, String> predictions;
+
 	/**
 	 * 
 	 * Initializes letter to sound system with a phoneSet, and load the decision tree from the given file.
@@ -102,6 +122,7 @@ public class TrainedLTS {
 			throw new IllegalArgumentException("Prediction tree does not contain properties");
 		convertToLowercase = Boolean.parseBoolean(props.getProperty("lowercase"));
 		context = Integer.parseInt(props.getProperty("context"));
+		prepare();
 	}
 
 	/**
@@ -126,43 +147,103 @@ public class TrainedLTS {
 			throw new IllegalArgumentException("Prediction tree does not contain properties");
 		convertToLowercase = Boolean.parseBoolean(props.getProperty("lowercase"));
 		context = Integer.parseInt(props.getProperty("context"));
+		prepare();
+	}
+
+	/**
+	 * Build the grapheme code tables, the flat tree and the leaf predictions.
+	 */
+	private void prepare() {
+		int numPositions = 2 * context + 1;
+		TreeSet<Character> graphemes = new TreeSet<Character>();
+		for (int fnr = 0; fnr < numPositions; fnr++) {
+			for (String value : featureDefinition.getPossibleValues(fnr)) {
+				if (value.length() == 1) {
+					graphemes.add(value.charAt(0));
+				}
+			}
+		}
+		alphabet = new char[graphemes.size()];
+		int i = 0;
+		for (char c : graphemes) {
+			alphabet[i++] = c;
+		}
+		asciiIndex = new int[128];
+		for (char c = 0; c < asciiIndex.length; c++) {
+			int index = Arrays.binarySearch(alphabet, c);
+			asciiIndex[c] = index < 0 ? alphabet.length : index;
+		}
+		codes = new byte[numPositions][alphabet.length + 1];
+		for (int fnr = 0; fnr < numPositions; fnr++) {
+			byte nullCode = featureDefinition.getFeatureValueAsByte(fnr, "null");
+			String[] values = featureDefinition.getPossibleValues(fnr);
+			Arrays.fill(codes[fnr], nullCode);
+			for (int v = 0; v < values.length; v++) {
+				if (values[v].length() == 1) {
+					codes[fnr][Arrays.binarySearch(alphabet, values[v].charAt(0))] = (byte) v;
+				}
+			}
+		}
+
+		flatTree = new FlatCART(tree.getRootNode());
+		predictions = new IdentityHashMap<Node, String>();
+		for (LeafNode leaf : tree.getLeafNodes()) {
+			if (leaf instanceof StringAndFloatLeafNode) {
+				String prediction = ((StringAndFloatLeafNode) leaf).mostProbableString(featureDefinition, indexPredictedFeature);
+				predictions.put(leaf, prediction.substring(1, prediction.length() - 1));
+			}
+		}
+	}
+
+	/**
+	 * The alphabet index of the grapheme at position pos of graphemes.
+	 * 
+	 * @return the index in the alphabet, or alphabet.length if the position is outside the graphemes or the grapheme is not in
+	 *         the alphabet
+	 */
+	private int alphabetIndex(String graphemes, int pos) {
+		if (pos < 0 || pos >= graphemes.length()) {
+			return alphabet.length;
+		}
+		char c = graphemes.charAt(pos);
+		if (c < asciiIndex.length) {
+			return asciiIndex[c];
+		}
+		int index = Arrays.binarySearch(alphabet, c);
+		return index < 0 ? alphabet.length : index;
 	}
 
 	public String predictPronunciation(String graphemes) {
 		if (convertToLowercase)
 			graphemes = graphemes.toLowerCase(allophoneSet.getLocale());
 
-		String returnStr = "";
+		int numPositions = 2 * context + 1;
+		int[] window = new int[numPositions];
+		for (int fnr = 0; fnr < numPositions; fnr++) {
+			window[fnr] = alphabetIndex(graphemes, fnr - context);
+		}
+		byte[] byteFeatures = new byte[numPositions];
+		FeatureVector fv = new FeatureVector(byteFeatures, new short[0], new float[0], 0);
+		StringBuilder result = new StringBuilder();
 
 		for (int i = 0; i < graphemes.length(); i++) {
-
-			byte[] byteFeatures = new byte[2 * this.context + 1];
-
-			for (int fnr = 0; fnr < 2 * this.context + 1; fnr++) {
-				int pos = i - context + fnr;
-
-				String grAtPos = (pos < 0 || pos >= graphemes.length()) ? "null" : graphemes.substring(pos, pos + 1);
-
-				try {
-					byteFeatures[fnr] = this.tree.getFeatureDefinition().getFeatureValueAsByte(fnr, grAtPos);
-					// ... can also try to call explicit:
-					// features[fnr] = this.fd.getFeatureValueAsByte("att"+fnr, cg.substr(pos)
-				} catch (IllegalArgumentException iae) {
-					// Silently ignore unknown characters
-					byteFeatures[fnr] = this.tree.getFeatureDefinition().getFeatureValueAsByte(fnr, "null");
-				}
+			if (i > 0) { // slide the window by one grapheme
+				System.arraycopy(window, 1, window, 0, numPositions - 1);
+				window[numPositions - 1] = alphabetIndex(graphemes, i + context);
 			}
-
-			FeatureVector fv = new FeatureVector(byteFeatures, new short[] {}, new float[] {}, 0);
-
-			StringAndFloatLeafNode leaf = (StringAndFloatLeafNode) tree.interpretToNode(fv, 0);
-			String prediction = leaf.mostProbableString(featureDefinition, indexPredictedFeature);
-			returnStr += prediction.substring(1, prediction.length() - 1);
-
+			for (int fnr = 0; fnr < numPositions; fnr++) {
+				byteFeatures[fnr] = codes[fnr][window[fnr]];
+			}
+			Node leaf = flatTree.interpretToNode(fv, 0);
+			String prediction = predictions.get(leaf);
+			if (prediction == null) { // not a leaf we know
+				prediction = ((StringAndFloatLeafNode) leaf).mostProbableString(featureDefinition, indexPredictedFeature);
+				prediction = prediction.substring(1, prediction.length() - 1);
+			}
+			result.append(prediction);
 		}
 
-		return returnStr;
-
+		return result.toString();
 	}
 
 	/**
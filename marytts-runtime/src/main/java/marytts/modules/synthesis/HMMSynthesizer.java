@@ -68,7 +68,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -81,11 +84,11 @@ import marytts.features.FeatureRegistry;
 import marytts.features.TargetFeatureComputer;
 import marytts.htsengine.HMMVoice;
 import marytts.modules.HTSEngine;
-import marytts.modules.MaryModule;
 import marytts.modules.ModuleRegistry;
 import marytts.modules.TargetFeatureLister;
 import marytts.modules.synthesis.Voice.Gender;
 import marytts.server.MaryProperties;
+import marytts.server.ParallelStartup;
 import marytts.unitselection.select.Target;
 import marytts.util.MaryUtils;
 import marytts.util.dom.MaryDomUtils;
@@ -108,7 +111,8 @@ public class HMMSynthesizer implements WaveformSynthesizer {
 	private HTSEngine htsEngine;
 	private Logger logger;
 
-	// private TargetFeatureComputer comp;
+	/** the target feature computer of each voice, resolved when the voice is registered */
+	private Map<Voice, TargetFeatureComputer> featureComputers = new ConcurrentHashMap<Voice, TargetFeatureComputer>();
 
 	public HMMSynthesizer() {
 	}
@@ -127,8 +131,8 @@ public class HMMSynthesizer implements WaveformSynthesizer {
 			logger.info("Starting my own TargetFeatureLister");
 			targetFeatureLister = new TargetFeatureLister();
 			targetFeatureLister.startup();
-		} else if (targetFeatureLister.getState() == MaryModule.MODULE_OFFLINE) {
-			targetFeatureLister.startup();
+		} else {
+			ModuleRegistry.startModule(targetFeatureLister);
 		}
 
 		try {
@@ -140,27 +144,53 @@ public class HMMSynthesizer implements WaveformSynthesizer {
 			logger.info("Starting my own HTSEngine");
 			htsEngine = new HTSEngine();
 			htsEngine.startup();
-		} else if (htsEngine.getState() == MaryModule.MODULE_OFFLINE) {
-			htsEngine.startup();
+		} else {
+			ModuleRegistry.startModule(htsEngine);
 		}
 
-		// Register HMM voices:
+		// Load HMM voices in parallel, then register them in the configured order:
 		List<String> voiceNames = MaryProperties.getList("hmm.voices.list");
-		for (String voiceName : voiceNames) {
+		ParallelStartup<HMMVoice> voiceLoading = new ParallelStartup<HMMVoice>();
+		for (final String voiceName : voiceNames) {
 			logger.debug("Voice '" + voiceName + "'");
 
 			/**
 			 * When creating a HMMVoice object it should create and initialise a TreeSet ts, a ModelSet ms and load the context
 			 * feature list used in this voice.
 			 */
-
-			HMMVoice v = new HMMVoice(voiceName, this);
+			voiceLoading.add(voiceName, new Callable<HMMVoice>() {
+				public HMMVoice call() throws Exception {
+					return new HMMVoice(voiceName, HMMSynthesizer.this);
+				}
+			});
+		}
+		for (HMMVoice v : voiceLoading.run()) {
 			Voice.registerVoice(v);
+			getTargetFeatureComputer(v);
 		}
+		voiceLoading.logTimes(logger, "Loading HMM voices");
 		logger.info("started.");
 
 	}
 
+	/**
+	 * Get the target feature computer for the features of the given voice's HMMs. It is looked up in the feature registry only
+	 * once per voice.
+	 * 
+	 * @param voice
+	 *            an HMM voice of this synthesizer
+	 * @return the target feature computer
+	 */
+	private TargetFeatureComputer getTargetFeatureComputer(Voice voice) {
+		TargetFeatureComputer comp = featureComputers.get(voice);
+		if (comp == null) {
+			String features = ((HMMVoice) voice).getHMMData().getFeatureDefinition().getFeatureNames();
+			comp = FeatureRegistry.getTargetFeatureComputer(voice, features);
+			featureComputers.put(voice, comp);
+		}
+		return comp;
+	}
+
 	/**
 	 * Perform a power-on self test by processing some example input data.
 	 * 
@@ -185,11 +215,9 @@ public class HMMSynthesizer implements WaveformSynthesizer {
 				in.setDefaultVoice(v);
 				assert v instanceof HMMVoice : "Expected voice to be a HMMVoice, but it is a " + v.getClass().toString();
 
-				// -- Here it is set the targetFeatureComputer for this voice
-				String features = ((HMMVoice) v).getHMMData().getFeatureDefinition().getFeatureNames();
-				TargetFeatureComputer comp = FeatureRegistry.getTargetFeatureComputer(v, features);
+				TargetFeatureComputer comp = getTargetFeatureComputer(v);
 
-				in.setOutputParams(features);
+				in.setOutputParams(((HMMVoice) v).getHMMData().getFeatureDefinition().getFeatureNames());
 				Document doc = in.getDocument();
 				// First, get the list of segments and boundaries in the current document
 				TreeWalker tw = MaryDomUtils.createTreeWalker(doc, doc, MaryXML.PHONE, MaryXML.BOUNDARY);
@@ -252,11 +280,7 @@ public class HMMSynthesizer implements WaveformSynthesizer {
 		try {
 			assert voice instanceof HMMVoice : "Expected voice to be a HMMVoice, but it is a " + voice.getClass().toString();
 
-			// -- This can be done just once when powerOnSelfTest() of this voice
-			// -- mmmmmm it did not work, it takes the comp from the default voice
-			// -- CHECK: do we need to do this for every call???
-			String features = ((HMMVoice) voice).getHMMData().getFeatureDefinition().getFeatureNames();
-			TargetFeatureComputer comp = FeatureRegistry.getTargetFeatureComputer(voice, features);
+			TargetFeatureComputer comp = getTargetFeatureComputer(voice);
 
 			// it is not faster to pass directly a list of targets?
 			// --String targetFeatureString = targetFeatureLister.listTargetFeatures(comp, segmentsAndBoundaries);
@@ -267,9 +291,13 @@ public class HMMSynthesizer implements WaveformSynthesizer {
 
 			List<Target> targetFeaturesList = targetFeatureLister.getListTargetFeatures(comp, segmentsAndBoundaries);
 
+			// incremental synthesis can be configured per voice or requested per call
+			boolean incremental = ((HMMVoice) voice).getHMMData().getIncrementalSynthesis()
+					|| (outputParams != null && outputParams.contains("INCREMENTAL"));
+
 			// the actual durations are already fixed in the htsEngine.process()
 			// here i pass segements and boundaries to update the realised acoustparams, dur and f0
-			MaryData audio = htsEngine.process(d, targetFeaturesList, segmentsAndBoundaries, tokensAndBoundaries);
+			MaryData audio = htsEngine.process(d, targetFeaturesList, segmentsAndBoundaries, tokensAndBoundaries, incremental);
 
 			return audio.getAudio();
 
@@ -33,8 +33,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -113,7 +114,7 @@ public class Voice {
 	 * List all registered voices. This set will always return the voices in the order of their wantToBeDefault value, highest
 	 * first.
 	 */
-	private static Set<Voice> allVoices = new TreeSet<Voice>(new Comparator<Voice>() {
+	private static Set<Voice> allVoices = new ConcurrentSkipListSet<Voice>(new Comparator<Voice>() {
 		public int compare(Voice v1, Voice v2) {
 			// Return negative number if v1 should be listed before v2
 			int desireDelta = v2.wantToBeDefault - v1.wantToBeDefault;
@@ -124,7 +125,7 @@ public class Voice {
 		}
 	});
 
-	private static Map<Locale, Voice> defaultVoices = new HashMap<Locale, Voice>();
+	private static Map<Locale, Voice> defaultVoices = new ConcurrentHashMap<Locale, Voice>();
 
 	protected static Logger logger = MaryUtils.getLogger("Voice");
 
@@ -232,6 +233,7 @@ public class Voice {
 			logger.debug("...loading duration graph...");
 			try {
 				durationGraph = (new DirectedGraphReader()).load(durationGraphFile);
+				durationGraph.compile();
 			} catch (IOException e) {
 				throw new MaryConfigurationException("Cannot load duration graph file '" + durationGraphFile + "'", e);
 			}
@@ -243,6 +245,7 @@ public class Voice {
 			logger.debug("...loading f0 contour graph...");
 			try {
 				f0Graph = (new DirectedGraphReader()).load(f0GraphFile);
+				f0Graph.compile();
 				// If we have the graph, we need the contour:
 				String f0ContourFile = MaryProperties.needFilename(header + ".f0.contours");
 				f0ContourFeatures = new FeatureFileReader(f0ContourFile);
@@ -619,7 +622,7 @@ public class Voice {
 	 * @param voice
 	 *            voicwe
 	 */
-	public static void registerVoice(Voice voice) {
+	public static synchronized void registerVoice(Voice voice) {
 		if (voice == null)
 			throw new NullPointerException("Cannot register null voice.");
 		if (!allVoices.contains(voice)) {
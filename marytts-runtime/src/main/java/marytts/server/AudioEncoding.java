@@ -0,0 +1,271 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import marytts.exceptions.MaryConfigurationException;
+import marytts.modules.synthesis.Voice;
+import marytts.util.MaryRuntimeUtils;
+import marytts.util.MaryUtils;
+import marytts.util.data.audio.AudioEncoder;
+import marytts.util.data.audio.MaryAudioUtils;
+import marytts.util.data.audio.StreamingAudioInputStream;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes audio in the audio file type requested by the client. Types for which an {@link AudioEncoder} is listed in the property
+ * <code>audioencoders.classes.list</code> are synthesised as PCM and encoded block by block while the audio is being read, so
+ * that streamed audio leaves the server as soon as it is synthesised, and the encoder never waits for the end of the audio.
+ * Other types are written by the Java Sound service providers, as before.
+ * <p>
+ * Each block is encoded in the calling thread, right after it is read, but at most <code>server.encoder.maxconcurrent</code>
+ * blocks (default: the number of processors) are encoded at the same time by all requests. This bounds the processor time spent
+ * on encoding however many clients are served, without handing the blocks to other threads. Each request logs the time spent
+ * encoding its audio.
+ */
+public class AudioEncoding {
+	private static final int BLOCK_SIZE = 8192;
+
+	private static final LongAdder encodedStreams = new LongAdder();
+	private static final LongAdder encodeNanos = new LongAdder();
+	private static final LongAdder pcmBytes = new LongAdder();
+	private static final LongAdder encodedBytes = new LongAdder();
+
+	/**
+	 * The configuration read from the mary properties on first use; the holder class is initialised once, so it is read without
+	 * locking afterwards.
+	 */
+	private static final class Config {
+		/** the init info of the configured encoders, by audio file type name */
+		static final Map<String, String> INIT_INFOS;
+		/** the audio file types of the configured encoders, by name */
+		static final Map<String, AudioFileFormat.Type> TYPES;
+		/** the permits for encoding a block, one for each of server.encoder.maxconcurrent */
+		static final Semaphore PERMITS;
+
+		static {
+			Map<String, String> initInfos = new LinkedHashMap<String, String>();
+			Map<String, AudioFileFormat.Type> types = new LinkedHashMap<String, AudioFileFormat.Type>();
+			for (String initInfo : MaryProperties.getList("audioencoders.classes.list")) {
+				try {
+					AudioEncoder encoder = (AudioEncoder) MaryRuntimeUtils.instantiateObject(initInfo);
+					String name = encoder.getType().toString();
+					initInfos.put(name, initInfo);
+					types.put(name, encoder.getType());
+				} catch (Exception e) {
+					MaryUtils.getLogger("AudioEncoding").warn("Cannot use audio encoder " + initInfo, e);
+				}
+			}
+			INIT_INFOS = Collections.unmodifiableMap(initInfos);
+			TYPES = Collections.unmodifiableMap(types);
+			PERMITS = new Semaphore(Math.max(1,
+					MaryProperties.getInteger("server.encoder.maxconcurrent", Runtime.getRuntime().availableProcessors())));
+		}
+	}
+
+	/**
+	 * The names of the audio file types produced by the configured encoders.
+	 *
+	 * @return the type names
+	 */
+	public static Set<String> getTypeNames() {
+		return Config.TYPES.keySet();
+	}
+
+	/**
+	 * Whether audio of the given type is produced by one of the configured encoders. The audio to write must then be PCM.
+	 *
+	 * @param type
+	 *            the audio file type
+	 * @return true if an encoder produces the type
+	 */
+	public static boolean canEncode(AudioFileFormat.Type type) {
+		return type != null && Config.TYPES.containsKey(type.toString());
+	}
+
+	/**
+	 * The PCM format to synthesise for a type produced by an encoder: that of the voice, or 16 kHz if no voice is given.
+	 *
+	 * @param voice
+	 *            the voice of the request, or null
+	 * @return the audio format to encode from
+	 */
+	public static AudioFormat getPcmFormat(Voice voice) {
+		return voice != null ? voice.dbAudioFormat() : Voice.AF16000;
+	}
+
+	/**
+	 * Get the audio file type of the given name, either one produced by a configured encoder, or one known to
+	 * {@link MaryAudioUtils#getAudioFileFormatType(String)}.
+	 *
+	 * @param name
+	 *            the type name
+	 * @return the type, or null if the name is unknown
+	 */
+	public static AudioFileFormat.Type getAudioFileFormatType(String name) {
+		AudioFileFormat.Type type = Config.TYPES.get(name);
+		return type != null ? type : MaryAudioUtils.getAudioFileFormatType(name);
+	}
+
+	private static AudioEncoder newEncoder(String typeName) {
+		String initInfo = Config.INIT_INFOS.get(typeName);
+		if (initInfo == null) {
+			return null;
+		}
+		try {
+			return (AudioEncoder) MaryRuntimeUtils.instantiateObject(initInfo);
+		} catch (MaryConfigurationException e) {
+			// it could be instantiated before:
+			throw new IllegalStateException("Cannot create audio encoder " + initInfo, e);
+		}
+	}
+
+	/**
+	 * Write the audio to the stream in the given audio file type, and close the stream.
+	 *
+	 * @param audio
+	 *            the audio; must be PCM if {@link #canEncode(AudioFileFormat.Type)} is true for type
+	 * @param type
+	 *            the audio file type to write
+	 * @param out
+	 *            the stream to write to
+	 * @param logger
+	 *            the logger of the request, to report the encoding time to
+	 * @throws IOException
+	 *             if the audio cannot be read or written
+	 */
+	public static void write(AudioInputStream audio, AudioFileFormat.Type type, OutputStream out, Logger logger)
+			throws IOException {
+		final AudioEncoder encoder = newEncoder(type.toString());
+		if (encoder == null) {
+			AudioSystem.write(audio, type, out);
+			out.flush();
+			out.close();
+			return;
+		}
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream(BLOCK_SIZE);
+		AudioFormat format = audio.getFormat();
+		byte[] block = new byte[BLOCK_SIZE - BLOCK_SIZE % format.getFrameSize()];
+		Semaphore permits = Config.PERMITS;
+		long nanos = 0;
+		long numPcmBytes = 0;
+		long numEncodedBytes = 0;
+		acquire(permits);
+		try {
+			long start = System.nanoTime();
+			encoder.start(format, encoded);
+			nanos += System.nanoTime() - start;
+		} finally {
+			permits.release();
+		}
+		int nRead;
+		do {
+			nRead = fill(audio, block);
+			numPcmBytes += nRead;
+			acquire(permits);
+			try {
+				long start = System.nanoTime();
+				if (nRead > 0) {
+					encoder.encode(block, 0, nRead);
+				} else {
+					// the last call, with an empty block, finishes the encoding:
+					encoder.finish();
+				}
+				nanos += System.nanoTime() - start;
+			} finally {
+				permits.release();
+			}
+			numEncodedBytes += encoded.size();
+			encoded.writeTo(out);
+			encoded.reset();
+			out.flush();
+		} while (nRead > 0);
+		out.close();
+
+		encodedStreams.increment();
+		encodeNanos.add(nanos);
+		pcmBytes.add(numPcmBytes);
+		encodedBytes.add(numEncodedBytes);
+		logger.info("Encoded " + numPcmBytes + " bytes of audio as " + type + " (" + numEncodedBytes + " bytes) in " + nanos
+				/ 1000000 + " ms");
+	}
+
+	/**
+	 * Read from audio until block is full or the audio ends. Streamed audio is returned as soon as nothing more is available, so
+	 * that it is not held back until more is synthesised; any other audio is read in full blocks.
+	 *
+	 * @return the number of bytes read, 0 at the end of the audio
+	 */
+	private static int fill(AudioInputStream audio, byte[] block) throws IOException {
+		boolean streamed = audio instanceof StreamingAudioInputStream;
+		int total = 0;
+		while (total < block.length) {
+			int n = audio.read(block, total, block.length - total);
+			if (n == -1) {
+				break;
+			}
+			total += n;
+			if (streamed && total > 0 && audio.available() <= 0) {
+				// don't hold back audio which is already there:
+				break;
+			}
+		}
+		return total;
+	}
+
+	private static void acquire(Semaphore permits) throws IOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to encode audio");
+		}
+	}
+
+	/**
+	 * Describe the work done by the encoders so far, one property per line.
+	 *
+	 * @return the statistics
+	 */
+	public static String getStatistics() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("streams ").append(encodedStreams.sum()).append('\n');
+		sb.append("encodetime.ms ").append(encodeNanos.sum() / 1000000).append('\n');
+		sb.append("pcm.bytes ").append(pcmBytes.sum()).append('\n');
+		sb.append("encoded.bytes ").append(encodedBytes.sum()).append('\n');
+		return sb.toString();
+	}
+}
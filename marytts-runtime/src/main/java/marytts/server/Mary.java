@@ -32,15 +32,11 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -61,8 +57,6 @@ import marytts.modules.synthesis.Voice;
 import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
-import marytts.util.Pair;
-import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.io.FileUtils;
 
 import org.apache.commons.io.IOUtils;
@@ -131,46 +125,53 @@ public class Mary {
 	}
 
 	private static void startModules() throws ClassNotFoundException, InstantiationException, Exception {
-		for (String moduleClassName : MaryProperties.moduleInitInfo()) {
-			MaryModule m = ModuleRegistry.instantiateModule(moduleClassName);
+		// Instantiating a module often loads its data (lexicons, CARTs, ...), so modules are instantiated concurrently,
+		// and then registered in the configured order:
+		ParallelStartup<MaryModule> instantiation = new ParallelStartup<MaryModule>();
+		for (final String moduleClassName : MaryProperties.moduleInitInfo()) {
+			instantiation.add(moduleClassName, new Callable<MaryModule>() {
+				public MaryModule call() throws Exception {
+					return ModuleRegistry.instantiateModule(moduleClassName);
+				}
+			});
+		}
+		for (MaryModule m : instantiation.run()) {
 			// Partially fill module repository here;
 			// TODO: voice-specific entries will be added when each voice is loaded.
 			ModuleRegistry.registerModule(m, m.getLocale(), null);
 		}
 		ModuleRegistry.setRegistrationComplete();
+		instantiation.logTimes(logger, "Module instantiation");
 
-		List<Pair<MaryModule, Long>> startupTimes = new ArrayList<Pair<MaryModule, Long>>();
-
-		// Separate loop for startup allows modules to cross-reference to each
+		// Separate step for startup allows modules to cross-reference to each
 		// other via Mary.getModule(Class) even if some have not yet been
-		// started.
-		for (MaryModule m : ModuleRegistry.getAllModules()) {
+		// started. Modules are started concurrently; a module which needs another
+		// one to be running starts it through ModuleRegistry.startModule(), which
+		// waits if another thread is starting it already.
+		ParallelStartup<Void> startup = new ParallelStartup<Void>();
+		for (final MaryModule m : ModuleRegistry.getAllModules()) {
 			// Only start the modules here if in server mode:
 			if (((!MaryProperties.getProperty("server").equals("commandline")) || m instanceof Synthesis)
 					&& m.getState() == MaryModule.MODULE_OFFLINE) {
-				long before = System.currentTimeMillis();
-				try {
-					m.startup();
-				} catch (Throwable t) {
-					throw new Exception("Problem starting module " + m.name(), t);
-				}
-				long after = System.currentTimeMillis();
-				startupTimes.add(new Pair<MaryModule, Long>(m, after - before));
-			}
-			if (MaryProperties.getAutoBoolean("modules.poweronselftest", false)) {
-				m.powerOnSelfTest();
+				startup.add(m.name(), new Callable<Void>() {
+					public Void call() throws Exception {
+						try {
+							ModuleRegistry.startModule(m);
+						} catch (Throwable t) {
+							throw new Exception("Problem starting module " + m.name(), t);
+						}
+						return null;
+					}
+				});
 			}
 		}
+		startup.run();
+		startup.logTimes(logger, "Module startup");
 
-		if (startupTimes.size() > 0) {
-			Collections.sort(startupTimes, new Comparator<Pair<MaryModule, Long>>() {
-				public int compare(Pair<MaryModule, Long> o1, Pair<MaryModule, Long> o2) {
-					return -o1.getSecond().compareTo(o2.getSecond());
-				}
-			});
-			logger.debug("Startup times:");
-			for (Pair<MaryModule, Long> p : startupTimes) {
-				logger.debug(p.getFirst().name() + ": " + p.getSecond() + " ms");
+		// The self tests process data through other modules, so they run once all modules are started:
+		if (MaryProperties.getAutoBoolean("modules.poweronselftest", false)) {
+			for (MaryModule m : ModuleRegistry.getAllModules()) {
+				m.powerOnSelfTest();
 			}
 		}
 	}
@@ -344,7 +345,7 @@ public class Mary {
 			MaryCache cache = MaryCache.getCache();
 			try {
 				cache.shutdown();
-			} catch (SQLException e) {
+			} catch (IOException e) {
 				logger.warn("Cannot shutdown cache: ", e);
 			}
 		}
@@ -396,9 +397,11 @@ public class Mary {
 		AudioFileFormat audioFileFormat = null;
 		AudioFileFormat.Type audioType = null;
 		if (audioTypeName != null) {
-			audioType = MaryAudioUtils.getAudioFileFormatType(audioTypeName);
+			audioType = AudioEncoding.getAudioFileFormatType(audioTypeName);
 			AudioFormat audioFormat = null;
-			if (audioTypeName.equals("MP3")) {
+			if (AudioEncoding.canEncode(audioType)) {
+				audioFormat = AudioEncoding.getPcmFormat(voice);
+			} else if (audioTypeName.equals("MP3")) {
 				audioFormat = MaryRuntimeUtils.getMP3AudioFormat();
 			} else if (audioTypeName.equals("Vorbis")) {
 				audioFormat = MaryRuntimeUtils.getOggAudioFormat();
@@ -35,8 +35,17 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
-import java.util.concurrent.Executor;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -56,13 +65,15 @@ import marytts.unitselection.UnitSelectionVoice;
 import marytts.unitselection.interpolation.InterpolatingVoice;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
-import marytts.util.data.audio.MaryAudioUtils;
 
 import org.apache.logging.log4j.Logger;
 
 /**
- * Listen for clients on socket port <code>MaryProperties.socketPort()</code>. For each new client, create a new RequestHandler
- * thread.
+ * Listen for clients on socket port <code>MaryProperties.socketPort()</code>. Client connections are handled by a bounded pool of
+ * <code>socket.handlerthreads</code> threads; the synthesis requests themselves are run by a bounded pool of
+ * <code>socket.synthesisthreads</code> RequestHandlers. At most <code>socket.queuelength</code> synthesis requests are accepted
+ * in addition to those currently being processed; beyond that, clients receive a busy reply (see below). Reads from client
+ * sockets time out after <code>socket.timeout</code> milliseconds.
  * <p>
  * Clients are expected to follow the following <b>protocol</b>:
  * <p>
@@ -125,7 +136,9 @@ import org.apache.logging.log4j.Logger;
  * will process normal ASCII text, and send back a WAV audio file synthesised with the voice "kevin16".</li>
  *
  * <li>The server reads and parses this input line. If its format is correct, a line containing a single integer is sent back to
- * the client on <code>infoSocket</code>. This integer is a unique identification number for this request.</li>
+ * the client on <code>infoSocket</code>. This integer is a unique identification number for this request. If the server is
+ * already processing as many requests as it can accept, it sends back a line starting with "Server busy" instead, and closes the
+ * connection; the client may retry later.</li>
  *
  * <li>The client opens a second socket connection to the server, on the same port, the <code>dataSocket</code>. As a first line
  * on this <code>dataSocket</code>, it sends the single integer it had just received via the <code>infoSocket</code>.</li>
@@ -144,14 +157,45 @@ import org.apache.logging.log4j.Logger;
  */
 public class MaryServer implements Runnable {
 
-	private ServerSocket server;
+	private volatile ServerSocket server;
 	private Logger logger;
-	private int runningNumber = 1;
+	private AtomicInteger runningNumber = new AtomicInteger(1);
 	private Map<Integer, Object[]> clientMap = Collections.synchronizedMap(new HashMap<Integer, Object[]>());
-	private Executor clients = Executors.newCachedThreadPool();
+	private ThreadPoolExecutor clients;
+	private ThreadPoolExecutor synthesis;
+	/**
+	 * One permit per synthesis request that may be either queued or running; a permit is taken when the request id is handed
+	 * out and given back when the request handler has finished or the registration has expired.
+	 */
+	private Semaphore admission;
+	private int timeout;
+	private ScheduledExecutorService expiry;
+	private volatile boolean shutDown = false;
 
 	public MaryServer() {
 		logger = MaryUtils.getLogger("server");
+		int handlerThreads = MaryProperties.getInteger("socket.handlerthreads", 10);
+		int synthesisThreads = MaryProperties.getInteger("socket.synthesisthreads", Runtime.getRuntime().availableProcessors());
+		int queueLength = MaryProperties.getInteger("socket.queuelength", 50);
+		timeout = MaryProperties.getInteger("socket.timeout", 60000);
+		clients = new ThreadPoolExecutor(handlerThreads, handlerThreads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(handlerThreads + queueLength), new NamedThreadFactory("CH"));
+		clients.allowCoreThreadTimeOut(true);
+		// The admission semaphore bounds the number of queued synthesis requests, so the queue itself need not be bounded:
+		synthesis = new ThreadPoolExecutor(synthesisThreads, synthesisThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("RH"));
+		synthesis.allowCoreThreadTimeOut(true);
+		admission = new Semaphore(synthesisThreads + queueLength);
+		// Registrations expire even if no further requests arrive to trigger it:
+		expiry = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Expiry"));
+		long expiryPeriod = Math.max(10, timeout / 4);
+		expiry.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				expireRegistrations();
+			}
+		}, expiryPeriod, expiryPeriod, TimeUnit.MILLISECONDS);
+		logger.info("Using " + handlerThreads + " connection threads and " + synthesisThreads
+				+ " synthesis threads; accepting up to " + queueLength + " queued requests.");
 	}
 
 	public void run() {
@@ -159,20 +203,148 @@ public class MaryServer implements Runnable {
 		try {
 			server = new ServerSocket(MaryProperties.needInteger("socket.port"), 0, MaryProperties.needInetAddress("socket.addr"));
 
+			if (shutDown) {
+				server.close();
+			}
 			while (true) {
 				logger.info("Waiting for client to connect on port " + server.getLocalPort());
 				Socket client = server.accept();
 				logger.info("Connection from " + client.getInetAddress().getHostName() +
                                             " (" + client.getInetAddress().getHostAddress() + ").");
-				clients.execute(new ClientHandler(client));
+				client.setSoTimeout(timeout);
+				try {
+					clients.execute(new ClientHandler(client));
+				} catch (RejectedExecutionException e) {
+					logger.warn("Too many open connections -- rejecting client");
+					rejectBusy(client);
+				}
 			}
 		} catch (Exception e) {
+			if (shutDown) {
+				logger.info("Server stopped.");
+				return;
+			}
 			throw new RuntimeException(e);
 		}
 	}
 
-	private synchronized int getID() {
-		return runningNumber++;
+	/**
+	 * Stop accepting clients, and stop the threads of this server: the expiry of registrations, and the connection and synthesis
+	 * pools once they have finished the requests already handed to them.
+	 */
+	public void shutdown() {
+		shutDown = true;
+		expiry.shutdownNow();
+		clients.shutdown();
+		synthesis.shutdown();
+		if (server != null) {
+			try {
+				server.close(); // makes accept() in run() return
+			} catch (IOException e) {
+				logger.warn("Cannot close server socket", e);
+			}
+		}
+	}
+
+	int getID() {
+		return runningNumber.getAndIncrement();
+	}
+
+	/**
+	 * Take an admission permit for a new synthesis request, after expiring old registrations.
+	 *
+	 * @return true if the request may be registered, false if too many requests are pending
+	 */
+	boolean admit() {
+		expireRegistrations();
+		return admission.tryAcquire();
+	}
+
+	/**
+	 * Remember a synthesis request until its data connection arrives. The caller must have been admitted by {@link #admit()}.
+	 *
+	 * @param id
+	 *            the request id, from {@link #getID()}
+	 * @param infoSocket
+	 *            the socket on which the request was received
+	 * @param request
+	 *            the request
+	 */
+	void register(int id, Socket infoSocket, Request request) {
+		Object[] value = new Object[3];
+		value[0] = infoSocket;
+		value[1] = request;
+		value[2] = System.currentTimeMillis();
+		clientMap.put(id, value);
+	}
+
+	/**
+	 * The number of registered requests whose data connection has not arrived yet.
+	 *
+	 * @return the number of registrations
+	 */
+	int getNumberOfRegistrations() {
+		return clientMap.size();
+	}
+
+	/**
+	 * Tell the client that the server cannot accept its request right now, and close the connection.
+	 *
+	 * @param client
+	 *            the client socket
+	 */
+	private void rejectBusy(Socket client) {
+		try {
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), "UTF-8"), true);
+			out.println("Server busy, please try again later.");
+		} catch (IOException e) {
+			logger.debug("Cannot send busy reply to client", e);
+		} finally {
+			try {
+				client.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Remove the clientMap entries for which no data socket has arrived within the socket timeout, closing their info sockets and
+	 * giving back their admission permits.
+	 */
+	void expireRegistrations() {
+		long now = System.currentTimeMillis();
+		synchronized (clientMap) {
+			for (Iterator<Map.Entry<Integer, Object[]>> it = clientMap.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<Integer, Object[]> entry = it.next();
+				Object[] value = entry.getValue();
+				if (now - (Long) value[2] > timeout) {
+					it.remove();
+					admission.release();
+					logger.info("Request " + entry.getKey() + " expired: no data connection received");
+					try {
+						((Socket) value[0]).close();
+					} catch (IOException e) {
+						// ignore
+					}
+				}
+			}
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + " " + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
 	}
 
 	public class ClientHandler implements Runnable {
@@ -320,9 +492,9 @@ public class MaryServer implements Runnable {
 					streamingAudio = audio.startsWith("STREAMING_");
 					if (outputType == MaryDataType.get("AUDIO")) {
 						if (streamingAudio) {
-							audioFileFormatType = MaryAudioUtils.getAudioFileFormatType(audio.substring(10));
+							audioFileFormatType = AudioEncoding.getAudioFileFormatType(audio.substring(10));
 						} else {
-							audioFileFormatType = MaryAudioUtils.getAudioFileFormatType(audio);
+							audioFileFormatType = AudioEncoding.getAudioFileFormatType(audio);
 						}
 					}
 				} else if (token.startsWith("VOICE")) {
@@ -363,11 +535,10 @@ public class MaryServer implements Runnable {
 			}
 
 			// Now, the parse is complete.
-			// this request's id:
-			id = getID();
-
 			AudioFormat audioFormat = voice.dbAudioFormat();
-			if (audioFileFormatType.toString().equals("MP3")) {
+			if (AudioEncoding.canEncode(audioFileFormatType)) {
+				// encoded by the server from the PCM audio of the voice
+			} else if (audioFileFormatType.toString().equals("MP3")) {
 				if (!MaryRuntimeUtils.canCreateMP3()) {
 					throw new UnsupportedAudioFileException("Conversion to MP3 not supported.");
 				}
@@ -380,14 +551,26 @@ public class MaryServer implements Runnable {
 			}
 
 			AudioFileFormat audioFileFormat = new AudioFileFormat(audioFileFormatType, audioFormat, AudioSystem.NOT_SPECIFIED);
-			Request request = new Request(inputType, outputType, locale, voice, effects, style, id, audioFileFormat,
-					streamingAudio, null);
-			clientOut.println(id);
+			// Admission control: refuse the request if we already have as many as we can handle.
+			if (!admit()) {
+				logger.warn("Too many pending requests -- rejecting synthesis request");
+				clientOut.println("Server busy, please try again later.");
+				client.close();
+				return true;
+			}
+			// this request's id:
+			id = getID();
+			Request request;
+			try {
+				request = new Request(inputType, outputType, locale, voice, effects, style, id, audioFileFormat, streamingAudio,
+						null, true);
+			} catch (RuntimeException e) {
+				admission.release();
+				throw e;
+			}
 			// -- create new clientMap entry
-			Object[] value = new Object[2];
-			value[0] = client;
-			value[1] = request;
-			clientMap.put(id, value);
+			register(id, client, request);
+			clientOut.println(id);
 			return true;
 		}
 
@@ -500,15 +683,26 @@ public class MaryServer implements Runnable {
 				// this id.
 			}
 
-			// -- delete clientMap entry
+			// -- delete clientMap entry; if it has just expired, its admission permit is already given back
+			if (clientMap.remove(id) == null) {
+				throw new Exception("Invalid identification number.");
+			}
+			// -- send off to the synthesis pool; the permit taken in handleSynthesisRequest() is given back when done
+			final RequestHandler rh = new RequestHandler(request, infoSocket, client, reader);
 			try {
-				clientMap.remove(id);
-			} catch (UnsupportedOperationException e) {
-				logger.info("Cannot remove clientMap entry", e);
+				synthesis.execute(new Runnable() {
+					public void run() {
+						try {
+							rh.run();
+						} finally {
+							admission.release();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				admission.release();
+				throw e;
 			}
-			// -- send off to new request
-			RequestHandler rh = new RequestHandler(request, infoSocket, client, reader);
-			rh.start();
 			return true;
 		}
 
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marytts.util.Pair;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs independent parts of the server startup, such as instantiating or starting modules and loading voices, on a pool of
+ * threads, and measures how long each of them takes. The number of threads is set by the property
+ * <code>modules.startup.threads</code> (default: the number of processors); with one thread, or with a single task, the tasks
+ * run one after the other in the calling thread.
+ * <p>
+ * All instances share one pool, so that tasks which run further startup tasks themselves, such as a synthesis module loading
+ * its voices, do not create more threads. The thread calling {@link #run()} runs any of its tasks that no pool thread has
+ * taken yet, rather than just waiting for them; a task waits only for tasks that are already running, so nested runs cannot
+ * starve the pool. Pool threads end when they have been idle for a few seconds.
+ * <p>
+ * The tasks must not depend on each other's results. A task which needs a module started by another task should start it with
+ * {@link marytts.modules.ModuleRegistry#startModule(marytts.modules.MaryModule)}, which waits for a start in progress.
+ *
+ * @param <T>
+ *            the type of the task results
+ */
+public class ParallelStartup<T> {
+	private static final AtomicInteger threadNumber = new AtomicInteger();
+	private static ThreadPoolExecutor pool;
+
+	/**
+	 * The number of threads to use for startup tasks.
+	 *
+	 * @return the value of modules.startup.threads, at least 1
+	 */
+	public static int getNumberOfThreads() {
+		return Math.max(1, MaryProperties.getInteger("modules.startup.threads", Runtime.getRuntime().availableProcessors()));
+	}
+
+	private static synchronized ThreadPoolExecutor getPool(int numThreads) {
+		if (pool == null) {
+			pool = new ThreadPoolExecutor(numThreads, numThreads, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "startup-" + threadNumber.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			pool.allowCoreThreadTimeOut(true);
+		} else if (pool.getMaximumPoolSize() != numThreads) {
+			// modules.startup.threads has changed since the last startup:
+			if (numThreads > pool.getMaximumPoolSize()) {
+				pool.setMaximumPoolSize(numThreads);
+				pool.setCorePoolSize(numThreads);
+			} else {
+				pool.setCorePoolSize(numThreads);
+				pool.setMaximumPoolSize(numThreads);
+			}
+		}
+		return pool;
+	}
+
+	private final List<String> names = new ArrayList<String>();
+	private final List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+	private long[] millis;
+	private int numThreads;
+	private long totalMillis;
+
+	/**
+	 * Add a task.
+	 *
+	 * @param name
+	 *            the name of the task, for logging
+	 * @param task
+	 *            the task
+	 */
+	public void add(String name, Callable<T> task) {
+		names.add(name);
+		tasks.add(task);
+	}
+
+	/**
+	 * Run all tasks and wait for them to finish. If a task fails, the tasks which have not started yet are cancelled.
+	 *
+	 * @return the results of the tasks, in the order in which the tasks were added
+	 * @throws Exception
+	 *             the exception thrown by the first task that failed
+	 */
+	public List<T> run() throws Exception {
+		long start = System.currentTimeMillis();
+		millis = new long[tasks.size()];
+		numThreads = Math.min(getNumberOfThreads(), tasks.size());
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (numThreads <= 1) {
+			numThreads = 1;
+			for (int i = 0; i < tasks.size(); i++) {
+				results.add(timed(i).call());
+			}
+		} else {
+			ThreadPoolExecutor pool = getPool(numThreads);
+			List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+			try {
+				for (int i = 0; i < tasks.size(); i++) {
+					FutureTask<T> future = new FutureTask<T>(timed(i));
+					futures.add(future);
+					pool.execute(future);
+				}
+				// run the tasks no pool thread has started yet; this does nothing for tasks which are running or done:
+				for (FutureTask<T> future : futures) {
+					future.run();
+					if (future.isDone()) {
+						get(future); // stop at the first failure
+					}
+				}
+				for (FutureTask<T> future : futures) {
+					results.add(get(future));
+				}
+			} finally {
+				for (FutureTask<T> future : futures) {
+					future.cancel(false);
+				}
+			}
+		}
+		totalMillis = System.currentTimeMillis() - start;
+		return results;
+	}
+
+	private static <T> T get(FutureTask<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	private Callable<T> timed(final int i) {
+		final Callable<T> task = tasks.get(i);
+		return new Callable<T>() {
+			public T call() throws Exception {
+				long before = System.currentTimeMillis();
+				try {
+					return task.call();
+				} finally {
+					millis[i] = System.currentTimeMillis() - before;
+				}
+			}
+		};
+	}
+
+	/**
+	 * The time taken by each task, slowest first. Only valid after {@link #run()}.
+	 *
+	 * @return pairs of task name and milliseconds
+	 */
+	public List<Pair<String, Long>> getTimes() {
+		List<Pair<String, Long>> times = new ArrayList<Pair<String, Long>>(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			times.add(new Pair<String, Long>(names.get(i), millis[i]));
+		}
+		Collections.sort(times, new Comparator<Pair<String, Long>>() {
+			public int compare(Pair<String, Long> o1, Pair<String, Long> o2) {
+				return -o1.getSecond().compareTo(o2.getSecond());
+			}
+		});
+		return times;
+	}
+
+	/**
+	 * Log the total time and the time taken by each task, slowest first. Only valid after {@link #run()}.
+	 *
+	 * @param logger
+	 *            the logger to use
+	 * @param what
+	 *            what the tasks did, e.g. "Module startup"
+	 */
+	public void logTimes(Logger logger, String what) {
+		if (tasks.isEmpty()) {
+			return;
+		}
+		logger.info(what + " took " + totalMillis + " ms (" + tasks.size() + " tasks on " + numThreads + " threads):");
+		for (Pair<String, Long> p : getTimes()) {
+			logger.info("  " + p.getFirst() + ": " + p.getSecond() + " ms");
+		}
+	}
+}
@@ -25,7 +25,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -34,6 +34,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -52,6 +59,7 @@ import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
+import marytts.util.data.audio.StreamingAudioInputStream;
 import marytts.util.dom.DomUtils;
 import marytts.util.dom.MaryDomUtils;
 import marytts.util.dom.NameNodeFilter;
@@ -78,6 +86,13 @@ import org.w3c.dom.traversal.TreeWalker;
  * data is either accessed directly (<code>getOutputData()</code>) or written to an output stream (<code>writeOutputData</code>).
  */
 public class Request {
+	/**
+	 * Worker pool shared by all requests for processing paragraphs in parallel; null if paragraphs are processed one after the
+	 * other.
+	 */
+	private static ExecutorService chunkProcessor = null;
+	private static boolean chunkProcessorInitialised = false;
+
 	protected MaryDataType inputType;
 	protected MaryDataType outputType;
 	protected String outputTypeParams;
@@ -93,7 +108,7 @@ public class Request {
 	protected MaryData inputData;
 	protected MaryData outputData;
 	protected boolean streamAudio = false;;
-	protected boolean abortRequested = false;
+	protected volatile boolean abortRequested = false;
 
 	// Keep track of timing info for each module
 	// (map MaryModule onto Long)
@@ -108,6 +123,21 @@ public class Request {
 	public Request(MaryDataType inputType, MaryDataType outputType, Locale defaultLocale, Voice defaultVoice,
 			String defaultEffects, String defaultStyle, int id, AudioFileFormat audioFileFormat, boolean streamAudio,
 			String outputTypeParams) {
+		this(inputType, outputType, defaultLocale, defaultVoice, defaultEffects, defaultStyle, id, audioFileFormat, streamAudio,
+				outputTypeParams, false);
+	}
+
+	/**
+	 * Create a request whose streamed audio may be read while the request is being processed.
+	 * 
+	 * @param readWhileProcessing
+	 *            whether another thread reads the streamed audio while {@link #process()} runs. Only then is the audio handed
+	 *            over through a bounded {@link StreamingAudioInputStream}, which makes the processing wait for the reader; a
+	 *            caller which reads the audio only after process() has returned needs all of it kept.
+	 */
+	public Request(MaryDataType inputType, MaryDataType outputType, Locale defaultLocale, Voice defaultVoice,
+			String defaultEffects, String defaultStyle, int id, AudioFileFormat audioFileFormat, boolean streamAudio,
+			String outputTypeParams, boolean readWhileProcessing) {
 		if (!inputType.isInputType())
 			throw new IllegalArgumentException("not an input type: " + inputType.name());
 		if (!outputType.isOutputType())
@@ -121,14 +151,22 @@ public class Request {
 		this.id = id;
 		this.audioFileFormat = audioFileFormat;
 		this.streamAudio = streamAudio;
+		this.logger = MaryUtils.getLogger("R " + id);
 		if (outputType == MaryDataType.get("AUDIO")) {
 			if (audioFileFormat == null)
 				throw new NullPointerException("audio file format is needed for output type AUDIO");
-			this.appendableAudioStream = new AppendableSequenceAudioInputStream(audioFileFormat.getFormat(), null);
+			if (streamAudio && readWhileProcessing) {
+				// the audio is handed to the writer thread block by block while it is being synthesised:
+				this.appendableAudioStream = new StreamingAudioInputStream(audioFileFormat.getFormat(),
+						MaryProperties.getInteger("server.streaming.bufferblocks", 64),
+						StreamingAudioInputStream.DEFAULT_BLOCK_SIZE,
+						MaryProperties.getInteger("server.streaming.timeout", 60000), logger);
+			} else {
+				this.appendableAudioStream = new AppendableSequenceAudioInputStream(audioFileFormat.getFormat(), null);
+			}
 		} else {
 			this.appendableAudioStream = null;
 		}
-		this.logger = MaryUtils.getLogger("R " + id);
 		this.outputTypeParams = outputTypeParams;
 		this.inputData = null;
 		this.outputData = null;
@@ -199,6 +237,14 @@ public class Request {
 	public void abort() {
 		logger.info("Requesting abort.");
 		abortRequested = true;
+		if (appendableAudioStream instanceof StreamingAudioInputStream) {
+			// nobody reads the audio any more, so the processing must not wait for a reader:
+			try {
+				appendableAudioStream.close();
+			} catch (IOException e) {
+				// cannot happen
+			}
+		}
 	}
 
 	/**
@@ -323,6 +369,42 @@ public class Request {
 			outputData.setAudioFileFormat(audioFileFormat);
 		}
 		int len = inputDataList.getLength();
+		// With a chunk processor, all paragraphs are handed to the worker pool right away,
+		// and the results are collected below in document order.
+		List<Future<MaryData>> pendingChunks = null;
+		ExecutorService executor = getChunkProcessor();
+		if (executor != null && len > 1) {
+			pendingChunks = submitChunks(rawmaryxml, inputDataList, executor);
+		}
+		try {
+			processChunks(rawmaryxml, inputDataList, pendingChunks);
+		} finally {
+			if (pendingChunks != null) {
+				for (Future<MaryData> chunk : pendingChunks) {
+					if (chunk != null)
+						chunk.cancel(true);
+				}
+			}
+		}
+		long stopTime = System.currentTimeMillis();
+		logger.info("Request processed in " + (stopTime - startTime) + " ms.");
+		synchronized (timingInfo) {
+			for (MaryModule m : usedModules) {
+				logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
+			}
+		}
+		if (appendableAudioStream != null)
+			appendableAudioStream.doneAppending();
+	}
+
+	/**
+	 * Process the paragraphs in the given list one by one, in document order, and merge the results into the output data. If
+	 * pendingChunks is not null, it contains the results being computed for the paragraphs, in the same order; null entries
+	 * stand for paragraphs without text.
+	 */
+	private void processChunks(MaryData rawmaryxml, NodeList inputDataList, List<Future<MaryData>> pendingChunks)
+			throws Exception {
+		int len = inputDataList.getLength();
 		for (int i = 0; i < len && !abortRequested; i++) {
 			Element currentInputParagraph = (Element) inputDataList.item(i);
 			assert currentInputParagraph.getTagName().equals(MaryXML.PARAGRAPH);
@@ -331,9 +413,14 @@ public class Request {
 			if (MaryDomUtils.getPlainTextBelow(currentInputParagraph).trim().equals("")) {
 				outputNodeList = currentInputParagraph.getChildNodes();
 			} else { // process "real" data:
-				MaryData oneInputData = extractParagraphAsMaryData(rawmaryxml, currentInputParagraph);
-				// assert oneInputData.getDefaultVoice() != null;
-				MaryData oneOutputData = processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+				MaryData oneOutputData;
+				if (pendingChunks != null) {
+					oneOutputData = waitForChunk(pendingChunks.get(i));
+				} else {
+					MaryData oneInputData = extractParagraphAsMaryData(rawmaryxml, currentInputParagraph);
+					// assert oneInputData.getDefaultVoice() != null;
+					oneOutputData = processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+				}
 				// assert oneOutputData.getDefaultVoice() != null;
 				if (outputType.isMaryXML()) {
 					NodeList outParagraphList = oneOutputData.getDocument().getDocumentElement()
@@ -352,13 +439,73 @@ public class Request {
 				MaryDomUtils.replaceElement(currentInputParagraph, outputNodeList);
 			}
 		}
-		long stopTime = System.currentTimeMillis();
-		logger.info("Request processed in " + (stopTime - startTime) + " ms.");
-		for (MaryModule m : usedModules) {
-			logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
+	}
+
+	/**
+	 * Extract all paragraphs containing text as separate documents and submit them for processing to the given executor. The
+	 * extraction is done in the calling thread, because the shared document must not be accessed from several threads.
+	 *
+	 * @return a list with one entry per paragraph in inputDataList, which is null for paragraphs without text.
+	 */
+	private List<Future<MaryData>> submitChunks(MaryData rawmaryxml, NodeList inputDataList, ExecutorService executor) {
+		int len = inputDataList.getLength();
+		List<Future<MaryData>> pendingChunks = new ArrayList<Future<MaryData>>(len);
+		for (int i = 0; i < len; i++) {
+			Element currentInputParagraph = (Element) inputDataList.item(i);
+			if (MaryDomUtils.getPlainTextBelow(currentInputParagraph).trim().equals("")) {
+				pendingChunks.add(null);
+				continue;
+			}
+			final MaryData oneInputData = extractParagraphAsMaryData(rawmaryxml, currentInputParagraph);
+			pendingChunks.add(executor.submit(new Callable<MaryData>() {
+				public MaryData call() throws Exception {
+					return processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+				}
+			}));
 		}
-		if (appendableAudioStream != null)
-			appendableAudioStream.doneAppending();
+		logger.debug("Submitted " + len + " paragraphs for parallel processing");
+		return pendingChunks;
+	}
+
+	private static MaryData waitForChunk(Future<MaryData> chunk) throws Exception {
+		try {
+			return chunk.get();
+		} catch (ExecutionException ee) {
+			// rethrow the original exception, as the sequential processing would
+			Throwable cause = ee.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw ee;
+		}
+	}
+
+	/**
+	 * Get the worker pool for processing the paragraphs of a request in parallel. Its size is set by the property
+	 * <code>server.request.parallelchunks</code>; if it is 1 or less, no pool is created and paragraphs are processed one after
+	 * the other.
+	 *
+	 * @return the shared chunk processor, or null
+	 */
+	private static synchronized ExecutorService getChunkProcessor() {
+		if (!chunkProcessorInitialised) {
+			chunkProcessorInitialised = true;
+			int numThreads = MaryProperties.getInteger("server.request.parallelchunks", 1);
+			if (numThreads > 1) {
+				chunkProcessor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Chunk " + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+		}
+		return chunkProcessor;
 	}
 
 	/**
@@ -411,9 +558,13 @@ public class Request {
 		// try to look up the requested result in the cache:
 		inputtype = oneInputData.getType().name();
 		outputtype = oneOutputType.name();
-		ByteArrayOutputStream sw = new ByteArrayOutputStream();
-		oneInputData.writeTo(sw);
-		inputtext = new String(sw.toByteArray(), "UTF-8");
+		// stands for the input text without serialising the input data:
+		inputtext = MaryCache.inputKey(oneInputData);
+		if (inputtext == null) {
+			ByteArrayOutputStream sw = new ByteArrayOutputStream();
+			oneInputData.writeTo(sw);
+			inputtext = new String(sw.toByteArray(), "UTF-8");
+		}
 		voice = defaultVoice != null ? defaultVoice.getName() : null;
 		localeString = locale.toString();
 
@@ -423,7 +574,7 @@ public class Request {
 						defaultEffects, inputtext);
 				if (outputtext != null) {
 					MaryData outData = new MaryData(oneOutputType, locale);
-					ByteArrayInputStream sr = new ByteArrayInputStream(outputtext.getBytes());
+					ByteArrayInputStream sr = new ByteArrayInputStream(outputtext.getBytes("UTF-8"));
 					outData.readFrom(sr);
 					sr.close();
 					outData.setDefaultVoice(defaultVoice);
@@ -483,7 +634,7 @@ public class Request {
 	}
 
 	private void insertAudioIntoCache(MaryCache cache, String inputtype, String localeString, String voice, String outputParams,
-			String inputtext, MaryData currentData) throws IOException, SQLException, UnsupportedAudioFileException {
+			String inputtext, MaryData currentData) throws IOException, UnsupportedAudioFileException {
 		AppendableSequenceAudioInputStream as = (AppendableSequenceAudioInputStream) currentData.getAudio();
 		assert as != appendableAudioStream;
 		as.doneAppending();
@@ -522,7 +673,9 @@ public class Request {
 					+ oneInputData.getType().name() + "), no processing path through modules.";
 			throw new UnsupportedOperationException(message);
 		}
-		usedModules.addAll(neededModules);
+		synchronized (timingInfo) {
+			usedModules.addAll(neededModules);
+		}
 		logger.info("Handling request using the following modules:");
 		for (MaryModule m : neededModules) {
 			logger.info("- " + m.name() + " (" + m.getClass().getName() + ")");
@@ -577,11 +730,14 @@ public class Request {
 			currentData = outData;
 			long moduleStopTime = System.currentTimeMillis();
 			long delta = moduleStopTime - moduleStartTime;
-			Long soFar = timingInfo.get(m);
-			if (soFar != null)
-				timingInfo.put(m, Long.valueOf(soFar.longValue() + delta));
-			else
-				timingInfo.put(m, Long.valueOf(delta));
+			// paragraphs may be processed in parallel
+			synchronized (timingInfo) {
+				Long soFar = timingInfo.get(m);
+				if (soFar != null)
+					timingInfo.put(m, Long.valueOf(soFar.longValue() + delta));
+				else
+					timingInfo.put(m, Long.valueOf(delta));
+			}
 			if (MaryRuntimeUtils.veryLowMemoryCondition()) {
 				logger.info("Very low memory condition detected (only " + MaryUtils.availableMemory()
 						+ " bytes left). Triggering garbage collection.");
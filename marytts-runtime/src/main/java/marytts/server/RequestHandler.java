@@ -31,7 +31,6 @@ import java.io.PrintWriter;
 import java.io.Reader;
 import java.net.Socket;
 
-import javax.sound.sampled.AudioSystem;
 import javax.xml.transform.TransformerException;
 
 import marytts.datatypes.MaryDataType;
@@ -55,7 +54,8 @@ import org.apache.logging.log4j.core.layout.PatternLayout;
 import org.xml.sax.SAXParseException;
 
 /**
- * A lightweight process handling one Request in a thread of its own. This is to be used when running as a socket server.
+ * A lightweight process handling one Request in a thread of its own. This is to be used when running as a socket server, where
+ * the request handlers are run by the server's bounded synthesis thread pool.
  *
  * @author Marc Schr&ouml;der
  */
@@ -249,9 +249,7 @@ public class RequestHandler extends Thread {
 
 		public void run() {
 			try {
-				AudioSystem.write(request.getAudio(), request.getAudioFileFormat().getType(), output);
-				output.flush();
-				output.close();
+				AudioEncoding.write(request.getAudio(), request.getAudioFileFormat().getType(), output, logger);
 				logger.info("Finished writing output");
 			} catch (IOException ioe) {
 				logger.info("Cannot write output, client seems to have disconnected. ", ioe);
@@ -20,64 +20,99 @@
 
 package marytts.server.http;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 
+import marytts.server.AudioEncoding;
 import marytts.server.Request;
 import marytts.util.MaryUtils;
+import marytts.util.data.audio.AudioBlockRing;
 
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.nio.ContentEncoder;
 import org.apache.http.nio.IOControl;
-import org.apache.http.nio.entity.ContentOutputStream;
 import org.apache.http.nio.entity.ProducingNHttpEntity;
-import org.apache.http.nio.util.HeapByteBufferAllocator;
-import org.apache.http.nio.util.SharedOutputBuffer;
 import org.apache.logging.log4j.Logger;
 
 /**
+ * Streams the audio of a request to the client while it is being synthesised. The writer thread, started with {@link #run()},
+ * encodes the audio and hands the encoded data in blocks to the I/O thread through an {@link AudioBlockRing}. The I/O thread
+ * never waits: {@link #produceContent(ContentEncoder, IOControl)} writes whatever blocks are there, and suspends output when
+ * there are none; the ring's listener requests output again as soon as the writer adds a block.
+ * 
  * @author marc
  * 
  */
 public class AudioStreamNHttpEntity extends AbstractHttpEntity implements ProducingNHttpEntity, Runnable {
+	/** the number of blocks of encoded audio which may wait for the client */
+	private static final int CAPACITY = 16;
+	/** the size of the blocks of encoded audio */
+	private static final int BLOCK_SIZE = 8192;
+
 	private Request maryRequest;
 	private AudioInputStream audio;
 	private AudioFileFormat.Type audioType;
-	private Logger logger;
-	private Object mutex;
-	private SharedOutputBuffer out;
+	private volatile Logger logger;
+	private final AudioBlockRing ring = new AudioBlockRing(CAPACITY);
+	// used by the I/O thread only:
+	private ByteBuffer pending;
+	private boolean listening;
 
 	public AudioStreamNHttpEntity(Request maryRequest) {
 		this.maryRequest = maryRequest;
 		this.audio = maryRequest.getAudio();
 		this.audioType = maryRequest.getAudioFileFormat().getType();
 		setContentType(MaryHttpServerUtils.getMimeType(audioType));
-		this.mutex = new Object();
 	}
 
 	public void finish() {
-		assert logger != null : "we should never be able to write if run() is not called";
-		logger.info("Completed sending streaming audio");
-		maryRequest = null;
-		audio = null;
-		audioType = null;
-		logger = null;
+		// if the client has gone, the writer must not wait for it:
+		ring.cancel();
+		Logger l = logger;
+		if (l != null) {
+			l.info("Completed sending streaming audio");
+		}
 	}
 
-	public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
-		if (out == null) {
-			synchronized (mutex) {
-				out = new SharedOutputBuffer(8192, ioctrl, new HeapByteBufferAllocator());
-				mutex.notify();
+	public void produceContent(ContentEncoder encoder, final IOControl ioctrl) throws IOException {
+		if (!listening) {
+			listening = true;
+			ring.setListener(new Runnable() {
+				public void run() {
+					ioctrl.requestOutput();
+				}
+			});
+		}
+		while (true) {
+			if (pending == null || !pending.hasRemaining()) {
+				byte[] block = ring.poll();
+				if (block == null) {
+					if (ring.isFinished()) {
+						encoder.complete();
+						return;
+					}
+					ioctrl.suspendOutput();
+					// the writer may have added a block after poll(), before output was suspended:
+					if (ring.size() > 0 || ring.isFinished()) {
+						ioctrl.requestOutput();
+					}
+					return;
+				}
+				pending = ByteBuffer.wrap(block);
+			}
+			encoder.write(pending);
+			if (pending.hasRemaining()) {
+				return; // the channel is full; we are called again when it can take more
 			}
 		}
-		while (!encoder.isCompleted())
-			out.produceContent(encoder);
 	}
 
 	public long getContentLength() {
@@ -101,29 +136,54 @@ public class AudioStreamNHttpEntity extends AbstractHttpEntity implements Produc
 	}
 
 	/**
-	 * Wait for the SharedOutputBuffer to become available, write audio data to it.
+	 * Encode the audio and pass it on to the I/O thread, waiting whenever the client has fallen behind by the capacity of the
+	 * ring.
 	 */
 	public void run() {
-		this.logger = MaryUtils.getLogger(Thread.currentThread().getName());
-		// We must wait until produceContent() is called:
-		while (out == null) {
-			synchronized (mutex) {
-				try {
-					mutex.wait();
-				} catch (InterruptedException e) {
-				}
-			}
-		}
-		assert out != null;
-		ContentOutputStream outStream = new ContentOutputStream(out);
+		Logger logger = MaryUtils.getLogger(Thread.currentThread().getName());
+		this.logger = logger;
+		Request request = maryRequest;
+		OutputStream outStream = new BufferedOutputStream(new RingOutputStream(), BLOCK_SIZE);
 		try {
-			AudioSystem.write(audio, audioType, outStream);
-			outStream.flush();
-			outStream.close();
+			AudioEncoding.write(audio, audioType, outStream, logger);
 			logger.info("Finished writing output");
 		} catch (IOException ioe) {
 			logger.info("Cannot write output, client seems to have disconnected. ", ioe);
-			maryRequest.abort();
+			request.abort();
+		} finally {
+			ring.close();
+			maryRequest = null;
+			audio = null;
+		}
+	}
+
+	/**
+	 * Puts everything written to it into the ring, one block per write.
+	 */
+	private class RingOutputStream extends OutputStream {
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+			try {
+				if (!ring.put(Arrays.copyOfRange(b, off, off + len), 0)) {
+					throw new IOException("Client has stopped reading");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the client");
+			}
+		}
+
+		@Override
+		public void close() {
+			ring.close();
 		}
 	}
 }
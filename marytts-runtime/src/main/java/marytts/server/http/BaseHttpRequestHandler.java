@@ -19,10 +19,7 @@
  */
 package marytts.server.http;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -57,14 +54,11 @@ import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.MethodNotSupportedException;
-import org.apache.http.nio.ContentDecoder;
-import org.apache.http.nio.ContentDecoderChannel;
-import org.apache.http.nio.FileContentDecoder;
-import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.BufferingNHttpEntity;
 import org.apache.http.nio.entity.ConsumingNHttpEntity;
-import org.apache.http.nio.entity.ConsumingNHttpEntityTemplate;
-import org.apache.http.nio.entity.ContentListener;
-import org.apache.http.nio.protocol.SimpleNHttpRequestHandler;
+import org.apache.http.nio.protocol.NHttpRequestHandler;
+import org.apache.http.nio.protocol.NHttpResponseTrigger;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestHandler;
 import org.apache.http.util.EntityUtils;
@@ -75,11 +69,8 @@ import org.apache.logging.log4j.Logger;
  * 
  * @author Oytun T&uuml;rk, Marc Schröder
  */
-public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler implements HttpRequestHandler {
-	private final boolean useFileChannels = true;
-
+public abstract class BaseHttpRequestHandler implements NHttpRequestHandler, HttpRequestHandler {
 	protected static Logger logger;
-	private int runningNumber = 1;
 	private Map<String, Object[]> requestMap;
 
 	public BaseHttpRequestHandler() {
@@ -95,56 +86,98 @@ public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler i
 	public void handle(final HttpRequest request, final HttpResponse response, final HttpContext context) throws HttpException,
 			IOException {
 		try {
-			Header[] tmp = request.getHeaders("Host");
-			Address serverAddressAtClient = getServerAddressAtClient(tmp[0].getValue());
-			String uri = request.getRequestLine().getUri();
-
-			String method = request.getRequestLine().getMethod().toUpperCase(Locale.ENGLISH);
-			if (!(method.equals("GET") || method.equals("POST"))) {
-				throw new MethodNotSupportedException(method + " method not supported");
-			}
-
-			String absPath = null;
-			String query = null;
-			if (uri != null && uri.length() > 0) {
-				if (!uri.startsWith("/")) {
-					throw new HttpException("Unexpected uri: '" + uri + "' does not start with a slash");
-				}
-				int q = uri.indexOf('?');
-				if (q == -1) {
-					absPath = uri;
-				} else {
-					absPath = uri.substring(0, q);
-					query = uri.substring(q + 1);
-				}
-			}
-			Map<String, String> queryItems = null;
-			if (query != null && query.length() > 0) {
-				queryItems = MaryHttpServerUtils.toKeyValuePairs(query, true);
-			}
-
-			// Try and get parameters from different HTTP POST requests if you have not been able to do this above
-			if (method.equals("POST") && queryItems == null && request instanceof HttpEntityEnclosingRequest) {
-				try {
-					String postQuery = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
-					queryItems = MaryHttpServerUtils.toKeyValuePairs(postQuery, true);
-				} catch (Exception e) {
-					logger.debug("Cannot read post query", e);
-					MaryHttpServerUtils.errorInternalServerError(response, "Cannot read post query", e);
-				}
-			}
-
+			Address serverAddressAtClient = getServerAddressAtClient(request);
+			String absPath = getAbsPath(request);
+			Map<String, String> queryItems = getQueryItems(request, response);
 			// Parse request and create appropriate response
 			handleClientRequest(absPath, queryItems, response, serverAddressAtClient);
+		} catch (RuntimeException re) {
+			logger.warn("runtime exception in handle():", re);
+		}
+	}
 
+	/**
+	 * The entry point of the non-blocking http server. This is called in an I/O thread of the server, which must not wait for
+	 * long-running work; the response is sent to the client when it is submitted to the trigger.
+	 */
+	public void handle(final HttpRequest request, final HttpResponse response, final NHttpResponseTrigger trigger,
+			final HttpContext context) throws HttpException, IOException {
+		try {
+			Address serverAddressAtClient = getServerAddressAtClient(request);
+			String absPath = getAbsPath(request);
+			Map<String, String> queryItems = getQueryItems(request, response);
+			// Parse request and create appropriate response
+			handleClientRequest(absPath, queryItems, response, serverAddressAtClient, trigger);
 		} catch (RuntimeException re) {
 			logger.warn("runtime exception in handle():", re);
+			trigger.submitResponse(response);
+		}
+	}
+
+	private String getAbsPath(HttpRequest request) throws HttpException {
+		String method = request.getRequestLine().getMethod().toUpperCase(Locale.ENGLISH);
+		if (!(method.equals("GET") || method.equals("POST"))) {
+			throw new MethodNotSupportedException(method + " method not supported");
+		}
+		String uri = request.getRequestLine().getUri();
+		if (uri == null || uri.length() == 0) {
+			return null;
+		}
+		if (!uri.startsWith("/")) {
+			throw new HttpException("Unexpected uri: '" + uri + "' does not start with a slash");
+		}
+		int q = uri.indexOf('?');
+		return q == -1 ? uri : uri.substring(0, q);
+	}
+
+	private Map<String, String> getQueryItems(HttpRequest request, HttpResponse response) throws HttpException {
+		String uri = request.getRequestLine().getUri();
+		String method = request.getRequestLine().getMethod().toUpperCase(Locale.ENGLISH);
+		String query = null;
+		if (uri != null) {
+			int q = uri.indexOf('?');
+			if (q != -1) {
+				query = uri.substring(q + 1);
+			}
 		}
+		Map<String, String> queryItems = null;
+		if (query != null && query.length() > 0) {
+			queryItems = MaryHttpServerUtils.toKeyValuePairs(query, true);
+		}
+
+		// Try and get parameters from different HTTP POST requests if you have not been able to do this above
+		if (method.equals("POST") && queryItems == null && request instanceof HttpEntityEnclosingRequest) {
+			try {
+				String postQuery = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity());
+				queryItems = MaryHttpServerUtils.toKeyValuePairs(postQuery, true);
+			} catch (Exception e) {
+				logger.debug("Cannot read post query", e);
+				MaryHttpServerUtils.errorInternalServerError(response, "Cannot read post query", e);
+			}
+		}
+		return queryItems;
 	}
 
 	protected abstract void handleClientRequest(String absPath, Map<String, String> queryItems, HttpResponse response,
 			Address serverAddressAtClient) throws IOException;
 
+	/**
+	 * Handle a request of the non-blocking http server. The response must be submitted to the trigger, either before this method
+	 * returns or later from another thread. The default implementation creates the response in the calling thread with
+	 * {@link #handleClientRequest(String, Map, HttpResponse, Address)} and submits it; handlers for long-running requests should
+	 * override it.
+	 */
+	protected void handleClientRequest(String absPath, Map<String, String> queryItems, HttpResponse response,
+			Address serverAddressAtClient, NHttpResponseTrigger trigger) throws IOException {
+		handleClientRequest(absPath, queryItems, response, serverAddressAtClient);
+		trigger.submitResponse(response);
+	}
+
+	private Address getServerAddressAtClient(HttpRequest request) {
+		Header[] tmp = request.getHeaders("Host");
+		return getServerAddressAtClient(tmp[0].getValue());
+	}
+
 	protected Address getServerAddressAtClient(String fullHeader) {
 		String fullAddress = fullHeader.trim();
 		int index = fullAddress.indexOf('?');
@@ -155,47 +188,12 @@ public abstract class BaseHttpRequestHandler extends SimpleNHttpRequestHandler i
 		return new Address(fullAddress);
 	}
 
+	/**
+	 * Buffer the body of a POST request in memory, so that its query can be read once it is complete.
+	 */
 	public ConsumingNHttpEntity entityRequest(final HttpEntityEnclosingRequest request, final HttpContext context)
 			throws HttpException, IOException {
-		return new ConsumingNHttpEntityTemplate(request.getEntity(), new FileWriteListener(useFileChannels));
-	}
-
-	static class FileWriteListener implements ContentListener {
-		private final File file;
-		private final FileInputStream inputFile;
-		private final FileChannel fileChannel;
-		private final boolean useFileChannels;
-		private long idx = 0;
-
-		public FileWriteListener(boolean useFileChannels) throws IOException {
-			this.file = File.createTempFile("tmp", ".tmp", null);
-			this.inputFile = new FileInputStream(file);
-			this.fileChannel = inputFile.getChannel();
-			this.useFileChannels = useFileChannels;
-		}
-
-		public void contentAvailable(ContentDecoder decoder, IOControl ioctrl) throws IOException {
-			long transferred;
-			if (useFileChannels && decoder instanceof FileContentDecoder) {
-				transferred = ((FileContentDecoder) decoder).transfer(fileChannel, idx, Long.MAX_VALUE);
-			} else {
-				transferred = fileChannel.transferFrom(new ContentDecoderChannel(decoder), idx, Long.MAX_VALUE);
-			}
-
-			if (transferred > 0)
-				idx += transferred;
-		}
-
-		public void finished() {
-			try {
-				inputFile.close();
-			} catch (IOException ignored) {
-			}
-			try {
-				fileChannel.close();
-			} catch (IOException ignored) {
-			}
-		}
+		return new BufferingNHttpEntity(request.getEntity(), new HeapByteBufferAllocator());
 	}
 
 }
@@ -26,9 +26,13 @@ import java.util.Map;
 
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
+import marytts.modules.phonemiser.PronunciationCache;
 import marytts.modules.synthesis.Voice;
+import marytts.server.AudioEncoding;
+import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
+import marytts.util.data.audio.PcmConverter;
 import marytts.util.http.Address;
 
 import org.apache.http.HttpResponse;
@@ -42,8 +46,19 @@ import org.apache.http.nio.entity.NStringEntity;
  */
 public class InfoRequestHandler extends BaseHttpRequestHandler {
 
+	private SynthesisScheduler scheduler;
+
 	public InfoRequestHandler() {
+		this(null);
+	}
+
+	/**
+	 * @param scheduler
+	 *            the scheduler whose state is reported for "queue" requests, or null
+	 */
+	public InfoRequestHandler(SynthesisScheduler scheduler) {
 		super();
+		this.scheduler = scheduler;
 	}
 
 	@Override
@@ -199,6 +214,16 @@ public class InfoRequestHandler extends BaseHttpRequestHandler {
 			}
 			MaryHttpServerUtils.errorMissingQueryParameter(response, "'voice'");
 			return null;
+		} else if (request.equals("queue") && scheduler != null) {
+			return scheduler.getStatus();
+		} else if (request.equals("cache") && MaryCache.haveCache()) {
+			return MaryCache.getCache().getStatistics();
+		} else if (request.equals("pronunciationcache")) {
+			return PronunciationCache.getStatistics();
+		} else if (request.equals("encoding")) {
+			return AudioEncoding.getStatistics();
+		} else if (request.equals("clippedsamples")) {
+			return String.valueOf(PcmConverter.getTotalClippedSamples());
 		} else if (request.equals("styles")) {
 			if (queryItems != null) {
 				String voice = queryItems.get("voice");
@@ -33,8 +33,9 @@ import org.apache.http.impl.DefaultHttpResponseFactory;
 import org.apache.http.impl.nio.DefaultServerIOEventDispatch;
 import org.apache.http.impl.nio.reactor.DefaultListeningIOReactor;
 import org.apache.http.nio.NHttpConnection;
-import org.apache.http.nio.protocol.BufferingHttpServiceHandler;
+import org.apache.http.nio.protocol.AsyncNHttpServiceHandler;
 import org.apache.http.nio.protocol.EventListener;
+import org.apache.http.nio.protocol.NHttpRequestHandlerRegistry;
 import org.apache.http.nio.reactor.IOEventDispatch;
 import org.apache.http.nio.reactor.ListeningIOReactor;
 import org.apache.http.params.BasicHttpParams;
@@ -43,7 +44,6 @@ import org.apache.http.params.CoreProtocolPNames;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.BasicHttpProcessor;
 import org.apache.http.protocol.ExecutionContext;
-import org.apache.http.protocol.HttpRequestHandlerRegistry;
 import org.apache.http.protocol.ResponseConnControl;
 import org.apache.http.protocol.ResponseContent;
 import org.apache.http.protocol.ResponseDate;
@@ -103,7 +103,9 @@ import org.apache.logging.log4j.Logger;
  * <li><code>vocalizations?voice=dfki-poppy</code> requests the list of vocalization names that are available with the given
  * voice;</li>
  * <li><code>styles?voice=dfki-pavoque-styles</code> requests the list of style names that are available with the given voice;</li>
- * <li><code>process</code> requests the synthesis of some text (see below).</li>
+ * <li><code>queue</code> requests the state of the synthesis queue: waiting, running, completed and rejected requests;</li>
+ * <li><code>process</code> requests the synthesis of some text (see below). If too many requests are waiting, the server replies
+ * with status 503 and a Retry-After header.</li>
  * </ul>
  * <p>
  * In Each pair has the following structure:
@@ -128,6 +130,9 @@ import org.apache.logging.log4j.Logger;
 * STYLE (Style descriptor)
  * </p>
  * <p>
+* PRIORITY (interactive or batch; waiting interactive requests are processed before batch requests. Default: interactive)
+ * </p>
+ * <p>
 * INPUT_TEXT (Input text to be synthesised)
  * </p>
  * <p>
@@ -204,13 +209,16 @@ public class MaryHttpServer extends Thread {
 		httpproc.addInterceptor(new ResponseContent());
 		httpproc.addInterceptor(new ResponseConnControl());
 
-		BufferingHttpServiceHandler handler = new BufferingHttpServiceHandler(httpproc, new DefaultHttpResponseFactory(),
+		// The request handlers run in the I/O threads of the server; synthesis requests are handed to the scheduler, which
+		// submits their responses when they are ready, so that an I/O thread never waits for synthesis.
+		AsyncNHttpServiceHandler handler = new AsyncNHttpServiceHandler(httpproc, new DefaultHttpResponseFactory(),
 				new DefaultConnectionReuseStrategy(), params);
 
 		// Set up request handlers
-		HttpRequestHandlerRegistry registry = new HttpRequestHandlerRegistry();
-		registry.register("/process", new SynthesisRequestHandler());
-		InfoRequestHandler infoRH = new InfoRequestHandler();
+		NHttpRequestHandlerRegistry registry = new NHttpRequestHandlerRegistry();
+		SynthesisScheduler scheduler = new SynthesisScheduler();
+		registry.register("/process", new SynthesisRequestHandler(scheduler));
+		InfoRequestHandler infoRH = new InfoRequestHandler(scheduler);
 		registry.register("/version", infoRH);
 		registry.register("/datatypes", infoRH);
 		registry.register("/locales", infoRH);
@@ -226,6 +234,7 @@ public class MaryHttpServer extends Thread {
 		registry.register("/features-discrete", infoRH);
 		registry.register("/vocalizations", infoRH);
 		registry.register("/styles", infoRH);
+		registry.register("/queue", infoRH);
 		registry.register("*", new FileRequestHandler());
 
 		handler.setHandlerResolver(registry);
@@ -33,7 +33,7 @@ import javax.sound.sampled.AudioFileFormat;
 
 import marytts.util.ConversionUtils;
 import marytts.util.MaryUtils;
-import marytts.util.data.audio.MaryAudioUtils;
+import marytts.util.data.audio.G711Encoder;
 import marytts.util.string.StringUtils;
 
 import org.apache.http.HttpResponse;
@@ -152,7 +152,10 @@ public class MaryHttpServerUtils {
 			return "audio/basic";
 		} else if (audioType == AudioFileFormat.Type.AIFF || audioType == AudioFileFormat.Type.AIFC) {
 			return "audio/x-aiff";
-		} else if (audioType.equals(MaryAudioUtils.getAudioFileFormatType("MP3"))) {
+		} else if (audioType.equals(G711Encoder.ULAW) || audioType.equals(G711Encoder.ALAW)) {
+			// AU files at the sample rate of the voice; audio/basic would promise 8 kHz mu-law
+			return "audio/x-au";
+		} else if (audioType.toString().equals("MP3")) {
 			return "audio/x-mpeg"; // "audio/x-mp3; //Does not work for Internet Explorer"
 		}
 		return "audio/basic"; // this is probably wrong but better than text/plain...
@@ -188,6 +191,21 @@ public class MaryHttpServerUtils {
 		}
 	}
 
+	public static void errorServiceUnavailable(HttpResponse response, int retryAfterSeconds) {
+		int status = HttpStatus.SC_SERVICE_UNAVAILABLE;
+		response.setStatusCode(status);
+		response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+		String message = "The server is busy, please try again in " + retryAfterSeconds + " seconds";
+		logger.debug("Returning HTTP status " + status + ": " + message);
+		try {
+			NStringEntity entity = new NStringEntity("<html><body><h1>Service unavailable</h1><p>" + message
+					+ ".</p></body></html>", "UTF-8");
+			entity.setContentType("text/html; charset=UTF-8");
+			response.setEntity(entity);
+		} catch (UnsupportedEncodingException e) {
+		}
+	}
+
 	public static void errorMissingQueryParameter(HttpResponse response, String param) {
 		int status = HttpStatus.SC_BAD_REQUEST;
 		response.setStatusCode(status);
@@ -28,6 +28,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -36,16 +41,17 @@ import javax.sound.sampled.AudioSystem;
 
 import marytts.datatypes.MaryDataType;
 import marytts.modules.synthesis.Voice;
+import marytts.server.AudioEncoding;
 import marytts.server.Request;
 import marytts.server.RequestHandler.StreamingOutputPiper;
 import marytts.server.RequestHandler.StreamingOutputWriter;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
-import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.http.Address;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.nio.protocol.NHttpResponseTrigger;
 import org.apache.logging.log4j.Logger;
 
 /**
@@ -55,20 +61,26 @@ import org.apache.logging.log4j.Logger;
  *
  */
 public class SynthesisRequestHandler extends BaseHttpRequestHandler {
-	private static int id = 0;
+	private static final AtomicInteger id = new AtomicInteger();
 
-	private static synchronized int getId() {
-		return id++;
+	private static int getId() {
+		return id.getAndIncrement();
 	}
 
 	private StreamingOutputWriter outputToStream;
 	private StreamingOutputPiper streamToPipe;
 	private PipedOutputStream pipedOutput;
 	private PipedInputStream pipedInput;
+	private SynthesisScheduler scheduler;
 
 	public SynthesisRequestHandler() {
+		this(new SynthesisScheduler());
+	}
+
+	public SynthesisRequestHandler(SynthesisScheduler scheduler) {
 		super();
 
+		this.scheduler = scheduler;
 		outputToStream = null;
 		streamToPipe = null;
 		pipedOutput = null;
@@ -82,23 +94,59 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		 * response.setStatusCode(HttpStatus.SC_OK); TestProducingNHttpEntity entity = new TestProducingNHttpEntity();
 		 * entity.setContentType("audio/x-mp3"); response.setEntity(entity); if (true) return;
 		 */
+		logRequest(absPath, queryItems);
+		process(serverAddressAtClient, queryItems, response);
+
+	}
+
+	@Override
+	protected void handleClientRequest(String absPath, Map<String, String> queryItems, HttpResponse response,
+			Address serverAddressAtClient, NHttpResponseTrigger trigger) throws IOException {
+		logRequest(absPath, queryItems);
+		if (!process(serverAddressAtClient, queryItems, response, trigger)) {
+			trigger.submitResponse(response);
+		}
+	}
+
+	private void logRequest(String absPath, Map<String, String> queryItems) {
 		logger.debug("New synthesis request: " + absPath);
 		if (queryItems != null) {
 			for (String key : queryItems.keySet()) {
 				logger.debug("    " + key + "=" + queryItems.get(key));
 			}
 		}
-		process(serverAddressAtClient, queryItems, response);
-
 	}
 
+	/**
+	 * Process a synthesis request, waiting for a non-streaming request to be processed.
+	 */
 	public void process(Address serverAddressAtClient, Map<String, String> queryItems, HttpResponse response) {
+		process(serverAddressAtClient, queryItems, response, null);
+	}
+
+	/**
+	 * Process a synthesis request. If a trigger is given, the calling thread does not wait for a non-streaming request: the
+	 * scheduler thread processing it fills in the response and submits it to the trigger.
+	 *
+	 * @param serverAddressAtClient
+	 *            serverAddressAtClient
+	 * @param queryItems
+	 *            queryItems
+	 * @param response
+	 *            the response to fill in
+	 * @param trigger
+	 *            the trigger to submit the response to once it is ready, or null to wait for the request to be processed
+	 * @return true if the response will be submitted to the trigger by another thread, false if it is complete when this method
+	 *         returns
+	 */
+	protected boolean process(Address serverAddressAtClient, Map<String, String> queryItems, final HttpResponse response,
+			final NHttpResponseTrigger trigger) {
 		if (queryItems == null
 				|| !(queryItems.containsKey("INPUT_TYPE") && queryItems.containsKey("OUTPUT_TYPE")
 						&& queryItems.containsKey("LOCALE") && queryItems.containsKey("INPUT_TEXT"))) {
 			MaryHttpServerUtils.errorMissingQueryParameter(response,
 					"'INPUT_TEXT' and 'INPUT_TYPE' and 'OUTPUT_TYPE' and 'LOCALE'");
-			return;
+			return false;
 		}
 
 		String inputText = queryItems.get("INPUT_TEXT");
@@ -106,13 +154,13 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		MaryDataType inputType = MaryDataType.get(queryItems.get("INPUT_TYPE"));
 		if (inputType == null) {
 			MaryHttpServerUtils.errorWrongQueryParameterValue(response, "INPUT_TYPE", queryItems.get("INPUT_TYPE"), null);
-			return;
+			return false;
 		}
 
 		MaryDataType outputType = MaryDataType.get(queryItems.get("OUTPUT_TYPE"));
 		if (outputType == null) {
 			MaryHttpServerUtils.errorWrongQueryParameterValue(response, "OUTPUT_TYPE", queryItems.get("OUTPUT_TYPE"), null);
-			return;
+			return false;
 		}
 		boolean isOutputText = true;
 		boolean streamingAudio = false;
@@ -122,7 +170,7 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			String audioTypeName = queryItems.get("AUDIO");
 			if (audioTypeName == null) {
 				MaryHttpServerUtils.errorMissingQueryParameter(response, "'AUDIO' when OUTPUT_TYPE=AUDIO");
-				return;
+				return false;
 			}
 			if (audioTypeName.endsWith("_STREAM")) {
 				streamingAudio = true;
@@ -132,20 +180,22 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 				audioTypeName = audioTypeName.substring(0, lastUnderscore);
 			}
 			try {
-				audioFileFormatType = MaryAudioUtils.getAudioFileFormatType(audioTypeName);
+				audioFileFormatType = AudioEncoding.getAudioFileFormatType(audioTypeName);
 			} catch (Exception ex) {
 			}
 			if (audioFileFormatType == null) {
 				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "AUDIO", queryItems.get("AUDIO"), null);
-				return;
+				return false;
+			} else if (AudioEncoding.canEncode(audioFileFormatType)) {
+				// encoded by the server from the PCM audio of the voice
 			} else if (audioFileFormatType.toString().equals("MP3") && !MaryRuntimeUtils.canCreateMP3()) {
 				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "AUDIO", queryItems.get("AUDIO"),
 						"Conversion to MP3 not supported.");
-				return;
+				return false;
 			} else if (audioFileFormatType.toString().equals("Vorbis") && !MaryRuntimeUtils.canCreateOgg()) {
 				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "AUDIO", queryItems.get("AUDIO"),
 						"Conversion to OGG Vorbis format not supported.");
-				return;
+				return false;
 			}
 		}
 		// optionally, there may be output type parameters
@@ -155,7 +205,7 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		Locale locale = MaryUtils.string2locale(queryItems.get("LOCALE"));
 		if (locale == null) {
 			MaryHttpServerUtils.errorWrongQueryParameterValue(response, "LOCALE", queryItems.get("LOCALE"), null);
-			return;
+			return false;
 		}
 
 		Voice voice = null;
@@ -169,7 +219,7 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			if (voice == null) {
 				// a voice name was given but there is no such voice
 				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "VOICE", queryItems.get("VOICE"), null);
-				return;
+				return false;
 			}
 		}
 		if (voice == null) { // no voice tag -- use locale default if it exists.
@@ -187,6 +237,18 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		else
 			logger.debug("No audio effects requested");
 
+		SynthesisScheduler.Priority priority = SynthesisScheduler.Priority.INTERACTIVE;
+		String priorityName = queryItems.get("PRIORITY");
+		if (priorityName != null) {
+			try {
+				priority = SynthesisScheduler.Priority.valueOf(priorityName.toUpperCase(Locale.ENGLISH));
+			} catch (IllegalArgumentException e) {
+				MaryHttpServerUtils.errorWrongQueryParameterValue(response, "PRIORITY", priorityName,
+						"Expected 'interactive' or 'batch'");
+				return false;
+			}
+		}
+
 		String logMsg = queryItems.get("LOG");
 		if (logMsg != null) {
 			logger.info("Connection info: " + logMsg);
@@ -200,7 +262,9 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			audioFileFormatType = AudioFileFormat.Type.AU;
 		}
 		AudioFormat audioFormat;
-		if (audioFileFormatType.toString().equals("MP3")) {
+		if (AudioEncoding.canEncode(audioFileFormatType)) {
+			audioFormat = AudioEncoding.getPcmFormat(voice);
+		} else if (audioFileFormatType.toString().equals("MP3")) {
 			audioFormat = MaryRuntimeUtils.getMP3AudioFormat();
 		} else if (audioFileFormatType.toString().equals("Vorbis")) {
 			audioFormat = MaryRuntimeUtils.getOggAudioFormat();
@@ -212,10 +276,9 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 		AudioFileFormat audioFileFormat = new AudioFileFormat(audioFileFormatType, audioFormat, AudioSystem.NOT_SPECIFIED);
 
 		final Request maryRequest = new Request(inputType, outputType, locale, voice, effects, style, getId(), audioFileFormat,
-				streamingAudio, outputTypeParams);
+				streamingAudio, outputTypeParams, true);
 
 		// Process the request and send back the data
-		boolean ok = true;
 		try {
 			maryRequest.setInputData(inputText);
 			logger.info("Read: " + inputText);
@@ -223,70 +286,126 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler {
 			String message = "Problem reading input";
 			logger.warn(message, e);
 			MaryHttpServerUtils.errorInternalServerError(response, message, e);
-			ok = false;
+			requestDone(false);
+			return false;
 		}
-		if (ok) {
-			if (streamingAudio) {
-				// Start two separate threads:
-				// 1. one thread to process the request;
-				new Thread("RH " + maryRequest.getId()) {
-					public void run() {
-						Logger myLogger = MaryUtils.getLogger(this.getName());
+		final boolean streaming = streamingAudio;
+		Future<Object> processing;
+		try {
+			processing = scheduler.submit(voice != null ? voice.getName() : null, priority, new Callable<Object>() {
+				public Object call() throws Exception {
+					if (streaming) {
+						// Nobody waits for the outcome of a streaming request, so log it here:
+						Logger myLogger = MaryUtils.getLogger("RH " + maryRequest.getId());
 						try {
 							maryRequest.process();
 							myLogger.info("Streaming request processed successfully.");
 						} catch (Throwable t) {
 							myLogger.error("Processing failed.", t);
 						}
+					} else if (trigger != null) {
+						// Nobody waits for this job either: answer the client from here
+						try {
+							requestDone(processAndWriteOutput(maryRequest, response));
+						} finally {
+							trigger.submitResponse(response);
+						}
+					} else {
+						maryRequest.process();
 					}
-				}.start();
-
-				// 2. one thread to take the audio data as it becomes available
-				// and write it into the ProducingNHttpEntity.
-				// The second one does not depend on the first one practically,
-				// because the AppendableSequenceAudioInputStream returned by
-				// maryRequest.getAudio() was already created in the constructor of Request.
-				AudioInputStream audio = maryRequest.getAudio();
-				assert audio != null : "Streaming audio but no audio stream -- very strange indeed! :-(";
-				AudioFileFormat.Type audioType = maryRequest.getAudioFileFormat().getType();
-				AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(maryRequest);
-				new Thread(entity, "HTTPWriter " + maryRequest.getId()).start();
-				// entity knows its contentType, no need to set explicitly here.
-				response.setEntity(entity);
-				response.setStatusCode(HttpStatus.SC_OK);
-				return;
-			} else { // not streaming audio
-				// Process input data to output data
-				try {
-					maryRequest.process(); // this may take some time
-				} catch (Throwable e) {
-					String message = "Processing failed.";
-					logger.error(message, e);
-					MaryHttpServerUtils.errorInternalServerError(response, message, e);
-					ok = false;
-				}
-				if (ok) {
-					// Write output data to client
-					try {
-						ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-						maryRequest.writeOutputData(outputStream);
-						String contentType;
-						if (maryRequest.getOutputType().isXMLType() || maryRequest.getOutputType().isTextType()) // text output
-							contentType = "text/plain; charset=UTF-8";
-						else
-							// audio output
-							contentType = MaryHttpServerUtils.getMimeType(maryRequest.getAudioFileFormat().getType());
-						MaryHttpServerUtils.toHttpResponse(outputStream.toByteArray(), response, contentType);
-					} catch (Exception e) {
-						String message = "Cannot write output";
-						logger.warn(message, e);
-						MaryHttpServerUtils.errorInternalServerError(response, message, e);
-						ok = false;
-					}
+					return null;
 				}
-			}
+			});
+		} catch (RejectedExecutionException e) {
+			MaryHttpServerUtils.errorServiceUnavailable(response, scheduler.getRetryAfter());
+			return false;
+		}
+		if (streamingAudio) {
+			// The scheduler processes the request; in addition, start a writer
+			// to take the audio data as it becomes available
+			// and write it into the ProducingNHttpEntity.
+			// The writer does not depend on the processing practically,
+			// because the AppendableSequenceAudioInputStream returned by
+			// maryRequest.getAudio() was already created in the constructor of Request.
+			AudioInputStream audio = maryRequest.getAudio();
+			assert audio != null : "Streaming audio but no audio stream -- very strange indeed! :-(";
+			AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(maryRequest);
+			scheduler.startWriter(entity);
+			// entity knows its contentType, no need to set explicitly here.
+			response.setEntity(entity);
+			response.setStatusCode(HttpStatus.SC_OK);
+			return false;
+		}
+		if (trigger != null) {
+			// the scheduler thread submits the response
+			return true;
+		}
+		// Wait for the input data to be processed to output data
+		boolean ok = true;
+		try {
+			processing.get(); // this may take some time
+		} catch (ExecutionException e) {
+			String message = "Processing failed.";
+			logger.error(message, e.getCause());
+			MaryHttpServerUtils.errorInternalServerError(response, message, e.getCause());
+			ok = false;
+		} catch (InterruptedException e) {
+			processing.cancel(false);
+			String message = "Interrupted while waiting for processing.";
+			logger.error(message, e);
+			MaryHttpServerUtils.errorInternalServerError(response, message, e);
+			ok = false;
+		}
+		if (ok) {
+			ok = writeOutput(maryRequest, response);
 		}
+		requestDone(ok);
+		return false;
+	}
+
+	/**
+	 * Process the request and write its output data into the response, or an error message if that fails.
+	 *
+	 * @return true if the request was processed successfully
+	 */
+	private boolean processAndWriteOutput(Request maryRequest, HttpResponse response) {
+		try {
+			maryRequest.process();
+		} catch (Throwable t) {
+			String message = "Processing failed.";
+			logger.error(message, t);
+			MaryHttpServerUtils.errorInternalServerError(response, message, t);
+			return false;
+		}
+		return writeOutput(maryRequest, response);
+	}
+
+	/**
+	 * Write the output data of a processed request into the response, or an error message if that fails.
+	 *
+	 * @return true if the output data was written
+	 */
+	private boolean writeOutput(Request maryRequest, HttpResponse response) {
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			maryRequest.writeOutputData(outputStream);
+			String contentType;
+			if (maryRequest.getOutputType().isXMLType() || maryRequest.getOutputType().isTextType()) // text output
+				contentType = "text/plain; charset=UTF-8";
+			else
+				// audio output
+				contentType = MaryHttpServerUtils.getMimeType(maryRequest.getAudioFileFormat().getType());
+			MaryHttpServerUtils.toHttpResponse(outputStream.toByteArray(), response, contentType);
+			return true;
+		} catch (Exception e) {
+			String message = "Cannot write output";
+			logger.warn(message, e);
+			MaryHttpServerUtils.errorInternalServerError(response, message, e);
+			return false;
+		}
+	}
 
+	private void requestDone(boolean ok) {
 		if (ok)
 			logger.info("Request handled successfully.");
 		else
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2007 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marytts.server.MaryProperties;
+import marytts.util.MaryUtils;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the synthesis requests of the http server on a fixed number of worker threads.
+ * <p>
+ * Requests are queued in two priority classes; a worker always takes the oldest interactive request before any batch request.
+ * The number of requests running at the same time for one voice can be capped, in which case a worker skips queued requests
+ * for a voice that is already at its cap. If more than a configured number of requests are waiting, new requests are rejected
+ * with a {@link RejectedExecutionException}; the caller is expected to tell the client to retry after
+ * {@link #getRetryAfter()} seconds.
+ * <p>
+ * The following properties are used:
+ * <ul>
+ * <li><code>server.http.synthesisthreads</code>: number of worker threads (default: number of processors);</li>
+ * <li><code>server.http.queuelength</code>: maximum number of waiting requests (default 50);</li>
+ * <li><code>server.http.maxrequestspervoice</code>: maximum number of running requests per voice, 0 for no limit (default 0);
+ * </li>
+ * <li><code>server.http.retryafter</code>: number of seconds after which a rejected client should retry (default 5).</li>
+ * </ul>
+ */
+public class SynthesisScheduler {
+
+	public enum Priority {
+		INTERACTIVE, BATCH
+	}
+
+	private Logger logger;
+
+	private final int maxQueued;
+	private final int maxPerVoice;
+	private final int retryAfter;
+
+	private final LinkedList<Task> interactive = new LinkedList<Task>();
+	private final LinkedList<Task> batch = new LinkedList<Task>();
+	private final Map<String, Integer> runningPerVoice = new HashMap<String, Integer>();
+	private int running = 0;
+	private long completed = 0;
+	private long rejected = 0;
+
+	private final ExecutorService writers;
+
+	/**
+	 * Create a scheduler configured from the server properties.
+	 */
+	public SynthesisScheduler() {
+		this(MaryProperties.getInteger("server.http.synthesisthreads", Runtime.getRuntime().availableProcessors()), MaryProperties
+				.getInteger("server.http.queuelength", 50), MaryProperties.getInteger("server.http.maxrequestspervoice", 0),
+				MaryProperties.getInteger("server.http.retryafter", 5));
+	}
+
+	/**
+	 * Create a scheduler and start its worker threads.
+	 *
+	 * @param numWorkers
+	 *            number of requests that can run at the same time
+	 * @param maxQueued
+	 *            maximum number of requests waiting to be run
+	 * @param maxPerVoice
+	 *            maximum number of requests running at the same time for any one voice, or 0 for no limit
+	 * @param retryAfter
+	 *            number of seconds after which a rejected client should retry
+	 */
+	public SynthesisScheduler(int numWorkers, int maxQueued, int maxPerVoice, int retryAfter) {
+		if (numWorkers < 1) {
+			throw new IllegalArgumentException("Need at least one worker thread, got " + numWorkers);
+		}
+		logger = MaryUtils.getLogger("server");
+		this.maxQueued = maxQueued;
+		this.maxPerVoice = maxPerVoice;
+		this.retryAfter = retryAfter;
+		for (int i = 1; i <= numWorkers; i++) {
+			Thread worker = new Thread("Synthesis " + i) {
+				public void run() {
+					work();
+				}
+			};
+			worker.setDaemon(true);
+			worker.start();
+		}
+		// Writers only wait for audio data of requests that have been admitted, so their number is bounded by the queue:
+		writers = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "HTTPWriter " + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		logger.info("Synthesis scheduler: " + numWorkers + " worker threads, up to " + maxQueued + " waiting requests"
+				+ (maxPerVoice > 0 ? ", at most " + maxPerVoice + " running requests per voice" : ""));
+	}
+
+	/**
+	 * Queue a synthesis job.
+	 *
+	 * @param voiceName
+	 *            the name of the voice used by the job, for the per-voice limit; null if the job is not limited
+	 * @param priority
+	 *            the priority class of the job
+	 * @param job
+	 *            the work to do
+	 * @return a future giving access to the outcome of the job
+	 * @throws RejectedExecutionException
+	 *             if the queue is full
+	 */
+	public synchronized Future<Object> submit(String voiceName, Priority priority, Callable<Object> job)
+			throws RejectedExecutionException {
+		if (getQueueLength() >= maxQueued) {
+			rejected++;
+			logger.warn("Rejecting " + priority + " request: " + getQueueLength() + " requests waiting, " + running + " running");
+			throw new RejectedExecutionException("Server busy");
+		}
+		Task task = new Task(voiceName, job);
+		if (priority == Priority.BATCH) {
+			batch.add(task);
+		} else {
+			interactive.add(task);
+		}
+		notifyAll();
+		return task;
+	}
+
+	/**
+	 * Run a task writing output to the client, concurrently with the synthesis job producing that output.
+	 *
+	 * @param writer
+	 *            writer
+	 */
+	public void startWriter(Runnable writer) {
+		writers.execute(writer);
+	}
+
+	/**
+	 * The number of seconds after which a rejected client should retry.
+	 *
+	 * @return retryAfter
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	public synchronized int getQueueLength() {
+		return interactive.size() + batch.size();
+	}
+
+	public synchronized int getRunningCount() {
+		return running;
+	}
+
+	public synchronized long getCompletedCount() {
+		return completed;
+	}
+
+	public synchronized long getRejectedCount() {
+		return rejected;
+	}
+
+	/**
+	 * A plain-text summary of the scheduler state, one "name value" pair per line.
+	 *
+	 * @return the status
+	 */
+	public synchronized String getStatus() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("waiting.interactive ").append(interactive.size()).append('\n');
+		sb.append("waiting.batch ").append(batch.size()).append('\n');
+		sb.append("running ").append(running).append('\n');
+		for (Map.Entry<String, Integer> e : runningPerVoice.entrySet()) {
+			sb.append("running.").append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+		}
+		sb.append("completed ").append(completed).append('\n');
+		sb.append("rejected ").append(rejected).append('\n');
+		return sb.toString();
+	}
+
+	private void work() {
+		while (true) {
+			Task task;
+			synchronized (this) {
+				while ((task = takeNext()) == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				running++;
+				if (task.voiceName != null) {
+					Integer n = runningPerVoice.get(task.voiceName);
+					runningPerVoice.put(task.voiceName, n == null ? 1 : n + 1);
+				}
+			}
+			try {
+				task.run();
+			} finally {
+				synchronized (this) {
+					running--;
+					completed++;
+					if (task.voiceName != null) {
+						int n = runningPerVoice.get(task.voiceName) - 1;
+						if (n == 0) {
+							runningPerVoice.remove(task.voiceName);
+						} else {
+							runningPerVoice.put(task.voiceName, n);
+						}
+					}
+					// a voice may have dropped below its cap:
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove and return the first waiting task, interactive ones first, whose voice is below its cap. Must be called with the lock
+	 * held.
+	 *
+	 * @return a task, or null if no task can be run now
+	 */
+	private Task takeNext() {
+		Task task = takeNext(interactive);
+		if (task == null) {
+			task = takeNext(batch);
+		}
+		return task;
+	}
+
+	private Task takeNext(LinkedList<Task> queue) {
+		for (Iterator<Task> it = queue.iterator(); it.hasNext();) {
+			Task task = it.next();
+			if (task.isCancelled()) {
+				it.remove();
+			} else if (maxPerVoice <= 0 || task.voiceName == null || !runningPerVoice.containsKey(task.voiceName)
+					|| runningPerVoice.get(task.voiceName) < maxPerVoice) {
+				it.remove();
+				return task;
+			}
+		}
+		return null;
+	}
+
+	private static class Task extends FutureTask<Object> {
+		private final String voiceName;
+
+		Task(String voiceName, Callable<Object> job) {
+			super(job);
+			this.voiceName = voiceName;
+		}
+	}
+}
@@ -31,8 +31,11 @@ import javax.sound.sampled.AudioSystem;
 
 import marytts.htsengine.HMMVoice;
 import marytts.modules.synthesis.Voice;
+import marytts.util.MaryRuntimeUtils;
 import marytts.util.data.BufferedDoubleDataSource;
+import marytts.util.data.BufferedFloatDataSource;
 import marytts.util.data.DoubleDataSource;
+import marytts.util.data.DoubleFloatDataSource;
 import marytts.util.data.audio.AudioDoubleDataSource;
 import marytts.util.data.audio.DDSAudioInputStream;
 import marytts.util.math.MathUtils;
@@ -84,6 +87,11 @@ public class EffectsApplier {
 
 			if (tmpSignal != null) {
 				if (tmpSignal.getDataLength() == DoubleDataSource.NOT_SPECIFIED) {
+					if (MaryRuntimeUtils.useFloatAudio()) {
+						// the effects compute in double precision, but the buffered result only needs floats:
+						float[] data = new DoubleFloatDataSource(tmpSignal).getAllData();
+						return new DDSAudioInputStream(new BufferedFloatDataSource(data), audioformat);
+					}
 					double[] data = tmpSignal.getAllData();
 					tmpSignal = new BufferedDoubleDataSource(data);
 				}
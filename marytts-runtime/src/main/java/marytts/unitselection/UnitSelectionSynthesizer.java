@@ -30,6 +30,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -42,6 +43,7 @@ import marytts.modules.synthesis.Voice;
 import marytts.modules.synthesis.WaveformSynthesizer;
 import marytts.modules.synthesis.Voice.Gender;
 import marytts.server.MaryProperties;
+import marytts.server.ParallelStartup;
 import marytts.unitselection.concat.UnitConcatenator;
 import marytts.unitselection.concat.BaseUnitConcatenator.UnitData;
 import marytts.unitselection.data.Unit;
@@ -89,14 +91,20 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer {
 		// Register UnitSelection voices:
 		logger.debug("Register UnitSelection voices:");
 		List<String> voiceNames = MaryProperties.getList("unitselection.voices.list");
-		for (String voiceName : voiceNames) {
-			long time = System.currentTimeMillis();
-			Voice unitSelVoice = new UnitSelectionVoice(voiceName, this);
+		// Load the voices in parallel, then register them in the configured order:
+		ParallelStartup<Voice> voiceLoading = new ParallelStartup<Voice>();
+		for (final String voiceName : voiceNames) {
+			voiceLoading.add(voiceName, new Callable<Voice>() {
+				public Voice call() throws Exception {
+					return new UnitSelectionVoice(voiceName, UnitSelectionSynthesizer.this);
+				}
+			});
+		}
+		for (Voice unitSelVoice : voiceLoading.run()) {
 			logger.debug("Voice '" + unitSelVoice + "'");
 			Voice.registerVoice(unitSelVoice);
-			long newtime = System.currentTimeMillis() - time;
-			logger.info("Loading of voice " + voiceName + " took " + newtime + " milliseconds");
 		}
+		voiceLoading.logTimes(logger, "Loading unit selection voices");
 		logger.info("started.");
 	}
 
@@ -142,6 +142,7 @@ public class UnitSelectionVoice extends Voice {
 			InputStream cartStream = MaryProperties.needStream(header + ".cartFile");
 			CART cart = new MaryCARTReader().loadFromStream(cartStream);
 			cartStream.close();
+			cart.compile();
 			// get the backtrace information
 			int backtrace = MaryProperties.getInteger(header + ".cart.backtrace", 100);
 
@@ -187,6 +188,9 @@ public class UnitSelectionVoice extends Voice {
 				float sCostWeights = Float.parseFloat(MaryProperties.getProperty(header + ".viterbi.wSCosts", "0.33"));
 				unitSelector.load(database, targetCostWeights, sCostWeights, beamSize);
 			}
+			unitSelector.setVoiceName(name);
+			unitSelector.setUseArrayViterbi(MaryProperties.getBoolean(header + ".viterbi.arrays",
+					MaryProperties.getBoolean("unitselection.viterbi.arrays", false)));
 
 			// samplingRate -> bin, audioformat -> concatenator
 			// build Concatenator
@@ -212,6 +216,9 @@ public class UnitSelectionVoice extends Voice {
 				InputStream rightF0CartStream = MaryProperties.needStream(header + ".f0.cart.right");
 				f0Carts[2] = new MaryCARTReader().loadFromStream(rightF0CartStream);
 				rightF0CartStream.close();
+				for (CART f0Cart : f0Carts) {
+					f0Cart.compile();
+				}
 			}
 		} catch (MaryConfigurationException mce) {
 			throw mce;
@@ -44,10 +44,12 @@ import marytts.unitselection.analysis.ProsodyAnalyzer;
 import marytts.unitselection.data.TimelineReader;
 import marytts.unitselection.data.UnitDatabase;
 import marytts.unitselection.select.SelectedUnit;
+import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.data.BufferedDoubleDataSource;
 import marytts.util.data.Datagram;
 import marytts.util.data.DatagramDoubleDataSource;
+import marytts.util.data.DatagramFloatDataSource;
 import marytts.util.data.DoubleDataSource;
 import marytts.util.data.audio.DDSAudioInputStream;
 
@@ -201,6 +203,9 @@ public class BaseUnitConcatenator implements UnitConcatenator {
 			datagrams.addAll(Arrays.asList(frames));
 		}
 
+		if (MaryRuntimeUtils.useFloatAudio()) {
+			return new DDSAudioInputStream(new DatagramFloatDataSource(datagrams), audioformat);
+		}
 		DoubleDataSource audioSource = new DatagramDoubleDataSource(datagrams);
 		return new DDSAudioInputStream(new BufferedDoubleDataSource(audioSource), audioformat);
 	}
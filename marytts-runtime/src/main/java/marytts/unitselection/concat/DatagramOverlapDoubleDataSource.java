@@ -31,6 +31,9 @@ public class DatagramOverlapDoubleDataSource extends BufferedDoubleDataSource {
 	protected int p; // point to current datagrams/rightContext
 	protected int q; // point to current datagram within datagrams[p]
 	protected int totalRead; // count samples read from datagrams
+	// reused for the overlap-add of all right contexts:
+	private DynamicTwoHalvesWindow window = new DynamicTwoHalvesWindow(Window.HANNING);
+	private double[] context = new double[0];
 
 	/**
 	 * Construct an double data source from the given array of datagram arrays and right contexts.
@@ -111,12 +114,15 @@ public class DatagramOverlapDoubleDataSource extends BufferedDoubleDataSource {
 				if (q == 0 && p > 0 && rightContexts[p - 1] != null) {
 					// overlap-add situation
 					// window the data that we have just read with the left half of a HANN window:
-					new DynamicTwoHalvesWindow(Window.HANNING).applyInlineLeftHalf(buf, writePos, read);
+					window.applyInlineLeftHalf(buf, writePos, read);
 					// and overlap-add the previous right context, windowed with the right half of a HANN window:
-					double[] context = new double[(int) rightContexts[p - 1].getDuration()];
+					int contextLength = (int) rightContexts[p - 1].getDuration();
+					if (context.length < contextLength) {
+						context = new double[contextLength];
+					}
 					readDatagram(rightContexts[p - 1], context, 0);
-					new DynamicTwoHalvesWindow(Window.HANNING).applyInlineRightHalf(context, 0, context.length);
-					for (int i = 0, iMax = Math.min(read, context.length); i < iMax; i++) {
+					window.applyInlineRightHalf(context, 0, contextLength);
+					for (int i = 0, iMax = Math.min(read, contextLength); i < iMax; i++) {
 						buf[writePos + i] += context[i];
 					}
 				}
@@ -132,20 +138,14 @@ public class DatagramOverlapDoubleDataSource extends BufferedDoubleDataSource {
 		return readSum >= minLength;
 	}
 
+	/**
+	 * Decode the samples of d straight into target, without copying its data first; datagrams read from a memory-mapped timeline
+	 * are decoded from the mapped file.
+	 */
 	protected int readDatagram(Datagram d, double[] target, int pos) {
 		int dur = (int) d.getDuration();
-		byte[] frameAudio = d.getData();
-		assert frameAudio.length / 2 == dur : "expected datagram data length to be " + (dur * 2) + ", found " + frameAudio.length;
-		for (int i = 0; i < frameAudio.length; i += 2, pos++) {
-			int sample;
-			byte lobyte;
-			byte hibyte;
-			// big endian:
-			lobyte = frameAudio[i + 1];
-			hibyte = frameAudio[i];
-			sample = hibyte << 8 | lobyte & 0xFF;
-			target[pos] = sample / 32768.0;// normalise to range [-1, 1];
-		}
+		assert d.getLength() / 2 == dur : "expected datagram data length to be " + (dur * 2) + ", found " + d.getLength();
+		d.getSamples(target, pos);
 		return dur;
 	}
 }
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2004-2006 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.concat;
+
+import marytts.signalproc.window.Window;
+import marytts.util.data.BufferedFloatDataSource;
+import marytts.util.data.Datagram;
+import marytts.util.data.FloatDataSource;
+
+/**
+ * The float counterpart of {@link DatagramOverlapDoubleDataSource}: decodes the datagrams of the selected units straight into
+ * floats, and overlap-adds the right context of a unit, windowed with the right half of a Hann window, onto the start of the
+ * next unit, windowed with the left half.
+ */
+public class DatagramOverlapFloatDataSource extends BufferedFloatDataSource {
+	protected Datagram[][] datagrams;
+	protected Datagram[] rightContexts;
+	protected int p; // point to current datagrams/rightContext
+	protected int q; // point to current datagram within datagrams[p]
+	protected int totalRead; // count samples read from datagrams
+	// reused for the overlap-add of all right contexts:
+	private float[] context = new float[0];
+
+	/**
+	 * Construct a float data source from the given array of datagram arrays and right contexts.
+	 *
+	 * @param datagrams
+	 *            datagrams
+	 * @param rightContexts
+	 *            rightContexts
+	 */
+	public DatagramOverlapFloatDataSource(Datagram[][] datagrams, Datagram[] rightContexts) {
+		super((FloatDataSource) null);
+		this.datagrams = datagrams;
+		this.rightContexts = rightContexts;
+		dataLength = 0;
+		for (int i = 0; i < datagrams.length; i++) {
+			for (int j = 0; j < datagrams[i].length; j++) {
+				dataLength += datagrams[i][j].getDuration();
+			}
+		}
+		p = 0;
+		q = 0;
+	}
+
+	/**
+	 * Whether or not any more data can be read from this data source.
+	 *
+	 * @return true if another call to getData() will return data, false otherwise.
+	 */
+	public boolean hasMoreData() {
+		if (currentlyInBuffer() > 0 || totalRead < dataLength)
+			return true;
+		return false;
+	}
+
+	/**
+	 * The number of floats that can currently be read from this float data source without blocking. This number can change over
+	 * time.
+	 *
+	 * @return the number of floats that can currently be read without blocking
+	 */
+	public int available() {
+		int available = (int) (currentlyInBuffer() + dataLength - totalRead);
+		return available;
+	}
+
+	/**
+	 * Attempt to get more data from the input source. If less than this can be read, the possible amount will be read, but
+	 * canReadMore() will return false afterwards.
+	 *
+	 * @param minLength
+	 *            the amount of data to get from the input source
+	 * @return true if the requested amount could be read, false if none or less data could be read.
+	 */
+	protected boolean readIntoBuffer(int minLength) {
+		if (bufferSpaceLeft() < minLength) {
+			// current buffer cannot hold the data requested;
+			// need to make it larger
+			increaseBufferSize(minLength + currentlyInBuffer());
+		} else if (buf.length - writePos < minLength) {
+			compact(); // create a contiguous space for the new data
+		}
+		// Now we have a buffer that can hold at least minLength new data points
+		int readSum = 0;
+		// read blocks:
+
+		while (readSum < minLength && p < datagrams.length) {
+			if (q >= datagrams[p].length) {
+				p++;
+				q = 0;
+			} else {
+				Datagram next = datagrams[p][q];
+				int length = (int) next.getDuration();
+				if (buf.length < writePos + length) {
+					increaseBufferSize(writePos + length);
+				}
+				int read = readDatagram(next, buf, writePos);
+				if (q == 0 && p > 0 && rightContexts[p - 1] != null) {
+					// overlap-add situation
+					// window the data that we have just read with the left half of a HANN window:
+					double[] leftHalf = Window.get(Window.HANNING, 2 * read).getCoeffs();
+					for (int i = 0; i < read; i++) {
+						buf[writePos + i] *= leftHalf[i];
+					}
+					// and overlap-add the previous right context, windowed with the right half of a HANN window:
+					int contextLength = (int) rightContexts[p - 1].getDuration();
+					if (context.length < contextLength) {
+						context = new float[contextLength];
+					}
+					readDatagram(rightContexts[p - 1], context, 0);
+					double[] rightHalf = Window.get(Window.HANNING, 2 * contextLength).getCoeffs();
+					for (int i = 0, iMax = Math.min(read, contextLength); i < iMax; i++) {
+						buf[writePos + i] += context[i] * rightHalf[contextLength + i];
+					}
+				}
+				writePos += read;
+				readSum += read;
+				totalRead += read;
+				q++;
+			}
+		}
+		return readSum >= minLength;
+	}
+
+	/**
+	 * Decode the samples of d straight into target, without copying its data first; datagrams read from a memory-mapped timeline
+	 * are decoded from the mapped file.
+	 */
+	protected int readDatagram(Datagram d, float[] target, int pos) {
+		int dur = (int) d.getDuration();
+		assert d.getLength() / 2 == dur : "expected datagram data length to be " + (dur * 2) + ", found " + d.getLength();
+		d.getSamples(target, pos);
+		return dur;
+	}
+}
@@ -26,6 +26,7 @@ import javax.sound.sampled.AudioInputStream;
 
 import marytts.unitselection.data.Unit;
 import marytts.unitselection.select.SelectedUnit;
+import marytts.util.MaryRuntimeUtils;
 import marytts.util.data.BufferedDoubleDataSource;
 import marytts.util.data.Datagram;
 import marytts.util.data.DoubleDataSource;
@@ -192,6 +193,9 @@ public class OverlapUnitConcatenator extends BaseUnitConcatenator {
 			}
 		}
 
+		if (MaryRuntimeUtils.useFloatAudio()) {
+			return new DDSAudioInputStream(new DatagramOverlapFloatDataSource(datagrams, rightContexts), audioformat);
+		}
 		DoubleDataSource audioSource = new DatagramOverlapDoubleDataSource(datagrams, rightContexts);
 		return new DDSAudioInputStream(new BufferedDoubleDataSource(audioSource), audioformat);
 	}
@@ -24,6 +24,7 @@ import gnu.trove.TIntHashSet;
 import java.util.ArrayList;
 import java.util.List;
 
+import marytts.features.FeatureStore;
 import marytts.features.FeatureVector;
 import marytts.unitselection.select.DiphoneTarget;
 import marytts.unitselection.select.HalfPhoneTarget;
@@ -78,7 +79,8 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		int iPhoneme = targetCostFunction.getFeatureDefinition().getFeatureIndex("phone");
 		byte bleftName = targetCostFunction.getFeatureDefinition().getFeatureValueAsByte(iPhoneme, leftName);
 		byte brightName = targetCostFunction.getFeatureDefinition().getFeatureValueAsByte(iPhoneme, rightName);
-		FeatureVector[] fvs = targetCostFunction.getFeatureVectors();
+		FeatureStore store = targetCostFunction.getFeatureStore();
+		FeatureVector[] fvs = store != null ? null : targetCostFunction.getFeatureVectors();
 
 		// HashSet<DiphoneUnit> candidateUnitSet = new HashSet<DiphoneUnit>();
 		TIntHashSet candidateUnitSet = new TIntHashSet();
@@ -91,16 +93,14 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		// Now, clist is an array of halfphone unit indexes.
 		for (int i = 0; i < clist.length; i++) {
 			Unit unit = unitReader.units[clist[i]];
-			FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
-			byte bunitName = fv.byteValuedDiscreteFeatures[iPhoneme];
+			byte bunitName = getByteFeature(store, fvs, unit, iPhoneme);
 			// force correct phone symbol:
 			if (bunitName != bleftName)
 				continue;
 			int iRightNeighbour = clist[i] + 1;
 			if (iRightNeighbour < numUnits) {
 				Unit rightNeighbour = unitReader.units[iRightNeighbour];
-				FeatureVector rfv = fvs != null ? fvs[iRightNeighbour] : targetCostFunction.getFeatureVector(rightNeighbour);
-				byte brightUnitName = rfv.byteValuedDiscreteFeatures[iPhoneme];
+				byte brightUnitName = getByteFeature(store, fvs, rightNeighbour, iPhoneme);
 				if (brightUnitName == brightName) {
 					// Found a diphone -- add it to candidates
 					// DiphoneUnit diphoneUnit = new DiphoneUnit(unit, rightNeighbour);
@@ -117,16 +117,14 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 		// Now, clist is an array of halfphone unit indexes.
 		for (int i = 0; i < clist.length; i++) {
 			Unit unit = unitReader.units[clist[i]];
-			FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
-			byte bunitName = fv.byteValuedDiscreteFeatures[iPhoneme];
+			byte bunitName = getByteFeature(store, fvs, unit, iPhoneme);
 			// force correct phone symbol:
 			if (bunitName != brightName)
 				continue;
 			int iLeftNeighbour = clist[i] - 1;
 			if (iLeftNeighbour >= 0) {
 				Unit leftNeighbour = unitReader.units[iLeftNeighbour];
-				FeatureVector lfv = fvs != null ? fvs[iLeftNeighbour] : targetCostFunction.getFeatureVector(leftNeighbour);
-				byte bleftUnitName = lfv.byteValuedDiscreteFeatures[iPhoneme];
+				byte bleftUnitName = getByteFeature(store, fvs, leftNeighbour, iPhoneme);
 				if (bleftUnitName == bleftName) {
 					// Found a diphone -- add it to candidates
 					// DiphoneUnit diphoneUnit = new DiphoneUnit(leftNeighbour, unit);
@@ -136,24 +134,39 @@ public class DiphoneUnitDatabase extends UnitDatabase {
 			}
 		}
 
-		// now create ArrayList of ViterbiCandidates from the candidateUnitSet, blacklisting along the way:
-		ArrayList<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(candidateUnitSet.size());
+		// now create the diphone units from the candidateUnitSet, blacklisting along the way:
+		List<Unit> diphoneUnits = new ArrayList<Unit>(candidateUnitSet.size());
 		for (int leftIndex : candidateUnitSet.toArray()) {
 			DiphoneUnit diphoneUnit = new DiphoneUnit(unitReader.units[leftIndex], unitReader.units[leftIndex + 1]);
-			ViterbiCandidate candidate = new ViterbiCandidate(diphoneTarget, diphoneUnit, targetCostFunction);
 			// Blacklisting:
 			if (blacklist.equals("")) { // no blacklist
-				candidates.add(candidate);
+				diphoneUnits.add(diphoneUnit);
 			} else { // maybe exclude candidate
 				unitBasename = getFilename(diphoneUnit);
 				if (!blacklist.contains(unitBasename)) {
-					candidates.add(candidate);
+					diphoneUnits.add(diphoneUnit);
 				}
 			}
 		}
+		// and the ViterbiCandidates, computing their target costs in one go:
+		Unit[] units = diphoneUnits.toArray(new Unit[diphoneUnits.size()]);
+		double[] targetCosts = new double[units.length];
+		targetCostFunction.cost(diphoneTarget, units, targetCosts);
+		ArrayList<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(units.length);
+		for (int i = 0; i < units.length; i++) {
+			candidates.add(new ViterbiCandidate(diphoneTarget, units[i], targetCosts[i]));
+		}
 
 		logger.debug("Preselected " + candidateUnitSet.size() + " diphone candidates for target " + target);
 		return candidates;
 	}
 
+	private byte getByteFeature(FeatureStore store, FeatureVector[] fvs, Unit unit, int featureIndex) {
+		if (store != null) {
+			return store.getByteFeature(unit.index, featureIndex);
+		}
+		FeatureVector fv = fvs != null ? fvs[unit.index] : targetCostFunction.getFeatureVector(unit);
+		return fv.byteValuedDiscreteFeatures[featureIndex];
+	}
+
 }
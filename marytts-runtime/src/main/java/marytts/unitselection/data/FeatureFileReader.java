@@ -28,12 +28,19 @@ import java.nio.channels.FileChannel;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
+import marytts.features.FeatureStore;
 import marytts.features.FeatureVector;
 import marytts.util.data.MaryHeader;
 
+/**
+ * Reads the unit features of a voice database. The feature values are held in a {@link FeatureStore}; FeatureVector objects are
+ * only created when they are asked for.
+ */
 public class FeatureFileReader {
 	protected MaryHeader hdr;
 	protected FeatureDefinition featureDefinition;
+	// at least one of the two following variables is non-null after load():
+	protected FeatureStore featureStore;
 	protected FeatureVector[] featureVectors;
 
 	/**
@@ -84,11 +91,9 @@ public class FeatureFileReader {
 		}
 		featureDefinition = new FeatureDefinition(dis);
 		int numberOfUnits = dis.readInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
-		}
-
+		featureStore = new FeatureStore(featureDefinition, numberOfUnits);
+		featureStore.readFrom(dis);
+		dis.close();
 	}
 
 	protected void loadFromByteBuffer(String fileName) throws IOException, MaryConfigurationException {
@@ -105,22 +110,35 @@ public class FeatureFileReader {
 		}
 		featureDefinition = new FeatureDefinition(bb);
 		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
-		}
-
+		featureStore = new FeatureStore(featureDefinition, numberOfUnits);
+		featureStore.readFrom(bb);
 	}
 
 	/**
-	 * Get the unit feature vector for the given unit index number.
+	 * Get the unit feature vector for the given unit index number. Unless {@link #getFeatureVectors()} has been called, this
+	 * creates a new FeatureVector on each call; use {@link #getFeatureStore()} for repeated access.
 	 * 
 	 * @param unitIndex
 	 *            the absolute index number of a unit in the database
 	 * @return the corresponding feature vector
 	 */
 	public FeatureVector getFeatureVector(int unitIndex) {
-		return featureVectors[unitIndex];
+		if (featureVectors != null) {
+			return featureVectors[unitIndex];
+		}
+		return featureStore.getFeatureVector(unitIndex);
+	}
+
+	/**
+	 * Get the feature values of all units in columnar form.
+	 * 
+	 * @return the feature store
+	 */
+	public FeatureStore getFeatureStore() {
+		if (featureStore == null) { // subclass loaded feature vectors
+			featureStore = new FeatureStore(featureDefinition, featureVectors);
+		}
+		return featureStore;
 	}
 
 	/**
@@ -129,15 +147,19 @@ public class FeatureFileReader {
 	 * @return a new array containing the internal feature vectors
 	 */
 	public FeatureVector[] getCopyOfFeatureVectors() {
-		return (FeatureVector[]) featureVectors.clone();
+		return (FeatureVector[]) getFeatureVectors().clone();
 	}
 
 	/**
-	 * Return the internal array of feature vectors.
+	 * Return the internal array of feature vectors. On the first call, this creates one FeatureVector per unit, which for large
+	 * databases takes considerably more memory than the feature store.
 	 * 
 	 * @return the internal array of feature vectors.
 	 */
-	public FeatureVector[] getFeatureVectors() {
+	public synchronized FeatureVector[] getFeatureVectors() {
+		if (featureVectors == null) {
+			featureVectors = featureStore.toFeatureVectors();
+		}
 		return featureVectors;
 	}
 
@@ -172,6 +194,7 @@ public class FeatureFileReader {
 		FeatureVector[] newFV = new FeatureVector[this.getNumberOfUnits()];
 
 		for (int i = 0; i < this.getNumberOfUnits(); i++) {
+			FeatureVector fv = getFeatureVector(i);
 
 			// create features array
 			byte[] byteFeatures = new byte[noByteFeatures];
@@ -184,11 +207,11 @@ public class FeatureFileReader {
 
 			for (int j = 0; j < featureIndexes.length; j++) {
 				if (newFeatureDefinition.isByteFeature(j)) {
-					byteFeatures[countByteFeatures++] = featureVectors[i].getByteFeature(featureIndexes[j]);
+					byteFeatures[countByteFeatures++] = fv.getByteFeature(featureIndexes[j]);
 				} else if (newFeatureDefinition.isShortFeature(j)) {
-					shortFeatures[countShortFeatures++] = featureVectors[i].getShortFeature(featureIndexes[j]);
+					shortFeatures[countShortFeatures++] = fv.getShortFeature(featureIndexes[j]);
 				} else if (newFeatureDefinition.isContinuousFeature(j)) {
-					continiousFeatures[countFloatFeatures++] = featureVectors[i].getContinuousFeature(featureIndexes[j]);
+					continiousFeatures[countFloatFeatures++] = fv.getContinuousFeature(featureIndexes[j]);
 				}
 			}
 
@@ -206,7 +229,7 @@ public class FeatureFileReader {
 	 * @return the corresponding feature vector
 	 */
 	public FeatureVector getFeatureVector(Unit unit) {
-		return featureVectors[unit.index];
+		return getFeatureVector(unit.index);
 	}
 
 	public FeatureDefinition getFeatureDefinition() {
@@ -214,6 +237,9 @@ public class FeatureFileReader {
 	}
 
 	public int getNumberOfUnits() {
+		if (featureStore != null) {
+			return featureStore.getNumberOfUnits();
+		}
 		return (featureVectors.length);
 	}
 }
@@ -28,7 +28,7 @@ import java.nio.channels.FileChannel;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
-import marytts.features.FeatureVector;
+import marytts.features.FeatureStore;
 import marytts.util.data.MaryHeader;
 
 public class HalfPhoneFeatureFileReader extends FeatureFileReader {
@@ -58,10 +58,9 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader {
 		assert leftWeights.featureEquals(rightWeights) : "Halfphone unit feature file contains incompatible feature definitions for left and right units -- this should not happen!";
 		featureDefinition = leftWeights; // one of them, for super class
 		int numberOfUnits = dis.readInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, dis);
-		}
+		featureStore = new FeatureStore(featureDefinition, numberOfUnits);
+		featureStore.readFrom(dis);
+		dis.close();
 	}
 
 	@Override
@@ -82,10 +81,8 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader {
 		assert leftWeights.featureEquals(rightWeights) : "Halfphone unit feature file contains incompatible feature definitions for left and right units -- this should not happen!";
 		featureDefinition = leftWeights; // one of them, for super class
 		int numberOfUnits = bb.getInt();
-		featureVectors = new FeatureVector[numberOfUnits];
-		for (int i = 0; i < numberOfUnits; i++) {
-			featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
-		}
+		featureStore = new FeatureStore(featureDefinition, numberOfUnits);
+		featureStore.readFrom(bb);
 	}
 
 	public FeatureDefinition getLeftWeights() {
@@ -24,7 +24,7 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import marytts.features.FeatureDefinition;
-import marytts.features.FeatureVector;
+import marytts.features.FeatureStore;
 
 /**
  * Iterator to provide the sentences in a given feature file, in sequence.
@@ -128,11 +128,11 @@ public class SentenceIterator implements Iterator<Sentence> {
 	 *            the unit index
 	 */
 	private boolean isSentenceStart(int index) {
-		FeatureVector fv = features.getFeatureVector(index);
+		FeatureStore store = features.getFeatureStore();
 
-		return fv.getByteFeature(fiSentenceStart) == 0 // first word in sentence
-				&& fv.getByteFeature(fiWordStart) == 0 // first segment in word
-				&& (!isHalfphone || fv.getByteFeature(fiLR) == fvLR_L); // for halfphones, it's the left half
+		return store.getByteFeature(index, fiSentenceStart) == 0 // first word in sentence
+				&& store.getByteFeature(index, fiWordStart) == 0 // first segment in word
+				&& (!isHalfphone || store.getByteFeature(index, fiLR) == fvLR_L); // for halfphones, it's the left half
 	}
 
 	/**
@@ -142,11 +142,11 @@ public class SentenceIterator implements Iterator<Sentence> {
 	 *            the unit index
 	 */
 	private boolean isSentenceEnd(int index) {
-		FeatureVector fv = features.getFeatureVector(index);
+		FeatureStore store = features.getFeatureStore();
 
-		return fv.getByteFeature(fiSentenceEnd) == 0 // last word in sentence
-				&& fv.getByteFeature(fiWordEnd) == 0 // last segment in word
-				&& (!isHalfphone || fv.getByteFeature(fiLR) == fvLR_R); // for halfphones, it's the right half
+		return store.getByteFeature(index, fiSentenceEnd) == 0 // last word in sentence
+				&& store.getByteFeature(index, fiWordEnd) == 0 // last segment in word
+				&& (!isHalfphone || store.getByteFeature(index, fiLR) == fvLR_R); // for halfphones, it's the right half
 	}
 
 }
@@ -20,7 +20,7 @@
 
 package marytts.unitselection.data;
 
-import marytts.features.FeatureVector;
+import marytts.features.FeatureStore;
 
 /**
  * This class represents the section of a feature file which constitutes a sentence.
@@ -57,9 +57,9 @@ public class Syllable {
 	public int getSyllableNucleusIndex() {
 		int fiVowel = features.getFeatureDefinition().getFeatureIndex("ph_vc");
 		byte fvVowel_Plus = features.getFeatureDefinition().getFeatureValueAsByte(fiVowel, "+");
+		FeatureStore store = features.getFeatureStore();
 		for (int i = firstUnitIndex; i <= lastUnitIndex; i++) {
-			FeatureVector fv = features.getFeatureVector(i);
-			if (fv.getByteFeature(fiVowel) == fvVowel_Plus) {
+			if (store.getByteFeature(i, fiVowel) == fvVowel_Plus) {
 				return i;
 			}
 		}
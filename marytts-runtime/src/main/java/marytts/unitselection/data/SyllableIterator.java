@@ -24,7 +24,7 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import marytts.features.FeatureDefinition;
-import marytts.features.FeatureVector;
+import marytts.features.FeatureStore;
 
 /**
  * @author marc
@@ -135,20 +135,20 @@ public class SyllableIterator implements Iterator<Syllable> {
 	}
 
 	private boolean isSyllableStart(int index) {
-		FeatureVector fv = features.getFeatureVector(index);
+		FeatureStore store = features.getFeatureStore();
 
-		return fv.getByteFeature(fiPhone) != fvPhone_0 // not an edge unit
-				&& fv.getByteFeature(fiPhone) != fvPhone_Silence // not silence
-				&& fv.getByteFeature(fiSylStart) == 0 // first segment in syllable
-				&& (!isHalfphone || fv.getByteFeature(fiLR) == fvLR_L); // if halfphone, it's the left half
+		return store.getByteFeature(index, fiPhone) != fvPhone_0 // not an edge unit
+				&& store.getByteFeature(index, fiPhone) != fvPhone_Silence // not silence
+				&& store.getByteFeature(index, fiSylStart) == 0 // first segment in syllable
+				&& (!isHalfphone || store.getByteFeature(index, fiLR) == fvLR_L); // if halfphone, it's the left half
 	}
 
 	private boolean isSyllableEnd(int index) {
-		FeatureVector fv = features.getFeatureVector(index);
+		FeatureStore store = features.getFeatureStore();
 
-		return fv.getByteFeature(fiPhone) != fvPhone_0 // not an edge unit
-				&& fv.getByteFeature(fiPhone) != fvPhone_Silence // not silence
-				&& fv.getByteFeature(fiSylEnd) == 0 // last segment in syllable
-				&& (!isHalfphone || fv.getByteFeature(fiLR) == fvLR_R); // if halfphone, it's the right half
+		return store.getByteFeature(index, fiPhone) != fvPhone_0 // not an edge unit
+				&& store.getByteFeature(index, fiPhone) != fvPhone_Silence // not silence
+				&& store.getByteFeature(index, fiSylEnd) == 0 // last segment in syllable
+				&& (!isHalfphone || store.getByteFeature(index, fiLR) == fvLR_R); // if halfphone, it's the right half
 	}
 }
@@ -42,12 +42,14 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Vector;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.util.MaryUtils;
 import marytts.util.Pair;
+import marytts.util.data.BufferDatagram;
 import marytts.util.data.Datagram;
 import marytts.util.data.MaryHeader;
 import marytts.util.io.StreamUtils;
@@ -75,13 +77,22 @@ public class TimelineReader {
 	 */
 	protected long totalDuration = -1;
 
-	protected int datagramsBytePos = 0;
-	protected int timeIdxBytePos = 0;
+	protected long datagramsBytePos = 0;
+	protected long timeIdxBytePos = 0;
 
-	// exactly one of the two following variables will be non-null after load():
-	private MappedByteBuffer mappedBB = null;
+	// exactly one of mappedSegments and fileChannel will be non-null after load().
+	// A single MappedByteBuffer cannot be larger than 2 GB, so the datagram zone is mapped as a sequence of segments, each
+	// starting at an index position; segment i is mapped from segmentStarts[i] up to the datagram following segmentStarts[i+1],
+	// so that any datagram reached by hopping from an index position in segment i can be read from segment i.
+	private MappedByteBuffer[] mappedSegments = null;
+	private long[] segmentStarts = null;
 	private FileChannel fileChannel = null;
 
+	/**
+	 * The maximum size of one mapped segment; can be set to a smaller value for testing.
+	 */
+	int maxSegmentBytes = Integer.MAX_VALUE;
+
 	/****************/
 	/* CONSTRUCTORS */
 	/****************/
@@ -128,6 +139,25 @@ public class TimelineReader {
 		}
 	}
 
+	/**
+	 * Construct a timeline from the given file name, memory-mapping it in segments of at most maxSegmentBytes. For testing only.
+	 * 
+	 * @param fileName
+	 *            The file to read the timeline from.
+	 * @param maxSegmentBytes
+	 *            the maximum size of one mapped segment.
+	 * @throws MaryConfigurationException
+	 *             if no timeline reader can be instantiated from fileName
+	 */
+	TimelineReader(String fileName, int maxSegmentBytes) throws MaryConfigurationException {
+		this.maxSegmentBytes = maxSegmentBytes;
+		try {
+			load(fileName, true);
+		} catch (Exception e) {
+			throw new MaryConfigurationException("Cannot load timeline file from " + fileName, e);
+		}
+	}
+
 	/**
 	 * Only subclasses can instantiate a TimelineReader object that doesn't call {@link #load(String)}. It is their responsibility
 	 * then to ensure the fundamental guarantee.
@@ -196,8 +226,8 @@ public class TimelineReader {
 		}
 
 		/* Load the positions of the various subsequent components */
-		datagramsBytePos = (int) headerBB.getLong();
-		timeIdxBytePos = (int) headerBB.getLong();
+		datagramsBytePos = headerBB.getLong();
+		timeIdxBytePos = headerBB.getLong();
 		if (timeIdxBytePos < datagramsBytePos) {
 			throw new MaryConfigurationException("File seems corrupt: index is expected after data, not before");
 		}
@@ -211,16 +241,18 @@ public class TimelineReader {
 		idx = new Index(indexBB);
 
 		if (tryMemoryMapping) {
-			// Try if we can use a mapped byte buffer:
+			// Try if we can use mapped byte buffers:
 			try {
-				mappedBB = fc.map(FileChannel.MapMode.READ_ONLY, datagramsBytePos, timeIdxBytePos - datagramsBytePos);
+				mapSegments(fc);
 				file.close(); // if map() succeeded, we don't need the file anymore.
 			} catch (IOException ome) {
+				mappedSegments = null;
+				segmentStarts = null;
 				MaryUtils.getLogger("Timeline").warn(
-						"Cannot use memory mapping for timeline file '" + fileName + "' -- falling back to piecewise reading");
+						"Cannot use memory mapping for timeline file '" + fileName + "' -- falling back to piecewise reading", ome);
 			}
 		}
-		if (!tryMemoryMapping || mappedBB == null) { // use piecewise reading
+		if (!tryMemoryMapping || mappedSegments == null) { // use piecewise reading
 			fileChannel = fc;
 			assert fileChannel != null;
 			// and leave file open
@@ -229,7 +261,60 @@ public class TimelineReader {
 		// postconditions:
 		assert idx != null;
 		assert procHdr != null;
-		assert fileChannel == null && mappedBB != null || fileChannel != null && mappedBB == null;
+		assert fileChannel == null && mappedSegments != null || fileChannel != null && mappedSegments == null;
+	}
+
+	/**
+	 * Map the datagram zone into memory, as one segment if it fits into maxSegmentBytes, or as several segments starting at index
+	 * positions otherwise.
+	 * 
+	 * @param fc
+	 *            the file channel to map
+	 * @throws IOException
+	 *             if the data cannot be mapped, or if the datagrams between two index positions do not fit into one segment.
+	 */
+	private void mapSegments(FileChannel fc) throws IOException {
+		// The distinct datagram positions pointed to by the index, in rising order:
+		long[] ptrs = new long[idx.getNumIdx()];
+		int numPtrs = 0;
+		for (int i = 0; i < ptrs.length; i++) {
+			long ptr = idx.getIdxField(i).bytePtr;
+			if (ptr > datagramsBytePos && (numPtrs == 0 || ptr > ptrs[numPtrs - 1])) {
+				ptrs[numPtrs++] = ptr;
+			}
+		}
+
+		ArrayList<Long> starts = new ArrayList<Long>();
+		ArrayList<Long> ends = new ArrayList<Long>();
+		long start = datagramsBytePos;
+		int next = 0; // the first pointer after start
+		while (timeIdxBytePos - start > maxSegmentBytes) {
+			// Find the last pointer p after start such that the datagram at p still fits into the segment:
+			int last = -1;
+			while (next < numPtrs && (next + 1 < numPtrs ? ptrs[next + 1] : timeIdxBytePos) - start <= maxSegmentBytes) {
+				last = next;
+				next++;
+			}
+			if (last == -1) {
+				throw new IOException("Datagrams between index positions " + start + " and "
+						+ (next < numPtrs ? ptrs[next] : timeIdxBytePos) + " do not fit into one mapped segment");
+			}
+			starts.add(start);
+			ends.add(last + 1 < numPtrs ? ptrs[last + 1] : timeIdxBytePos);
+			start = ptrs[last];
+			next = last + 1;
+		}
+		starts.add(start);
+		ends.add(timeIdxBytePos);
+
+		MappedByteBuffer[] segments = new MappedByteBuffer[starts.size()];
+		long[] segStarts = new long[starts.size()];
+		for (int i = 0; i < segments.length; i++) {
+			segStarts[i] = starts.get(i);
+			segments[i] = fc.map(FileChannel.MapMode.READ_ONLY, segStarts[i], ends.get(i) - segStarts[i]);
+		}
+		mappedSegments = segments;
+		segmentStarts = segStarts;
 	}
 
 	/**
@@ -397,6 +482,9 @@ public class TimelineReader {
 	/**
 	 * Read and return the upcoming datagram from the given byte buffer. Subclasses should override this method to create
 	 * subclasses of Datagram.
+	 * <p>
+	 * If the timeline is memory-mapped, the datagram is a {@link BufferDatagram} which refers to its data in the mapped file
+	 * instead of copying it.
 	 * 
 	 * @param bb
 	 *            the timeline byte buffer to read from
@@ -409,8 +497,15 @@ public class TimelineReader {
 		if (bb.position() == bb.limit()) {
 			return null;
 		}
+		// A piecewise loaded buffer may end in the middle of a datagram header:
+		if (bb.limit() - bb.position() < Datagram.NUM_HEADER_BYTES) {
+			return null;
+		}
 		// Else, read the datagram from the file
 		try {
+			if (mappedSegments != null) {
+				return new BufferDatagram(bb);
+			}
 			return new Datagram(bb);
 		} catch (IOException ioe) {
 			return null;
@@ -482,7 +577,7 @@ public class TimelineReader {
 	 *             , BufferUnderflowException if no byte buffer can be obtained for the requested time.
 	 */
 	protected Pair<ByteBuffer, Long> getByteBufferAtTime(long targetTimeInSamples) throws IOException, BufferUnderflowException {
-		if (mappedBB != null) {
+		if (mappedSegments != null) {
 			return getMappedByteBufferAtTime(targetTimeInSamples);
 		} else {
 			return loadByteBufferAtTime(targetTimeInSamples);
@@ -491,13 +586,17 @@ public class TimelineReader {
 
 	protected Pair<ByteBuffer, Long> getMappedByteBufferAtTime(long targetTimeInSamples) throws IllegalArgumentException,
 			IOException {
-		assert mappedBB != null;
+		assert mappedSegments != null;
 		/* Seek for the time index which comes just before the requested time */
 		IdxField idxFieldBefore = idx.getIdxFieldBefore(targetTimeInSamples);
 		long time = idxFieldBefore.timePtr;
-		int bytePos = (int) (idxFieldBefore.bytePtr - datagramsBytePos);
-		ByteBuffer bb = mappedBB.duplicate();
-		bb.position(bytePos);
+		/* The segment is the last one starting at or before the index position */
+		int segment = Arrays.binarySearch(segmentStarts, idxFieldBefore.bytePtr);
+		if (segment < 0) {
+			segment = -segment - 2;
+		}
+		ByteBuffer bb = mappedSegments[segment].duplicate();
+		bb.position((int) (idxFieldBefore.bytePtr - segmentStarts[segment]));
 		time = hopToTime(bb, time, targetTimeInSamples);
 		return new Pair<ByteBuffer, Long>(bb, time);
 	}
@@ -517,8 +616,11 @@ public class TimelineReader {
 
 		while (true) {
 			if (!canReadDatagramHeader(bb)) {
+				bytePos += bb.position();
 				bb = loadByteBuffer(bytePos, bufSize);
-				assert canReadDatagramHeader(bb);
+				if (!canReadDatagramHeader(bb)) {
+					throw new BufferUnderflowException(); // no datagram at or after the requested time
+				}
 			}
 			int posBefore = bb.position();
 			Datagram d = new Datagram(bb, false);
@@ -527,6 +629,7 @@ public class TimelineReader {
 				int datagramNumBytes = Datagram.NUM_HEADER_BYTES + d.getLength();
 				// need to make sure we return a byte buffer from which d can be read
 				if (!canReadAmount(bb, datagramNumBytes)) {
+					bytePos += posBefore;
 					bb = loadByteBuffer(bytePos, Math.max(datagramNumBytes, bufSize));
 				}
 				assert canReadAmount(bb, datagramNumBytes);
@@ -556,6 +659,9 @@ public class TimelineReader {
 	 *             if the data cannot be read from fileChannel
 	 */
 	private ByteBuffer loadByteBuffer(long bytePos, int bufSize) throws IOException {
+		if (bytePos + bufSize > timeIdxBytePos) { // must not read index data as datagrams
+			bufSize = (int) (timeIdxBytePos - bytePos);
+		}
 		ByteBuffer bb = ByteBuffer.allocate(bufSize);
 		fileChannel.read(bb, bytePos); // this will block if another thread is currently reading from fileChannel
 		bb.limit(bb.position());
@@ -127,12 +127,16 @@ public class UnitDatabase {
 		logger.debug("For target " + target + ", selected " + clist.length + " units");
 
 		// Now, clist is an array of unit indexes.
-		List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>();
+		Unit[] units = new Unit[clist.length];
 		for (int i = 0; i < clist.length; i++) {
-			// The target is the same for all these candidates in the queue
-			// remember the actual unit:
-			Unit unit = unitReader.getUnit(clist[i]);
-			candidates.add(new ViterbiCandidate(target, unit, targetCostFunction));
+			units[i] = unitReader.getUnit(clist[i]);
+		}
+		// The target is the same for all these candidates, so compute their target costs in one go:
+		double[] targetCosts = new double[units.length];
+		targetCostFunction.cost(target, units, targetCosts);
+		List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(units.length);
+		for (int i = 0; i < units.length; i++) {
+			candidates.add(new ViterbiCandidate(target, units[i], targetCosts[i]));
 		}
 
 		// Blacklisting without crazy performance drop:
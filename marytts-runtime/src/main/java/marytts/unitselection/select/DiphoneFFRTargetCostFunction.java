@@ -25,6 +25,7 @@ import java.io.InputStream;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureStore;
 import marytts.features.FeatureVector;
 import marytts.unitselection.data.DiphoneUnit;
 import marytts.unitselection.data.FeatureFileReader;
@@ -93,7 +94,7 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 	}
 
 	public FeatureVector getFeatureVector(Unit unit) {
-		return tcfForHalfphones.featureVectors[unit.index];
+		return tcfForHalfphones.getFeatureVector(unit);
 	}
 
 	/**
@@ -117,6 +118,40 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 		return tcfForHalfphones.cost(dt.left, du.left) + tcfForHalfphones.cost(dt.right, du.right);
 	}
 
+	/**
+	 * Compute the goodness-of-fit of a number of units for one target.
+	 * 
+	 * @param target
+	 *            target
+	 * @param units
+	 *            the candidate units
+	 * @param costs
+	 *            an array of at least units.length elements, in which the cost of units[i] is stored at position i.
+	 */
+	public void cost(Target target, Unit[] units, double[] costs) {
+		if (target instanceof HalfPhoneTarget) {
+			tcfForHalfphones.cost(target, units, costs);
+			return;
+		}
+		if (!(target instanceof DiphoneTarget))
+			throw new IllegalArgumentException("This target cost function can only be called for diphone and half-phone targets!");
+		DiphoneTarget dt = (DiphoneTarget) target;
+		Unit[] lefts = new Unit[units.length];
+		Unit[] rights = new Unit[units.length];
+		for (int k = 0; k < units.length; k++) {
+			if (!(units[k] instanceof DiphoneUnit))
+				throw new IllegalArgumentException("Diphone targets need diphone units!");
+			lefts[k] = ((DiphoneUnit) units[k]).left;
+			rights[k] = ((DiphoneUnit) units[k]).right;
+		}
+		double[] rightCosts = new double[units.length];
+		tcfForHalfphones.cost(dt.left, lefts, costs);
+		tcfForHalfphones.cost(dt.right, rights, rightCosts);
+		for (int k = 0; k < units.length; k++) {
+			costs[k] += rightCosts[k];
+		}
+	}
+
 	/**
 	 * Compute the features for a given target, and store them in the target.
 	 * 
@@ -142,4 +177,11 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction {
 		return null;
 	}
 
+	public FeatureStore getFeatureStore() {
+		if (tcfForHalfphones != null) {
+			return tcfForHalfphones.getFeatureStore();
+		}
+		return null;
+	}
+
 }
@@ -27,6 +27,7 @@ import java.io.InputStreamReader;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureStore;
 import marytts.features.FeatureVector;
 import marytts.features.TargetFeatureComputer;
 import marytts.unitselection.data.FeatureFileReader;
@@ -38,9 +39,15 @@ import marytts.util.MaryUtils;
 public class FFRTargetCostFunction implements TargetCostFunction {
 	protected WeightFunc[] weightFunction;
 	protected TargetFeatureComputer targetFeatureComputer;
+	// the unit features; subclasses may instead provide featureVectors and override the cost methods
+	protected FeatureStore featureStore;
 	protected FeatureVector[] featureVectors;
 	protected FeatureDefinition featureDefinition;
 	protected boolean[] weightsNonZero;
+	// the indexes of the features with non-zero weights, per feature type, counting from 0 within each type:
+	protected int[] nonZeroByteFeatures;
+	protected int[] nonZeroShortFeatures;
+	protected int[] nonZeroContinuousFeatures;
 
 	protected boolean debugShowCostGraph = false;
 	protected double[] cumulWeightedCosts = null;
@@ -66,13 +73,18 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		nCostComputations++; // for debug
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
 		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
 		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
 		int nFloats = targetFeatures.continuousFeatures.length;
-		assert nBytes == unitFeatures.byteValuedDiscreteFeatures.length;
-		assert nShorts == unitFeatures.shortValuedDiscreteFeatures.length;
-		assert nFloats == unitFeatures.continuousFeatures.length;
+		assert nBytes == featureStore.getNumberOfByteFeatures();
+		assert nShorts == featureStore.getNumberOfShortFeatures();
+		assert nFloats == featureStore.getNumberOfContinuousFeatures();
+		// the unit's features start at these offsets in the feature store:
+		byte[] unitBytes = featureStore.getByteFeatures();
+		int byteOffset = unit.index * nBytes;
+		short[] unitShorts = featureStore.getShortFeatures();
+		int shortOffset = unit.index * nShorts - nBytes;
+		float[] unitFloats = featureStore.getContinuousFeatures();
 
 		float[] weightVector = weights.getFeatureWeights();
 		// Now the actual computation
@@ -84,12 +96,12 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 					float weight = weightVector[i];
 					if (featureDefinition.hasSimilarityMatrix(i)) {
 						byte targetFeatValueIndex = targetFeatures.byteValuedDiscreteFeatures[i];
-						byte unitFeatValueIndex = unitFeatures.byteValuedDiscreteFeatures[i];
+						byte unitFeatValueIndex = unitBytes[byteOffset + i];
 						float similarity = featureDefinition.getSimilarity(i, unitFeatValueIndex, targetFeatValueIndex);
 						cost += similarity * weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += similarity * weight;
-					} else if (targetFeatures.byteValuedDiscreteFeatures[i] != unitFeatures.byteValuedDiscreteFeatures[i]) {
+					} else if (targetFeatures.byteValuedDiscreteFeatures[i] != unitBytes[byteOffset + i]) {
 						cost += weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += weight;
@@ -103,8 +115,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 				if (weightsNonZero[i]) {
 					float weight = weightVector[i];
 					// if (targetFeatures.getShortFeature(i) != unitFeatures.getShortFeature(i)) {
-					if (targetFeatures.shortValuedDiscreteFeatures[i - nBytes] != unitFeatures.shortValuedDiscreteFeatures[i
-							- nBytes]) {
+					if (targetFeatures.shortValuedDiscreteFeatures[i - nBytes] != unitShorts[shortOffset + i]) {
 						cost += weight;
 						if (debugShowCostGraph)
 							cumulWeightedCosts[i] += weight;
@@ -115,13 +126,14 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		// continuous features:
 		if (nFloats > 0) {
 			int nDiscrete = nBytes + nShorts;
+			int floatOffset = unit.index * nFloats - nDiscrete;
 			for (int i = nDiscrete, n = nDiscrete + nFloats; i < n; i++) {
 				if (weightsNonZero[i]) {
 					float weight = weightVector[i];
 					// float a = targetFeatures.getContinuousFeature(i);
 					float a = targetFeatures.continuousFeatures[i - nDiscrete];
 					// float b = unitFeatures.getContinuousFeature(i);
-					float b = unitFeatures.continuousFeatures[i - nDiscrete];
+					float b = unitFloats[floatOffset + i];
 					// if (!Float.isNaN(a) && !Float.isNaN(b)) {
 					// Implementation of isNaN() is: (v != v).
 					if (!(a != a) && !(b != b)) {
@@ -137,6 +149,124 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		return cost;
 	}
 
+	/**
+	 * Compute the goodness-of-fit of a number of units for one target.
+	 *
+	 * @param target
+	 *            target
+	 * @param units
+	 *            the candidate units
+	 * @param costs
+	 *            an array of at least units.length elements, in which the cost of units[i] is stored at position i.
+	 */
+	public void cost(Target target, Unit[] units, double[] costs) {
+		cost(target, units, costs, featureDefinition, weightFunction);
+	}
+
+	/**
+	 * Compute the cost of each unit as {@link #cost(Target, Unit, FeatureDefinition, WeightFunc[])} does, in the same order of
+	 * summation, but look up the target values and weights of the features with non-zero weights only once for all units.
+	 *
+	 * @param target
+	 *            target
+	 * @param units
+	 *            the candidate units
+	 * @param costs
+	 *            the array in which to store the costs
+	 * @param weights
+	 *            the feature weights to use
+	 * @param weightFunctions
+	 *            the weight functions of the continuous features
+	 */
+	protected void cost(Target target, Unit[] units, double[] costs, FeatureDefinition weights, WeightFunc[] weightFunctions) {
+		if (featureStore == null || debugShowCostGraph) {
+			// unit-by-unit computation for subclasses using feature vectors, and for the cost graph:
+			for (int k = 0; k < units.length; k++) {
+				costs[k] = cost(target, units[k], weights, weightFunctions);
+			}
+			return;
+		}
+		nCostComputations += units.length; // for debug
+		FeatureVector targetFeatures = target.getFeatureVector();
+		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
+		int nBytes = featureStore.getNumberOfByteFeatures();
+		int nShorts = featureStore.getNumberOfShortFeatures();
+		int nFloats = featureStore.getNumberOfContinuousFeatures();
+		assert nBytes == targetFeatures.byteValuedDiscreteFeatures.length;
+		assert nShorts == targetFeatures.shortValuedDiscreteFeatures.length;
+		assert nFloats == targetFeatures.continuousFeatures.length;
+		byte[] unitBytes = featureStore.getByteFeatures();
+		short[] unitShorts = featureStore.getShortFeatures();
+		float[] unitFloats = featureStore.getContinuousFeatures();
+		float[] weightVector = weights.getFeatureWeights();
+
+		// Target values and weights of the features to compare:
+		int[] byteFeatures = nonZeroByteFeatures;
+		int nb = byteFeatures.length;
+		byte[] targetBytes = new byte[nb];
+		float[] byteWeights = new float[nb];
+		boolean[] bytesSimilarity = new boolean[nb];
+		for (int j = 0; j < nb; j++) {
+			int i = byteFeatures[j];
+			targetBytes[j] = targetFeatures.byteValuedDiscreteFeatures[i];
+			byteWeights[j] = weightVector[i];
+			bytesSimilarity[j] = featureDefinition.hasSimilarityMatrix(i);
+		}
+		int[] shortFeatures = nonZeroShortFeatures;
+		int ns = shortFeatures.length;
+		short[] targetShorts = new short[ns];
+		float[] shortWeights = new float[ns];
+		for (int j = 0; j < ns; j++) {
+			int i = shortFeatures[j];
+			targetShorts[j] = targetFeatures.shortValuedDiscreteFeatures[i];
+			shortWeights[j] = weightVector[nBytes + i];
+		}
+		// continuous features for which the target value is NaN never add a cost, so leave them out:
+		int[] floatFeatures = new int[nonZeroContinuousFeatures.length];
+		float[] targetFloats = new float[floatFeatures.length];
+		float[] floatWeights = new float[floatFeatures.length];
+		WeightFunc[] floatFunctions = new WeightFunc[floatFeatures.length];
+		int nf = 0;
+		for (int i : nonZeroContinuousFeatures) {
+			float a = targetFeatures.continuousFeatures[i];
+			if (!(a != a)) {
+				floatFeatures[nf] = i;
+				targetFloats[nf] = a;
+				floatWeights[nf] = weightVector[nBytes + nShorts + i];
+				floatFunctions[nf] = weightFunctions[i];
+				nf++;
+			}
+		}
+
+		for (int k = 0; k < units.length; k++) {
+			int unitIndex = units[k].index;
+			double cost = 0;
+			int offset = unitIndex * nBytes;
+			for (int j = 0; j < nb; j++) {
+				byte unitValue = unitBytes[offset + byteFeatures[j]];
+				if (bytesSimilarity[j]) {
+					cost += featureDefinition.getSimilarity(byteFeatures[j], unitValue, targetBytes[j]) * byteWeights[j];
+				} else if (targetBytes[j] != unitValue) {
+					cost += byteWeights[j];
+				}
+			}
+			offset = unitIndex * nShorts;
+			for (int j = 0; j < ns; j++) {
+				if (targetShorts[j] != unitShorts[offset + shortFeatures[j]]) {
+					cost += shortWeights[j];
+				}
+			}
+			offset = unitIndex * nFloats;
+			for (int j = 0; j < nf; j++) {
+				float b = unitFloats[offset + floatFeatures[j]];
+				if (!(b != b)) {
+					cost += floatWeights[j] * floatFunctions[j].cost(targetFloats[j], b);
+				}
+			}
+			costs[k] = cost;
+		}
+	}
+
 	/**
 	 * Compute the goodness-of-fit between given unit and given target for a given feature
 	 *
@@ -162,7 +292,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 
 		FeatureVector targetFeatures = target.getFeatureVector();
 		assert targetFeatures != null : "Target " + target + " does not have pre-computed feature vector";
-		FeatureVector unitFeatures = featureVectors[unit.index];
+		FeatureVector unitFeatures = getFeatureVector(unit);
 		int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
 		int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
 		int nFloats = targetFeatures.continuousFeatures.length;
@@ -249,7 +379,7 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	@Override
 	public void load(FeatureFileReader ffr, InputStream weightsStream, FeatureProcessorManager featProc) throws IOException {
 		this.featureDefinition = ffr.getFeatureDefinition();
-		this.featureVectors = ffr.getFeatureVectors();
+		this.featureStore = ffr.getFeatureStore();
 		if (weightsStream != null) {
 			MaryUtils.getLogger("TargetCostFeatures").debug("Overwriting target cost weights from file");
 			// overwrite weights from file
@@ -283,6 +413,28 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		for (int i = 0, n = featureDefinition.getNumberOfFeatures(); i < n; i++) {
 			weightsNonZero[i] = (featureDefinition.getWeight(i) > 0);
 		}
+		int nBytes = featureDefinition.getNumberOfByteFeatures();
+		int nShorts = featureDefinition.getNumberOfShortFeatures();
+		nonZeroByteFeatures = nonZeroFeatures(0, nBytes);
+		nonZeroShortFeatures = nonZeroFeatures(nBytes, nShorts);
+		nonZeroContinuousFeatures = nonZeroFeatures(nBytes + nShorts, featureDefinition.getNumberOfContinuousFeatures());
+	}
+
+	private int[] nonZeroFeatures(int first, int count) {
+		int n = 0;
+		for (int i = first; i < first + count; i++) {
+			if (weightsNonZero[i]) {
+				n++;
+			}
+		}
+		int[] features = new int[n];
+		n = 0;
+		for (int i = first; i < first + count; i++) {
+			if (weightsNonZero[i]) {
+				features[n++] = i - first;
+			}
+		}
+		return features;
 	}
 
 	/**
@@ -305,7 +457,10 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	 * @return the FeatureVector for target cost computation associated to this unit
 	 */
 	public FeatureVector getFeatureVector(Unit unit) {
-		return featureVectors[unit.index];
+		if (featureVectors != null) {
+			return featureVectors[unit.index];
+		}
+		return featureStore.getFeatureVector(unit.index);
 	}
 
 	/**
@@ -321,14 +476,15 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 	 */
 	public String getFeature(Unit unit, String featureName) {
 		int featureIndex = featureDefinition.getFeatureIndex(featureName);
+		FeatureVector unitFeatures = getFeatureVector(unit);
 		if (featureDefinition.isByteFeature(featureIndex)) {
-			byte value = featureVectors[unit.index].getByteFeature(featureIndex);
+			byte value = unitFeatures.getByteFeature(featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else if (featureDefinition.isShortFeature(featureIndex)) {
-			short value = featureVectors[unit.index].getShortFeature(featureIndex);
+			short value = unitFeatures.getShortFeature(featureIndex);
 			return featureDefinition.getFeatureValueAsString(featureIndex, value);
 		} else { // continuous -- return float as string
-			float value = featureVectors[unit.index].getContinuousFeature(featureIndex);
+			float value = unitFeatures.getContinuousFeature(featureIndex);
 			return String.valueOf(value);
 		}
 	}
@@ -337,7 +493,17 @@ public class FFRTargetCostFunction implements TargetCostFunction {
 		return featureDefinition;
 	}
 
-	public FeatureVector[] getFeatureVectors() {
+	public FeatureStore getFeatureStore() {
+		return featureStore;
+	}
+
+	/**
+	 * {@inheritDoc} When the unit features are held in a feature store, the feature vectors are created on the first call.
+	 */
+	public synchronized FeatureVector[] getFeatureVectors() {
+		if (featureVectors == null && featureStore != null) {
+			featureVectors = featureStore.toFeatureVectors();
+		}
 		return featureVectors;
 	}
 
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import marytts.util.DirectMappedTable;
+
+/**
+ * A bounded cache of join costs, keyed by the indexes of the left and the right unit, to be shared by all requests for one voice.
+ * <p>
+ * The cache consists of two tables. The first one holds the costs of a precomputed file of frequent joins (see
+ * {@link JoinCostPrecomputer}); it is filled once and never changes, so it is read without locks. The second one is a
+ * {@link DirectMappedTable} of the given capacity which remembers the most recently computed costs, one unit pair per slot.
+ */
+public class JoinCostCache {
+	private static final long EMPTY = -1L; // no pair of non-negative unit indexes maps to this key
+
+	private final DirectMappedTable<Entry> computed;
+
+	private final long[] fixedKeys;
+	private final double[] fixedCosts;
+	private final int fixedShift;
+
+	private final LongAdder fixedHits = new LongAdder();
+
+	/**
+	 * Create an empty cache.
+	 *
+	 * @param capacity
+	 *            the maximum number of computed costs to remember; rounded up to a power of two
+	 */
+	public JoinCostCache(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * Create a cache holding the costs from the given precomputed join cost file, in addition to up to <code>capacity</code>
+	 * computed costs.
+	 *
+	 * @param capacity
+	 *            the maximum number of computed costs to remember; rounded up to a power of two
+	 * @param precomputed
+	 *            the precomputed join costs, or null
+	 */
+	public JoinCostCache(int capacity, PrecompiledJoinCostReader precomputed) {
+		computed = new DirectMappedTable<Entry>(capacity);
+
+		int numFixed = 0;
+		if (precomputed != null) {
+			for (Map<Integer, Float> right : precomputed.left.values()) {
+				numFixed += right.size();
+			}
+		}
+		// open addressing with a load factor of at most 0.5:
+		int fixedBits = bitsFor(2 * numFixed);
+		fixedKeys = new long[1 << fixedBits];
+		fixedCosts = new double[1 << fixedBits];
+		fixedShift = 64 - fixedBits;
+		Arrays.fill(fixedKeys, EMPTY);
+		if (precomputed != null) {
+			for (Map.Entry<Integer, Map<Integer, Float>> left : precomputed.left.entrySet()) {
+				int u1 = left.getKey();
+				for (Map.Entry<Integer, Float> right : left.getValue().entrySet()) {
+					putFixed(key(u1, right.getKey()), right.getValue());
+				}
+			}
+		}
+	}
+
+	private static int bitsFor(int capacity) {
+		int bits = 1;
+		while (bits < 30 && (1 << bits) < capacity) {
+			bits++;
+		}
+		return bits;
+	}
+
+	/**
+	 * Pack the indexes of a unit pair into one key.
+	 *
+	 * @param u1
+	 *            the index of the left unit
+	 * @param u2
+	 *            the index of the right unit
+	 * @return a key unique to this pair
+	 */
+	public static long key(int u1, int u2) {
+		return ((long) u1 << 32) | (u2 & 0xffffffffL);
+	}
+
+	private static int slot(long key, int shift) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	private void putFixed(long key, double cost) {
+		int mask = fixedKeys.length - 1;
+		int i = slot(key, fixedShift);
+		while (fixedKeys[i] != EMPTY && fixedKeys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		fixedKeys[i] = key;
+		fixedCosts[i] = cost;
+	}
+
+	private double getFixed(long key) {
+		int mask = fixedKeys.length - 1;
+		int i = slot(key, fixedShift);
+		long k;
+		while ((k = fixedKeys[i]) != EMPTY) {
+			if (k == key) {
+				return fixedCosts[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Look up the cost of joining the two given units.
+	 *
+	 * @param u1
+	 *            the index of the left unit
+	 * @param u2
+	 *            the index of the right unit
+	 * @return the cost, or NaN if the cost of this pair is not in the cache.
+	 */
+	public double get(int u1, int u2) {
+		long key = key(u1, u2);
+		double cost = getFixed(key);
+		if (!Double.isNaN(cost)) {
+			fixedHits.increment();
+			return cost;
+		}
+		Entry e = computed.get(computed.slot(key));
+		if (e != null && e.key == key) {
+			computed.hit();
+			return e.cost;
+		}
+		computed.miss();
+		return Double.NaN;
+	}
+
+	/**
+	 * Remember the cost of joining the two given units, replacing whatever pair was stored in the same slot before.
+	 *
+	 * @param u1
+	 *            the index of the left unit
+	 * @param u2
+	 *            the index of the right unit
+	 * @param cost
+	 *            the join cost
+	 */
+	public void put(int u1, int u2, double cost) {
+		long key = key(u1, u2);
+		computed.set(computed.slot(key), new Entry(key, cost));
+	}
+
+	/**
+	 * The number of lookups answered from the precomputed costs.
+	 *
+	 * @return the number of precomputed hits
+	 */
+	public long getPrecomputedHits() {
+		return fixedHits.sum();
+	}
+
+	/**
+	 * The number of lookups answered from the computed costs.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return computed.getHits();
+	}
+
+	/**
+	 * The number of lookups for pairs that were not in the cache.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return computed.getMisses();
+	}
+
+	/**
+	 * The share of lookups answered from either table, precomputed or computed.
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if there were no lookups yet
+	 */
+	public double getHitRate() {
+		long found = getPrecomputedHits() + getHits();
+		long total = found + getMisses();
+		return total == 0 ? 0 : found / (double) total;
+	}
+
+	/**
+	 * The number of slots for computed costs.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return computed.getCapacity();
+	}
+
+	@Override
+	public String toString() {
+		return "join cost cache: " + getPrecomputedHits() + " precomputed hits, " + getHits() + " hits, " + getMisses()
+				+ " misses, hit rate " + Math.round(1000 * getHitRate()) / 10. + "%";
+	}
+
+	private static final class Entry {
+		final long key;
+		final double cost;
+
+		Entry(long key, double cost) {
+			this.key = key;
+			this.cost = cost;
+		}
+	}
+}
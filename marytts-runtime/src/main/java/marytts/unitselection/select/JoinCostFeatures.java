@@ -60,6 +60,7 @@ public class JoinCostFeatures implements JoinCostFunction {
 
 	protected PrecompiledJoinCostReader precompiledCosts;
 
+	protected JoinCostCache cache;
 
 	/****************/
 	/* DATA FIELDS */
@@ -118,6 +119,20 @@ public class JoinCostFeatures implements JoinCostFunction {
 		} catch (IOException ioe) {
 			throw new MaryConfigurationException("Problem loading join file " + joinFileName, ioe);
 		}
+		int cacheSize = MaryProperties.getInteger(configPrefix + ".joinCostCacheSize",
+				MaryProperties.getInteger("unitselection.joinCostCacheSize", 0));
+		if (cacheSize > 0) {
+			String cacheFileName = MaryProperties.getFilename(configPrefix + ".joinCostCacheFile");
+			try {
+				PrecompiledJoinCostReader frequentJoins = null;
+				if (cacheFileName != null) {
+					frequentJoins = new PrecompiledJoinCostReader(cacheFileName);
+				}
+				cache = new JoinCostCache(cacheSize, frequentJoins);
+			} catch (IOException ioe) {
+				throw new MaryConfigurationException("Problem loading join cost cache file " + cacheFileName, ioe);
+			}
+		}
 	}
 
 	/**
@@ -439,6 +454,25 @@ public class JoinCostFeatures implements JoinCostFunction {
 		return (rightJCF[u]);
 	}
 
+	/**
+	 * The cache of join costs used by this join cost function.
+	 *
+	 * @return the join cost cache, or null if join costs are not cached.
+	 */
+	public JoinCostCache getJoinCostCache() {
+		return cache;
+	}
+
+	/**
+	 * Use the given cache of join costs. The cache must have been filled with costs from this join cost function only.
+	 *
+	 * @param cache
+	 *            the join cost cache, or null to compute every join cost.
+	 */
+	public void setJoinCostCache(JoinCostCache cache) {
+		this.cache = cache;
+	}
+
 	/*****************/
 	/* MISC METHODS */
 	/*****************/
@@ -535,7 +569,29 @@ public class JoinCostFeatures implements JoinCostFunction {
 		if (bothDiphones && precompiledCosts != null) {
 			cost += precompiledCosts.cost(t1, u1, t2, u2);
 		} else { // need to actually compute the cost
-			cost += cost(u1.index, u2.index);
+			cost += cachedCost(u1.index, u2.index);
+		}
+		return cost;
+	}
+
+	/**
+	 * Deliver the join cost between two units described by their index, from the join cost cache if possible. Costs not found
+	 * in the cache are computed using {@link #cost(int, int)} and added to the cache.
+	 *
+	 * @param u1
+	 *            the left unit
+	 * @param u2
+	 *            the right unit
+	 * @return the cost of joining the left unit with the right unit.
+	 */
+	protected double cachedCost(int u1, int u2) {
+		if (cache == null || debugShowCostGraph) { // the cost graph needs the individual feature costs
+			return cost(u1, u2);
+		}
+		double cost = cache.get(u1, u2);
+		if (Double.isNaN(cost)) {
+			cost = cost(u1, u2);
+			cache.put(u1, u2, cost);
 		}
 		return cost;
 	}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import marytts.util.data.MaryHeader;
+
+/**
+ * Offline tool writing the join costs of the most frequent joins in a log of unit selections to a file in the format of
+ * {@link PrecompiledJoinCostReader}. Configured as <code>voice.(name).joinCostCacheFile</code>, the file is loaded into the
+ * {@link JoinCostCache} of the voice at startup, so that these join costs are never computed at runtime.
+ * <p>
+ * The log of selections is a text file in which each line containing <code>voice=(name) joins:</code> lists the joins of one
+ * selection for that voice after the marker, as tokens <code>left:right</code> giving the indexes of the left and the right
+ * unit. Only the lines of the given voice are counted, as unit indexes of different voices are unrelated; other lines are
+ * ignored. Setting the log level of the logger <code>marytts.JoinLog</code> to DEBUG makes the server write such a log.
+ * <p>
+ * Usage: <code>JoinCostPrecomputer voiceName joinCostFile selectionLog outputFile [numberOfJoins [joinCostWeightsFile]]</code>
+ */
+public class JoinCostPrecomputer {
+	private static final String MARKER = " joins:";
+	private static final Pattern JOIN = Pattern.compile("(\\d+):(\\d+)");
+
+	/**
+	 * Count how often each join occurs in the selections of the given voice in the log.
+	 *
+	 * @param log
+	 *            the log of selections
+	 * @param voiceName
+	 *            the voice whose selections to count
+	 * @return a map from join keys, as created by {@link JoinCostCache#key(int, int)}, to the number of occurrences
+	 * @throws IOException
+	 *             if the log cannot be read
+	 */
+	public static Map<Long, Integer> countJoins(BufferedReader log, String voiceName) throws IOException {
+		Map<Long, Integer> counts = new HashMap<Long, Integer>();
+		String marker = "voice=" + voiceName + MARKER;
+		String line;
+		while ((line = log.readLine()) != null) {
+			int start = line.indexOf(marker);
+			if (start < 0) {
+				continue;
+			}
+			Matcher m = JOIN.matcher(line);
+			m.region(start + marker.length(), line.length());
+			while (m.find()) {
+				long key = JoinCostCache.key(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)));
+				Integer count = counts.get(key);
+				counts.put(key, count == null ? 1 : count + 1);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Select the most frequent joins. Joins with the same count are ordered by their key, so that the result does not depend on
+	 * the order of the log.
+	 *
+	 * @param counts
+	 *            join counts as returned by {@link #countJoins(BufferedReader, String)}
+	 * @param numberOfJoins
+	 *            the maximum number of joins to return
+	 * @return the keys of the most frequent joins, the most frequent first
+	 */
+	public static long[] mostFrequentJoins(final Map<Long, Integer> counts, int numberOfJoins) {
+		List<Long> keys = new ArrayList<Long>(counts.keySet());
+		Collections.sort(keys, new Comparator<Long>() {
+			public int compare(Long a, Long b) {
+				int c = counts.get(b).compareTo(counts.get(a));
+				return c != 0 ? c : a.compareTo(b);
+			}
+		});
+		long[] result = new long[Math.min(numberOfJoins, keys.size())];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = keys.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Compute the costs of the given joins and write them in the format of {@link PrecompiledJoinCostReader}. Joins of units
+	 * not in the join cost function are skipped.
+	 *
+	 * @param joinCosts
+	 *            the join cost function of the voice
+	 * @param joins
+	 *            the keys of the joins, as created by {@link JoinCostCache#key(int, int)}
+	 * @param out
+	 *            where to write the join costs
+	 * @return the number of join costs written
+	 * @throws IOException
+	 *             if the join costs cannot be written
+	 */
+	public static int writeJoinCosts(JoinCostFeatures joinCosts, long[] joins, DataOutput out) throws IOException {
+		int numberOfUnits = joinCosts.getNumberOfUnits();
+		SortedMap<Integer, SortedMap<Integer, Float>> costs = new TreeMap<Integer, SortedMap<Integer, Float>>();
+		int n = 0;
+		for (long join : joins) {
+			int u1 = (int) (join >>> 32);
+			int u2 = (int) join;
+			if (u1 >= numberOfUnits || u2 >= numberOfUnits) {
+				continue;
+			}
+			SortedMap<Integer, Float> right = costs.get(u1);
+			if (right == null) {
+				right = new TreeMap<Integer, Float>();
+				costs.put(u1, right);
+			}
+			right.put(u2, (float) joinCosts.cost(u1, u2));
+			n++;
+		}
+		new MaryHeader(MaryHeader.PRECOMPUTED_JOINCOSTS).writeTo(out);
+		out.writeInt(costs.size());
+		for (Map.Entry<Integer, SortedMap<Integer, Float>> left : costs.entrySet()) {
+			out.writeInt(left.getKey());
+			out.writeInt(left.getValue().size());
+			for (Map.Entry<Integer, Float> right : left.getValue().entrySet()) {
+				out.writeInt(right.getKey());
+				out.writeFloat(right.getValue());
+			}
+		}
+		return n;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 4) {
+			System.err.println("Usage: JoinCostPrecomputer voiceName joinCostFile selectionLog outputFile"
+					+ " [numberOfJoins [joinCostWeightsFile]]");
+			System.exit(1);
+		}
+		String voiceName = args[0];
+		int numberOfJoins = args.length > 4 ? Integer.parseInt(args[4]) : 100000;
+		InputStream weightStream = args.length > 5 ? new FileInputStream(args[5]) : null;
+		JoinCostFeatures joinCosts = new JoinCostFeatures();
+		joinCosts.load(args[1], weightStream, null, 1);
+
+		BufferedReader log = new BufferedReader(new InputStreamReader(new FileInputStream(args[2]), "UTF-8"));
+		Map<Long, Integer> counts = countJoins(log, voiceName);
+		log.close();
+		long[] joins = mostFrequentJoins(counts, numberOfJoins);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[3])));
+		int n = writeJoinCosts(joinCosts, joins, out);
+		out.close();
+		System.out.println("Wrote " + n + " of " + counts.size() + " distinct joins of voice " + voiceName + " to " + args[3]);
+	}
+}
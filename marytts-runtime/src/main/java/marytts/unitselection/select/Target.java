@@ -22,6 +22,7 @@ package marytts.unitselection.select;
 import marytts.datatypes.MaryXML;
 import marytts.features.FeatureVector;
 import marytts.features.MaryGenericFeatureProcessors;
+import marytts.features.SentenceStructure;
 import marytts.modules.phonemiser.Allophone;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.synthesis.Voice;
@@ -48,6 +49,9 @@ public class Target {
 	protected float f0 = -1;
 	protected int isSilence = -1;
 
+	protected SentenceStructure sentenceStructure = null;
+	protected int sentenceIndex = -1;
+
 	/**
 	 * Create a target associated to the given element in the MaryXML tree.
 	 * 
@@ -122,6 +126,29 @@ public class Target {
 		}
 	}
 
+	/**
+	 * The structure of the sentence containing this target, if one is attached.
+	 * 
+	 * @return the structure, or null if the feature processors must navigate the MaryXML tree
+	 * @see SentenceStructure#attach(java.util.List)
+	 */
+	public SentenceStructure getSentenceStructure() {
+		return sentenceStructure;
+	}
+
+	/**
+	 * @return the index of this target's element among the segments of its sentence structure, or -1 if no structure is
+	 *         attached
+	 */
+	public int getSentenceIndex() {
+		return sentenceIndex;
+	}
+
+	public void setSentenceStructure(SentenceStructure sentenceStructure, int sentenceIndex) {
+		this.sentenceStructure = sentenceStructure;
+		this.sentenceIndex = sentenceIndex;
+	}
+
 	public boolean hasFeatureVector() {
 		return featureVector != null;
 	}
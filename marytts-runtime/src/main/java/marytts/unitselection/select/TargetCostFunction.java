@@ -25,6 +25,7 @@ import java.io.InputStream;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureStore;
 import marytts.features.FeatureVector;
 import marytts.unitselection.data.FeatureFileReader;
 import marytts.unitselection.data.Unit;
@@ -83,6 +84,19 @@ public interface TargetCostFunction {
 	 */
 	public double cost(Target target, Unit unit);
 
+	/**
+	 * Compute the goodness-of-fit of a number of units for one target. The result is the same as calling
+	 * {@link #cost(Target, Unit)} for each unit, but implementations can prepare the target once for all units.
+	 * 
+	 * @param target
+	 *            target
+	 * @param units
+	 *            the candidate units
+	 * @param costs
+	 *            an array of at least units.length elements, in which the cost of units[i] is stored at position i.
+	 */
+	public void cost(Target target, Unit[] units, double[] costs);
+
 	/**
 	 * Compute the features for a given target, and store them in the target.
 	 * 
@@ -128,4 +142,11 @@ public interface TargetCostFunction {
 	 */
 	public FeatureVector[] getFeatureVectors();
 
+	/**
+	 * Get the feature values of all units in columnar form. This is the most efficient access to the unit features.
+	 * 
+	 * @return the feature store, or null if this method is not supported.
+	 */
+	public FeatureStore getFeatureStore();
+
 }
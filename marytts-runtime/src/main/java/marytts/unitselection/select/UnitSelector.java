@@ -24,7 +24,9 @@ import java.util.List;
 
 import marytts.datatypes.MaryXML;
 import marytts.exceptions.SynthesisException;
+import marytts.features.SentenceStructure;
 import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.viterbi.ArrayViterbi;
 import marytts.unitselection.select.viterbi.Viterbi;
 import marytts.util.MaryUtils;
 
@@ -44,6 +46,8 @@ public class UnitSelector {
 	protected float targetCostWeight;
 	protected float sCostWeight = -1;
 	protected int beamSize;
+	protected boolean useArrayViterbi = false;
+	protected String voiceName;
 
 	/**
 	 * Initialise the unit selector. Need to call load() separately.
@@ -69,6 +73,29 @@ public class UnitSelector {
 		this.beamSize = beamSize;
 	}
 
+	/**
+	 * Choose the implementation of the Viterbi search.
+	 *
+	 * @param useArrayViterbi
+	 *            if true, use {@link ArrayViterbi}, which reuses its search lattice across utterances; otherwise, use
+	 *            {@link Viterbi}.
+	 */
+	public void setUseArrayViterbi(boolean useArrayViterbi) {
+		this.useArrayViterbi = useArrayViterbi;
+	}
+
+	/**
+	 * Set the name of the voice whose database this selector searches, for the log of joins written by
+	 * {@link Viterbi#logJoins(String, List)}. If it is not set, the name of the voice passed to
+	 * {@link #selectUnits(List, marytts.modules.synthesis.Voice)} is used.
+	 *
+	 * @param voiceName
+	 *            the name of the voice
+	 */
+	public void setVoiceName(String voiceName) {
+		this.voiceName = voiceName;
+	}
+
 	/**
 	 * Select the units for the targets in the given list of tokens and boundaries. Collect them in a list and return it.
 	 * 
@@ -100,25 +127,42 @@ public class UnitSelector {
 		List<Target> targets = createTargets(segmentsAndBoundaries);
 		// compute target features for each target in the chain
 		TargetCostFunction tcf = database.getTargetCostFunction();
-		for (Target target : targets) {
-			tcf.computeTargetFeatures(target);
+		SentenceStructure.attach(targets);
+		try {
+			for (Target target : targets) {
+				tcf.computeTargetFeatures(target);
+			}
+		} finally {
+			SentenceStructure.detach(targets);
 		}
 
-		Viterbi viterbi;
+		List<SelectedUnit> selectedUnits;
 		// Select the best candidates using Viterbi and the join cost function.
-		if (sCostWeight < 0) {
-			viterbi = new Viterbi(targets, database, targetCostWeight, beamSize);
+		if (useArrayViterbi) {
+			ArrayViterbi viterbi;
+			if (sCostWeight < 0) {
+				viterbi = new ArrayViterbi(targets, database, targetCostWeight, beamSize);
+			} else {
+				viterbi = new ArrayViterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
+			}
+			viterbi.apply();
+			selectedUnits = viterbi.getSelectedUnits();
 		} else {
-			viterbi = new Viterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
+			Viterbi viterbi;
+			if (sCostWeight < 0) {
+				viterbi = new Viterbi(targets, database, targetCostWeight, beamSize);
+			} else {
+				viterbi = new Viterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
+			}
+			viterbi.apply();
+			selectedUnits = viterbi.getSelectedUnits();
 		}
-
-		viterbi.apply();
-		List<SelectedUnit> selectedUnits = viterbi.getSelectedUnits();
 		// If you can not associate the candidate units in the best path
 		// with the items in the segment relation, there is no best path
 		if (selectedUnits == null) {
 			throw new IllegalStateException("Viterbi: can't find path");
 		}
+		Viterbi.logJoins(voiceName != null ? voiceName : voice.getName(), selectedUnits);
 		long newtime = System.currentTimeMillis() - time;
 		logger.debug("Selection took " + newtime + " milliseconds");
 		return selectedUnits;
@@ -0,0 +1,414 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import marytts.exceptions.SynthesisException;
+import marytts.unitselection.data.DiphoneUnit;
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.DiphoneTarget;
+import marytts.unitselection.select.JoinCostFunction;
+import marytts.unitselection.select.SelectedUnit;
+import marytts.unitselection.select.StatisticalCostFunction;
+import marytts.unitselection.select.Target;
+import marytts.util.MaryUtils;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A Viterbi search selecting the same units as {@link Viterbi}, but keeping the search lattice in arrays instead of linked
+ * objects. For each target, the best <code>beamSize</code> candidates by target cost are chosen by a partial heap sort, and for
+ * each of them, the best predecessor among the candidates of the previous target is remembered as an index into the arrays.
+ * <p>
+ * The arrays belong to the calling thread and are reused by all searches in that thread, so that after the first few utterances
+ * a search allocates nothing but the list of selected units. Arrays grown beyond a fixed memory cap by a very long utterance are
+ * dropped again once its search is done. If several candidates have exactly the same score, the one chosen
+ * may differ from the one chosen by {@link Viterbi}.
+ */
+public class ArrayViterbi {
+	private static final ThreadLocal<Lattice> lattices = new ThreadLocal<Lattice>() {
+		@Override
+		protected Lattice initialValue() {
+			return new Lattice();
+		}
+	};
+
+	protected final int beamSize;
+	protected final float wTargetCosts;
+	protected final float wJoinCosts;
+	protected final float wSCosts;
+
+	private final List<Target> targets;
+	private final UnitDatabase database;
+	protected final JoinCostFunction joinCostFunction;
+	protected final StatisticalCostFunction sCostFunction;
+	protected final Logger logger;
+
+	private Lattice lattice;
+	private int best = -1;
+
+	/**
+	 * Prepare a search for the units realising the given targets.
+	 *
+	 * @param targets
+	 *            targets
+	 * @param database
+	 *            database
+	 * @param wTargetCosts
+	 *            wTargetCosts
+	 * @param beamSize
+	 *            the number of candidates to consider for each target, or -1 to consider all
+	 */
+	public ArrayViterbi(List<Target> targets, UnitDatabase database, float wTargetCosts, int beamSize) {
+		this(targets, database, wTargetCosts, 0, 1 - wTargetCosts, beamSize);
+	}
+
+	/**
+	 * Prepare a search for the units realising the given targets.
+	 *
+	 * @param targets
+	 *            targets
+	 * @param database
+	 *            database
+	 * @param wTargetCosts
+	 *            wTargetCosts
+	 * @param wSCosts
+	 *            wSCosts
+	 * @param beamSize
+	 *            the number of candidates to consider for each target, or -1 to consider all
+	 */
+	public ArrayViterbi(List<Target> targets, UnitDatabase database, float wTargetCosts, float wSCosts, int beamSize) {
+		this(targets, database, wTargetCosts, wSCosts, 1 - (wTargetCosts + wSCosts), beamSize);
+	}
+
+	private ArrayViterbi(List<Target> targets, UnitDatabase database, float wTargetCosts, float wSCosts, float wJoinCosts,
+			int beamSize) {
+		if (beamSize == 0) {
+			throw new IllegalStateException("General beam search not implemented");
+		}
+		this.targets = targets;
+		this.database = database;
+		this.joinCostFunction = database.getJoinCostFunction();
+		this.sCostFunction = database.getSCostFunction();
+		this.logger = MaryUtils.getLogger("Viterbi");
+		this.wTargetCosts = wTargetCosts;
+		this.wSCosts = wSCosts;
+		this.wJoinCosts = wJoinCosts;
+		this.beamSize = beamSize;
+	}
+
+	/**
+	 * Carry out the search. For each target, the candidates are determined, and for each candidate, the best-scoring path
+	 * leading to it is found, as in {@link Viterbi#apply()}.
+	 *
+	 * @throws SynthesisException
+	 *             if for any part of the target chain, no candidates can be found
+	 */
+	public void apply() throws SynthesisException {
+		logger.debug("Viterbi running with beam size " + beamSize);
+		lattice = lattices.get();
+		lattice.clear();
+		best = -1;
+		boolean done = false;
+		try {
+			search();
+			done = true;
+		} finally {
+			if (!done) {
+				lattice.clear();
+			}
+		}
+	}
+
+	private void search() throws SynthesisException {
+		int prevStart = 0;
+		int prevEnd = 0;
+		Target halfphone = null; // the right half of a diphone target for which no diphones exist
+		for (int t = 0; t < targets.size() || halfphone != null;) {
+			Target target;
+			if (halfphone != null) {
+				target = halfphone;
+				halfphone = null;
+			} else {
+				target = targets.get(t++);
+			}
+			List<ViterbiCandidate> candidates = database.getCandidates(target);
+			if (candidates.size() == 0) {
+				if (target instanceof DiphoneTarget) {
+					logger.debug("No diphone '" + target.getName() + "' -- will build from halfphones");
+					DiphoneTarget dt = (DiphoneTarget) target;
+					target = dt.left;
+					halfphone = dt.right;
+					candidates = database.getCandidates(target);
+					if (candidates.size() == 0)
+						throw new SynthesisException("Cannot even find any halfphone unit for target " + target);
+				} else {
+					throw new SynthesisException("Cannot find any units for target " + target);
+				}
+			}
+			int start = lattice.addPoint(target, candidates, beamSize);
+			int end = lattice.size;
+			if (prevEnd == 0) { // first target
+				for (int j = start; j < end; j++) {
+					lattice.scores[j] = lattice.targetCosts[j] * wTargetCosts;
+					lattice.back[j] = -1;
+				}
+			} else {
+				extend(prevStart, prevEnd, start, end);
+			}
+			prevStart = start;
+			prevEnd = end;
+		}
+		if (prevEnd == 0) { // no targets
+			return;
+		}
+		// as in Viterbi.findBestPath(), the first of the best-scoring paths wins:
+		best = prevStart;
+		for (int j = prevStart + 1; j < prevEnd; j++) {
+			if (lattice.scores[j] < lattice.scores[best]) {
+				best = j;
+			}
+		}
+	}
+
+	/**
+	 * For each candidate in start..end, find the best path leading to it from a candidate in prevStart..prevEnd. The scores are
+	 * computed in the same way as in {@link Viterbi}, so that they are identical.
+	 */
+	private void extend(int prevStart, int prevEnd, int start, int end) {
+		Unit[] units = lattice.units;
+		Target[] targetOf = lattice.targetOf;
+		double[] scores = lattice.scores;
+		int[] back = lattice.back;
+		for (int i = prevStart; i < prevEnd; i++) {
+			Target prevTarget = targetOf[i];
+			Unit prevUnit = units[i];
+			double prevScore = scores[i];
+			for (int j = start; j < end; j++) {
+				double joinCost = joinCostFunction.cost(prevTarget, prevUnit, targetOf[j], units[j]) * wJoinCosts;
+				double sCost = 0;
+				if (sCostFunction != null)
+					sCost = sCostFunction.cost(prevUnit, units[j]);
+				double cost = joinCost + lattice.targetCosts[j] * wTargetCosts + sCost * wSCosts;
+				cost += prevScore;
+				// as in Viterbi.addPath(), a later path replaces an earlier one only if it is strictly better:
+				if (i == prevStart || cost < scores[j]) {
+					scores[j] = cost;
+					back[j] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collect the units on the best path. This requires apply() to have been run.
+	 *
+	 * @return the list of selected units, or null if no path could be found.
+	 */
+	public List<SelectedUnit> getSelectedUnits() {
+		if (targets.isEmpty()) {
+			return new ArrayList<SelectedUnit>();
+		}
+		if (best < 0) {
+			return null;
+		}
+		try {
+			int numPoints = 0;
+			for (int j = best; j >= 0; j = lattice.back[j]) {
+				numPoints++;
+			}
+			SelectedUnit[] selected = new SelectedUnit[2 * numPoints];
+			int n = selected.length;
+			for (int j = best; j >= 0; j = lattice.back[j]) {
+				Unit u = lattice.units[j];
+				Target t = lattice.targetOf[j];
+				if (u instanceof DiphoneUnit) {
+					assert t instanceof DiphoneTarget;
+					DiphoneUnit du = (DiphoneUnit) u;
+					DiphoneTarget dt = (DiphoneTarget) t;
+					selected[--n] = new SelectedUnit(du.right, dt.right);
+					selected[--n] = new SelectedUnit(du.left, dt.left);
+				} else {
+					selected[--n] = new SelectedUnit(u, t);
+				}
+			}
+			List<SelectedUnit> selectedUnits = new ArrayList<SelectedUnit>(selected.length - n);
+			for (int i = n; i < selected.length; i++) {
+				selectedUnits.add(selected[i]);
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Selected " + selectedUnits.size() + " units, cost of best path " + lattice.scores[best]);
+			}
+			return selectedUnits;
+		} finally {
+			// do not keep the targets, and with them the document, of this request alive:
+			lattice.clear();
+		}
+	}
+
+	/**
+	 * The reusable search lattice of one thread. The candidates of all targets are stored one after the other; for each
+	 * candidate, the arrays hold its unit, its target, its target cost, the score of the best path leading to it, and the index
+	 * of the previous candidate on that path. Arrays above MAX_CACHED_BYTES are replaced by small ones when the lattice is
+	 * cleared, so that a single long utterance does not pin their memory for the lifetime of the thread.
+	 */
+	static class Lattice {
+		static final int INITIAL_CAPACITY = 1024;
+		static final int INITIAL_CANDIDATES = 256;
+		/** bytes per lattice entry, counting references as 8 bytes */
+		static final int ENTRY_BYTES = 8 + 8 + 8 + 8 + 4;
+		/** bytes per entry of the candidate selection arrays */
+		private static final int CANDIDATE_BYTES = 8 + 4;
+		/** largest arrays kept for the next search: 8 MB, some 230000 candidates */
+		static final long MAX_CACHED_BYTES = 8L << 20;
+
+		int size;
+		Unit[] units = new Unit[INITIAL_CAPACITY];
+		Target[] targetOf = new Target[INITIAL_CAPACITY];
+		double[] targetCosts = new double[INITIAL_CAPACITY];
+		double[] scores = new double[INITIAL_CAPACITY];
+		int[] back = new int[INITIAL_CAPACITY];
+		// for choosing the best candidates of a target:
+		double[] candidateCosts = new double[INITIAL_CANDIDATES];
+		int[] heap = new int[INITIAL_CANDIDATES];
+
+		/**
+		 * Add the best candidates for a target, sorted by increasing target cost. Candidates with the same target cost keep their
+		 * order, so that the result is the same as the first <code>beamSize</code> candidates after a stable sort.
+		 *
+		 * @return the index of the first candidate added
+		 */
+		int addPoint(Target target, List<ViterbiCandidate> candidates, int beamSize) {
+			int n = candidates.size();
+			int k = beamSize < 0 || beamSize > n ? n : beamSize;
+			ensureCapacity(size + k);
+			if (candidateCosts.length < n) {
+				candidateCosts = new double[Math.max(n, 2 * candidateCosts.length)];
+			}
+			if (heap.length < k) {
+				heap = new int[Math.max(k, 2 * heap.length)];
+			}
+			for (int i = 0; i < n; i++) {
+				candidateCosts[i] = candidates.get(i).targetCost;
+			}
+			// max-heap of the k best candidates seen so far:
+			for (int i = 0; i < k; i++) {
+				heap[i] = i;
+				siftUp(i);
+			}
+			for (int i = k; i < n; i++) {
+				if (before(i, heap[0])) {
+					heap[0] = i;
+					siftDown(0, k);
+				}
+			}
+			// heap sort, leaving the best candidate first:
+			for (int last = k - 1; last > 0; last--) {
+				int tmp = heap[0];
+				heap[0] = heap[last];
+				heap[last] = tmp;
+				siftDown(0, last);
+			}
+			int start = size;
+			for (int i = 0; i < k; i++) {
+				ViterbiCandidate c = candidates.get(heap[i]);
+				units[size] = c.unit;
+				targetOf[size] = target;
+				targetCosts[size] = c.targetCost;
+				size++;
+			}
+			return start;
+		}
+
+		/**
+		 * Whether candidate a comes before candidate b in a stable sort by target cost.
+		 */
+		private boolean before(int a, int b) {
+			double ca = candidateCosts[a];
+			double cb = candidateCosts[b];
+			return ca < cb || ca == cb && a < b;
+		}
+
+		private void siftUp(int i) {
+			int x = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!before(heap[parent], x)) {
+					break;
+				}
+				heap[i] = heap[parent];
+				i = parent;
+			}
+			heap[i] = x;
+		}
+
+		private void siftDown(int i, int heapSize) {
+			int x = heap[i];
+			int child;
+			while ((child = 2 * i + 1) < heapSize) {
+				if (child + 1 < heapSize && before(heap[child], heap[child + 1])) {
+					child++;
+				}
+				if (!before(x, heap[child])) {
+					break;
+				}
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = x;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity <= units.length) {
+				return;
+			}
+			int newCapacity = Math.max(capacity, 2 * units.length);
+			units = Arrays.copyOf(units, newCapacity);
+			targetOf = Arrays.copyOf(targetOf, newCapacity);
+			targetCosts = Arrays.copyOf(targetCosts, newCapacity);
+			scores = Arrays.copyOf(scores, newCapacity);
+			back = Arrays.copyOf(back, newCapacity);
+		}
+
+		void clear() {
+			if ((long) units.length * ENTRY_BYTES > MAX_CACHED_BYTES) {
+				units = new Unit[INITIAL_CAPACITY];
+				targetOf = new Target[INITIAL_CAPACITY];
+				targetCosts = new double[INITIAL_CAPACITY];
+				scores = new double[INITIAL_CAPACITY];
+				back = new int[INITIAL_CAPACITY];
+			} else {
+				Arrays.fill(units, 0, size, null);
+				Arrays.fill(targetOf, 0, size, null);
+			}
+			if ((long) candidateCosts.length * CANDIDATE_BYTES > MAX_CACHED_BYTES) {
+				candidateCosts = new double[INITIAL_CANDIDATES];
+			}
+			if ((long) heap.length * CANDIDATE_BYTES > MAX_CACHED_BYTES) {
+				heap = new int[INITIAL_CANDIDATES];
+			}
+			size = 0;
+		}
+	}
+}
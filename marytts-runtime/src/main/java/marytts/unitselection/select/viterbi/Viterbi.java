@@ -45,6 +45,8 @@ import marytts.unitselection.data.DiphoneUnit;
 import marytts.unitselection.data.Unit;
 import marytts.unitselection.data.UnitDatabase;
 import marytts.unitselection.select.DiphoneTarget;
+import marytts.unitselection.select.JoinCostCache;
+import marytts.unitselection.select.JoinCostFeatures;
 import marytts.unitselection.select.JoinCostFunction;
 import marytts.unitselection.select.SelectedUnit;
 import marytts.unitselection.select.StatisticalCostFunction;
@@ -97,6 +99,9 @@ public class Viterbi {
 	protected double cumulTargetCosts;
 	protected int nTargetCosts;
 
+	// Logs the joins of the selected units, in the input format of JoinCostPrecomputer:
+	private static final Logger joinLogger = MaryUtils.getLogger("JoinLog");
+
 	// Keep track of average costs for each voice: map UnitDatabase->DebugStats
 	private static Map<UnitDatabase, DebugStats> debugStats = new HashMap<UnitDatabase, DebugStats>();
 
@@ -440,6 +445,12 @@ public class Viterbi {
 			logger.debug("Avg. length: " + df.format(stats.avgLength) + ", avg. cost best path: "
 					+ df.format(stats.avgCostBestPath) + ", avg. target cost: " + df.format(stats.avgTargetCost)
 					+ ", avg. join cost: " + df.format(stats.avgJoinCost));
+			if (joinCostFunction instanceof JoinCostFeatures) {
+				JoinCostCache cache = ((JoinCostFeatures) joinCostFunction).getJoinCostCache();
+				if (cache != null) {
+					logger.debug(cache.toString());
+				}
+			}
 
 		}
 
@@ -505,6 +516,30 @@ public class Viterbi {
 		return new ViterbiPath(candidate, path, cost);
 	}
 
+	/**
+	 * If the JoinLog logger is at debug level, log the joins between non-contiguous units in the given selection, as one line
+	 * <code>voice=(name) joins: left:right ...</code>, which {@link marytts.unitselection.select.JoinCostPrecomputer} reads.
+	 *
+	 * @param voiceName
+	 *            the name of the voice whose units were selected
+	 * @param selectedUnits
+	 *            the selected units of an utterance
+	 */
+	public static void logJoins(String voiceName, List<SelectedUnit> selectedUnits) {
+		if (joinLogger.isDebugEnabled()) {
+			StringBuilder joins = new StringBuilder("voice=").append(voiceName).append(" joins:");
+			int prevIndex = -1;
+			for (SelectedUnit u : selectedUnits) {
+				int index = u.getUnit().index;
+				if (prevIndex >= 0 && prevIndex + 1 != index) {
+					joins.append(' ').append(prevIndex).append(':').append(index);
+				}
+				prevIndex = index;
+			}
+			joinLogger.debug(joins.toString());
+		}
+	}
+
 	/**
 	 * Find the best path. This requires apply() to have been run. For this best path, we set the pointers to the *next* path
 	 * elements correctly.
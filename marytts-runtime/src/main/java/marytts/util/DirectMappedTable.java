@@ -0,0 +1,160 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The slot table and hit statistics of a bounded cache shared by concurrent requests. Every hash code maps to one slot, and
+ * storing an entry replaces whatever the slot held before. Lookups and updates take no locks: the entries must be immutable,
+ * with only final fields, so that a reader sees either the old or the new entry of a slot, never a mixture of both.
+ * <p>
+ * The table does not know the keys of its entries; the cache checks whether the entry found in a slot is the one it looks for,
+ * and reports the outcome with {@link #hit()} or {@link #miss()}.
+ *
+ * @param <E>
+ *            the type of the entries
+ */
+public class DirectMappedTable<E> {
+	private final Object[] entries;
+	private final int bits;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Create an empty table.
+	 *
+	 * @param capacity
+	 *            the number of slots; rounded up to a power of two, at most 2^30
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	public DirectMappedTable(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive, but is " + capacity);
+		}
+		int b = 1;
+		while (b < 30 && (1 << b) < capacity) {
+			b++;
+		}
+		bits = b;
+		entries = new Object[1 << bits];
+	}
+
+	/**
+	 * The slot for an int hash code, which is scrambled first, so that hash codes differing only in their high bits are spread
+	 * over the table as well.
+	 *
+	 * @param hash
+	 *            the hash code of a key
+	 * @return the slot index
+	 */
+	public int slot(int hash) {
+		return (hash * 0x9E3779B9) >>> (32 - bits);
+	}
+
+	/**
+	 * The slot for a long key or hash code, scrambled like {@link #slot(int)}.
+	 *
+	 * @param hash
+	 *            the key or hash code
+	 * @return the slot index
+	 */
+	public int slot(long hash) {
+		return (int) ((hash * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+	}
+
+	/**
+	 * The entry in the given slot.
+	 *
+	 * @param slot
+	 *            a slot index, as returned by one of the slot() methods
+	 * @return the entry last stored in the slot, or null if the slot is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(int slot) {
+		return (E) entries[slot];
+	}
+
+	/**
+	 * Store an entry in the given slot, replacing the previous one.
+	 *
+	 * @param slot
+	 *            a slot index, as returned by one of the slot() methods
+	 * @param entry
+	 *            the new entry
+	 */
+	public void set(int slot, E entry) {
+		entries[slot] = entry;
+	}
+
+	/**
+	 * The number of slots.
+	 *
+	 * @return the capacity, a power of two
+	 */
+	public int getCapacity() {
+		return entries.length;
+	}
+
+	/**
+	 * Count a lookup which found its entry.
+	 */
+	public void hit() {
+		hits.increment();
+	}
+
+	/**
+	 * Count a lookup which did not find its entry.
+	 */
+	public void miss() {
+		misses.increment();
+	}
+
+	/**
+	 * The number of lookups counted with {@link #hit()}.
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * The number of lookups counted with {@link #miss()}.
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * The hits as a proportion of all counted lookups.
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if no lookups were counted yet
+	 */
+	public double getHitRate() {
+		long found = getHits();
+		long total = found + getMisses();
+		return total == 0 ? 0 : found / (double) total;
+	}
+}
@@ -21,18 +21,43 @@
 package marytts.util;
 
 import java.io.File;
-import java.net.MalformedURLException;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+import marytts.datatypes.MaryData;
 import marytts.server.MaryProperties;
 
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
 /**
+ * A cache for the results of MARY requests, with two tiers: a size-bounded in-memory tier holding recently used results, and an
+ * append-only data file holding all results ever inserted. Records are keyed by a SHA-256 digest of all lookup fields (input
+ * type, output type, locale, voice, output parameters, style, effects and input text), so neither tier needs to keep the input
+ * text.
+ * <p>
+ * Callers need not serialise XML input data for the lookup: {@link #inputKey(MaryData)} derives a compact stand-in for the input
+ * text from the document tree.
+ * <p>
+ * The data file starts with a magic string, followed by records of the form (32-byte key, int length, data). On opening, the file
+ * is scanned once to build the index of record positions; a truncated record at the end, as left by a crash, is cut off.
+ * <p>
+ * Lookups answered from the memory tier take no lock; they only mark the entry as used. Inserting, and moving a record read
+ * from the data file into memory, are synchronized, and evict entries in clock order: an entry which was used since the clock
+ * last passed it gets a second chance, the others are dropped.
+ * 
  * @author marc
  * 
  */
@@ -49,7 +74,7 @@ public class MaryCache {
 	 *      and any exception will be logged.
 	 * @return the MaryCache singleton object, or null if none could be created.
 	 */
-	public static MaryCache getCache() {
+	public static synchronized MaryCache getCache() {
 		if (maryCache == null) {
 			try {
 				File targetFile = new File(MaryProperties.getFilename("cache.file", "maryCache"));
@@ -57,7 +82,8 @@ public class MaryCache {
 				if (!directory.isDirectory()) {
 					directory.mkdirs();
 				}
-				maryCache = new MaryCache(targetFile, MaryProperties.getBoolean("cache.clearOnStart", false));
+				long memoryLimit = MaryProperties.getInteger("cache.memorysize", 64) * 1024L * 1024L;
+				maryCache = new MaryCache(targetFile, MaryProperties.getBoolean("cache.clearOnStart", false), memoryLimit);
 			} catch (Exception e) {
 				MaryUtils.getLogger(MaryCache.class).warn("Cannot set up cache", e);
 			}
@@ -70,72 +96,404 @@ public class MaryCache {
 	 * 
 	 * @return true if there is a MaryCache, false otherwise.
 	 */
-	public static boolean haveCache() {
+	public static synchronized boolean haveCache() {
 		return maryCache != null;
 	}
 
 	// //////////////////////////// non-static code /////////////////////////////
 
-	private Connection connection;
+	private static final byte[] MAGIC = { 'M', 'A', 'R', 'Y', 'C', 'A', 'C', 'H', 'E', '1' };
+	private static final int KEY_LENGTH = 32;
+
+	private RandomAccessFile file;
+	private volatile FileChannel channel;
+	private long dataEnd;
+	private Map<String, long[]> index = new ConcurrentHashMap<String, long[]>();
+
+	private long memoryLimit;
+	private long memoryUsed = 0;
+	private Map<String, MemoryEntry> memory = new ConcurrentHashMap<String, MemoryEntry>();
+	// the keys of the memory tier in clock order; guarded by the lock
+	private ArrayDeque<String> clock = new ArrayDeque<String>();
+
+	private LongAdder memoryHits = new LongAdder();
+	private LongAdder diskHits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private long evictions = 0;
+
+	private static final class MemoryEntry {
+		final byte[] data;
+		volatile boolean used = true;
+
+		MemoryEntry(byte[] data) {
+			this.data = data;
+		}
+	}
 
 	/**
-	 * Create a MaryCache with the given file prefix. This constructor is public only for tests; it should not normally be called.
-	 * User code should call {@link #getCache()} instead. TODO: Find a more elegant way to create a custom MaryCache from test
-	 * code.
+	 * Create a MaryCache with the given data file and a memory tier of 64 MB. This constructor is public only for tests; it should
+	 * not normally be called. User code should call {@link #getCache()} instead.
 	 * 
 	 * @param cacheFile
-	 *            the file name prefix with which to create the cache database.
+	 *            the data file of the cache.
 	 * @param clearCache
 	 *            if true, clear the cache; if false, keep it.
-	 * @throws ClassNotFoundException
-	 *             if the HSQL JDBC driver is not in the classpath.
-	 * @throws SQLException
-	 *             if the database connection cannot be set up
+	 * @throws IOException
+	 *             if the data file cannot be opened or is not a cache file.
 	 */
-	public MaryCache(File cacheFile, boolean clearCache) throws ClassNotFoundException, SQLException {
-		// Load the HSQL Database Engine JDBC driver
-		Class.forName("org.hsqldb.jdbcDriver");
-		connection = DriverManager.getConnection("jdbc:hsqldb:" + cacheFile.toURI().toString(), "sa", "");
-		boolean mustCreateTable = false;
-		if (clearCache) {
-			Statement st = connection.createStatement();
-			st.executeUpdate("DROP TABLE MARYCACHE IF EXISTS");
-			st.close();
-			mustCreateTable = true;
-		} else { // don't clear -- check if table exists
-			DatabaseMetaData dbInfo = connection.getMetaData();
-			ResultSet rs = dbInfo.getTables(null, null, "MARYCACHE", new String[] { "TABLE" });
-			if (rs.next()) {
-				// table exists
-			} else {
-				mustCreateTable = true;
+	public MaryCache(File cacheFile, boolean clearCache) throws IOException {
+		this(cacheFile, clearCache, 64 * 1024L * 1024L);
+	}
+
+	/**
+	 * Create a MaryCache with the given data file. This constructor is public only for tests; it should not normally be called.
+	 * User code should call {@link #getCache()} instead.
+	 * 
+	 * @param cacheFile
+	 *            the data file of the cache.
+	 * @param clearCache
+	 *            if true, clear the cache; if false, keep it.
+	 * @param memoryLimit
+	 *            the maximum number of bytes of cached data to keep in memory.
+	 * @throws IOException
+	 *             if the data file cannot be opened or is not a cache file.
+	 */
+	public MaryCache(File cacheFile, boolean clearCache, long memoryLimit) throws IOException {
+		this.memoryLimit = memoryLimit;
+		file = new RandomAccessFile(cacheFile, "rw");
+		channel = file.getChannel();
+		if (clearCache || channel.size() == 0) {
+			channel.truncate(0);
+			channel.write(ByteBuffer.wrap(MAGIC), 0);
+			dataEnd = MAGIC.length;
+		} else {
+			readIndex();
+		}
+	}
+
+	/**
+	 * Scan the data file to build the index, and cut off an incomplete record at the end.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read or does not start with the magic string
+	 */
+	private void readIndex() throws IOException {
+		long size = channel.size();
+		ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+		readFully(magic, 0);
+		if (!ByteBuffer.wrap(MAGIC).equals(magic.flip())) {
+			channel.close();
+			throw new IOException("Not a MARY cache file");
+		}
+		long pos = MAGIC.length;
+		ByteBuffer recordHeader = ByteBuffer.allocate(KEY_LENGTH + 4);
+		byte[] key = new byte[KEY_LENGTH];
+		while (pos + recordHeader.capacity() <= size) {
+			recordHeader.clear();
+			readFully(recordHeader, pos);
+			recordHeader.flip();
+			recordHeader.get(key);
+			int length = recordHeader.getInt();
+			long dataPos = pos + recordHeader.capacity();
+			if (length < 0 || dataPos + length > size) {
+				break;
+			}
+			index.put(toHex(key), new long[] { dataPos, length });
+			pos = dataPos + length;
+		}
+		if (pos < size) {
+			MaryUtils.getLogger(MaryCache.class).warn("Cutting off incomplete cache record at end of file");
+			channel.truncate(pos);
+		}
+		dataEnd = pos;
+	}
+
+	private void readFully(ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if (n < 0) {
+				throw new IOException("Unexpected end of cache file");
+			}
+			pos += n;
+		}
+	}
+
+	/**
+	 * Compute the lookup key for the given fields.
+	 */
+	private static String key(String inputtype, String outputtype, String locale, String voice, String outputparams,
+			String style, String effects, String inputtext) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is always supported.");
+		}
+		for (String field : new String[] { inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext }) {
+			// null and "null" are the same, as they were in the database
+			md.update(utf8(String.valueOf(field)));
+			md.update((byte) 0);
+		}
+		return toHex(md.digest());
+	}
+
+	/**
+	 * Compute a digest of the given input data, which can be passed as the input text to the lookup and insert methods. For XML
+	 * data, the digest is computed from the elements, attributes, text, entity references and processing instructions of the
+	 * document tree, which is much cheaper than serialising the document. Adjacent text and CDATA nodes are digested as one text,
+	 * and comments are skipped, so documents which differ only in how their text is split into nodes, or in their comments, have
+	 * the same digest.
+	 * 
+	 * @param data
+	 *            the input data of a request
+	 * @return the digest, or null if the data is neither XML nor text
+	 */
+	public static String inputKey(MaryData data) {
+		Digester digester = new Digester();
+		if (data.getType().isXMLType() && data.getDocument() != null) {
+			digester.add('D');
+			digester.add(data.getDocument().getDocumentElement());
+		} else if (data.getType().isTextType() && data.getPlainText() != null) {
+			digester.add('T');
+			digester.add(data.getPlainText());
+		} else {
+			return null;
+		}
+		return digester.digest();
+	}
+
+	/**
+	 * Feeds the characters of a document tree into a SHA-256 digest, through a small buffer instead of a string per node.
+	 */
+	private static final class Digester {
+		private final MessageDigest md;
+		private final byte[] buf = new byte[2048];
+		private int len;
+
+		Digester() {
+			try {
+				md = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError("SHA-256 is always supported.");
+			}
+		}
+
+		void add(char c) {
+			if (len + 2 > buf.length) {
+				md.update(buf, 0, len);
+				len = 0;
+			}
+			buf[len++] = (byte) (c >> 8);
+			buf[len++] = (byte) c;
+		}
+
+		void add(String s) {
+			addChars(s);
+			// terminate, so that adjacent strings cannot be confused:
+			add('\0');
+		}
+
+		private void addChars(String s) {
+			for (int i = 0, n = s.length(); i < n; i++) {
+				add(s.charAt(i));
+			}
+		}
+
+		void add(Node node) {
+			switch (node.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				add('<');
+				add(node.getNodeName());
+				NamedNodeMap attributes = node.getAttributes();
+				Attr[] sorted = new Attr[attributes.getLength()];
+				for (int i = 0; i < sorted.length; i++) {
+					sorted[i] = (Attr) attributes.item(i);
+				}
+				if (sorted.length > 1) {
+					Arrays.sort(sorted, new Comparator<Attr>() {
+						public int compare(Attr a1, Attr a2) {
+							return a1.getName().compareTo(a2.getName());
+						}
+					});
+				}
+				for (Attr attribute : sorted) {
+					add('@');
+					add(attribute.getName());
+					add(attribute.getValue());
+				}
+				addChildren(node);
+				add('>');
+				break;
+			case Node.ENTITY_REFERENCE_NODE:
+				add('&');
+				add(node.getNodeName());
+				addChildren(node);
+				add(';');
+				break;
+			case Node.PROCESSING_INSTRUCTION_NODE:
+				add('?');
+				add(node.getNodeName());
+				add(node.getNodeValue());
+				break;
+			default:
+				// comments do not influence processing, and other node types do not occur below the document element
+			}
+		}
+
+		/**
+		 * Add the children of the node, with each run of adjacent text and CDATA nodes as a single text.
+		 */
+		private void addChildren(Node node) {
+			boolean inText = false;
+			for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+				short type = child.getNodeType();
+				if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+					if (!inText) {
+						add('"');
+						inText = true;
+					}
+					addChars(child.getNodeValue());
+				} else if (type != Node.COMMENT_NODE) {
+					if (inText) {
+						add('\0');
+						inText = false;
+					}
+					add(child);
+				}
+			}
+			if (inText) {
+				add('\0');
 			}
 		}
-		if (mustCreateTable) {
-			String query = "CREATE CACHED TABLE MARYCACHE (id INTEGER IDENTITY, " + "inputtype VARCHAR(50), "
-					+ "outputtype VARCHAR(50), " + "locale VARCHAR(10), " + "voice VARCHAR(100), "
-					+ "outputparams VARCHAR(1000), " + "style VARCHAR(50), " + "effects VARCHAR(1000), "
-					+ "inputtext LONGVARCHAR, " + "outputtext LONGVARCHAR, " + "outputaudio LONGVARBINARY, "
-					+ "UNIQUE(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext)" + ")";
-			update(query);
+
+		String digest() {
+			md.update(buf, 0, len);
+			len = 0;
+			return toHex(md.digest());
+		}
+	}
+
+	private static byte[] utf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError("UTF-8 is always a supported encoding.");
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	private static byte[] fromHex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
 		}
+		return bytes;
 	}
 
 	/**
-	 * Carry out an UPDATE SQL command on the database.
+	 * Look up the data for the given key, first in memory, then in the data file.
 	 * 
-	 * @param query
-	 *            the UPDATE SQL command to carry out
-	 * @throws SQLException
-	 *             if there is a problem executing the update.
+	 * @return the data, or null if there is no record for the key. The array may be held by the memory tier and must not be
+	 *         modified.
 	 */
-	private synchronized void update(String query) throws SQLException {
-		Statement st = connection.createStatement();
-		int ok = st.executeUpdate(query);
-		if (ok == -1) {
-			throw new SQLException("DB problem with query: " + query);
+	private byte[] lookup(String key) throws IOException {
+		FileChannel ch = channel;
+		if (ch == null) {
+			throw new IOException("Cache has been shut down");
+		}
+		MemoryEntry entry = memory.get(key);
+		if (entry != null) {
+			if (!entry.used) {
+				entry.used = true;
+			}
+			memoryHits.increment();
+			return entry.data;
+		}
+		long[] location = index.get(key);
+		if (location == null) {
+			misses.increment();
+			return null;
+		}
+		// Read without holding the lock; records are never changed once written.
+		ByteBuffer buf = ByteBuffer.allocate((int) location[1]);
+		long pos = location[0];
+		while (buf.hasRemaining()) {
+			int n = ch.read(buf, pos);
+			if (n < 0) {
+				throw new IOException("Unexpected end of cache file");
+			}
+			pos += n;
+		}
+		byte[] data = buf.array();
+		diskHits.increment();
+		synchronized (this) {
+			if (channel != null) {
+				remember(key, data);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Append a record to the data file and remember it in memory, unless a record with the same key exists already.
+	 */
+	private synchronized void insert(String key, byte[] data) throws IOException {
+		ensureOpen();
+		// Need to verify, here in the synchronized code, that really we don't have this entry already.
+		// If we do, we ignore this call.
+		if (index.containsKey(key)) {
+			return;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(KEY_LENGTH + 4 + data.length);
+		buf.put(fromHex(key)).putInt(data.length).put(data).flip();
+		long pos = dataEnd;
+		while (buf.hasRemaining()) {
+			pos += channel.write(buf, pos);
+		}
+		index.put(key, new long[] { dataEnd + KEY_LENGTH + 4, data.length });
+		dataEnd = pos;
+		remember(key, data);
+	}
+
+	/**
+	 * Put the data into the memory tier, evicting the least recently used entries as needed. Must be called with the lock held.
+	 */
+	private void remember(String key, byte[] data) {
+		if (data.length > memoryLimit) {
+			return;
+		}
+		MemoryEntry previous = memory.put(key, new MemoryEntry(data));
+		if (previous != null) {
+			memoryUsed -= previous.data.length;
+		} else {
+			clock.add(key);
+		}
+		memoryUsed += data.length;
+		while (memoryUsed > memoryLimit) {
+			String oldest = clock.remove();
+			MemoryEntry e = memory.get(oldest);
+			if (e.used) {
+				e.used = false;
+				clock.add(oldest);
+			} else {
+				memory.remove(oldest);
+				memoryUsed -= e.data.length;
+				evictions++;
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (channel == null) {
+			throw new IOException("Cache has been shut down");
 		}
-		st.close();
 	}
 
 	/**
@@ -156,11 +514,11 @@ public class MaryCache {
 	 *            the request's output text. Must not be null.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
+	 * @throws IOException
 	 *             if the record could not be entered into the cache.
 	 */
 	public void insertText(String inputtype, String outputtype, String locale, String voice, String inputtext, String outputtext)
-			throws SQLException {
+			throws IOException {
 		insertText(inputtype, outputtype, locale, voice, null, null, null, inputtext, outputtext);
 	}
 
@@ -188,41 +546,15 @@ public class MaryCache {
 	 *            the request's output text. Must not be null.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
+	 * @throws IOException
 	 *             if the record could not be entered into the cache.
 	 */
-	public synchronized void insertText(String inputtype, String outputtype, String locale, String voice, String outputparams,
-			String style, String effects, String inputtext, String outputtext) throws SQLException {
+	public void insertText(String inputtype, String outputtype, String locale, String voice, String outputparams, String style,
+			String effects, String inputtext, String outputtext) throws IOException {
 		if (inputtype == null || outputtype == null || locale == null || voice == null || inputtext == null || outputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		// Need to verify, here in the synchronized code, once again that really we don't have this entry already.
-		// If we do, we ignore this call.
-		if (lookupText(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
-			return;
-		}
-
-		String query = "INSERT INTO MARYCACHE (inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext, outputtext) VALUES ('"
-				+ inputtype
-				+ "','"
-				+ outputtype
-				+ "','"
-				+ locale
-				+ "','"
-				+ voice
-				+ "','"
-				+ outputparams
-				+ "','"
-				+ style
-				+ "','"
-				+ effects + "',?,?)";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		// We set the input and output text separately because they could contain single quote characters
-		st.setString(1, inputtext);
-		st.setString(2, outputtext);
-		st.executeUpdate();
-		st.close();
+		insert(key(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext), utf8(outputtext));
 	}
 
 	/**
@@ -241,10 +573,10 @@ public class MaryCache {
 	 *            the request's output data. Must not be null.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
+	 * @throws IOException
 	 *             if the record could not be entered into the cache.
 	 */
-	public void insertAudio(String inputtype, String locale, String voice, String inputtext, byte[] audio) throws SQLException {
+	public void insertAudio(String inputtype, String locale, String voice, String inputtext, byte[] audio) throws IOException {
 		insertAudio(inputtype, locale, voice, null, null, null, inputtext, audio);
 	}
 
@@ -270,39 +602,16 @@ public class MaryCache {
 	 *            the request's output data. Must not be null.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
+	 * @throws IOException
 	 *             if the record could not be entered into the cache.
 	 */
-	public synchronized void insertAudio(String inputtype, String locale, String voice, String outputparams, String style,
-			String effects, String inputtext, byte[] audio) throws SQLException {
-		if (inputtype == null || locale == null || voice == null || inputtext == null) {
+	public void insertAudio(String inputtype, String locale, String voice, String outputparams, String style, String effects,
+			String inputtext, byte[] audio) throws IOException {
+		if (inputtype == null || locale == null || voice == null || inputtext == null || audio == null) {
 			throw new NullPointerException("Null argument");
 		}
-		// Need to verify, here in the synchronized code, once again that really we don't have this entry already.
-		// If we do, we ignore this call.
-		if (lookupAudio(inputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
-			return;
-		}
-
-		String query = "INSERT INTO MARYCACHE (inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext, outputaudio) VALUES('"
-				+ inputtype
-				+ "','AUDIO','"
-				+ locale
-				+ "','"
-				+ voice
-				+ "','"
-				+ outputparams
-				+ "','"
-				+ style
-				+ "','"
-				+ effects
-				+ "',?,?)";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		st.setBytes(2, audio);
-		st.executeUpdate();
-		st.close();
+		// the memory tier keeps the array, so it must not be changed by the caller later:
+		insert(key(inputtype, "AUDIO", locale, voice, outputparams, style, effects, inputtext), audio.clone());
 	}
 
 	/**
@@ -322,11 +631,11 @@ public class MaryCache {
 	 *         these keys.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
-	 *             if there is a problem querying the cache.
+	 * @throws IOException
+	 *             if there is a problem reading from the cache.
 	 */
 	public String lookupText(String inputtype, String outputtype, String locale, String voice, String inputtext)
-			throws SQLException {
+			throws IOException {
 		return lookupText(inputtype, outputtype, locale, voice, null, null, null, inputtext);
 	}
 
@@ -353,27 +662,16 @@ public class MaryCache {
 	 *         these keys.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
-	 *             if there is a problem querying the cache.
+	 * @throws IOException
+	 *             if there is a problem reading from the cache.
 	 */
-	public synchronized String lookupText(String inputtype, String outputtype, String locale, String voice, String outputparams,
-			String style, String effects, String inputtext) throws SQLException {
+	public String lookupText(String inputtype, String outputtype, String locale, String voice, String outputparams,
+			String style, String effects, String inputtext) throws IOException {
 		if (inputtype == null || outputtype == null || locale == null || voice == null || inputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		String outputtext = null;
-		String query = "SELECT outputtext FROM marycache WHERE inputtype = '" + inputtype + "' AND outputtype = '" + outputtype
-				+ "' AND locale = '" + locale + "' AND voice = '" + voice + "' AND outputparams = '" + outputparams
-				+ "' AND style = '" + style + "' AND effects = '" + effects + "' AND inputtext = ?";
-
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		ResultSet results = st.executeQuery();
-		if (results.next()) { // we expect only a single result, if any, so no while loop
-			outputtext = results.getString(1);
-		}
-		st.close();
-		return outputtext;
+		byte[] data = lookup(key(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext));
+		return data != null ? new String(data, "UTF-8") : null;
 	}
 
 	/**
@@ -391,10 +689,10 @@ public class MaryCache {
 	 *         these keys.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
-	 *             if there is a problem querying the cache.
+	 * @throws IOException
+	 *             if there is a problem reading from the cache.
 	 */
-	public byte[] lookupAudio(String inputtype, String locale, String voice, String inputtext) throws SQLException {
+	public byte[] lookupAudio(String inputtype, String locale, String voice, String inputtext) throws IOException {
 		return lookupAudio(inputtype, locale, voice, null, null, null, inputtext);
 	}
 
@@ -419,51 +717,55 @@ public class MaryCache {
 	 *         these keys.
 	 * @throws NullPointerException
 	 *             if one of the fields is null which must be non-null.
-	 * @throws SQLException
-	 *             if there is a problem querying the cache.
+	 * @throws IOException
+	 *             if there is a problem reading from the cache.
 	 */
-	public synchronized byte[] lookupAudio(String inputtype, String locale, String voice, String outputparams, String style,
-			String effects, String inputtext) throws SQLException {
+	public byte[] lookupAudio(String inputtype, String locale, String voice, String outputparams, String style, String effects,
+			String inputtext) throws IOException {
 		if (inputtype == null || locale == null || voice == null || inputtext == null) {
 			throw new NullPointerException("Null argument");
 		}
-		byte[] audio = null;
-		String query = "Select outputaudio FROM marycache WHERE inputtype = '" + inputtype
-				+ "' AND outputtype = 'AUDIO' AND locale = '" + locale + "' AND voice = '" + voice + "' AND outputparams = '"
-				+ outputparams + "' AND style = '" + style + "' AND effects = '" + effects + "' AND inputtext = ?";
-		PreparedStatement st = connection.prepareStatement(query);
-		st.setString(1, inputtext);
-		ResultSet results = st.executeQuery();
-		if (results.next()) {
-			audio = results.getBytes(1);
-		}
-		return audio;
+		byte[] data = lookup(key(inputtype, "AUDIO", locale, voice, outputparams, style, effects, inputtext));
+		// a copy, so that the caller cannot change the record in the memory tier:
+		return data != null ? data.clone() : null;
 	}
 
 	/**
-	 * Shut down the cache. After this has been called, any further calls to the object will throw exceptions.
+	 * A one-line summary of the cache usage since it was opened.
 	 * 
-	 * @throws SQLException
-	 *             if there is a problem executing the database SHUTDOWN command.
+	 * @return the statistics
 	 */
-	public void shutdown() throws SQLException {
+	public synchronized String getStatistics() {
+		return "memory hits " + memoryHits.sum() + ", disk hits " + diskHits.sum() + ", misses " + misses.sum() + ", evictions "
+				+ evictions + "; " + index.size() + " records, " + memory.size() + " in memory (" + memoryUsed + " bytes)";
+	}
 
-		Statement st = connection.createStatement();
-		st.execute("SHUTDOWN");
-		connection.close(); // if there are no other open connection
+	/**
+	 * Shut down the cache. After this has been called, any further calls to the object will throw exceptions.
+	 * 
+	 * @throws IOException
+	 *             if there is a problem closing the data file.
+	 */
+	public synchronized void shutdown() throws IOException {
+		if (channel == null) {
+			return;
+		}
+		MaryUtils.getLogger(MaryCache.class).info("Cache statistics: " + getStatistics());
+		channel.force(false);
+		file.close();
+		channel = null;
+		memory.clear();
+		clock.clear();
+		memoryUsed = 0;
 	}
 
 	/**
 	 * @param args
 	 *            args
-	 * @throws SQLException
-	 *             SQLException
-	 * @throws MalformedURLException
-	 *             MalformedURLException
-	 * @throws ClassNotFoundException
-	 *             ClassNotFoundException
+	 * @throws IOException
+	 *             IOException
 	 */
-	public static void main(String[] args) throws SQLException, MalformedURLException, ClassNotFoundException {
+	public static void main(String[] args) throws IOException {
 		MaryCache c = new MaryCache(new File("/Users/marc/Desktop/testdb/testDB"), false);
 		// c.insertText("TEXT", "RAWMARYXML", "de", "de1", "Welcome to the world of speech synthesis", "<rawmaryxml/>");
 
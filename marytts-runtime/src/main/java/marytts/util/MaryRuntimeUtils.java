@@ -46,6 +46,7 @@ import marytts.fst.FSTLookup;
 import marytts.htsengine.HMMVoice;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.synthesis.Voice;
+import marytts.server.AudioEncoding;
 import marytts.server.Mary;
 import marytts.server.MaryProperties;
 import marytts.signalproc.effects.AudioEffect;
@@ -193,6 +194,15 @@ public class MaryRuntimeUtils {
 					output.append(typeName).append("_STREAM\n");
 			}
 		}
+		// types produced by the server's own encoders:
+		for (String typeName : AudioEncoding.getTypeNames()) {
+			if (output.indexOf(typeName + "_FILE\n") == -1) {
+				output.append(typeName).append("_FILE\n");
+			}
+			if (output.indexOf(typeName + "_STREAM\n") == -1) {
+				output.append(typeName).append("_STREAM\n");
+			}
+		}
 		return output.toString();
 	}
 
@@ -300,6 +310,18 @@ public class MaryRuntimeUtils {
 		return new AudioDestination(ram);
 	}
 
+	/**
+	 * Whether synthesis modules should carry audio as single-precision floats rather than doubles, where they can. This affects
+	 * four paths: the output of the HTS vocoder, the units decoded by the basic unit concatenator, the units decoded and
+	 * overlap-added by the overlap unit concatenator, and the buffered result of audio effects. Set by the mary property
+	 * "synthesis.floataudio", false by default.
+	 *
+	 * @return the value of synthesis.floataudio
+	 */
+	public static boolean useFloatAudio() {
+		return MaryProperties.getBoolean("synthesis.floataudio", false);
+	}
+
 	/**
 	 * Convenience method to access the allophone set referenced in the MARY property with the given name.
 	 *
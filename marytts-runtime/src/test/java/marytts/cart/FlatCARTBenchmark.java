@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.util.Random;
+
+import marytts.cart.io.DirectedGraphReader;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+/**
+ * Compares the speed of interpreting a CART or directed graph of a voice through its node objects and through its flat form.
+ * Not a unit test; run the main method by hand, e.g. on the preselection CART (<code>cart.mry</code>) or the duration CART of a
+ * unit selection voice.
+ * <p>
+ * Usage: <code>FlatCARTBenchmark cartFile [numLookups]</code>
+ */
+public class FlatCARTBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: FlatCARTBenchmark cartFile [numLookups]");
+			System.exit(1);
+		}
+		DirectedGraph graph = new DirectedGraphReader().load(args[0]);
+		int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		FeatureDefinition featureDefinition = graph.getFeatureDefinition();
+
+		// feature vectors with random values, which take random paths through the tree:
+		FeatureVector[] featureVectors = new FeatureVector[10000];
+		Random random = new Random(1);
+		int numBytes = featureDefinition.getNumberOfByteFeatures();
+		int numShorts = featureDefinition.getNumberOfShortFeatures();
+		for (int i = 0; i < featureVectors.length; i++) {
+			byte[] bytes = new byte[numBytes];
+			for (int f = 0; f < numBytes; f++) {
+				bytes[f] = (byte) random.nextInt(featureDefinition.getNumberOfValues(f));
+			}
+			short[] shorts = new short[numShorts];
+			for (int f = 0; f < numShorts; f++) {
+				shorts[f] = (short) random.nextInt(featureDefinition.getNumberOfValues(numBytes + f));
+			}
+			float[] floats = new float[featureDefinition.getNumberOfContinuousFeatures()];
+			for (int f = 0; f < floats.length; f++) {
+				floats[f] = random.nextFloat();
+			}
+			featureVectors[i] = new FeatureVector(bytes, shorts, floats, i);
+		}
+
+		FlatCART flat = new FlatCART(graph.getRootNode());
+		System.out.println(args[0] + ": " + flat.getNumberOfNodes() + " nodes");
+		for (int round = 0; round < 5; round++) { // the first rounds warm up
+			for (int compiled = 0; compiled < 2; compiled++) {
+				if (compiled == 1) {
+					graph.compile();
+				} else {
+					graph.setRootNode(graph.getRootNode()); // discards the flat form
+				}
+				int found = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < numLookups; i++) {
+					if (graph.interpret(featureVectors[i % featureVectors.length]) != null) {
+						found++;
+					}
+				}
+				long nanos = System.nanoTime() - start;
+				if (round > 1) {
+					System.out.printf("%-10s %8.1f ns/lookup (%d found)%n", compiled == 1 ? "flat" : "nodes", (double) nanos
+							/ numLookups, found);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that compiled graphs interpret feature vectors exactly as the node objects do.
+ */
+public class FlatCARTTest {
+	private static final String FEATURE_DEFINITION = FeatureDefinition.BYTEFEATURES + "\n" //
+			+ "0 | phone 0 a b c\n" //
+			+ "0 | stressed 0 1\n" //
+			+ "0 | pos 0 n v adj\n" //
+			+ FeatureDefinition.SHORTFEATURES + "\n" //
+			+ "0 | word 0 w1 w2 w3 w4\n" //
+			+ "0 | lemma 0 l1 l2\n" //
+			+ FeatureDefinition.CONTINUOUSFEATURES + "\n" //
+			+ "0 linear | unit_duration float\n" //
+			+ "0 linear | unit_logf0 float\n";
+
+	private FeatureDefinition featureDefinition;
+	private Random random;
+
+	@Before
+	public void setUp() throws Exception {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(FEATURE_DEFINITION)), true);
+		random = new Random(42);
+	}
+
+	/**
+	 * A random tree using all kinds of decision nodes. With graphNodes, some of the nodes are directed graph nodes, some leaves
+	 * have no data and some nodes have several mothers.
+	 */
+	private Node randomNode(int depth, boolean graphNodes, List<Node> created) {
+		Node node;
+		if (depth == 0 || random.nextInt(6) == 0) {
+			if (graphNodes && created.size() > 0 && random.nextInt(4) == 0) {
+				return created.get(random.nextInt(created.size()));
+			}
+			int[] data = new int[random.nextInt(5)];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = random.nextInt(1000);
+			}
+			node = new LeafNode.IntArrayLeafNode(graphNodes && data.length == 0 ? null : data);
+		} else if (graphNodes && random.nextInt(5) == 0) {
+			Node decision = randomNode(depth - 1, graphNodes, created);
+			Node leaf = randomNode(0, graphNodes, created);
+			node = new DirectedGraphNode(decision instanceof DecisionNode ? (DecisionNode) decision : null,
+					leaf instanceof DecisionNode ? null : leaf);
+		} else {
+			DecisionNode decision;
+			switch (random.nextInt(6)) {
+			case 0:
+				decision = new DecisionNode.BinaryByteDecisionNode(0, (byte) random.nextInt(4), featureDefinition);
+				break;
+			case 1:
+				decision = new DecisionNode.BinaryShortDecisionNode(3, (short) random.nextInt(5), featureDefinition);
+				break;
+			case 2:
+				decision = new DecisionNode.BinaryFloatDecisionNode(5 + random.nextInt(2), random.nextFloat(), featureDefinition);
+				break;
+			case 3:
+				decision = new DecisionNode.BinaryFloatDecisionNode(1, 0.5f, featureDefinition);
+				break;
+			case 4:
+				decision = new DecisionNode.ByteDecisionNode(2, featureDefinition.getNumberOfValues(2), featureDefinition);
+				break;
+			default:
+				decision = new DecisionNode.ShortDecisionNode(4, featureDefinition.getNumberOfValues(4), featureDefinition);
+			}
+			for (int i = 0; i < decision.getNumberOfDaugthers(); i++) {
+				decision.addDaughter(!graphNodes && random.nextInt(20) == 0 ? null : randomNode(depth - 1, graphNodes, created));
+			}
+			node = decision;
+		}
+		created.add(node);
+		return node;
+	}
+
+	private FeatureVector randomFeatureVector() {
+		byte[] bytes = new byte[3];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) random.nextInt(featureDefinition.getNumberOfValues(i));
+		}
+		short[] shorts = new short[2];
+		for (int i = 0; i < shorts.length; i++) {
+			shorts[i] = (short) random.nextInt(featureDefinition.getNumberOfValues(3 + i));
+		}
+		float[] floats = new float[] { random.nextFloat(), random.nextFloat() };
+		return new FeatureVector(bytes, shorts, floats, 0);
+	}
+
+	@Test
+	public void cartSelectsSameNodes() {
+		for (int tree = 0; tree < 20; tree++) {
+			Node root = randomNode(10, false, new ArrayList<Node>());
+			if (root instanceof DecisionNode) {
+				((DecisionNode) root).countData();
+			}
+			CART cart = new CART(root, featureDefinition);
+			CART flat = new CART(root, featureDefinition);
+			flat.compile();
+			for (int i = 0; i < 500; i++) {
+				FeatureVector fv = randomFeatureVector();
+				for (int minNumberOfData : new int[] { 0, 1, 3, 10 }) {
+					assertSame(cart.interpretToNode(fv, minNumberOfData), flat.interpretToNode(fv, minNumberOfData));
+				}
+				assertSame(cart.interpret(fv), flat.interpret(fv));
+			}
+		}
+	}
+
+	@Test
+	public void graphReturnsSameData() {
+		for (int tree = 0; tree < 20; tree++) {
+			List<Node> created = new ArrayList<Node>();
+			Node root = randomNode(8, true, created);
+			DirectedGraph graph = new DirectedGraph(root, featureDefinition);
+			DirectedGraph flat = new DirectedGraph(root, featureDefinition);
+			flat.compile();
+			for (int i = 0; i < 500; i++) {
+				FeatureVector fv = randomFeatureVector();
+				assertSame(graph.interpret(fv), flat.interpret(fv));
+			}
+		}
+	}
+
+	@Test
+	public void sharedNodesAreCompiledOnce() {
+		Node leaf = new LeafNode.IntArrayLeafNode(new int[] { 1 });
+		DecisionNode root = new DecisionNode.BinaryByteDecisionNode(0, (byte) 1, featureDefinition);
+		root.addDaughter(leaf);
+		root.addDaughter(leaf);
+		assertEquals(2, new FlatCART(root).getNumberOfNodes());
+	}
+
+	@Test
+	public void settingRootDiscardsFlatForm() {
+		CART cart = new CART(new LeafNode.IntArrayLeafNode(new int[] { 1 }), featureDefinition);
+		cart.compile();
+		cart.setRootNode(null);
+		assertNull(cart.getFlatCART());
+	}
+}
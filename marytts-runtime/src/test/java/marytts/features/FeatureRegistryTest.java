@@ -0,0 +1,84 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the registry hands out one target feature computer per manager and list of features, also to concurrent callers.
+ */
+public class FeatureRegistryTest {
+	private FeatureProcessorManager manager;
+
+	@Before
+	public void setUp() throws Exception {
+		System.setProperty(".allophoneset", "jar:/marytts/features/allophones.ROOT.xml");
+		manager = new FeatureProcessorManager(Locale.ROOT);
+	}
+
+	@Test
+	public void reusesComputers() {
+		TargetFeatureComputer computer = FeatureRegistry.getTargetFeatureComputer(manager, "stressed");
+		assertSame(computer, FeatureRegistry.getTargetFeatureComputer(manager, "stressed"));
+		assertNotSame(computer, FeatureRegistry.getTargetFeatureComputer(manager, "stressed accented"));
+		assertSame(FeatureRegistry.getTargetFeatureComputer(manager, null),
+				FeatureRegistry.getTargetFeatureComputer(manager, manager.listFeatureProcessorNames()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownFeatures() {
+		FeatureRegistry.getTargetFeatureComputer(manager, "stressed no_such_feature");
+	}
+
+	@Test
+	public void sharesComputersBetweenThreads() throws Exception {
+		final TargetFeatureComputer[] computers = new TargetFeatureComputer[8];
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[computers.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					computers[index] = FeatureRegistry.getTargetFeatureComputer(manager, "stressed accented");
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (TargetFeatureComputer computer : computers) {
+			assertSame(computers[0], computer);
+		}
+	}
+}
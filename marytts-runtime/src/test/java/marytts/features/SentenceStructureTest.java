@@ -0,0 +1,128 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import marytts.datatypes.MaryXML;
+import marytts.features.MaryGenericFeatureProcessors.TargetElementNavigator;
+import marytts.unitselection.select.Target;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * Checks that the target element navigators find the same elements with a sentence structure as on the DOM.
+ */
+public class SentenceStructureTest {
+	private static final String XML = "<maryxml><p>" //
+			+ "<s><phrase>" //
+			+ "<boundary breakindex='1'/>" //
+			+ "<t ph='h a l'><syllable><ph p='h'/><ph p='a'/></syllable><syllable><ph p='l'/></syllable></t>" //
+			+ "<t>,</t>" //
+			+ "<boundary breakindex='3'/>" //
+			+ "<mtu><t ph='x'><syllable><ph p='x'/></syllable></t><t ph='y'><syllable><ph p='y'/></syllable></t></mtu>" //
+			+ "</phrase><phrase>" //
+			+ "<t ph='o'><ph p='o'/></t>" //
+			+ "<t ph='d e'><syllable><ph p='d'/></syllable><syllable><ph p='e'/></syllable></t>" //
+			+ "<t>.</t>" //
+			+ "<boundary breakindex='5'/>" //
+			+ "</phrase></s>" //
+			+ "<s><phrase><t ph='z'><syllable><ph p='z'/></syllable></t><boundary breakindex='5'/></phrase></s>" //
+			+ "</p></maryxml>";
+
+	private static final TargetElementNavigator[] NAVIGATORS = new TargetElementNavigator[] {
+			new MaryGenericFeatureProcessors.PrevSegmentNavigator(), new MaryGenericFeatureProcessors.PrevPrevSegmentNavigator(),
+			new MaryGenericFeatureProcessors.NextSegmentNavigator(), new MaryGenericFeatureProcessors.NextNextSegmentNavigator(),
+			new MaryGenericFeatureProcessors.FirstSegmentInWordNavigator(),
+			new MaryGenericFeatureProcessors.LastSegmentInWordNavigator(),
+			new MaryGenericFeatureProcessors.FirstSyllableInWordNavigator(),
+			new MaryGenericFeatureProcessors.LastSyllableInWordNavigator(),
+			new MaryGenericFeatureProcessors.PrevSyllableNavigator(), new MaryGenericFeatureProcessors.PrevPrevSyllableNavigator(),
+			new MaryGenericFeatureProcessors.NextSyllableNavigator(), new MaryGenericFeatureProcessors.NextNextSyllableNavigator(),
+			new MaryGenericFeatureProcessors.LastSyllableInPhraseNavigator(),
+			new MaryGenericFeatureProcessors.NextWordNavigator(), new MaryGenericFeatureProcessors.PrevWordNavigator(),
+			new MaryGenericFeatureProcessors.FirstSegmentNextWordNavigator(),
+			new MaryGenericFeatureProcessors.LastWordInSentenceNavigator() };
+
+	private List<Target> createTargets() throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new InputSource(new StringReader(XML)));
+		List<Target> targets = new ArrayList<Target>();
+		NodeList all = doc.getElementsByTagName("*");
+		for (int i = 0; i < all.getLength(); i++) {
+			Element e = (Element) all.item(i);
+			if (e.getTagName().equals(MaryXML.PHONE) || e.getTagName().equals(MaryXML.BOUNDARY)) {
+				targets.add(new Target(e.getTagName() + i, e));
+			}
+		}
+		return targets;
+	}
+
+	@Test
+	public void navigatorsAgreeWithDom() throws Exception {
+		List<Target> targets = createTargets();
+		List<Element[]> expected = new ArrayList<Element[]>();
+		for (Target target : targets) {
+			Element[] found = new Element[NAVIGATORS.length];
+			for (int n = 0; n < NAVIGATORS.length; n++) {
+				found[n] = NAVIGATORS[n].getElement(target);
+			}
+			expected.add(found);
+		}
+
+		SentenceStructure.attach(targets);
+		for (int t = 0; t < targets.size(); t++) {
+			Target target = targets.get(t);
+			assertSame(target.getMaryxmlElement(), target.getSentenceStructure().getSegment(target.getSentenceIndex()));
+			for (int n = 0; n < NAVIGATORS.length; n++) {
+				assertSame(target.getName() + " " + NAVIGATORS[n].getClass().getSimpleName(), expected.get(t)[n],
+						NAVIGATORS[n].getElement(target));
+			}
+		}
+	}
+
+	@Test
+	public void oneStructurePerSentence() throws Exception {
+		List<Target> targets = createTargets();
+		SentenceStructure.attach(targets);
+		SentenceStructure first = targets.get(0).getSentenceStructure();
+		SentenceStructure last = targets.get(targets.size() - 1).getSentenceStructure();
+		assertSame(first, targets.get(targets.size() - 3).getSentenceStructure());
+		assertEquals(11, first.getNumberOfSegments());
+		assertEquals(2, last.getNumberOfSegments());
+
+		SentenceStructure.detach(targets);
+		for (Target target : targets) {
+			assertNull(target.getSentenceStructure());
+		}
+	}
+}
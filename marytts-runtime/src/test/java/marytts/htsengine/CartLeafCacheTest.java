@@ -0,0 +1,120 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.LeafNode.PdfLeafNode;
+import marytts.cart.Node;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the leaf cache finds the same leaves as the trees, and only keys on the features the trees ask.
+ */
+public class CartLeafCacheTest {
+	private static final String FEATURE_DEFINITION = FeatureDefinition.BYTEFEATURES + "\n" //
+			+ "0 | phone 0 a b c\n" //
+			+ "0 | stressed 0 1\n" //
+			+ "0 | pos 0 n v adj\n" //
+			+ FeatureDefinition.SHORTFEATURES + "\n" //
+			+ "0 | word 0 w1 w2 w3 w4\n" //
+			+ FeatureDefinition.CONTINUOUSFEATURES + "\n";
+
+	private FeatureDefinition featureDefinition;
+	private Random random;
+	private int leafId;
+
+	@Before
+	public void setUp() throws Exception {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(FEATURE_DEFINITION)), true);
+		random = new Random(7);
+	}
+
+	private PdfLeafNode leaf() throws Exception {
+		return new PdfLeafNode(leafId++, new double[][] { { 1, 2 } });
+	}
+
+	/** a tree asking feature byteFeature at the root and the short feature below */
+	private CART tree(int byteFeature) throws Exception {
+		DecisionNode root = new DecisionNode.ByteDecisionNode(byteFeature, featureDefinition.getNumberOfValues(byteFeature),
+				featureDefinition);
+		for (int i = 0; i < root.getNumberOfDaugthers(); i++) {
+			if (i == 1) {
+				DecisionNode word = new DecisionNode.BinaryShortDecisionNode(3, (short) 2, featureDefinition);
+				word.addDaughter(leaf());
+				word.addDaughter(leaf());
+				root.addDaughter(word);
+			} else {
+				root.addDaughter(leaf());
+			}
+		}
+		root.countData();
+		return new CART(root, featureDefinition);
+	}
+
+	private FeatureVector randomFeatureVector() {
+		byte[] bytes = new byte[3];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) random.nextInt(featureDefinition.getNumberOfValues(i));
+		}
+		short[] shorts = new short[] { (short) random.nextInt(featureDefinition.getNumberOfValues(3)) };
+		return new FeatureVector(bytes, shorts, new float[0], 0);
+	}
+
+	@Test
+	public void findsSameLeavesAsTrees() throws Exception {
+		CART[] trees = new CART[] { tree(0), tree(2), tree(0) };
+		CartLeafCache cache = new CartLeafCache(trees, 1, 4);
+		for (int i = 0; i < 1000; i++) {
+			FeatureVector fv = randomFeatureVector();
+			Node[] leaves = cache.lookup(fv);
+			assertEquals(trees.length, leaves.length);
+			for (int s = 0; s < trees.length; s++) {
+				assertSame(trees[s].interpretToNode(fv, 1), leaves[s]);
+			}
+		}
+		assertEquals(1000, cache.getHits() + cache.getMisses());
+	}
+
+	@Test
+	public void ignoresFeaturesNotAsked() throws Exception {
+		CartLeafCache cache = new CartLeafCache(new CART[] { tree(0), tree(2) }, 1, 16);
+		assertArrayEquals(new int[] { 0, 2, 3 }, cache.getFeatureIndexes());
+		PdfLeafNode[] first = cache.lookup(new FeatureVector(new byte[] { 1, 0, 2 }, new short[] { 2 }, new float[0], 0));
+		// only the stress differs, which no tree asks:
+		PdfLeafNode[] second = cache.lookup(new FeatureVector(new byte[] { 1, 1, 2 }, new short[] { 2 }, new float[0], 1));
+		assertSame(first, second);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.5, cache.getHitRate(), 0);
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that solving the parameter orders of a stream concurrently gives exactly the same parameters as solving them one after
+ * another, and that solving it block by block gives nearly the same parameters as solving the whole utterance.
+ */
+public class HTSPStreamTest {
+	private static final int ORDER = 25;
+	private static final int FRAMES = 400;
+	private static final int LONG_FRAMES = 1000;
+
+	private static ForkJoinPool pool;
+
+	@BeforeClass
+	public static void createPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterClass
+	public static void shutdownPool() {
+		pool.shutdown();
+	}
+
+	private static HTSPStream randomStream(long seed) throws Exception {
+		return randomStream(seed, FRAMES);
+	}
+
+	private static HTSPStream randomStream(long seed, int frames) throws Exception {
+		Random random = new Random(seed);
+		HTSPStream pst = new HTSPStream(HTSPStream.NUM * ORDER, frames, HMMData.FeatureType.MGC, 50);
+		for (int t = 0; t < frames; t++) {
+			double[] mean = new double[HTSPStream.NUM * ORDER];
+			for (int k = 0; k < mean.length; k++) {
+				mean[k] = random.nextGaussian();
+				pst.setIvseq(t, k, 1 / (0.01 + random.nextDouble()));
+			}
+			pst.setMseq(t, mean);
+			if (random.nextInt(10) == 0) {
+				pst.setGvSwitch(t, false);
+			}
+		}
+		pst.fixDynFeatOnBoundaries();
+		double[] gvMean = new double[ORDER];
+		double[] gvCovInv = new double[ORDER];
+		for (int m = 0; m < ORDER; m++) {
+			gvMean[m] = 0.5 + random.nextDouble();
+			gvCovInv[m] = 1 + random.nextDouble();
+		}
+		pst.setGvMeanVar(gvMean, gvCovInv);
+		return pst;
+	}
+
+	private static void assertSameParameters(HTSPStream expected, HTSPStream actual) {
+		for (int t = 0; t < FRAMES; t++) {
+			for (int m = 0; m < ORDER; m++) {
+				assertEquals(Double.doubleToLongBits(expected.getPar(t, m)), Double.doubleToLongBits(actual.getPar(t, m)));
+			}
+		}
+	}
+
+	private void checkParallelMlpg(String gvMethod, boolean useGV) throws Exception {
+		HMMData htsData = new HMMData();
+		htsData.setGvMethod(gvMethod);
+		HTSPStream sequential = randomStream(1);
+		sequential.mlpg(htsData, useGV);
+		HTSPStream parallel = randomStream(1);
+		parallel.mlpg(htsData, useGV, pool);
+		assertSameParameters(sequential, parallel);
+	}
+
+	/**
+	 * The workspace left over from a longer utterance must not change the result for a shorter one.
+	 */
+	@Test
+	public void reusedWorkspaceGivesSameResult() throws Exception {
+		final HMMData htsData = new HMMData();
+		final HTSPStream fresh = randomStream(2);
+		Thread thread = new Thread() {
+			public void run() {
+				fresh.mlpg(htsData, true);
+			}
+		};
+		thread.start();
+		thread.join();
+
+		randomStream(3, LONG_FRAMES).mlpg(htsData, true);
+		HTSPStream reused = randomStream(2);
+		reused.mlpg(htsData, true);
+		assertSameParameters(fresh, reused);
+	}
+
+	@Test
+	public void incrementalBlocksReuseWorkspace() throws Exception {
+		HMMData htsData = new HMMData();
+		HTSPStream once = randomStream(4);
+		once.mlpg(htsData, false, 0, FRAMES, 0);
+		HTSPStream full = randomStream(4);
+		full.mlpg(htsData, false);
+		assertSameParameters(full, once);
+
+		randomStream(3, LONG_FRAMES).mlpg(htsData, false);
+		HTSPStream blocks = randomStream(4);
+		for (int start = 0; start < FRAMES; start += 40) {
+			blocks.mlpg(htsData, false, start, Math.min(FRAMES, start + 40), 20);
+		}
+		HTSPStream blocksAgain = randomStream(4);
+		for (int start = 0; start < FRAMES; start += 40) {
+			blocksAgain.mlpg(htsData, false, start, Math.min(FRAMES, start + 40), 20);
+		}
+		assertSameParameters(blocks, blocksAgain);
+	}
+
+	/**
+	 * Solving the utterance block by block, with enough context on either side, must give nearly the same parameters as solving
+	 * it as a whole.
+	 */
+	@Test
+	public void incrementalBlocksMatchWholeUtterance() throws Exception {
+		HMMData htsData = new HMMData();
+		HTSPStream full = randomStream(5);
+		full.mlpg(htsData, false);
+		int blockFrames = htsData.getIncrementalBlockFrames();
+		int contextFrames = htsData.getIncrementalContextFrames();
+		HTSPStream blocks = randomStream(5);
+		for (int start = 0; start < FRAMES; start += blockFrames) {
+			blocks.mlpg(htsData, false, start, Math.min(FRAMES, start + blockFrames), contextFrames);
+		}
+		double maxError = 0;
+		for (int t = 0; t < FRAMES; t++) {
+			for (int m = 0; m < ORDER; m++) {
+				maxError = Math.max(maxError, Math.abs(full.getPar(t, m) - blocks.getPar(t, m)));
+			}
+		}
+		assertEquals(0, maxError, 1e-4);
+	}
+
+	@Test
+	public void parallelWithoutGV() throws Exception {
+		checkParallelMlpg("gradient", false);
+	}
+
+	@Test
+	public void parallelWithGradientGV() throws Exception {
+		checkParallelMlpg("gradient", true);
+	}
+
+	@Test
+	public void parallelWithDerivativeGV() throws Exception {
+		checkParallelMlpg("derivative", true);
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.phonemiser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import marytts.modules.phonemiser.PronunciationCache.Pronunciation;
+
+import org.junit.Test;
+
+/**
+ * Checks the lookup, eviction and persistence of the pronunciation cache.
+ */
+public class PronunciationCacheTest {
+
+	@Test
+	public void keysOnWordAndPos() {
+		PronunciationCache cache = new PronunciationCache(100);
+		cache.put("record", "NN", "' r E - k @ r d", "lexicon");
+		cache.put("record", "VB", "r I - ' k O r d", "lexicon");
+		cache.put("xyzzy", null, null, "");
+		assertEquals("' r E - k @ r d", cache.get("record", "NN").getTranscription());
+		assertEquals("r I - ' k O r d", cache.get("record", "VB").getTranscription());
+		assertNull(cache.get("record", null));
+		Pronunciation unknown = cache.get("xyzzy", null);
+		assertNotNull(unknown);
+		assertNull(unknown.getTranscription());
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0.75, cache.getHitRate(), 0);
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		PronunciationCache cache = new PronunciationCache(160);
+		for (int i = 0; i < 1000; i++) {
+			cache.put("w" + i, null, "p" + i, "rules");
+			// keep the first word in use:
+			assertNotNull(cache.get("w0", null));
+		}
+		assertTrue(cache.size() <= 160);
+		assertEquals("p0", cache.get("w0", null).getTranscription());
+		assertNull(cache.get("w1", null));
+		assertEquals("p999", cache.get("w999", null).getTranscription());
+	}
+
+	@Test
+	public void remembersEveryWordWithSmallCapacity() {
+		PronunciationCache cache = new PronunciationCache(1);
+		for (int i = 0; i < 100; i++) {
+			cache.put("w" + i, null, "p" + i, "rules");
+			assertEquals("p" + i, cache.get("w" + i, null).getTranscription());
+		}
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void savesAndLoads() throws Exception {
+		PronunciationCache cache = new PronunciationCache(100);
+		cache.put("Haus", null, "' h aU s", "lexicon");
+		cache.put("Weg", "NN", "' v e: k", "userdict");
+		cache.put("qqq", "NE", null, "");
+		File file = File.createTempFile("pronunciations", ".txt");
+		file.deleteOnExit();
+		assertEquals(3, cache.save(file));
+
+		PronunciationCache loaded = new PronunciationCache(100);
+		assertEquals(3, loaded.load(file));
+		assertEquals("' h aU s", loaded.get("Haus", null).getTranscription());
+		assertEquals("lexicon", loaded.get("Haus", null).getG2pMethod());
+		assertEquals("' v e: k", loaded.get("Weg", "NN").getTranscription());
+		assertEquals("userdict", loaded.get("Weg", "NN").getG2pMethod());
+		assertNull(loaded.get("Weg", null));
+		assertNull(loaded.get("qqq", "NE").getTranscription());
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.phonemiser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Properties;
+import java.util.Random;
+
+import marytts.cart.CART;
+import marytts.cart.DecisionNode;
+import marytts.cart.LeafNode.StringAndFloatLeafNode;
+import marytts.cart.Node;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the table-driven letter-to-sound prediction gives the same phones as looking up every grapheme in the feature
+ * definition and walking down the tree through its nodes.
+ */
+public class TrainedLTSTest {
+	private static final int CONTEXT = 2;
+	private static final String FEATURE_DEFINITION = FeatureDefinition.BYTEFEATURES + "\n" //
+			+ "0 | att0 null a b c ä ch\n" //
+			+ "0 | att1 null a b c ä ch x\n" //
+			+ "0 | att2 null a b c ä ch x é\n" //
+			+ "0 | att3 null a b c ä ch x\n" //
+			+ "0 | att4 null b c\n" //
+			+ "0 | predicted-string [] [a] [b] [k_s] [E:] [x]\n" //
+			+ FeatureDefinition.SHORTFEATURES + "\n" //
+			+ FeatureDefinition.CONTINUOUSFEATURES + "\n";
+	private static final String GRAPHEMES = "abcäéx-Z";
+
+	private FeatureDefinition featureDefinition;
+	private CART tree;
+	private Random random;
+
+	@Before
+	public void setUp() throws Exception {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(FEATURE_DEFINITION)), true);
+		random = new Random(5);
+		Node root = randomNode(0);
+		((DecisionNode) root).countData();
+		Properties props = new Properties();
+		props.setProperty("lowercase", "false");
+		props.setProperty("context", String.valueOf(CONTEXT));
+		tree = new CART(root, featureDefinition, props);
+	}
+
+	private Node randomNode(int depth) {
+		if (depth == 4 || depth > 1 && random.nextInt(4) == 0) {
+			int numPredictions = featureDefinition.getNumberOfValues(2 * CONTEXT + 1);
+			int[] data = new int[1 + random.nextInt(3)];
+			float[] floats = new float[data.length];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = random.nextInt(numPredictions);
+				floats[i] = random.nextFloat();
+			}
+			return new StringAndFloatLeafNode(data, floats);
+		}
+		int feature = depth == 0 ? CONTEXT : random.nextInt(2 * CONTEXT + 1);
+		DecisionNode node;
+		if (random.nextBoolean()) {
+			node = new DecisionNode.ByteDecisionNode(feature, featureDefinition.getNumberOfValues(feature), featureDefinition);
+		} else {
+			node = new DecisionNode.BinaryByteDecisionNode(feature, (byte) random.nextInt(featureDefinition
+					.getNumberOfValues(feature)), featureDefinition);
+		}
+		for (int i = 0; i < node.getNumberOfDaugthers(); i++) {
+			node.addDaughter(randomNode(depth + 1));
+		}
+		return node;
+	}
+
+	/** The prediction as it was made before the grapheme tables. */
+	private String slowPrediction(String graphemes) {
+		String returnStr = "";
+		for (int i = 0; i < graphemes.length(); i++) {
+			byte[] byteFeatures = new byte[2 * CONTEXT + 1];
+			for (int fnr = 0; fnr < 2 * CONTEXT + 1; fnr++) {
+				int pos = i - CONTEXT + fnr;
+				String grAtPos = (pos < 0 || pos >= graphemes.length()) ? "null" : graphemes.substring(pos, pos + 1);
+				try {
+					byteFeatures[fnr] = featureDefinition.getFeatureValueAsByte(fnr, grAtPos);
+				} catch (IllegalArgumentException iae) {
+					byteFeatures[fnr] = featureDefinition.getFeatureValueAsByte(fnr, "null");
+				}
+			}
+			FeatureVector fv = new FeatureVector(byteFeatures, new short[] {}, new float[] {}, 0);
+			StringAndFloatLeafNode leaf = (StringAndFloatLeafNode) tree.interpretToNode(fv, 0);
+			String prediction = leaf.mostProbableString(featureDefinition, 2 * CONTEXT + 1);
+			returnStr += prediction.substring(1, prediction.length() - 1);
+		}
+		return returnStr;
+	}
+
+	@Test
+	public void predictsSameAsTree() {
+		TrainedLTS lts = new TrainedLTS(null, tree);
+		assertEquals("", lts.predictPronunciation(""));
+		for (int n = 0; n < 2000; n++) {
+			StringBuilder word = new StringBuilder();
+			int length = 1 + random.nextInt(10);
+			for (int i = 0; i < length; i++) {
+				word.append(GRAPHEMES.charAt(random.nextInt(GRAPHEMES.length())));
+			}
+			String graphemes = word.toString();
+			assertEquals(graphemes, slowPrediction(graphemes), lts.predictPronunciation(graphemes));
+		}
+	}
+}
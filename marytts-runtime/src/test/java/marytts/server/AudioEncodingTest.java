@@ -0,0 +1,199 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.util.MaryUtils;
+import marytts.util.data.audio.G711Encoder;
+import marytts.util.data.audio.StreamingAudioInputStream;
+
+import org.junit.Test;
+
+/**
+ * Checks that audio is encoded by the configured encoders in full blocks, and that the encoding is counted.
+ */
+public class AudioEncodingTest {
+	private static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+	private static final int PCM_BYTES = 3 * 8192 + 100;
+	// the AU header, then each block of PCM halved, then nothing when the encoder finishes:
+	private static final List<Integer> ULAW_BLOCKS = Arrays.asList(24 + 4096, 4096, 4096, 50, 0);
+
+	/**
+	 * Records how much was written between flushes; AudioEncoding flushes after each block.
+	 */
+	private static class BlockRecorder extends ByteArrayOutputStream {
+		final List<Integer> blocks = new ArrayList<Integer>();
+		final CountDownLatch firstBlock = new CountDownLatch(1);
+		int flushed;
+		boolean closed;
+
+		@Override
+		public synchronized void flush() {
+			blocks.add(size() - flushed);
+			flushed = size();
+			firstBlock.countDown();
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Returns at most 1000 bytes per read, and never says that any are available.
+	 */
+	private static class TricklingInputStream extends ByteArrayInputStream {
+		TricklingInputStream(byte[] data) {
+			super(data);
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, 1000));
+		}
+
+		@Override
+		public synchronized int available() {
+			return 0;
+		}
+	}
+
+	private static byte[] pcm(int numBytes) {
+		byte[] pcm = new byte[numBytes];
+		for (int i = 0; i < numBytes; i += 2) {
+			short sample = (short) (i * 37);
+			pcm[i] = (byte) sample;
+			pcm[i + 1] = (byte) (sample >> 8);
+		}
+		return pcm;
+	}
+
+	private static byte[] ulaw(byte[] pcm) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		G711Encoder encoder = new G711Encoder("ULAW");
+		encoder.start(FORMAT, out);
+		encoder.encode(pcm, 0, pcm.length);
+		encoder.finish();
+		return out.toByteArray();
+	}
+
+	private static Map<String, Long> statistics() {
+		Map<String, Long> stats = new HashMap<String, Long>();
+		for (String line : AudioEncoding.getStatistics().split("\n")) {
+			String[] nameAndValue = line.split(" ");
+			stats.put(nameAndValue[0], Long.valueOf(nameAndValue[1]));
+		}
+		return stats;
+	}
+
+	@Test
+	public void findsConfiguredEncoders() {
+		assertTrue(AudioEncoding.getTypeNames().contains("ULAW"));
+		assertTrue(AudioEncoding.canEncode(G711Encoder.ULAW));
+		assertFalse(AudioEncoding.canEncode(AudioFileFormat.Type.WAVE));
+		assertSame(G711Encoder.ULAW, AudioEncoding.getAudioFileFormatType("ULAW"));
+		assertSame(AudioFileFormat.Type.WAVE, AudioEncoding.getAudioFileFormatType("WAVE"));
+	}
+
+	@Test
+	public void encodesInFullBlocks() throws Exception {
+		byte[] pcm = pcm(PCM_BYTES);
+		AudioInputStream audio = new AudioInputStream(new TricklingInputStream(pcm), FORMAT, pcm.length / 2);
+		BlockRecorder out = new BlockRecorder();
+		AudioEncoding.write(audio, G711Encoder.ULAW, out, MaryUtils.getLogger("test"));
+		assertArrayEquals(ulaw(pcm), out.toByteArray());
+		assertEquals(ULAW_BLOCKS, out.blocks);
+		assertTrue(out.closed);
+	}
+
+	@Test
+	public void encodesQueuedStreamedAudioInFullBlocks() throws Exception {
+		byte[] pcm = pcm(PCM_BYTES);
+		StreamingAudioInputStream audio = new StreamingAudioInputStream(FORMAT, 64, 1000, 0);
+		audio.append(new AudioInputStream(new ByteArrayInputStream(pcm), FORMAT, pcm.length / 2));
+		audio.doneAppending();
+		BlockRecorder out = new BlockRecorder();
+		AudioEncoding.write(audio, G711Encoder.ULAW, out, MaryUtils.getLogger("test"));
+		assertArrayEquals(ulaw(pcm), out.toByteArray());
+		assertEquals(ULAW_BLOCKS, out.blocks);
+	}
+
+	@Test
+	public void doesNotHoldBackStreamedAudio() throws Exception {
+		byte[] pcm = pcm(PCM_BYTES);
+		final StreamingAudioInputStream audio = new StreamingAudioInputStream(FORMAT, 64, 1000, 0);
+		final BlockRecorder out = new BlockRecorder();
+		final IOException[] failure = new IOException[1];
+		Thread writer = new Thread() {
+			public void run() {
+				try {
+					AudioEncoding.write(audio, G711Encoder.ULAW, out, MaryUtils.getLogger("test"));
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			}
+		};
+		writer.start();
+		audio.append(new AudioInputStream(new ByteArrayInputStream(pcm, 0, 1000), FORMAT, 500));
+		// the first 1000 bytes are encoded before any more audio is appended:
+		assertTrue(out.firstBlock.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(24 + 500), out.blocks);
+		audio.append(new AudioInputStream(new ByteArrayInputStream(pcm, 1000, pcm.length - 1000), FORMAT,
+				(pcm.length - 1000) / 2));
+		audio.doneAppending();
+		writer.join();
+		assertEquals(null, failure[0]);
+		assertArrayEquals(ulaw(pcm), out.toByteArray());
+	}
+
+	@Test
+	public void countsEncodedAudio() throws Exception {
+		byte[] pcm = pcm(PCM_BYTES);
+		Map<String, Long> before = statistics();
+		AudioEncoding.write(new AudioInputStream(new ByteArrayInputStream(pcm), FORMAT, pcm.length / 2), G711Encoder.ULAW,
+				new ByteArrayOutputStream(), MaryUtils.getLogger("test"));
+		Map<String, Long> after = statistics();
+		assertEquals(before.get("streams") + 1, (long) after.get("streams"));
+		assertEquals(before.get("pcm.bytes") + PCM_BYTES, (long) after.get("pcm.bytes"));
+		assertEquals(before.get("encoded.bytes") + 24 + PCM_BYTES / 2, (long) after.get("encoded.bytes"));
+		assertTrue(after.get("encodetime.ms") >= before.get("encodetime.ms"));
+	}
+}
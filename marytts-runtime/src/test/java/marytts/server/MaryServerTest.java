@@ -0,0 +1,109 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the admission control and the request ids of the socket server.
+ */
+public class MaryServerTest {
+	private static final String[] PROPERTIES = { "socket.handlerthreads", "socket.synthesisthreads", "socket.queuelength",
+			"socket.timeout" };
+
+	private MaryServer server;
+
+	@Before
+	public void setUp() {
+		System.setProperty("socket.handlerthreads", "2");
+		System.setProperty("socket.synthesisthreads", "1");
+		System.setProperty("socket.queuelength", "2");
+		System.setProperty("socket.timeout", "100");
+	}
+
+	@After
+	public void tearDown() {
+		if (server != null) {
+			server.shutdown();
+		}
+		for (String property : PROPERTIES) {
+			System.clearProperty(property);
+		}
+	}
+
+	@Test
+	public void rejectsWhenQueueIsFull() {
+		server = new MaryServer();
+		// one running and two queued requests:
+		for (int i = 0; i < 3; i++) {
+			assertTrue(server.admit());
+			server.register(server.getID(), new Socket(), null);
+		}
+		assertFalse(server.admit());
+	}
+
+	@Test
+	public void expiresRegistrationsWithoutNewRequests() throws Exception {
+		server = new MaryServer();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(server.admit());
+			server.register(server.getID(), new Socket(), null);
+		}
+		assertEquals(3, server.getNumberOfRegistrations());
+		long start = System.currentTimeMillis();
+		while (server.getNumberOfRegistrations() > 0 && System.currentTimeMillis() - start < 5000) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, server.getNumberOfRegistrations());
+		// the permits are given back:
+		assertTrue(server.admit());
+	}
+
+	@Test
+	public void idsAreUnique() throws Exception {
+		server = new MaryServer();
+		final Set<Integer> ids = ConcurrentHashMap.newKeySet();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 10000; i++) {
+						ids.add(server.getID());
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, ids.size());
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marytts.modules.DummyModule;
+import marytts.modules.MaryModule;
+import marytts.modules.ModuleRegistry;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that startup tasks run concurrently on a shared pool, and that modules started from several tasks start only once.
+ */
+public class ParallelStartupTest {
+	private static final int NUM_THREADS = 3;
+
+	/**
+	 * A module counting how often it was started, which can be made to fail its first start.
+	 */
+	private static class CountingModule extends DummyModule {
+		final AtomicInteger starts = new AtomicInteger();
+		volatile boolean failFirst;
+		volatile boolean startItself;
+		volatile int state = MODULE_OFFLINE;
+
+		@Override
+		public void startup() throws Exception {
+			if (startItself) {
+				ModuleRegistry.startModule(this);
+			}
+			Thread.sleep(20);
+			if (starts.incrementAndGet() == 1 && failFirst) {
+				throw new IOException("first start fails");
+			}
+			state = MODULE_RUNNING;
+		}
+
+		@Override
+		public int getState() {
+			return state;
+		}
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+		System.setProperty("modules.startup.threads", String.valueOf(NUM_THREADS));
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+		System.clearProperty("modules.startup.threads");
+	}
+
+	@Test
+	public void returnsResultsInTaskOrder() throws Exception {
+		ParallelStartup<Integer> startup = new ParallelStartup<Integer>();
+		for (int i = 0; i < 20; i++) {
+			final int n = i;
+			startup.add("task " + n, new Callable<Integer>() {
+				public Integer call() throws Exception {
+					Thread.sleep((n * 7) % 5);
+					return n;
+				}
+			});
+		}
+		List<Integer> results = startup.run();
+		assertEquals(20, results.size());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, results.get(i).intValue());
+		}
+		assertEquals(20, startup.getTimes().size());
+	}
+
+	@Test
+	public void rethrowsFailure() throws Exception {
+		final IOException failure = new IOException("cannot load");
+		ParallelStartup<Void> startup = new ParallelStartup<Void>();
+		for (int i = 0; i < 5; i++) {
+			final int n = i;
+			startup.add("task " + n, new Callable<Void>() {
+				public Void call() throws Exception {
+					if (n == 2) {
+						throw failure;
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			startup.run();
+			fail("should have thrown");
+		} catch (IOException e) {
+			assertSame(failure, e);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void nestedRunsShareThePool() throws Exception {
+		final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		ParallelStartup<Integer> outer = new ParallelStartup<Integer>();
+		for (int i = 0; i < 4; i++) {
+			outer.add("outer " + i, new Callable<Integer>() {
+				public Integer call() throws Exception {
+					ParallelStartup<Void> inner = new ParallelStartup<Void>();
+					for (int j = 0; j < 4; j++) {
+						inner.add("inner " + j, new Callable<Void>() {
+							public Void call() throws Exception {
+								threads.add(Thread.currentThread());
+								Thread.sleep(10);
+								return null;
+							}
+						});
+					}
+					return inner.run().size();
+				}
+			});
+		}
+		for (int n : outer.run()) {
+			assertEquals(4, n);
+		}
+		// the pool threads and the calling thread, no threads of nested pools:
+		assertTrue(threads.size() <= NUM_THREADS + 1);
+	}
+
+	@Test(timeout = 10000)
+	public void startsModuleOnce() throws Exception {
+		final CountingModule module = new CountingModule();
+		ParallelStartup<Integer> startup = new ParallelStartup<Integer>();
+		for (int i = 0; i < 8; i++) {
+			startup.add("task " + i, new Callable<Integer>() {
+				public Integer call() throws Exception {
+					ModuleRegistry.startModule(module);
+					return module.getState();
+				}
+			});
+		}
+		List<Integer> states = startup.run();
+		assertEquals(1, module.starts.get());
+		for (int state : states) {
+			assertEquals(MaryModule.MODULE_RUNNING, state);
+		}
+	}
+
+	@Test
+	public void retriesFailedStart() throws Exception {
+		CountingModule module = new CountingModule();
+		module.failFirst = true;
+		try {
+			ModuleRegistry.startModule(module);
+			fail("should have thrown");
+		} catch (IOException e) {
+			assertEquals(MaryModule.MODULE_OFFLINE, module.getState());
+		}
+		ModuleRegistry.startModule(module);
+		assertEquals(MaryModule.MODULE_RUNNING, module.getState());
+		assertEquals(2, module.starts.get());
+	}
+
+	@Test(timeout = 10000)
+	public void moduleMayStartItself() throws Exception {
+		CountingModule module = new CountingModule();
+		module.startItself = true;
+		ModuleRegistry.startModule(module);
+		assertEquals(MaryModule.MODULE_RUNNING, module.getState());
+		assertEquals(1, module.starts.get());
+	}
+}
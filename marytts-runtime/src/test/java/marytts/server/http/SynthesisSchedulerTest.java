@@ -0,0 +1,123 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks the order in which the scheduler runs waiting requests, its per-voice cap and its queue limit.
+ */
+public class SynthesisSchedulerTest {
+
+	/**
+	 * A job which signals that it has started and then waits until it is released.
+	 */
+	private static class BlockingJob implements Callable<Object> {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		public Object call() throws Exception {
+			started.countDown();
+			release.await();
+			return null;
+		}
+	}
+
+	private static Callable<Object> recording(final List<String> log, final String name) {
+		return new Callable<Object>() {
+			public Object call() {
+				log.add(name);
+				return null;
+			}
+		};
+	}
+
+	@Test
+	public void runsInteractiveBeforeBatch() throws Exception {
+		SynthesisScheduler scheduler = new SynthesisScheduler(1, 10, 0, 5);
+		BlockingJob blocker = new BlockingJob();
+		scheduler.submit(null, SynthesisScheduler.Priority.INTERACTIVE, blocker);
+		blocker.started.await();
+
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		scheduler.submit(null, SynthesisScheduler.Priority.BATCH, recording(log, "batch1"));
+		scheduler.submit(null, SynthesisScheduler.Priority.INTERACTIVE, recording(log, "interactive1"));
+		Future<Object> last = scheduler.submit(null, SynthesisScheduler.Priority.BATCH, recording(log, "batch2"));
+		scheduler.submit(null, SynthesisScheduler.Priority.INTERACTIVE, recording(log, "interactive2"));
+		assertEquals(4, scheduler.getQueueLength());
+		blocker.release.countDown();
+		last.get(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("interactive1", "interactive2", "batch1", "batch2"), log);
+	}
+
+	@Test
+	public void capsRequestsPerVoice() throws Exception {
+		SynthesisScheduler scheduler = new SynthesisScheduler(2, 10, 1, 5);
+		BlockingJob blocker = new BlockingJob();
+		scheduler.submit("voice1", SynthesisScheduler.Priority.INTERACTIVE, blocker);
+		blocker.started.await();
+
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		Future<Object> sameVoice = scheduler.submit("voice1", SynthesisScheduler.Priority.INTERACTIVE, recording(log, "voice1"));
+		Future<Object> otherVoice = scheduler.submit("voice2", SynthesisScheduler.Priority.INTERACTIVE, recording(log, "voice2"));
+		// the second worker skips the request for the voice at its cap:
+		otherVoice.get(5, TimeUnit.SECONDS);
+		assertFalse(sameVoice.isDone());
+		assertEquals(1, scheduler.getQueueLength());
+		blocker.release.countDown();
+		sameVoice.get(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("voice2", "voice1"), log);
+	}
+
+	@Test
+	public void rejectsWhenQueueIsFull() throws Exception {
+		SynthesisScheduler scheduler = new SynthesisScheduler(1, 2, 0, 7);
+		BlockingJob blocker = new BlockingJob();
+		scheduler.submit(null, SynthesisScheduler.Priority.INTERACTIVE, blocker);
+		blocker.started.await();
+
+		List<String> log = Collections.synchronizedList(new ArrayList<String>());
+		scheduler.submit(null, SynthesisScheduler.Priority.INTERACTIVE, recording(log, "first"));
+		scheduler.submit(null, SynthesisScheduler.Priority.BATCH, recording(log, "second"));
+		try {
+			scheduler.submit(null, SynthesisScheduler.Priority.INTERACTIVE, recording(log, "third"));
+			fail("Expected the request to be rejected");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(1, scheduler.getRejectedCount());
+		assertEquals(7, scheduler.getRetryAfter());
+		blocker.release.countDown();
+	}
+}
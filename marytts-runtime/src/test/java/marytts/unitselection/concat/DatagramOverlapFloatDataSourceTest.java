@@ -0,0 +1,53 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.concat;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import marytts.util.data.Datagram;
+
+import org.junit.Test;
+
+public class DatagramOverlapFloatDataSourceTest {
+
+	@Test
+	public void matchesDoubleOverlapAdd() {
+		Random random = new Random(42);
+		// three units; the first two have a right context to overlap-add onto the next one:
+		Datagram[][] datagrams = new Datagram[][] { { datagram(random, 80), datagram(random, 75) },
+				{ datagram(random, 60), datagram(random, 90) }, { datagram(random, 100) } };
+		Datagram[] rightContexts = new Datagram[] { datagram(random, 70), datagram(random, 120), null };
+
+		double[] expected = new DatagramOverlapDoubleDataSource(datagrams, rightContexts).getAllData();
+		float[] actual = new DatagramOverlapFloatDataSource(datagrams, rightContexts).getAllData();
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("sample " + i, expected[i], actual[i], 1e-6);
+		}
+	}
+
+	private static Datagram datagram(Random random, int length) {
+		byte[] data = new byte[2 * length];
+		random.nextBytes(data);
+		return new Datagram(length, data);
+	}
+}
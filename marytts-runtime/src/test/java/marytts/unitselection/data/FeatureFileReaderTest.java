@@ -0,0 +1,144 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureStore;
+import marytts.features.FeatureVector;
+import marytts.util.data.MaryHeader;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the columnar feature store holds the feature values written to a feature file.
+ */
+public class FeatureFileReaderTest {
+	@ClassRule
+	public static TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final String FEATURE_DEFINITION = FeatureDefinition.BYTEFEATURES + "\n" //
+			+ "1 | phone 0 a b c\n" //
+			+ "1 | stressed 0 1\n" //
+			+ "1 | pos 0 n v adj\n" //
+			+ FeatureDefinition.SHORTFEATURES + "\n" //
+			+ "1 | word 0 w1 w2 w3 w4\n" //
+			+ FeatureDefinition.CONTINUOUSFEATURES + "\n" //
+			+ "1 linear | unit_duration float\n" //
+			+ "1 linear | unit_logf0 float\n";
+
+	private static FeatureDefinition featureDefinition;
+	private static FeatureVector[] featureVectors;
+	private static File featureFile;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(FEATURE_DEFINITION)), true);
+		Random random = new Random(42);
+		featureVectors = new FeatureVector[500];
+		for (int i = 0; i < featureVectors.length; i++) {
+			byte[] bytes = new byte[] { (byte) random.nextInt(4), (byte) random.nextInt(2), (byte) random.nextInt(4) };
+			short[] shorts = new short[] { (short) random.nextInt(5) };
+			float[] floats = new float[] { random.nextFloat(), i % 7 == 0 ? Float.NaN : random.nextFloat() };
+			featureVectors[i] = featureDefinition.toFeatureVector(i, bytes, shorts, floats);
+		}
+		featureFile = tmp.newFile();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(featureFile)));
+		new MaryHeader(MaryHeader.UNITFEATS).writeTo(out);
+		featureDefinition.writeBinaryTo(out);
+		out.writeInt(featureVectors.length);
+		for (FeatureVector fv : featureVectors) {
+			fv.writeTo(out);
+		}
+		out.close();
+	}
+
+	private void assertSameFeatures(FeatureVector expected, FeatureVector actual) {
+		assertEquals(expected.getUnitIndex(), actual.getUnitIndex());
+		assertArrayEquals(expected.byteValuedDiscreteFeatures, actual.byteValuedDiscreteFeatures);
+		assertArrayEquals(expected.shortValuedDiscreteFeatures, actual.shortValuedDiscreteFeatures);
+		assertArrayEquals(expected.continuousFeatures, actual.continuousFeatures, 0);
+	}
+
+	private void assertSameFeatures(FeatureFileReader ffr) {
+		assertEquals(featureVectors.length, ffr.getNumberOfUnits());
+		FeatureStore store = ffr.getFeatureStore();
+		for (int u = 0; u < featureVectors.length; u++) {
+			FeatureVector fv = featureVectors[u];
+			assertSameFeatures(fv, ffr.getFeatureVector(u));
+			for (int i = 0; i < fv.getLength(); i++) {
+				if (fv.isByteFeature(i)) {
+					assertEquals(fv.getByteFeature(i), store.getByteFeature(u, i));
+				} else if (fv.isShortFeature(i)) {
+					assertEquals(fv.getShortFeature(i), store.getShortFeature(u, i));
+				} else {
+					assertEquals(fv.getContinuousFeature(i), store.getContinuousFeature(u, i), 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void readsFeaturesFromByteBuffer() throws Exception {
+		assertSameFeatures(new FeatureFileReader(featureFile.getPath()));
+	}
+
+	@Test
+	public void readsFeaturesFromStream() throws Exception {
+		FeatureFileReader ffr = new FeatureFileReader();
+		ffr.loadFromStream(featureFile.getPath());
+		assertSameFeatures(ffr);
+	}
+
+	@Test
+	public void createsFeatureVectorsOnDemand() throws Exception {
+		FeatureFileReader ffr = new FeatureFileReader(featureFile.getPath());
+		FeatureVector[] fvs = ffr.getFeatureVectors();
+		assertEquals(featureVectors.length, fvs.length);
+		for (int u = 0; u < fvs.length; u++) {
+			assertSameFeatures(featureVectors[u], fvs[u]);
+		}
+		// from now on, the same objects are returned:
+		assertSame(fvs[3], ffr.getFeatureVector(3));
+	}
+
+	@Test
+	public void buildsStoreFromFeatureVectors() throws Exception {
+		FeatureStore store = new FeatureStore(featureDefinition, featureVectors);
+		FeatureVector[] fvs = store.toFeatureVectors();
+		for (int u = 0; u < fvs.length; u++) {
+			assertSameFeatures(featureVectors[u], fvs[u]);
+		}
+	}
+}
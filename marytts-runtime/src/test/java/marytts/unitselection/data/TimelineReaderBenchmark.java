@@ -0,0 +1,76 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import java.io.File;
+import java.util.Random;
+
+import marytts.util.data.Datagram;
+
+/**
+ * Compares the speed of reading datagrams from a timeline file piecewise, through a single memory mapping, and through a
+ * segmented memory mapping. Not a unit test; run the main method by hand.
+ * <p>
+ * Usage: <code>TimelineReaderBenchmark [numDatagrams [numLookups [segmentBytes]]]</code>
+ */
+public class TimelineReaderBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int numDatagrams = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int numLookups = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		int segmentBytes = args.length > 2 ? Integer.parseInt(args[2]) : 1 << 20;
+		int sampleRate = 16000;
+
+		File file = File.createTempFile("timeline", ".mry");
+		file.deleteOnExit();
+		// pitch-period sized datagrams of 16-bit samples, as in a waveform timeline:
+		Datagram[] datagrams = TimelineReaderTest.randomDatagrams(numDatagrams, 200, 400, new Random(1));
+		long totalDuration = TimelineReaderTest.writeTimeline(file, datagrams, sampleRate, 800);
+		System.out.println("Timeline with " + numDatagrams + " datagrams, " + file.length() + " bytes, " + totalDuration
+				+ " samples");
+
+		TimelineReader[] readers = new TimelineReader[] { new TimelineReader(file.getPath(), false),
+				new TimelineReader(file.getPath(), true), new TimelineReader(file.getPath(), segmentBytes) };
+		String[] names = new String[] { "piecewise", "mapped", "mapped in " + segmentBytes + "-byte segments" };
+
+		long[] targets = new long[numLookups];
+		Random random = new Random(2);
+		for (int i = 0; i < numLookups; i++) {
+			targets[i] = (long) (random.nextDouble() * (totalDuration - 1));
+		}
+
+		for (int round = 0; round < 3; round++) { // the first round warms up
+			for (int r = 0; r < readers.length; r++) {
+				long bytes = 0;
+				long start = System.nanoTime();
+				for (long t : targets) {
+					// a unit of about 50 ms:
+					for (Datagram d : readers[r].getDatagrams(t, 800, sampleRate)) {
+						bytes += d.getLength();
+					}
+				}
+				long nanos = System.nanoTime() - start;
+				if (round > 0) {
+					System.out.printf("%-40s %8.3f us/lookup (%d bytes)%n", names[r], nanos / 1000.0 / numLookups, bytes);
+				}
+			}
+		}
+	}
+}
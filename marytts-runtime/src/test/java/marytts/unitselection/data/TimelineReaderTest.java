@@ -0,0 +1,164 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.Vector;
+
+import marytts.util.data.Datagram;
+import marytts.util.data.MaryHeader;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that segmented memory mapping of a timeline returns the same datagrams as piecewise reading.
+ */
+public class TimelineReaderTest {
+	@ClassRule
+	public static TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final int SAMPLE_RATE = 16000;
+	private static final int IDX_INTERVAL = 1000;
+
+	private static File timelineFile;
+	private static long totalDuration;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		timelineFile = tmp.newFile();
+		Datagram[] datagrams = randomDatagrams(2000, 300, 500, new Random(42));
+		// a few datagrams spanning several index intervals:
+		datagrams[100] = new Datagram(3 * IDX_INTERVAL + 17, new byte[50]);
+		datagrams[1500] = new Datagram(5 * IDX_INTERVAL, new byte[1000]);
+		totalDuration = writeTimeline(timelineFile, datagrams, SAMPLE_RATE, IDX_INTERVAL);
+	}
+
+	/**
+	 * Create datagrams with random durations and lengths.
+	 *
+	 * @param num
+	 *            number of datagrams
+	 * @param maxDuration
+	 *            maximum duration of a datagram, in samples
+	 * @param maxLength
+	 *            maximum length of a datagram, in bytes
+	 * @param random
+	 *            random
+	 * @return the datagrams
+	 */
+	static Datagram[] randomDatagrams(int num, int maxDuration, int maxLength, Random random) {
+		Datagram[] datagrams = new Datagram[num];
+		for (int i = 0; i < num; i++) {
+			byte[] data = new byte[random.nextInt(maxLength + 1)];
+			random.nextBytes(data);
+			datagrams[i] = new Datagram(1 + random.nextInt(maxDuration), data);
+		}
+		return datagrams;
+	}
+
+	/**
+	 * Write a timeline file containing the given datagrams.
+	 *
+	 * @param file
+	 *            file
+	 * @param datagrams
+	 *            datagrams
+	 * @param sampleRate
+	 *            sampleRate
+	 * @param idxInterval
+	 *            idxInterval
+	 * @return the total duration of the timeline, in samples
+	 * @throws IOException
+	 *             IOException
+	 */
+	static long writeTimeline(File file, Datagram[] datagrams, int sampleRate, int idxInterval) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		new MaryHeader(MaryHeader.TIMELINE).writeTo(raf);
+		new TimelineReader.ProcHeader("test timeline").dump(raf);
+		raf.writeInt(sampleRate);
+		raf.writeLong(datagrams.length);
+		long posPositions = raf.getFilePointer();
+		raf.writeLong(0);
+		raf.writeLong(0);
+		long datagramsBytePos = raf.getFilePointer();
+
+		Vector<TimelineReader.IdxField> fields = new Vector<TimelineReader.IdxField>();
+		long time = 0;
+		for (Datagram d : datagrams) {
+			long bytePos = raf.getFilePointer();
+			// one index field for each index point that falls into this datagram:
+			while ((long) fields.size() * idxInterval < time + d.getDuration()) {
+				fields.add(new TimelineReader.IdxField(bytePos, time));
+			}
+			d.write(raf);
+			time += d.getDuration();
+		}
+		long timeIdxBytePos = raf.getFilePointer();
+		new TimelineReader.Index(idxInterval, fields).dump(raf);
+
+		raf.seek(posPositions);
+		raf.writeLong(datagramsBytePos);
+		raf.writeLong(timeIdxBytePos);
+		raf.close();
+		return time;
+	}
+
+	private void assertSameDatagrams(TimelineReader expected, TimelineReader actual) throws Exception {
+		long[] expectedOffset = new long[1];
+		long[] actualOffset = new long[1];
+		for (long t = 0; t < totalDuration; t += 37) {
+			Datagram[] e = expected.getDatagrams(t, 500, SAMPLE_RATE, expectedOffset);
+			Datagram[] a = actual.getDatagrams(t, 500, SAMPLE_RATE, actualOffset);
+			assertArrayEquals("at time " + t, e, a);
+			assertEquals("at time " + t, expectedOffset[0], actualOffset[0]);
+		}
+		assertEquals(totalDuration, actual.getTotalDuration());
+	}
+
+	@Test
+	public void singleMappingMatchesPiecewiseReading() throws Exception {
+		assertSameDatagrams(new TimelineReader(timelineFile.getPath(), false), new TimelineReader(timelineFile.getPath(), true));
+	}
+
+	@Test
+	public void segmentedMappingMatchesPiecewiseReading() throws Exception {
+		TimelineReader piecewise = new TimelineReader(timelineFile.getPath(), false);
+		for (int maxSegmentBytes : new int[] { 10000, 20000, 65536 }) {
+			assertSameDatagrams(piecewise, new TimelineReader(timelineFile.getPath(), maxSegmentBytes));
+		}
+	}
+
+	@Test
+	public void fallsBackIfSegmentsTooSmall() throws Exception {
+		// the long datagrams do not fit into a segment of this size:
+		assertSameDatagrams(new TimelineReader(timelineFile.getPath(), false), new TimelineReader(timelineFile.getPath(), 1200));
+	}
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureStore;
+import marytts.features.FeatureVector;
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.weightingfunctions.WeightFunc;
+import marytts.unitselection.weightingfunctions.WeightFunctionManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the batch target cost computation gives exactly the same costs as the unit-by-unit computation.
+ */
+public class FFRTargetCostFunctionTest {
+
+	private static final String FEATURE_DEFINITION = FeatureDefinition.BYTEFEATURES + "\n" //
+			+ "3 | phone 0 a b c\n" //
+			+ "0 | stressed 0 1\n" //
+			+ "1.5 | pos 0 n v adj\n" //
+			+ FeatureDefinition.SHORTFEATURES + "\n" //
+			+ "0.7 | word 0 w1 w2 w3 w4\n" //
+			+ "0 | lemma 0 l1 l2\n" //
+			+ FeatureDefinition.CONTINUOUSFEATURES + "\n" //
+			+ "2 linear | unit_duration float\n" //
+			+ "0 linear | unit_energy float\n" //
+			+ "1 step 20% | unit_logf0 float\n";
+
+	private FeatureDefinition featureDefinition;
+	private FFRTargetCostFunction tcf;
+	private Unit[] units;
+	private Random random;
+
+	private FeatureVector randomFeatureVector(int unitIndex) {
+		byte[] bytes = new byte[] { (byte) random.nextInt(4), (byte) random.nextInt(2), (byte) random.nextInt(4) };
+		short[] shorts = new short[] { (short) random.nextInt(5), (short) random.nextInt(3) };
+		float[] floats = new float[3];
+		for (int i = 0; i < floats.length; i++) {
+			floats[i] = random.nextInt(10) == 0 ? Float.NaN : 100 * random.nextFloat();
+		}
+		return featureDefinition.toFeatureVector(unitIndex, bytes, shorts, floats);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		random = new Random(42);
+		featureDefinition = new FeatureDefinition(new BufferedReader(new StringReader(FEATURE_DEFINITION)), true);
+		FeatureVector[] featureVectors = new FeatureVector[1000];
+		for (int i = 0; i < featureVectors.length; i++) {
+			featureVectors[i] = randomFeatureVector(i);
+		}
+		tcf = new FFRTargetCostFunction();
+		tcf.featureDefinition = featureDefinition;
+		tcf.featureStore = new FeatureStore(featureDefinition, featureVectors);
+		WeightFunctionManager wfm = new WeightFunctionManager();
+		int nDiscrete = featureDefinition.getNumberOfByteFeatures() + featureDefinition.getNumberOfShortFeatures();
+		tcf.weightFunction = new WeightFunc[featureDefinition.getNumberOfContinuousFeatures()];
+		for (int i = 0; i < tcf.weightFunction.length; i++) {
+			tcf.weightFunction[i] = wfm.getWeightFunction(featureDefinition.getWeightFunctionName(nDiscrete + i));
+		}
+		tcf.rememberWhichWeightsAreNonZero();
+
+		units = new Unit[200];
+		for (int i = 0; i < units.length; i++) {
+			units[i] = new Unit(0, 1, random.nextInt(featureVectors.length));
+		}
+	}
+
+	@Test
+	public void batchCostsEqualSingleCosts() {
+		for (int t = 0; t < 20; t++) {
+			Target target = new Target("t" + t, null);
+			target.setFeatureVector(randomFeatureVector(0));
+			double[] costs = new double[units.length];
+			tcf.cost(target, units, costs);
+			for (int i = 0; i < units.length; i++) {
+				assertEquals(tcf.cost(target, units[i]), costs[i], 0);
+			}
+		}
+	}
+
+	@Test
+	public void batchCostsOfEmptyCandidateList() {
+		Target target = new Target("t", null);
+		target.setFeatureVector(randomFeatureVector(0));
+		tcf.cost(target, new Unit[0], new double[0]);
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Random;
+
+import marytts.util.data.MaryHeader;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the join cost cache returns the costs computed by the join cost function, and that precomputed join costs can be
+ * loaded into it.
+ */
+public class JoinCostCacheTest {
+	@ClassRule
+	public static TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final int NUM_UNITS = 100;
+	private static final int NUM_FEATURES = 4;
+
+	private static JoinCostFeatures joinCosts;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		File joinFile = tmp.newFile();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(joinFile)));
+		new MaryHeader(MaryHeader.JOINFEATS).writeTo(out);
+		out.writeInt(NUM_FEATURES);
+		for (int i = 0; i < NUM_FEATURES; i++) {
+			out.writeFloat(0.25f * (i + 1));
+			out.writeUTF("linear");
+		}
+		out.writeInt(NUM_UNITS);
+		Random random = new Random(42);
+		for (int u = 0; u < NUM_UNITS; u++) {
+			for (int i = 0; i < 2 * NUM_FEATURES; i++) { // left, then right join features
+				out.writeFloat(random.nextFloat());
+			}
+		}
+		out.close();
+		joinCosts = new JoinCostFeatures();
+		joinCosts.load(joinFile.getPath(), null, null, 1);
+	}
+
+	@Test
+	public void remembersComputedCosts() {
+		JoinCostCache cache = new JoinCostCache(1024);
+		joinCosts.setJoinCostCache(cache);
+		try {
+			for (int round = 0; round < 2; round++) {
+				for (int u1 = 0; u1 < 10; u1++) {
+					for (int u2 = 10; u2 < 20; u2++) {
+						assertEquals(joinCosts.cost(u1, u2), joinCosts.cachedCost(u1, u2), 0);
+					}
+				}
+			}
+		} finally {
+			joinCosts.setJoinCostCache(null);
+		}
+		assertEquals(100, cache.getMisses());
+		assertEquals(100, cache.getHits());
+		assertEquals(0.5, cache.getHitRate(), 1.e-9);
+	}
+
+	@Test
+	public void isBounded() {
+		JoinCostCache cache = new JoinCostCache(16);
+		for (int u = 0; u < 1000; u++) {
+			cache.put(u, u + 1, u);
+		}
+		int found = 0;
+		for (int u = 0; u < 1000; u++) {
+			double cost = cache.get(u, u + 1);
+			if (!Double.isNaN(cost)) {
+				assertEquals(u, cost, 0);
+				found++;
+			}
+		}
+		assertTrue(found <= cache.getCapacity());
+	}
+
+	@Test
+	public void keepsPairsApart() {
+		JoinCostCache cache = new JoinCostCache(1024);
+		cache.put(1, 2, 3.);
+		assertTrue(Double.isNaN(cache.get(2, 1)));
+		assertEquals(3., cache.get(1, 2), 0);
+	}
+
+	@Test
+	public void concurrentAccessReturnsCorrectCosts() throws Exception {
+		final JoinCostCache cache = new JoinCostCache(64);
+		final Throwable[] failure = new Throwable[1];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < 100000; i++) {
+							int u1 = random.nextInt(NUM_UNITS);
+							int u2 = random.nextInt(NUM_UNITS);
+							double cost = cache.get(u1, u2);
+							if (Double.isNaN(cost)) {
+								cache.put(u1, u2, joinCosts.cost(u1, u2));
+							} else {
+								assertEquals(joinCosts.cost(u1, u2), cost, 0);
+							}
+						}
+					} catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure[0] != null) {
+			throw new AssertionError(failure[0]);
+		}
+		assertEquals(400000, cache.getHits() + cache.getMisses());
+	}
+
+	@Test
+	public void loadsPrecomputedJoins() throws Exception {
+		String log = "12:00:01 DEBUG JoinLog voice=test joins: 1:5 7:8 1:5\n" //
+				+ "unrelated 3:4\n" //
+				+ "12:00:02 DEBUG JoinLog voice=other joins: 3:4 3:4 3:4\n" //
+				+ "voice=test joins: 1:5 7:8 2:9 " + NUM_UNITS + ":1\n";
+		Map<Long, Integer> counts = JoinCostPrecomputer.countJoins(new BufferedReader(new StringReader(log)), "test");
+		assertEquals(4, counts.size());
+		long[] joins = JoinCostPrecomputer.mostFrequentJoins(counts, 3);
+		assertArrayEquals(new long[] { JoinCostCache.key(1, 5), JoinCostCache.key(7, 8), JoinCostCache.key(2, 9) }, joins);
+
+		File costFile = tmp.newFile();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(costFile)));
+		assertEquals(3, JoinCostPrecomputer.writeJoinCosts(joinCosts, joins, out));
+		out.close();
+
+		JoinCostCache cache = new JoinCostCache(16, new PrecompiledJoinCostReader(costFile.getPath()));
+		assertEquals((float) joinCosts.cost(1, 5), cache.get(1, 5), 0);
+		assertEquals((float) joinCosts.cost(7, 8), cache.get(7, 8), 0);
+		assertEquals((float) joinCosts.cost(2, 9), cache.get(2, 9), 0);
+		assertTrue(Double.isNaN(cache.get(5, 1)));
+		assertEquals(3, cache.getPrecomputedHits());
+	}
+}
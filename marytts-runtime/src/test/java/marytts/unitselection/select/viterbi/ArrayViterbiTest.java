@@ -0,0 +1,159 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.JoinCostFunction;
+import marytts.unitselection.select.SelectedUnit;
+import marytts.unitselection.select.Target;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the array-based Viterbi search selects the same units as the object-based one.
+ */
+public class ArrayViterbiTest {
+	private static final int NUM_UNITS = 5000;
+
+	/**
+	 * A database returning a fixed pseudo-random set of candidates for each target. Target costs are rounded so that many
+	 * candidates have the same target cost.
+	 */
+	private static class RandomDatabase extends UnitDatabase {
+		RandomDatabase() {
+			load(null, new JoinCostFunction() {
+				public double cost(Target t1, Unit u1, Target t2, Unit u2) {
+					if (u1.index + 1 == u2.index) {
+						return 0;
+					}
+					return new Random(31L * u1.index + u2.index).nextDouble();
+				}
+
+				public void init(String configPrefix) {
+				}
+			}, null, null, null, null, 0);
+		}
+
+		@Override
+		public List<ViterbiCandidate> getCandidates(Target target) {
+			Random random = new Random(target.getName().hashCode());
+			int n = 1 + random.nextInt(60);
+			List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(n);
+			for (int i = 0; i < n; i++) {
+				Unit unit = new Unit(0, 1, random.nextInt(NUM_UNITS));
+				candidates.add(new ViterbiCandidate(target, unit, random.nextInt(10) / 10.));
+			}
+			return candidates;
+		}
+	}
+
+	private UnitDatabase database;
+	private Random random;
+
+	@Before
+	public void setUp() {
+		database = new RandomDatabase();
+		random = new Random(42);
+	}
+
+	private List<Target> randomTargets(int n) {
+		List<Target> targets = new ArrayList<Target>(n);
+		for (int i = 0; i < n; i++) {
+			targets.add(new Target("t" + random.nextInt(1000), null));
+		}
+		return targets;
+	}
+
+	private void assertSameSelection(List<SelectedUnit> expected, List<SelectedUnit> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getUnit().index, actual.get(i).getUnit().index);
+			assertSame(expected.get(i).getTarget(), actual.get(i).getTarget());
+		}
+	}
+
+	@Test
+	public void selectsSameUnitsAsViterbi() throws Exception {
+		for (int beamSize : new int[] { 1, 5, 20, -1 }) {
+			for (int utt = 0; utt < 20; utt++) {
+				List<Target> targets = randomTargets(1 + random.nextInt(40));
+				Viterbi viterbi = new Viterbi(targets, database, 0.3f, beamSize);
+				viterbi.apply();
+				ArrayViterbi arrayViterbi = new ArrayViterbi(targets, database, 0.3f, beamSize);
+				arrayViterbi.apply();
+				assertSameSelection(viterbi.getSelectedUnits(), arrayViterbi.getSelectedUnits());
+			}
+		}
+	}
+
+	@Test
+	public void reusesLattice() throws Exception {
+		List<Target> longTargets = randomTargets(500);
+		ArrayViterbi first = new ArrayViterbi(longTargets, database, 0.5f, 50);
+		first.apply();
+		List<SelectedUnit> expected = first.getSelectedUnits();
+		// a shorter utterance in between must not leave anything behind:
+		ArrayViterbi shorter = new ArrayViterbi(randomTargets(3), database, 0.5f, 50);
+		shorter.apply();
+		assertTrue(shorter.getSelectedUnits().size() == 3);
+		ArrayViterbi again = new ArrayViterbi(longTargets, database, 0.5f, 50);
+		again.apply();
+		assertSameSelection(expected, again.getSelectedUnits());
+	}
+
+	@Test
+	public void shrinksOversizedLattice() {
+		ArrayViterbi.Lattice lattice = new ArrayViterbi.Lattice();
+		Target target = new Target("t", null);
+		List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>();
+		for (int i = 0; i < 5000; i++) {
+			candidates.add(new ViterbiCandidate(target, new Unit(0, 1, i), i % 7));
+		}
+		lattice.addPoint(target, candidates, -1);
+		lattice.clear();
+		// a moderately large lattice is kept for reuse:
+		assertTrue(lattice.units.length >= 5000);
+		long huge = ArrayViterbi.Lattice.MAX_CACHED_BYTES / ArrayViterbi.Lattice.ENTRY_BYTES + 1;
+		while (lattice.size < huge) {
+			lattice.addPoint(target, candidates, -1);
+		}
+		lattice.clear();
+		assertEquals(0, lattice.size);
+		assertEquals(ArrayViterbi.Lattice.INITIAL_CAPACITY, lattice.units.length);
+		assertEquals(ArrayViterbi.Lattice.INITIAL_CAPACITY, lattice.back.length);
+	}
+
+	@Test
+	public void emptyUtterance() throws Exception {
+		ArrayViterbi viterbi = new ArrayViterbi(new ArrayList<Target>(), database, 0.5f, 10);
+		viterbi.apply();
+		assertEquals(0, viterbi.getSelectedUnits().size());
+	}
+}
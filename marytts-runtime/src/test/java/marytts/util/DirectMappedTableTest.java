@@ -0,0 +1,75 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DirectMappedTableTest {
+
+	@Test
+	public void capacityIsRoundedUpToPowerOfTwo() {
+		assertEquals(2, new DirectMappedTable<String>(1).getCapacity());
+		assertEquals(8, new DirectMappedTable<String>(5).getCapacity());
+		assertEquals(1024, new DirectMappedTable<String>(1024).getCapacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsZeroCapacity() {
+		new DirectMappedTable<String>(0);
+	}
+
+	@Test
+	public void slotsAreInRange() {
+		DirectMappedTable<String> table = new DirectMappedTable<String>(5);
+		for (int h = -1000; h < 1000; h++) {
+			int slot = table.slot(h);
+			assertTrue(slot >= 0 && slot < table.getCapacity());
+			slot = table.slot(h * 0x123456789L);
+			assertTrue(slot >= 0 && slot < table.getCapacity());
+		}
+	}
+
+	@Test
+	public void setReplacesEntry() {
+		DirectMappedTable<String> table = new DirectMappedTable<String>(16);
+		int slot = table.slot(42);
+		assertNull(table.get(slot));
+		table.set(slot, "a");
+		table.set(slot, "b");
+		assertEquals("b", table.get(slot));
+	}
+
+	@Test
+	public void countsHitsAndMisses() {
+		DirectMappedTable<String> table = new DirectMappedTable<String>(16);
+		assertEquals(0, table.getHitRate(), 0);
+		table.hit();
+		table.hit();
+		table.hit();
+		table.miss();
+		assertEquals(3, table.getHits());
+		assertEquals(1, table.getMisses());
+		assertEquals(0.75, table.getHitRate(), 0);
+	}
+}
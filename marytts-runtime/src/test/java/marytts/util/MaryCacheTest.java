@@ -22,11 +22,20 @@ package marytts.util;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import java.io.File;
-import java.sql.SQLException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.util.Locale;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import marytts.datatypes.MaryData;
+import marytts.datatypes.MaryDataType;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -35,6 +44,7 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runners.MethodSorters;
+import org.xml.sax.InputSource;
 
 /**
  * @author marc
@@ -101,12 +111,12 @@ public class MaryCacheTest {
 		int numExceptions = 0;
 		try {
 			c.insertText(inputtype, outputtype, locale, voice, inputtext, targetValue);
-		} catch (SQLException e) {
+		} catch (IOException e) {
 			numExceptions++;
 		}
 		try {
 			c.insertAudio(inputtype, locale, voice, inputtext, targetAudio);
-		} catch (SQLException e) {
+		} catch (IOException e) {
 			numExceptions++;
 		}
 		assertEquals(0, numExceptions);
@@ -120,6 +130,72 @@ public class MaryCacheTest {
 		lookupAudio();
 	}
 
+	@Test
+	public void evictedRecordsAreReadFromDisk() throws Exception {
+		File f = tmp.newFile();
+		MaryCache small = new MaryCache(f, true, 20000);
+		small.insertAudio(inputtype, locale, voice, inputtext, targetAudio);
+		small.insertAudio(inputtype, locale, voice, inputtext2, new byte[12345]);
+		// the second record has pushed the first one out of memory:
+		assertArrayEquals(targetAudio, small.lookupAudio(inputtype, locale, voice, inputtext));
+		assertNotNull(small.lookupAudio(inputtype, locale, voice, inputtext2));
+		small.shutdown();
+	}
+
+	@Test
+	public void survivesTruncatedRecord() throws Exception {
+		File f = tmp.newFile();
+		MaryCache cache = new MaryCache(f, true);
+		cache.insertText(inputtype, outputtype, locale, voice, inputtext, targetValue);
+		cache.insertAudio(inputtype, locale, voice, inputtext, targetAudio);
+		cache.shutdown();
+		// simulate a crash while writing the audio record:
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.setLength(raf.length() - 100);
+		raf.close();
+		cache = new MaryCache(f, false);
+		assertEquals(targetValue, cache.lookupText(inputtype, outputtype, locale, voice, inputtext));
+		assertNull(cache.lookupAudio(inputtype, locale, voice, inputtext));
+		cache.insertAudio(inputtype, locale, voice, inputtext, targetAudio);
+		assertArrayEquals(targetAudio, cache.lookupAudio(inputtype, locale, voice, inputtext));
+		cache.shutdown();
+	}
+
+	@Test
+	public void lookupReturnsCopy() throws Exception {
+		File f = tmp.newFile();
+		MaryCache cache = new MaryCache(f, true);
+		byte[] audio = new byte[] { 1, 2, 3 };
+		cache.insertAudio(inputtype, locale, voice, inputtext, audio);
+		audio[0] = 9;
+		byte[] found = cache.lookupAudio(inputtype, locale, voice, inputtext);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, found);
+		found[1] = 9;
+		assertArrayEquals(new byte[] { 1, 2, 3 }, cache.lookupAudio(inputtype, locale, voice, inputtext));
+		cache.shutdown();
+	}
+
+	private static MaryData xml(String xml) throws Exception {
+		MaryData data = new MaryData(MaryDataType.RAWMARYXML, Locale.GERMAN);
+		data.setDocument(DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new InputSource(new StringReader(xml))));
+		return data;
+	}
+
+	@Test
+	public void inputKeyDependsOnContentOnly() throws Exception {
+		String key = MaryCache.inputKey(xml("<maryxml xml:lang='de' version='0.5'><p>Hallo Welt</p></maryxml>"));
+		assertNotNull(key);
+		// attribute order and comments do not matter:
+		assertEquals(key, MaryCache.inputKey(xml("<maryxml version='0.5' xml:lang='de'><!-- x --><p>Hallo Welt</p></maryxml>")));
+		// nor does splitting the text into text and CDATA nodes:
+		assertEquals(key,
+				MaryCache.inputKey(xml("<maryxml xml:lang='de' version='0.5'><p>Hallo <![CDATA[Welt]]></p></maryxml>")));
+		assertFalse(key.equals(MaryCache.inputKey(xml("<maryxml xml:lang='de' version='0.5'><p>Hallo Welt!</p></maryxml>"))));
+		assertFalse(key.equals(MaryCache.inputKey(xml("<maryxml xml:lang='de' version='0.5'><s>Hallo Welt</s></maryxml>"))));
+		assertFalse(key.equals(MaryCache.inputKey(xml("<maryxml xml:lang='de' version='0.5'><p>Hallo</p><p>Welt</p></maryxml>"))));
+	}
+
 	@Test
 	public void zzz_isClearable() throws Exception {
 		c.shutdown();
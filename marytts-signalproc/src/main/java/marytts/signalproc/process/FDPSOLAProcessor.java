@@ -363,6 +363,9 @@ public class FDPSOLAProcessor extends VocalTractModifier {
 			numfrm += datagrams[i].length;
 		}
 
+		// frame data, reused for all frames and grown when a longer one comes along:
+		double[] frmIn = new double[0];
+
 		// for each unit:
 		for (int i = 0; i < datagrams.length; i++) {
 			// for each datagram in that unit:
@@ -386,16 +389,23 @@ public class FDPSOLAProcessor extends VocalTractModifier {
 				}
 				assert nextDatagram.getDuration() > 0;
 
-				// ARG #1, actual frame data for this and the next Datagram:
-				Datagram[] sourceDatagrams = { datagrams[i][j], nextDatagram };
-				DatagramDoubleDataSource dataSource = new DatagramDoubleDataSource(sourceDatagrams);
-				double[] frmIn = dataSource.getAllData();
+				// ARG #1, actual frame data for this and the next Datagram, decoded straight from the datagrams;
+				// only the first frameLength samples of frmIn belong to this frame:
+				int thisDuration = (int) datagrams[i][j].getDuration();
+				int frameLength = thisDuration + (int) nextDatagram.getDuration();
+				if (frmIn.length < frameLength) {
+					frmIn = new double[frameLength];
+				}
+				datagrams[i][j].getSamples(frmIn, 0);
+				nextDatagram.getSamples(frmIn, thisDuration);
+				// processFrame() pads the frame to an even length of at least 4 samples, so clear what a longer frame left there:
+				Arrays.fill(frmIn, frameLength, Math.min(frmIn.length, Math.max(frameLength + frameLength % 2, 4)), 0.0);
 
 				// ARG #2, voicing:
 				boolean symbolicVoicing = voicings[i][j];
-				boolean acousticVoicing = SignalProcUtils.getVoicing(frmIn, (int) (audioformat.getSampleRate()));
-				// inflexible hard-coded toggle between symbolic (phonology) and signal based voicing:
-				boolean isVoiced = symbolicVoicing; // one of: symbolicVoicing, acousticVoicing
+				// inflexible hard-coded toggle between symbolic (phonology) and signal based voicing; the latter would be
+				// SignalProcUtils.getVoicing() on a copy of exactly inputFrameSize samples:
+				boolean isVoiced = symbolicVoicing;
 
 				// ARGs #5-6, some obscure variables:
 				double escale = 1.0;
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+/**
+ * The float counterpart of {@link BaseDoubleDataSource}: reads from an input FloatDataSource, if any.
+ */
+public class BaseFloatDataSource implements FloatDataSource {
+	protected FloatDataSource inputSource = null;
+	protected long dataLength = FloatDataSource.NOT_SPECIFIED;
+
+	public BaseFloatDataSource() {
+	}
+
+	public BaseFloatDataSource(FloatDataSource inputSource) {
+		this.inputSource = inputSource;
+		if (inputSource != null)
+			dataLength = inputSource.getDataLength();
+	}
+
+	/**
+	 * Request to get the specified amount of data in a new float array.
+	 * 
+	 * @param amount
+	 *            the number of floats requested
+	 * @return a new float array; its length may be smaller than amount if not enough data could be obtained. If no data could be
+	 *         read, null is returned.
+	 */
+	public float[] getData(int amount) {
+		if (amount <= 0)
+			throw new IllegalArgumentException("amount must be positive");
+		float[] container = new float[amount];
+		int received = getData(container);
+		if (received == 0) {
+			return null;
+		} else if (received < amount) {
+			float[] newContainer = new float[received];
+			System.arraycopy(container, 0, newContainer, 0, received);
+			return newContainer;
+		} else {
+			return container;
+		}
+	}
+
+	/**
+	 * Try to get as many float data from this FloatDataSource as target can hold.
+	 * 
+	 * @param target
+	 *            the float array in which to write the data
+	 * @return the number of data items written into target. If the returned value is less than target.length, only that many data
+	 *         items have been copied into target; further calls will return 0 and not copy anything.
+	 */
+	public int getData(float[] target) {
+		return getData(target, 0, target.length);
+	}
+
+	/**
+	 * Try to get length floats from this FloatDataSource, and copy them into target, starting from targetPos. This is the core
+	 * method getting the data. Subclasses may want to override this method.
+	 * 
+	 * @param target
+	 *            the float array to write into
+	 * @param targetPos
+	 *            position in target where to start writing
+	 * @param length
+	 *            the amount of data requested
+	 * @return the amount of data actually delivered. If the returned value is less than length, only that many data items have
+	 *         been copied into target; further calls will return 0 and not copy anything.
+	 * @throws IllegalArgumentException
+	 *             if there is not enough space in target after targetPos to hold length values.
+	 */
+	public int getData(float[] target, int targetPos, int length) {
+		if (target.length - targetPos < length) {
+			throw new IllegalArgumentException("Target array cannot hold enough data (" + (target.length - targetPos)
+					+ " left, but " + length + " requested)");
+		}
+		if (inputSource == null)
+			return 0;
+		return inputSource.getData(target, targetPos, length);
+	}
+
+	/**
+	 * Whether or not any more data can be read from this data source.
+	 * 
+	 * @return true if another call to getData() will return data, false otherwise.
+	 */
+	public boolean hasMoreData() {
+		if (inputSource == null)
+			return false;
+		return inputSource.hasMoreData();
+	}
+
+	/**
+	 * The number of floats that can currently be read from this float data source without blocking. This number can change over
+	 * time.
+	 * 
+	 * @return the number of floats that can currently be read without blocking
+	 */
+	public int available() {
+		if (inputSource == null)
+			return 0;
+		return inputSource.available();
+
+	}
+
+	/**
+	 * Get all the data that can be read from this data source, in a single float array.
+	 * 
+	 * @throws OutOfMemoryError
+	 *             if a sufficiently large float array cannot be created.
+	 * @return a float array of exactly the length required to contain all the data that can be read from this source. Returns an
+	 *         array of length 0 if no data can be read from this source.
+	 */
+	public float[] getAllData() {
+		float[] all = new float[BufferedFloatDataSource.DEFAULT_BUFFERSIZE];
+		int currentPos = 0;
+		while (hasMoreData()) {
+			int nRead = getData(all, currentPos, all.length - currentPos);
+			if (nRead < all.length - currentPos) {
+				// done
+				assert !hasMoreData();
+				currentPos += nRead;
+				break; // leave while loop
+			} else {
+				assert currentPos + nRead == all.length;
+				float[] newAll = new float[2 * all.length];
+				System.arraycopy(all, 0, newAll, 0, all.length);
+				currentPos = all.length;
+				all = newAll;
+			}
+		}
+		float[] result = new float[currentPos];
+		System.arraycopy(all, 0, result, 0, currentPos);
+		return result;
+	}
+
+	/**
+	 * Get the total length of the data in this data source, if available. For a BufferedFloatDataSource created from a float[],
+	 * the data length is available.
+	 * 
+	 * @return the number of floats that can be read from this data source, or FloatDataSource.NOT_SPECIFIED if unknown.
+	 */
+	public long getDataLength() {
+		return dataLength;
+	}
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A datagram whose data is not copied into a byte array, but read from a slice of the byte buffer it was created from, typically
+ * a memory-mapped timeline file. This saves a copy of every datagram when reading audio for unit concatenation:
+ * {@link #getSamples(double[], int)} decodes the samples directly from the buffer.
+ * <p>
+ * The buffer must not be modified while the datagram is in use. {@link #getData()} still returns the data as a byte array, which
+ * is copied from the buffer when it is first requested; from then on, the datagram behaves like an ordinary datagram.
+ */
+public class BufferDatagram extends Datagram {
+	private final ByteBuffer buffer;
+
+	/**
+	 * Read the header of a datagram from the given byte buffer, and refer to its data in the buffer. Afterwards, the position of
+	 * bb is just after the datagram.
+	 * 
+	 * @param bb
+	 *            the byte buffer to read the datagram from.
+	 * 
+	 * @throws IOException
+	 *             if the datagram has wrong format or if the datagram is not fully contained in the byte buffer
+	 */
+	public BufferDatagram(ByteBuffer bb) throws IOException {
+		super(0);
+		duration = bb.getLong();
+		if (duration < 0) {
+			throw new IOException("Can't create a datagram with a negative duration [" + duration + "].");
+		}
+		int len = bb.getInt();
+		if (len < 0) {
+			throw new IOException("Can't create a datagram with a negative data size [" + len + "].");
+		}
+		if (bb.limit() - bb.position() < len) {
+			throw new IOException("Not enough data in byte buffer to read the full datagram: datagram length is " + len
+					+ ", but can read only " + (bb.limit() - bb.position()));
+		}
+		// slices are always big-endian, like the timeline files:
+		buffer = bb.slice();
+		buffer.limit(len);
+		bb.position(bb.position() + len);
+	}
+
+	@Override
+	public int getLength() {
+		if (data != null) {
+			return data.length;
+		}
+		return buffer.limit();
+	}
+
+	/**
+	 * Get the datagram's data field, copying it from the buffer the first time.
+	 * 
+	 * @return the data in this Datagram
+	 */
+	@Override
+	public byte[] getData() {
+		if (data == null) {
+			byte[] copy = new byte[buffer.limit()];
+			buffer.duplicate().get(copy);
+			data = copy;
+		}
+		return data;
+	}
+
+	@Override
+	public int getSamples(double[] target, int pos) {
+		if (data != null) {
+			return super.getSamples(target, pos);
+		}
+		int numSamples = buffer.limit() / 2;
+		for (int i = 0; i < numSamples; i++) {
+			target[pos + i] = buffer.getShort(2 * i) / 32768.0; // normalise to range [-1, 1]
+		}
+		return numSamples;
+	}
+
+	@Override
+	public int getSamples(float[] target, int pos) {
+		if (data != null) {
+			return super.getSamples(target, pos);
+		}
+		int numSamples = buffer.limit() / 2;
+		for (int i = 0; i < numSamples; i++) {
+			target[pos + i] = buffer.getShort(2 * i) / 32768f; // normalise to range [-1, 1]
+		}
+		return numSamples;
+	}
+
+	@Override
+	public void write(DataOutput raf) throws IOException {
+		getData();
+		super.write(raf);
+	}
+}
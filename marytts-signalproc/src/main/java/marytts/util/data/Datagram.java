@@ -239,6 +239,46 @@ public class Datagram {
 		return data;
 	}
 
+	/**
+	 * Decode the datagram's data as 16-bit signed big-endian PCM samples, as stored in audio timelines, and write them into the
+	 * given array.
+	 * 
+	 * @param target
+	 *            the array to write the samples to, normalised to the range [-1, 1]
+	 * @param pos
+	 *            the position in target of the first sample
+	 * @return the number of samples written, i.e. half the length of the data
+	 */
+	public int getSamples(double[] target, int pos) {
+		byte[] frameAudio = getData();
+		for (int i = 0; i < frameAudio.length; i += 2, pos++) {
+			// big endian:
+			int sample = frameAudio[i] << 8 | frameAudio[i + 1] & 0xFF;
+			target[pos] = sample / 32768.0; // normalise to range [-1, 1]
+		}
+		return frameAudio.length / 2;
+	}
+
+	/**
+	 * Decode the datagram's data as 16-bit signed big-endian PCM samples into single-precision values.
+	 * 
+	 * @param target
+	 *            the array to write the samples to, normalised to the range [-1, 1]
+	 * @param pos
+	 *            the position in target of the first sample
+	 * @return the number of samples written, i.e. half the length of the data
+	 * @see #getSamples(double[], int)
+	 */
+	public int getSamples(float[] target, int pos) {
+		byte[] frameAudio = getData();
+		for (int i = 0; i < frameAudio.length; i += 2, pos++) {
+			// big endian:
+			int sample = frameAudio[i] << 8 | frameAudio[i + 1] & 0xFF;
+			target[pos] = sample / 32768f; // normalise to range [-1, 1]
+		}
+		return frameAudio.length / 2;
+	}
+
 	/****************/
 	/* MISC METHODS */
 	/****************/
@@ -254,10 +294,13 @@ public class Datagram {
 		Datagram other = (Datagram) obj;
 		if (this.duration != other.duration)
 			return (false);
-		if (this.data.length != other.data.length)
+		// subclasses may provide their data lazily:
+		byte[] myData = this.getData();
+		byte[] otherData = other.getData();
+		if (myData.length != otherData.length)
 			return (false);
-		for (int i = 0; i < this.data.length; i++) {
-			if (this.data[i] != other.data[i])
+		for (int i = 0; i < myData.length; i++) {
+			if (myData[i] != otherData[i])
 				return (false);
 		}
 		return (true);
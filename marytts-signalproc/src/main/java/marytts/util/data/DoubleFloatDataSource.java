@@ -0,0 +1,68 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+/**
+ * Reads the data of a DoubleDataSource as floats, converting them in blocks.
+ */
+public class DoubleFloatDataSource extends BaseFloatDataSource {
+	protected DoubleDataSource doubleSource;
+	private double[] block = new double[0];
+
+	public DoubleFloatDataSource(DoubleDataSource doubleSource) {
+		super();
+		this.doubleSource = doubleSource;
+		this.dataLength = doubleSource.getDataLength();
+	}
+
+	@Override
+	public int getData(float[] target, int targetPos, int length) {
+		if (target.length - targetPos < length) {
+			throw new IllegalArgumentException("Target array cannot hold enough data (" + (target.length - targetPos)
+					+ " left, but " + length + " requested)");
+		}
+		if (block.length == 0) {
+			block = new double[BufferedDoubleDataSource.DEFAULT_BUFFERSIZE];
+		}
+		int copied = 0;
+		while (copied < length) {
+			int toRead = Math.min(block.length, length - copied);
+			int read = doubleSource.getData(block, 0, toRead);
+			for (int i = 0; i < read; i++) {
+				target[targetPos + copied + i] = (float) block[i];
+			}
+			copied += read;
+			if (read < toRead) {
+				break;
+			}
+		}
+		return copied;
+	}
+
+	@Override
+	public boolean hasMoreData() {
+		return doubleSource.hasMoreData();
+	}
+
+	@Override
+	public int available() {
+		return doubleSource.available();
+	}
+}
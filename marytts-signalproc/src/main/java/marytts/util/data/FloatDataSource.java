@@ -0,0 +1,96 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+/**
+ * A source of single-precision audio samples: the float counterpart of {@link DoubleDataSource}, for audio which ends up as
+ * 16-bit PCM and therefore does not need double precision. It takes half the memory, and half the memory bandwidth, of a
+ * DoubleDataSource. {@link DoubleFloatDataSource} and {@link FloatDoubleDataSource} adapt between the two.
+ */
+public interface FloatDataSource {
+	public int NOT_SPECIFIED = -1;
+
+	/**
+	 * Request to get the specified amount of data in a new float array.
+	 * 
+	 * @param amount
+	 *            the number of floats requested
+	 * @return a new float array; its length may be smaller than amount if not enough data could be obtained. If no data could be
+	 *         read, null is returned.
+	 */
+	public float[] getData(int amount);
+
+	/**
+	 * Try to get as many float data from this FloatDataSource as target can hold.
+	 * 
+	 * @param target
+	 *            the float array in which to write the data
+	 * @return the number of data items written into target. If the returned value is less than target.length, only that many data
+	 *         items have been copied into target; further calls will return 0 and not copy anything.
+	 */
+	public int getData(float[] target);
+
+	/**
+	 * Try to get length floats from this FloatDataSource, and copy them into target, starting from targetPos.
+	 * 
+	 * @param target
+	 *            the float array to write into
+	 * @param targetPos
+	 *            position in target where to start writing
+	 * @param length
+	 *            the amount of data requested
+	 * @return the amount of data actually delivered. If the returned value is less than length, only that many data items have
+	 *         been copied into target; further calls will return 0 and not copy anything.
+	 */
+	public int getData(float[] target, int targetPos, int length);
+
+	/**
+	 * Whether or not any more data can be read from this data source.
+	 * 
+	 * @return true if another call to getData() will return data, false otherwise.
+	 */
+	public boolean hasMoreData();
+
+	/**
+	 * The number of floats that can currently be read from this float data source without blocking. This number can change over
+	 * time.
+	 * 
+	 * @return the number of floats that can currently be read without blocking
+	 */
+	public int available();
+
+	/**
+	 * Get all the data that can be read from this data source, in a single float array.
+	 * 
+	 * @throws OutOfMemoryError
+	 *             if a sufficiently large float array cannot be created.
+	 * @return a float array of exactly the length required to contain all the data that can be read from this source. Returns an
+	 *         array of length 0 if no data can be read from this source.
+	 */
+	public float[] getAllData();
+
+	/**
+	 * Get the total length of the data in this data source, if available.
+	 * 
+	 * @return the number of floats that can be read from this data source, or FloatDataSource.NOT_SPECIFIED if unknown.
+	 */
+	public long getDataLength();
+
+}
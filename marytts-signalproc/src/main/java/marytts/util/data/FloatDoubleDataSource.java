@@ -0,0 +1,69 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+/**
+ * Reads the data of a FloatDataSource as doubles, converting them in blocks, so that float data can be passed to code which
+ * expects a DoubleDataSource.
+ */
+public class FloatDoubleDataSource extends BaseDoubleDataSource {
+	protected FloatDataSource floatSource;
+	private float[] block = new float[0];
+
+	public FloatDoubleDataSource(FloatDataSource floatSource) {
+		super();
+		this.floatSource = floatSource;
+		this.dataLength = floatSource.getDataLength();
+	}
+
+	@Override
+	public int getData(double[] target, int targetPos, int length) {
+		if (target.length - targetPos < length) {
+			throw new IllegalArgumentException("Target array cannot hold enough data (" + (target.length - targetPos)
+					+ " left, but " + length + " requested)");
+		}
+		if (block.length == 0) {
+			block = new float[BufferedFloatDataSource.DEFAULT_BUFFERSIZE];
+		}
+		int copied = 0;
+		while (copied < length) {
+			int toRead = Math.min(block.length, length - copied);
+			int read = floatSource.getData(block, 0, toRead);
+			for (int i = 0; i < read; i++) {
+				target[targetPos + copied + i] = block[i];
+			}
+			copied += read;
+			if (read < toRead) {
+				break;
+			}
+		}
+		return copied;
+	}
+
+	@Override
+	public boolean hasMoreData() {
+		return floatSource.hasMoreData();
+	}
+
+	@Override
+	public int available() {
+		return floatSource.available();
+	}
+}
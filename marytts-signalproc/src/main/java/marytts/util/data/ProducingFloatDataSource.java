@@ -0,0 +1,184 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * The float counterpart of {@link ProducingDoubleDataSource}: a producer thread computes the data and sends it through
+ * {@link #putOneDataPoint(double)}, while another thread reads it. The data points are collected into blocks of
+ * {@link #BLOCK_SIZE} floats, and only whole blocks are handed over, so that the two threads do not meet for every data point.
+ * Subclasses can process each block in the producer thread before it is handed over, by overriding
+ * {@link #processBlock(float[], int, int)}.
+ */
+public abstract class ProducingFloatDataSource extends BaseFloatDataSource implements Runnable {
+	/** the number of data points handed over at a time */
+	public static final int BLOCK_SIZE = 1024;
+	private static final float[] END_OF_STREAM = new float[0];
+
+	private final ArrayBlockingQueue<float[]> queue = new ArrayBlockingQueue<float[]>(8);
+	private Thread dataProducingThread = null;
+	// producer side:
+	private float[] producing = new float[BLOCK_SIZE];
+	private int produced = 0;
+	// reader side:
+	private float[] current = END_OF_STREAM;
+	private int currentPos = 0;
+	private boolean hasReceivedEndOfStream = false;
+
+	protected ProducingFloatDataSource() {
+		this(FloatDataSource.NOT_SPECIFIED);
+	}
+
+	protected ProducingFloatDataSource(long numDataThatWillBeProduced) {
+		super();
+		this.dataLength = numDataThatWillBeProduced;
+	}
+
+	public void start() {
+		dataProducingThread = new Thread(this);
+		dataProducingThread.setDaemon(true);
+		dataProducingThread.start();
+	}
+
+	/**
+	 * Subclasses must implement this method such that it produces data and sends it through {@link #putOneDataPoint(double)}.
+	 * When all data is sent, the subclass must call {@link #putEndOfStream()} exactly once.
+	 */
+	public abstract void run();
+
+	/**
+	 * The producing thread adds one data item, which is handed over to the reader with the rest of its block.
+	 * 
+	 * @param value
+	 *            value
+	 * @throws RuntimeException
+	 *             if interrupted while waiting for the reader
+	 */
+	public void putOneDataPoint(double value) {
+		producing[produced++] = (float) value;
+		if (produced == BLOCK_SIZE) {
+			handOver();
+		}
+	}
+
+	protected void putEndOfStream() {
+		if (produced > 0) {
+			handOver();
+		}
+		put(END_OF_STREAM);
+	}
+
+	/**
+	 * Process a block of data in the producer thread, before it is handed over to the reader. Does nothing by default.
+	 * 
+	 * @param data
+	 *            the block
+	 * @param off
+	 *            the position of the first data point
+	 * @param len
+	 *            the number of data points
+	 */
+	protected void processBlock(float[] data, int off, int len) {
+	}
+
+	private void handOver() {
+		float[] block = produced == producing.length ? producing : Arrays.copyOf(producing, produced);
+		processBlock(block, 0, block.length);
+		put(block);
+		producing = new float[BLOCK_SIZE];
+		produced = 0;
+	}
+
+	private void put(float[] block) {
+		try {
+			queue.put(block);
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Unexpected interruption", e);
+		}
+	}
+
+	@Override
+	public int getData(float[] target, int targetPos, int length) {
+		checkStarted();
+		if (target.length - targetPos < length) {
+			throw new IllegalArgumentException("Target array cannot hold enough data (" + (target.length - targetPos)
+					+ " left, but " + length + " requested)");
+		}
+		int copied = 0;
+		while (copied < length) {
+			if (currentPos == current.length) {
+				if (hasReceivedEndOfStream) {
+					break;
+				}
+				current = takeBlock();
+				currentPos = 0;
+				if (current == END_OF_STREAM) {
+					hasReceivedEndOfStream = true;
+					break;
+				}
+			}
+			int n = Math.min(length - copied, current.length - currentPos);
+			System.arraycopy(current, currentPos, target, targetPos + copied, n);
+			currentPos += n;
+			copied += n;
+		}
+		return copied;
+	}
+
+	@Override
+	public boolean hasMoreData() {
+		checkStarted();
+		return !hasReceivedEndOfStream || currentPos < current.length;
+	}
+
+	@Override
+	public int available() {
+		checkStarted();
+		int available = current.length - currentPos;
+		if (!hasReceivedEndOfStream) {
+			for (float[] block : queue) {
+				available += block.length;
+			}
+		}
+		return available;
+	}
+
+	/**
+	 * The reading thread waits for the next block.
+	 */
+	private float[] takeBlock() {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Unexpected interruption", e);
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 */
+	private void checkStarted() throws IllegalStateException {
+		if (dataProducingThread == null) {
+			throw new IllegalStateException("Producer thread has not been started -- call start()");
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Create one FloatDataSource from a sequence of FloatDataSources.
+ */
+public class SequenceFloatDataSource extends BaseFloatDataSource {
+	protected LinkedList<FloatDataSource> sources;
+
+	/**
+	 *
+	 * @param inputSources
+	 *            input Sources
+	 */
+	public SequenceFloatDataSource(FloatDataSource[] inputSources) {
+		super();
+		sources = new LinkedList<FloatDataSource>();
+		dataLength = 0;
+		for (int i = 0; i < inputSources.length; i++) {
+			if (dataLength != FloatDataSource.NOT_SPECIFIED) {
+				long dl = inputSources[i].getDataLength();
+				if (dl == FloatDataSource.NOT_SPECIFIED)
+					dataLength = FloatDataSource.NOT_SPECIFIED;
+				else
+					dataLength += dl;
+			}
+			sources.add(inputSources[i]);
+		}
+	}
+
+	/**
+	 *
+	 * @param inputSources
+	 *            a list of FloatDataSource objects.
+	 */
+	public SequenceFloatDataSource(List<FloatDataSource> inputSources) {
+		this((FloatDataSource[]) inputSources.toArray(new FloatDataSource[0]));
+	}
+
+	public boolean hasMoreData() {
+		while (!sources.isEmpty() && !sources.getFirst().hasMoreData()) {
+			sources.removeFirst();
+		}
+		if (sources.isEmpty())
+			return false;
+		return true;
+	}
+
+	/**
+	 * The number of floats that can currently be read from this float data source without blocking. This number can change over
+	 * time.
+	 *
+	 * @return the number of floats that can currently be read without blocking
+	 */
+	public int available() {
+		int available = 0;
+		for (Iterator<FloatDataSource> it = sources.iterator(); it.hasNext();) {
+			available += it.next().available();
+		}
+		return available;
+	}
+
+	public int getData(float[] target, int targetPos, int length) {
+		if (target.length - targetPos < length) {
+			throw new IllegalArgumentException("Target array cannot hold enough data (" + (target.length - targetPos)
+					+ " left, but " + length + " requested)");
+		}
+		int copied = 0;
+		while (!sources.isEmpty() && copied < length) {
+			FloatDataSource source = sources.getFirst();
+			int read = source.getData(target, targetPos + copied, length - copied);
+			if (read < length - copied) {
+				assert !source.hasMoreData();
+				sources.removeFirst();
+			}
+			copied += read;
+		}
+		return copied;
+	}
+}
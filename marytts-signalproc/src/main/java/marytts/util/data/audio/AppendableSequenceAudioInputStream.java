@@ -17,7 +17,7 @@ import javax.sound.sampled.AudioSystem;
  *
  */
 public class AppendableSequenceAudioInputStream extends SequenceAudioInputStream {
-	protected boolean doneAppending = false;
+	protected volatile boolean doneAppending = false;
 
 	/**
 	 * Create a sequence audio input stream to which more AudioInputStreams can be appended after creation. When the currently
@@ -0,0 +1,283 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue of blocks of audio data, handed from exactly one producer thread to exactly one consumer thread. Neither side
+ * takes a lock: the producer and the consumer each advance their own position in a ring of blocks, and a thread only parks when
+ * the ring is full (producer) or empty (consumer), to be woken up by the other side.
+ * <p>
+ * The producer calls {@link #put(byte[], long)} for each block, which waits while the ring is full, so that a slow consumer slows
+ * down the producer instead of letting the data pile up; and {@link #close()} after the last block. The consumer either waits for
+ * blocks with {@link #take()}, or polls for them with {@link #poll()} and registers a listener with {@link #setListener(Runnable)}
+ * to learn when it is worth polling again. A consumer which stops reading calls {@link #cancel()}, which makes the producer
+ * discard any further blocks.
+ */
+public class AudioBlockRing {
+	private final byte[][] blocks;
+	private final int mask;
+
+	// the number of blocks taken by the consumer and put by the producer so far:
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	private volatile boolean closed = false;
+	private volatile boolean cancelled = false;
+	private volatile Thread waitingProducer;
+	private volatile Thread waitingConsumer;
+	private volatile Runnable listener;
+
+	/**
+	 * Create an empty ring.
+	 * 
+	 * @param capacity
+	 *            the maximum number of blocks in the ring; rounded up to a power of two
+	 */
+	public AudioBlockRing(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive, but is " + capacity);
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		blocks = new byte[size][];
+		mask = size - 1;
+	}
+
+	/**
+	 * The maximum number of blocks in the ring.
+	 * 
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return blocks.length;
+	}
+
+	/**
+	 * The number of blocks which have been put but not yet taken.
+	 * 
+	 * @return the number of blocks in the ring
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	// //////////////////////////// producer side /////////////////////////////
+
+	/**
+	 * Add a block if there is space for it. Must only be called by the producer.
+	 * 
+	 * @param block
+	 *            the block; it must not be modified afterwards
+	 * @return true if the block was added, false if the ring is full or the consumer has cancelled
+	 * @throws IllegalStateException
+	 *             if the ring has been closed
+	 */
+	public boolean offer(byte[] block) {
+		if (block == null) {
+			throw new NullPointerException("Cannot add null block");
+		}
+		if (closed) {
+			throw new IllegalStateException("Cannot add blocks after close() was called");
+		}
+		if (cancelled) {
+			return false;
+		}
+		long t = tail.get();
+		if (t - head.get() == blocks.length) {
+			return false;
+		}
+		blocks[(int) t & mask] = block;
+		tail.set(t + 1);
+		wakeConsumer();
+		return true;
+	}
+
+	/**
+	 * Add a block, waiting while the ring is full. Must only be called by the producer.
+	 * 
+	 * @param block
+	 *            the block; it must not be modified afterwards
+	 * @param timeoutMillis
+	 *            the maximum time to wait for space in the ring, in milliseconds; 0 means wait as long as it takes
+	 * @return true if the block was added, false if the consumer has cancelled or did not take any block for timeoutMillis
+	 * @throws InterruptedException
+	 *             if the producer thread is interrupted while waiting
+	 * @throws IllegalStateException
+	 *             if the ring has been closed
+	 */
+	public boolean put(byte[] block, long timeoutMillis) throws InterruptedException {
+		long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+		while (!offer(block)) {
+			if (cancelled) {
+				return false;
+			}
+			waitingProducer = Thread.currentThread();
+			try {
+				// check again, the consumer may have taken a block before seeing us waiting:
+				if (size() < blocks.length || cancelled) {
+					continue;
+				}
+				if (deadline == 0) {
+					LockSupport.park(this);
+				} else {
+					long nanos = deadline - System.nanoTime();
+					if (nanos <= 0) {
+						return false;
+					}
+					LockSupport.parkNanos(this, nanos);
+				}
+			} finally {
+				waitingProducer = null;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tell the consumer that no more blocks will be added. Must only be called by the producer.
+	 */
+	public void close() {
+		closed = true;
+		wakeConsumer();
+	}
+
+	/**
+	 * Whether the consumer has cancelled reading.
+	 * 
+	 * @return true if {@link #cancel()} was called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	private void wakeConsumer() {
+		Thread t = waitingConsumer;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+		Runnable r = listener;
+		if (r != null) {
+			r.run();
+		}
+	}
+
+	// //////////////////////////// consumer side /////////////////////////////
+
+	/**
+	 * Take the next block if there is one. Must only be called by the consumer.
+	 * 
+	 * @return the next block, or null if the ring is empty
+	 */
+	public byte[] poll() {
+		long h = head.get();
+		if (h == tail.get()) {
+			return null;
+		}
+		int slot = (int) h & mask;
+		byte[] block = blocks[slot];
+		blocks[slot] = null;
+		head.set(h + 1);
+		Thread t = waitingProducer;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+		return block;
+	}
+
+	/**
+	 * Take the next block, waiting while the ring is empty. Must only be called by the consumer.
+	 * 
+	 * @return the next block, or null if the ring is empty and closed, or if the consumer has cancelled
+	 * @throws InterruptedException
+	 *             if the consumer thread is interrupted while waiting
+	 */
+	public byte[] take() throws InterruptedException {
+		while (true) {
+			if (cancelled) {
+				return null;
+			}
+			byte[] block = poll();
+			if (block != null) {
+				return block;
+			}
+			if (closed) {
+				// blocks put before close() are visible now:
+				return poll();
+			}
+			waitingConsumer = Thread.currentThread();
+			try {
+				// check again, the producer may have added a block before seeing us waiting:
+				if (size() == 0 && !closed) {
+					LockSupport.park(this);
+				}
+			} finally {
+				waitingConsumer = null;
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * Whether all blocks have been taken and no more will come.
+	 * 
+	 * @return true if the ring is closed and empty
+	 */
+	public boolean isFinished() {
+		return closed && size() == 0;
+	}
+
+	/**
+	 * Register a listener to be run whenever a block is added or the ring is closed, e.g. to schedule a call to {@link #poll()}.
+	 * The listener is run in the producer thread and must return quickly.
+	 * 
+	 * @param listener
+	 *            the listener, or null to remove it
+	 */
+	public void setListener(Runnable listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Stop reading: {@link #take()} returns null from now on, and the producer discards any further blocks instead of waiting for
+	 * space. May be called by the consumer or by any other thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+		Thread t = waitingProducer;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+		t = waitingConsumer;
+		if (t != null) {
+			LockSupport.unpark(t);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Encodes PCM audio incrementally into a compressed or otherwise encoded audio file type, block by block as the audio is
+ * synthesised, rather than converting the finished audio. An encoder is used for one stream only: {@link #start} is called
+ * once, then {@link #encode} for each block of PCM data, and finally {@link #finish}.
+ * <p>
+ * Encoders which the server should use are listed in the property <code>audioencoders.classes.list</code>; they need a public
+ * constructor without arguments or with string arguments only.
+ */
+public interface AudioEncoder {
+
+	/**
+	 * The audio file type produced by this encoder. Requests for audio of this type are synthesised as PCM and encoded by this
+	 * encoder.
+	 * 
+	 * @return the type, e.g. "MP3"
+	 */
+	public AudioFileFormat.Type getType();
+
+	/**
+	 * Start encoding audio of the given format, writing any header to out.
+	 * 
+	 * @param format
+	 *            the format of the PCM data which will be passed to {@link #encode}
+	 * @param out
+	 *            the stream to write the encoded audio to
+	 * @throws IllegalArgumentException
+	 *             if this encoder cannot encode audio of the given format
+	 * @throws IOException
+	 *             if the header cannot be written
+	 */
+	public void start(AudioFormat format, OutputStream out) throws IOException;
+
+	/**
+	 * Encode a block of PCM data, and write the result to the output stream as far as it is available.
+	 * 
+	 * @param pcm
+	 *            the PCM data
+	 * @param off
+	 *            the position of the first byte in pcm
+	 * @param len
+	 *            the number of bytes, a whole number of frames
+	 * @throws IOException
+	 *             if the encoded data cannot be written
+	 */
+	public void encode(byte[] pcm, int off, int len) throws IOException;
+
+	/**
+	 * Encode any data still buffered by the encoder, and write any trailer, after the last block.
+	 * 
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	public void finish() throws IOException;
+}
@@ -27,15 +27,21 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
 import marytts.util.data.DoubleDataSource;
+import marytts.util.data.FloatDataSource;
+import marytts.util.data.FloatDoubleDataSource;
 
 /**
- * @author Marc Schr&ouml;der An audio input stream that draws its audio data from a DoubleDataSource.
+ * @author Marc Schr&ouml;der An audio input stream that draws its audio data from a DoubleDataSource, or from a FloatDataSource.
  */
 public class DDSAudioInputStream extends AudioInputStream {
 	public static final int MAX_AMPLITUDE = 32767;
 	protected DoubleDataSource source;
 	protected double[] sampleBuf;
 	protected static final int SAMPLEBUFFERSIZE = 8192;
+	protected PcmConverter converter;
+	/** the source of the data if they are floats, or null; source then reads from it. */
+	protected FloatDataSource floatSource;
+	protected float[] floatSampleBuf;
 
 	/**
 	 * From the given DoubleDataSource, create an AudioInputStream of the given audio format.
@@ -45,7 +51,7 @@ public class DDSAudioInputStream extends AudioInputStream {
 	 * @param format
 	 *            format
 	 * @throws IllegalArgumentException
-	 *             if the format is not mono, not PCM_SIGNED or PCM_UNSIGNED, or has a sample size in bits other than 8 or 16.
+	 *             if the format is not mono, not PCM_SIGNED or PCM_UNSIGNED, or has a sample size in bits other than 8, 16 or 24.
 	 */
 	public DDSAudioInputStream(DoubleDataSource source, AudioFormat format) {
 		super(new ByteArrayInputStream(new byte[0]), format, AudioSystem.NOT_SPECIFIED);
@@ -56,13 +62,48 @@ public class DDSAudioInputStream extends AudioInputStream {
 				&& !format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED)) {
 			throw new IllegalArgumentException("Can only produce PCM_SIGNED or PCM_UNSIGNED audio");
 		}
-		int bitsPerSample = format.getSampleSizeInBits();
-		if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24) {
-			throw new IllegalArgumentException("Can deal with sample size 8 or 16 or 24, but not " + bitsPerSample);
-		}
+		this.converter = new PcmConverter(format);
 		this.source = source;
 		this.sampleBuf = new double[SAMPLEBUFFERSIZE];
-		assert frameSize == bitsPerSample / 8;
+		assert frameSize == converter.getBytesPerSample();
+	}
+
+	/**
+	 * From the given FloatDataSource, create an AudioInputStream of the given audio format. The samples are converted from floats
+	 * straight to the audio format.
+	 * 
+	 * @param floatSource
+	 *            floatSource
+	 * @param format
+	 *            format
+	 * @throws IllegalArgumentException
+	 *             if the format is not mono, not PCM_SIGNED or PCM_UNSIGNED, or has a sample size in bits other than 8, 16 or 24.
+	 */
+	public DDSAudioInputStream(FloatDataSource floatSource, AudioFormat format) {
+		this(new FloatDoubleDataSource(floatSource), format);
+		this.floatSource = floatSource;
+		this.floatSampleBuf = new float[SAMPLEBUFFERSIZE];
+		this.sampleBuf = null;
+	}
+
+	/**
+	 * Whether to add triangular dither of one least significant bit to the samples before quantising them. Off by default.
+	 * 
+	 * @param dither
+	 *            dither
+	 */
+	public void setDither(boolean dither) {
+		converter.setDither(dither);
+	}
+
+	/**
+	 * The number of samples read so far which were beyond the range of the sample size, and were saturated. The total over all
+	 * streams is available from {@link PcmConverter#getTotalClippedSamples()}.
+	 * 
+	 * @return the number of clipped samples
+	 */
+	public long getClippedSamples() {
+		return converter.getClippedSamples();
 	}
 
 	/**
@@ -93,51 +134,15 @@ public class DDSAudioInputStream extends AudioInputStream {
 		int currentPos = off;
 		do {
 			int toRead = nSamples - totalRead;
-			if (toRead > sampleBuf.length)
-				toRead = sampleBuf.length;
-			int nRead = source.getData(sampleBuf, 0, toRead);
-			// System.err.println("DDSAudioInputStream: read " + nRead + " samples from source");
-			if (frameSize == 1) { // bytes per sample
-				for (int i = 0; i < nRead; i++, currentPos++) {
-					int sample = (int) Math.round(sampleBuf[i] * 127.0); // de-normalise to value range
-					b[currentPos] = (byte) ((sample >> 8) & 0xFF);
-				}
-			} else if (frameSize == 2) { // 16 bit
-				boolean bigEndian = format.isBigEndian();
-				for (int i = 0; i < nRead; i++, currentPos += 2) {
-					int sample = (int) Math.round(sampleBuf[i] * 32767.0); // de-normalise to value range
-					if (sample > MAX_AMPLITUDE || sample < -MAX_AMPLITUDE) {
-						System.err.println("Warning: signal amplitude out of range: " + sample);
-					}
-					byte hibyte = (byte) (sample >> 8);
-					byte lobyte = (byte) (sample & 0xFF);
-					if (!bigEndian) {
-						b[currentPos] = lobyte;
-						b[currentPos + 1] = hibyte;
-					} else {
-						b[currentPos] = hibyte;
-						b[currentPos + 1] = lobyte;
-					}
-					// System.err.println("out sample["+i+"]="+sample+" hi:"+Integer.toBinaryString(hibyte)+"/"+hibyte+" lo:"+Integer.toBinaryString(lobyte)+"/"+lobyte);
-				}
-			} else { // 24 bit
-				boolean bigEndian = format.isBigEndian();
-				for (int i = 0; i < nRead; i++, currentPos += 3) {
-					int sample = (int) Math.round(sampleBuf[i] * 8388605.0); // de-normalise to value range
-					byte hibyte = (byte) (sample >> 16);
-					byte midbyte = (byte) ((sample >> 8) & 0xFF);
-					byte lobyte = (byte) (sample & 0xFF);
-					if (!bigEndian) {
-						b[currentPos] = lobyte;
-						b[currentPos + 1] = midbyte;
-						b[currentPos + 2] = hibyte;
-					} else {
-						b[currentPos] = hibyte;
-						b[currentPos + 1] = midbyte;
-						b[currentPos + 2] = lobyte;
-					}
-					// System.err.println("out sample["+i+"]="+sample+" hi:"+Integer.toBinaryString(hibyte)+"/"+hibyte+" lo:"+Integer.toBinaryString(lobyte)+"/"+lobyte);
-				}
+			if (toRead > SAMPLEBUFFERSIZE)
+				toRead = SAMPLEBUFFERSIZE;
+			int nRead;
+			if (floatSource != null) {
+				nRead = floatSource.getData(floatSampleBuf, 0, toRead);
+				currentPos += converter.convert(floatSampleBuf, 0, nRead, b, currentPos);
+			} else {
+				nRead = source.getData(sampleBuf, 0, toRead);
+				currentPos += converter.convert(sampleBuf, 0, nRead, b, currentPos);
 			}
 			totalRead += nRead;
 			assert currentPos <= off + len;
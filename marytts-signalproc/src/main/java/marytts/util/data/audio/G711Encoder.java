@@ -0,0 +1,190 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Encodes 16-bit mono PCM audio as 8-bit G.711 &mu;-law or A-law, the encodings of telephone networks, in an AU stream. This
+ * halves the size of the audio. The AU header does not give the length of the data, so the audio can be sent while it is being
+ * encoded.
+ * <p>
+ * Each sample is encoded by looking it up in a table of all 16-bit values.
+ */
+public class G711Encoder implements AudioEncoder {
+	public static final AudioFileFormat.Type ULAW = new AudioFileFormat.Type("ULAW", "au");
+	public static final AudioFileFormat.Type ALAW = new AudioFileFormat.Type("ALAW", "au");
+
+	private static final int AU_MAGIC = 0x2e736e64; // ".snd"
+	private static final int AU_HEADER_SIZE = 24;
+	private static final int AU_UNKNOWN_SIZE = 0xffffffff;
+	private static final int AU_ULAW_8 = 1;
+	private static final int AU_ALAW_8 = 27;
+
+	private static final byte[] ULAW_TABLE = new byte[65536];
+	private static final byte[] ALAW_TABLE = new byte[65536];
+	static {
+		for (int i = 0; i < 65536; i++) {
+			ULAW_TABLE[i] = linear2ulaw((short) i);
+			ALAW_TABLE[i] = linear2alaw((short) i);
+		}
+	}
+
+	/**
+	 * Encode a sample as &mu;-law, following the reference implementation of ITU-T G.711.
+	 * 
+	 * @param pcm
+	 *            a 16-bit sample
+	 * @return the &mu;-law byte
+	 */
+	public static byte linear2ulaw(short pcm) {
+		int value = pcm >> 2; // 14 bits
+		int mask;
+		if (value < 0) {
+			value = -value;
+			mask = 0x7F;
+		} else {
+			mask = 0xFF;
+		}
+		if (value > 8159) {
+			value = 8159;
+		}
+		value += 0x84 >> 2;
+		int segment = segment(value, 0x3F);
+		if (segment >= 8) {
+			return (byte) (0x7F ^ mask);
+		}
+		return (byte) (((segment << 4) | ((value >> (segment + 1)) & 0xF)) ^ mask);
+	}
+
+	/**
+	 * Encode a sample as A-law, following the reference implementation of ITU-T G.711.
+	 * 
+	 * @param pcm
+	 *            a 16-bit sample
+	 * @return the A-law byte
+	 */
+	public static byte linear2alaw(short pcm) {
+		int value = pcm >> 3; // 13 bits
+		int mask;
+		if (value >= 0) {
+			mask = 0xD5;
+		} else {
+			mask = 0x55;
+			value = -value - 1;
+		}
+		int segment = segment(value, 0x1F);
+		if (segment >= 8) {
+			return (byte) (0x7F ^ mask);
+		}
+		int alaw = segment << 4;
+		if (segment < 2) {
+			alaw |= (value >> 1) & 0xF;
+		} else {
+			alaw |= (value >> segment) & 0xF;
+		}
+		return (byte) (alaw ^ mask);
+	}
+
+	/**
+	 * The number of the segment containing value, whose first segment ends at firstEnd and each next one at twice the end of the
+	 * previous one; 8 if value is beyond the last one.
+	 */
+	private static int segment(int value, int firstEnd) {
+		int segment = 0;
+		for (int end = firstEnd; segment < 8 && value > end; end = (end << 1) | 1) {
+			segment++;
+		}
+		return segment;
+	}
+
+	private final AudioFileFormat.Type type;
+	private final byte[] table;
+	private OutputStream out;
+	private boolean bigEndian;
+	private byte[] encoded = new byte[0];
+
+	/**
+	 * Create an encoder for the given law.
+	 * 
+	 * @param law
+	 *            "ULAW" or "ALAW"
+	 * @throws IllegalArgumentException
+	 *             if law is neither
+	 */
+	public G711Encoder(String law) {
+		if (law.equalsIgnoreCase(ULAW.toString())) {
+			type = ULAW;
+			table = ULAW_TABLE;
+		} else if (law.equalsIgnoreCase(ALAW.toString())) {
+			type = ALAW;
+			table = ALAW_TABLE;
+		} else {
+			throw new IllegalArgumentException("Unknown G.711 law '" + law + "', expected ULAW or ALAW");
+		}
+	}
+
+	public AudioFileFormat.Type getType() {
+		return type;
+	}
+
+	public void start(AudioFormat format, OutputStream out) throws IOException {
+		if (!format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED) || format.getSampleSizeInBits() != 16
+				|| format.getChannels() != 1) {
+			throw new IllegalArgumentException("Can only encode 16-bit signed mono PCM as " + type + ", not " + format);
+		}
+		this.out = out;
+		this.bigEndian = format.isBigEndian();
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(AU_MAGIC);
+		header.writeInt(AU_HEADER_SIZE);
+		header.writeInt(AU_UNKNOWN_SIZE);
+		header.writeInt(type == ULAW ? AU_ULAW_8 : AU_ALAW_8);
+		header.writeInt(Math.round(format.getSampleRate()));
+		header.writeInt(1);
+	}
+
+	public void encode(byte[] pcm, int off, int len) throws IOException {
+		int n = len / 2;
+		if (encoded.length < n) {
+			encoded = new byte[n];
+		}
+		byte[] t = table;
+		if (bigEndian) {
+			for (int i = 0, o = off; i < n; i++, o += 2) {
+				encoded[i] = t[((pcm[o] & 0xFF) << 8) | (pcm[o + 1] & 0xFF)];
+			}
+		} else {
+			for (int i = 0, o = off; i < n; i++, o += 2) {
+				encoded[i] = t[((pcm[o + 1] & 0xFF) << 8) | (pcm[o] & 0xFF)];
+			}
+		}
+		out.write(encoded, 0, n);
+	}
+
+	public void finish() throws IOException {
+		out.flush();
+	}
+}
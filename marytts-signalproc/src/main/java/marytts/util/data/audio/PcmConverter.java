@@ -0,0 +1,309 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts blocks of samples in the range [-1, 1] into linear PCM bytes of 8, 16 or 24 bits, signed or unsigned, little- or
+ * big-endian. Samples beyond the range are saturated to the largest value of the sample size and counted, rather than wrapped
+ * around; samples which are not a number become silence, and are counted as clipped as well. Optionally, triangular (TPDF)
+ * dither of one least significant bit is added before quantisation.
+ * <p>
+ * A block is converted in two passes over tight loops: the samples are first quantised into integers, then packed into bytes by
+ * a loop specialised for the sample size and byte order. A converter keeps its working memory between calls, so it must not be
+ * shared between threads.
+ */
+public class PcmConverter {
+	private static final LongAdder totalClipped = new LongAdder();
+
+	/**
+	 * The number of samples clipped by all converters so far.
+	 * 
+	 * @return the total number of clipped samples
+	 */
+	public static long getTotalClippedSamples() {
+		return totalClipped.sum();
+	}
+
+	private final int bytesPerSample;
+	private final boolean bigEndian;
+	private final int signFlip;
+	private final double scale;
+	private final int max;
+	private final int min;
+	/** added before truncating to round to nearest */
+	private final double offset;
+	private final int bias;
+	/** scaled samples from clipHigh on would round to max + 1, those below clipLow to min - 1 */
+	private final double clipHigh;
+	private final double clipLow;
+
+	private boolean dither = false;
+	private int randomState = 0x2545F491;
+	private int[] quantised = new int[0];
+	private long clipped = 0;
+
+	/**
+	 * Create a converter for the given sample format.
+	 * 
+	 * @param bitsPerSample
+	 *            8, 16 or 24
+	 * @param signed
+	 *            whether to produce signed (two's complement) or unsigned (offset binary) samples
+	 * @param bigEndian
+	 *            the byte order, for 16 and 24 bits
+	 * @throws IllegalArgumentException
+	 *             if bitsPerSample is not 8, 16 or 24
+	 */
+	public PcmConverter(int bitsPerSample, boolean signed, boolean bigEndian) {
+		if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24) {
+			throw new IllegalArgumentException("Can deal with sample size 8 or 16 or 24, but not " + bitsPerSample);
+		}
+		this.bytesPerSample = bitsPerSample / 8;
+		this.bigEndian = bigEndian;
+		this.signFlip = signed ? 0 : 0x80;
+		this.max = (1 << (bitsPerSample - 1)) - 1;
+		this.min = -max - 1;
+		this.scale = max;
+		this.bias = -min;
+		this.offset = bias + 0.5;
+		this.clipHigh = max + 0.5;
+		this.clipLow = min - 0.5;
+	}
+
+	/**
+	 * Create a converter for the given mono PCM format.
+	 * 
+	 * @param format
+	 *            a PCM_SIGNED or PCM_UNSIGNED format of 8, 16 or 24 bits
+	 * @throws IllegalArgumentException
+	 *             if the format cannot be produced
+	 */
+	public PcmConverter(AudioFormat format) {
+		this(format.getSampleSizeInBits(), checkEncoding(format), format.isBigEndian());
+	}
+
+	private static boolean checkEncoding(AudioFormat format) {
+		if (format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED)) {
+			return true;
+		}
+		if (format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED)) {
+			return false;
+		}
+		throw new IllegalArgumentException("Can only produce PCM_SIGNED or PCM_UNSIGNED audio");
+	}
+
+	/**
+	 * Whether to add triangular dither of one least significant bit before quantisation. Off by default, so that the same
+	 * samples always produce the same bytes.
+	 * 
+	 * @param dither
+	 *            dither
+	 */
+	public void setDither(boolean dither) {
+		this.dither = dither;
+	}
+
+	/**
+	 * Whether triangular dither is added before quantisation.
+	 * 
+	 * @return true if dither is on, false by default
+	 */
+	public boolean getDither() {
+		return dither;
+	}
+
+	/**
+	 * The number of bytes produced for each sample.
+	 * 
+	 * @return 1, 2 or 3
+	 */
+	public int getBytesPerSample() {
+		return bytesPerSample;
+	}
+
+	/**
+	 * The number of samples this converter has clipped so far.
+	 * 
+	 * @return the number of samples beyond the range of the sample size
+	 */
+	public long getClippedSamples() {
+		return clipped;
+	}
+
+	/**
+	 * Convert a block of samples.
+	 * 
+	 * @param samples
+	 *            the samples, normally in the range [-1, 1]
+	 * @param pos
+	 *            the position of the first sample to convert
+	 * @param len
+	 *            the number of samples to convert
+	 * @param target
+	 *            the array to write the bytes to; must have space for <code>len * getBytesPerSample()</code> bytes from off
+	 * @param off
+	 *            the position in target of the first byte
+	 * @return the number of bytes written
+	 */
+	public int convert(double[] samples, int pos, int len, byte[] target, int off) {
+		int[] q = workspace(len);
+		int numClipped = 0;
+		for (int i = 0; i < len; i++) {
+			double v = samples[pos + i] * scale + (dither ? triangular() : 0);
+			numClipped += clipped(v);
+			q[i] = quantise(v);
+		}
+		countClipped(numClipped);
+		return pack(q, len, target, off);
+	}
+
+	/**
+	 * Convert a block of samples.
+	 * 
+	 * @param samples
+	 *            the samples, normally in the range [-1, 1]
+	 * @param pos
+	 *            the position of the first sample to convert
+	 * @param len
+	 *            the number of samples to convert
+	 * @param target
+	 *            the array to write the bytes to; must have space for <code>len * getBytesPerSample()</code> bytes from off
+	 * @param off
+	 *            the position in target of the first byte
+	 * @return the number of bytes written
+	 */
+	public int convert(float[] samples, int pos, int len, byte[] target, int off) {
+		int[] q = workspace(len);
+		int numClipped = 0;
+		for (int i = 0; i < len; i++) {
+			double v = samples[pos + i] * scale + (dither ? triangular() : 0);
+			numClipped += clipped(v);
+			q[i] = quantise(v);
+		}
+		countClipped(numClipped);
+		return pack(q, len, target, off);
+	}
+
+	/**
+	 * Round a scaled sample to the nearest integer, saturated to [min, max]; NaN becomes silence.
+	 */
+	private int quantise(double v) {
+		// Truncation rounds down all values which can end up inside the range, as they are positive after adding the offset. The
+		// cast saturates at the int range, and the int comparisons of max() and min() are cheaper than the double ones.
+		int rounded = v == v ? (int) (v + offset) - bias : 0;
+		return Math.max(min, Math.min(max, rounded));
+	}
+
+	/**
+	 * Whether a scaled sample would round beyond [min, max], or is NaN.
+	 * 
+	 * @return 1 if v is clipped, 0 otherwise
+	 */
+	private int clipped(double v) {
+		// NaN fails both comparisons:
+		return v >= clipLow & v < clipHigh ? 0 : 1;
+	}
+
+	private int[] workspace(int len) {
+		if (quantised.length < len) {
+			quantised = new int[len];
+		}
+		return quantised;
+	}
+
+	/**
+	 * Triangular noise between -1 and 1, the difference of two uniform random numbers in [0, 1).
+	 */
+	private double triangular() {
+		// xorshift, one 32-bit state:
+		int x = randomState;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		int y = x;
+		y ^= y << 13;
+		y ^= y >>> 17;
+		y ^= y << 5;
+		randomState = y;
+		return ((x >>> 8) - (y >>> 8)) / (double) (1 << 24);
+	}
+
+	private void countClipped(int numClipped) {
+		if (numClipped > 0) {
+			clipped += numClipped;
+			totalClipped.add(numClipped);
+		}
+	}
+
+	/**
+	 * Write the quantised samples as bytes.
+	 */
+	private int pack(int[] q, int len, byte[] b, int off) {
+		int flip = signFlip;
+		int o = off;
+		switch (bytesPerSample) {
+		case 1:
+			for (int i = 0; i < len; i++) {
+				b[o++] = (byte) (q[i] ^ flip);
+			}
+			break;
+		case 2:
+			if (bigEndian) {
+				for (int i = 0; i < len; i++) {
+					int s = q[i];
+					b[o] = (byte) ((s >> 8) ^ flip);
+					b[o + 1] = (byte) s;
+					o += 2;
+				}
+			} else {
+				for (int i = 0; i < len; i++) {
+					int s = q[i];
+					b[o] = (byte) s;
+					b[o + 1] = (byte) ((s >> 8) ^ flip);
+					o += 2;
+				}
+			}
+			break;
+		default: // 3
+			if (bigEndian) {
+				for (int i = 0; i < len; i++) {
+					int s = q[i];
+					b[o] = (byte) ((s >> 16) ^ flip);
+					b[o + 1] = (byte) (s >> 8);
+					b[o + 2] = (byte) s;
+					o += 3;
+				}
+			} else {
+				for (int i = 0; i < len; i++) {
+					int s = q[i];
+					b[o] = (byte) s;
+					b[o + 1] = (byte) (s >> 8);
+					b[o + 2] = (byte) ((s >> 16) ^ flip);
+					o += 3;
+				}
+			}
+		}
+		return o - off;
+	}
+}
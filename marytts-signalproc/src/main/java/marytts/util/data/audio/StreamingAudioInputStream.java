@@ -0,0 +1,258 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import marytts.util.MaryUtils;
+
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An appendable audio input stream for streaming audio to a client while it is being synthesised. Unlike its superclass, which
+ * keeps a list of the appended streams and reads from them under a lock shared with {@link #append(AudioInputStream)}, this
+ * stream reads the appended audio in the thread that appends it, and hands it to the reading thread in blocks of PCM data
+ * through an {@link AudioBlockRing}. The two threads never wait for each other's locks; the appending thread only waits when
+ * the reader has fallen behind by the capacity of the ring.
+ * <p>
+ * There must be exactly one thread appending and one thread reading. A reader which gives up calls {@link #close()}; any audio
+ * appended afterwards is discarded.
+ */
+public class StreamingAudioInputStream extends AppendableSequenceAudioInputStream {
+	/** the default number of bytes in a block */
+	public static final int DEFAULT_BLOCK_SIZE = 8192;
+
+	private final AudioBlockRing ring;
+	private final int frameSize;
+	private final int blockSize;
+	private final long timeoutMillis;
+	private final Logger logger;
+
+	// producer side:
+	private volatile long bytesAppended = 0;
+	private volatile IOException failure;
+
+	// consumer side:
+	private byte[] block;
+	private int blockPos;
+	private long bytesTaken = 0;
+
+	/**
+	 * Create an empty streaming audio input stream.
+	 * 
+	 * @param audioFormat
+	 *            the format of the audio which will be appended
+	 * @param capacity
+	 *            the maximum number of blocks appended but not yet read
+	 * @param blockSize
+	 *            the number of bytes in a block; rounded down to a whole number of frames
+	 * @param timeoutMillis
+	 *            how long append() waits for the reader to make space, in milliseconds, before it discards the rest of the
+	 *            audio; 0 means wait as long as it takes
+	 */
+	public StreamingAudioInputStream(AudioFormat audioFormat, int capacity, int blockSize, long timeoutMillis) {
+		this(audioFormat, capacity, blockSize, timeoutMillis, MaryUtils.getLogger("StreamingAudioInputStream"));
+	}
+
+	/**
+	 * Create an empty streaming audio input stream which reports a reader that timed out to the given logger.
+	 * 
+	 * @param audioFormat
+	 *            the format of the audio which will be appended
+	 * @param capacity
+	 *            the maximum number of blocks appended but not yet read
+	 * @param blockSize
+	 *            the number of bytes in a block; rounded down to a whole number of frames
+	 * @param timeoutMillis
+	 *            how long append() waits for the reader to make space, in milliseconds, before it discards the rest of the
+	 *            audio; 0 means wait as long as it takes
+	 * @param logger
+	 *            the logger of the request the audio belongs to
+	 */
+	public StreamingAudioInputStream(AudioFormat audioFormat, int capacity, int blockSize, long timeoutMillis, Logger logger) {
+		super(audioFormat, null);
+		this.ring = new AudioBlockRing(capacity);
+		this.frameSize = audioFormat.getFrameSize() > 0 ? audioFormat.getFrameSize() : 1;
+		this.blockSize = Math.max(frameSize, blockSize / frameSize * frameSize);
+		this.timeoutMillis = timeoutMillis;
+		this.logger = logger;
+	}
+
+	/**
+	 * Read all audio from the given stream and pass it on to the reader, waiting whenever the reader has fallen behind by the
+	 * capacity of this stream. Returns without reading ais if the reader has closed this stream.
+	 * 
+	 * @param ais
+	 *            ais
+	 * @throws IllegalArgumentException
+	 *             if this method is called after doneAppending() was called.
+	 */
+	@Override
+	public void append(AudioInputStream ais) {
+		if (ais == this)
+			throw new IllegalArgumentException("Cannot append me to myself");
+		if (doneAppending)
+			throw new IllegalArgumentException("Cannot append after doneAppending() was called!");
+		if (failure != null || ring.isCancelled()) {
+			return;
+		}
+		try {
+			while (true) {
+				byte[] b = new byte[blockSize];
+				int filled = 0;
+				IOException readFailure = null;
+				try {
+					int n;
+					while (filled < b.length && (n = ais.read(b, filled, b.length - filled)) != -1) {
+						filled += n;
+					}
+				} catch (IOException ioe) {
+					readFailure = ioe;
+					filled -= filled % frameSize;
+				}
+				if (filled > 0) {
+					if (filled < b.length) {
+						byte[] shorter = new byte[filled];
+						System.arraycopy(b, 0, shorter, 0, filled);
+						b = shorter;
+					}
+					if (!ring.put(b, timeoutMillis)) {
+						if (!ring.isCancelled()) {
+							failure = new IOException("Reader did not take any audio for " + timeoutMillis + " ms");
+							ring.cancel();
+							logger.warn("Reader did not take any audio for " + timeoutMillis
+									+ " ms -- discarding the rest of the audio");
+						}
+						return;
+					}
+					bytesAppended += filled;
+				}
+				if (readFailure != null) {
+					// pass the problem on to the reader, after the audio read before it, as if it had read ais itself
+					failure = readFailure;
+					ring.close();
+					return;
+				}
+				if (filled < blockSize) {
+					return; // end of ais
+				}
+			}
+		} catch (InterruptedException ie) {
+			failure = new InterruptedIOException("Interrupted while appending audio");
+			ring.cancel();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void doneAppending() {
+		if (!doneAppending) {
+			doneAppending = true;
+			ring.close();
+		}
+	}
+
+	/**
+	 * Read a single byte, as {@link AudioInputStream#read()} does.
+	 *
+	 * @throws IOException
+	 *             if the frame size is not 1 byte
+	 */
+	@Override
+	public int read() throws IOException {
+		if (frameSize != 1) {
+			throw new IOException("cannot read a single byte if frame size > 1");
+		}
+		byte[] one = new byte[1];
+		int n = read(one, 0, 1);
+		return n == -1 ? -1 : one[0] & 0xFF;
+	}
+
+	/**
+	 * Read at most len bytes, rounded down to a whole number of frames, as {@link AudioInputStream#read(byte[], int, int)} does.
+	 */
+	@Override
+	public int read(byte[] buf, int off, int len) throws IOException {
+		len -= len % frameSize;
+		if (len == 0) {
+			return 0;
+		}
+		if (block == null || blockPos == block.length) {
+			try {
+				block = ring.take();
+			} catch (InterruptedException ie) {
+				throw new InterruptedIOException("Interrupted while waiting for audio");
+			}
+			blockPos = 0;
+			if (block != null) {
+				bytesTaken += block.length;
+			}
+			if (block == null) {
+				if (failure != null) {
+					throw new IOException("Cannot read appended audio", failure);
+				}
+				return -1;
+			}
+		}
+		int n = Math.min(len, block.length - blockPos);
+		System.arraycopy(block, blockPos, buf, off, n);
+		blockPos += n;
+		return n;
+	}
+
+	/**
+	 * The number of bytes which can be read without waiting for more audio to be appended: the rest of the current block and all
+	 * blocks appended after it.
+	 */
+	@Override
+	public int available() throws IOException {
+		long waiting = Math.max(0, bytesAppended - bytesTaken); // a block being put may already be taken, but not yet counted
+		long current = block == null ? 0 : block.length - blockPos;
+		return (int) Math.min(Integer.MAX_VALUE, current + waiting);
+	}
+
+	/**
+	 * Stop reading. Audio appended from now on is discarded, and a thread waiting in {@link #append(AudioInputStream)} for the
+	 * reader returns.
+	 */
+	@Override
+	public void close() throws IOException {
+		ring.cancel();
+	}
+
+	/**
+	 * As long as <code>doneAppending()</code> has not been called, returns <code>AudioSystem.NOT_SPECIFIED</code>; after that,
+	 * the number of frames appended.
+	 * 
+	 * @return the frame length
+	 */
+	@Override
+	public long getFrameLength() {
+		if (!doneAppending) {
+			return AudioSystem.NOT_SPECIFIED;
+		}
+		return bytesAppended / frameSize;
+	}
+}
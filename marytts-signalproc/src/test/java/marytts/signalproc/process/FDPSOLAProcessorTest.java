@@ -0,0 +1,86 @@
+/**
+ * Copyright 2000-2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.signalproc.process;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.util.data.Datagram;
+
+import org.junit.Test;
+
+public class FDPSOLAProcessorTest {
+
+	private static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+	/**
+	 * A long frame followed by shorter ones of odd length: processFrame() pads these to an even length, with zeros rather than
+	 * what the long frame left in the shared frame buffer.
+	 */
+	@Test
+	public void testShortOddFrameAfterLongFrame() throws IOException {
+		byte[] reused = process(new FDPSOLAProcessor());
+		// the frame data as processDecrufted() used to pass it, in a fresh array of exactly inputFrameSize samples:
+		byte[] fresh = process(new FDPSOLAProcessor() {
+			@Override
+			public double[] processFrame(double[] frmIn, boolean isVoiced, double pscale, double tscale, double escale,
+					double vscale, boolean isLastInputFrame, int currentPeriod, int inputFrameSize) throws IOException {
+				return super.processFrame(Arrays.copyOf(frmIn, inputFrameSize), isVoiced, pscale, tscale, escale, vscale,
+						isLastInputFrame, currentPeriod, inputFrameSize);
+			}
+		});
+		assertArrayEquals(fresh, reused);
+	}
+
+	private static byte[] process(FDPSOLAProcessor processor) throws IOException {
+		// frames of 280, 161, 81 and 80 samples, the last one padded with silence; processDecrufted() overwrites the datagram
+		// durations, so every run gets its own:
+		Datagram[][] datagrams = new Datagram[][] { { datagram(160) }, { datagram(120) }, { datagram(41) }, { datagram(40) } };
+		boolean[][] voicings = new boolean[][] { { true }, { true }, { true }, { true } };
+		// other than 1, so that the frame energy including the padding goes into the gain:
+		double[][] pitchScales = new double[][] { { 1.3 }, { 1.3 }, { 1.3 }, { 1.3 } };
+		double[][] timeScales = new double[][] { { 1.0 }, { 1.0 }, { 1.0 }, { 1.0 } };
+		AudioInputStream audio = processor.processDecrufted(datagrams, new Datagram[datagrams.length], FORMAT, voicings,
+				pitchScales, timeScales);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int nRead;
+		while ((nRead = audio.read(buf)) != -1) {
+			bytes.write(buf, 0, nRead);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Datagram datagram(int length) {
+		byte[] data = new byte[2 * length];
+		for (int i = 0; i < length; i++) {
+			short sample = (short) (8000 * Math.sin(0.3 * i) + 1000);
+			data[2 * i] = (byte) (sample >> 8);
+			data[2 * i + 1] = (byte) sample;
+		}
+		return new Datagram(length, data);
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that datagrams read as views of a byte buffer behave like datagrams copied from it.
+ */
+public class BufferDatagramTest {
+
+	private static ByteBuffer serialize(Datagram... datagrams) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (Datagram d : datagrams) {
+			d.write(out);
+		}
+		out.close();
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	private static Datagram randomDatagram(int numSamples, Random random) {
+		byte[] data = new byte[2 * numSamples];
+		random.nextBytes(data);
+		return new Datagram(numSamples, data);
+	}
+
+	@Test
+	public void readsSameDatagramsAsCopy() throws Exception {
+		Random random = new Random(3);
+		Datagram[] datagrams = new Datagram[] { randomDatagram(80, random), randomDatagram(0, random), randomDatagram(123, random) };
+		ByteBuffer bb = serialize(datagrams);
+		for (Datagram expected : datagrams) {
+			BufferDatagram actual = new BufferDatagram(bb);
+			assertEquals(expected.getDuration(), actual.getDuration());
+			assertEquals(expected.getLength(), actual.getLength());
+			assertEquals(expected, actual);
+			assertEquals(actual, expected);
+		}
+		assertEquals(bb.limit(), bb.position());
+	}
+
+	@Test
+	public void decodesSamplesFromBuffer() throws Exception {
+		Datagram expected = randomDatagram(200, new Random(4));
+		BufferDatagram actual = new BufferDatagram(serialize(expected));
+		double[] expectedSamples = new double[205];
+		double[] actualSamples = new double[205];
+		assertEquals(200, expected.getSamples(expectedSamples, 5));
+		assertEquals(200, actual.getSamples(actualSamples, 5));
+		assertArrayEquals(expectedSamples, actualSamples, 0);
+		// extreme values:
+		Datagram extremes = new Datagram(2, new byte[] { (byte) 0x80, 0, 0x7f, (byte) 0xff });
+		double[] samples = new double[2];
+		new BufferDatagram(serialize(extremes)).getSamples(samples, 0);
+		assertArrayEquals(new double[] { -1, 32767 / 32768.0 }, samples, 0);
+	}
+
+	@Test
+	public void dataCopyCanBeModified() throws Exception {
+		BufferDatagram d = new BufferDatagram(serialize(new Datagram(1, new byte[] { 0, 0 })));
+		d.getData()[0] = 0x40;
+		double[] samples = new double[1];
+		d.getSamples(samples, 0);
+		assertEquals(0.5, samples[0], 0);
+	}
+
+	@Test(expected = IOException.class)
+	public void refusesTruncatedDatagram() throws Exception {
+		ByteBuffer bb = serialize(new Datagram(10, new byte[20]));
+		bb.limit(bb.limit() - 1);
+		new BufferDatagram(bb);
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.LinkedList;
+
+import javax.sound.sampled.AudioFormat;
+
+import marytts.signalproc.process.InlineDataProcessor;
+import marytts.util.data.audio.DDSAudioInputStream;
+
+import org.junit.Test;
+
+/**
+ * Checks that float data sources deliver the same audio as their double counterparts.
+ */
+public class FloatDataSourceTest {
+
+	private static double[] signal(int length) {
+		double[] signal = new double[length];
+		for (int i = 0; i < length; i++) {
+			signal[i] = 0.8 * Math.sin(i * 0.01);
+		}
+		return signal;
+	}
+
+	private static LinkedList<Datagram> datagrams() {
+		LinkedList<Datagram> datagrams = new LinkedList<Datagram>();
+		int sample = 0;
+		for (int d = 0; d < 50; d++) {
+			byte[] data = new byte[2 * (100 + d)];
+			for (int i = 0; i < data.length; i += 2, sample++) {
+				short s = (short) (20000 * Math.sin(sample * 0.03));
+				data[i] = (byte) (s >> 8);
+				data[i + 1] = (byte) s;
+			}
+			datagrams.add(new Datagram(data.length / 2, data));
+		}
+		return datagrams;
+	}
+
+	/**
+	 * Produces the given signal, halved in blocks as the vocoder's amplitude normaliser does.
+	 */
+	private static class FloatProducer extends ProducingFloatDataSource {
+		private final double[] signal;
+
+		FloatProducer(double[] signal) {
+			super(signal.length);
+			this.signal = signal;
+		}
+
+		@Override
+		protected void processBlock(float[] data, int off, int len) {
+			for (int i = off; i < off + len; i++) {
+				data[i] *= .5f;
+			}
+		}
+
+		public void run() {
+			for (double d : signal) {
+				putOneDataPoint(d);
+			}
+			putEndOfStream();
+		}
+	}
+
+	private static class DoubleProducer extends ProducingDoubleDataSource {
+		private final double[] signal;
+
+		DoubleProducer(double[] signal) {
+			super(signal.length, new InlineDataProcessor() {
+				public void applyInline(double[] data, int off, int len) {
+					for (int i = off; i < off + len; i++) {
+						data[i] *= .5;
+					}
+				}
+			});
+			this.signal = signal;
+		}
+
+		public void run() {
+			for (double d : signal) {
+				putOneDataPoint(d);
+			}
+			putEndOfStream();
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[1000];
+		int n;
+		while ((n = in.read(b)) != -1) {
+			out.write(b, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void adaptersRoundTrip() {
+		double[] signal = signal(20000);
+		FloatDataSource floats = new DoubleFloatDataSource(new BufferedDoubleDataSource(signal));
+		assertEquals(signal.length, floats.getDataLength());
+		double[] back = new FloatDoubleDataSource(floats).getAllData();
+		assertArrayEquals(signal, back, 1e-7);
+		assertFalse(floats.hasMoreData());
+	}
+
+	@Test
+	public void sequence() {
+		float[] a = new float[] { 1, 2, 3 };
+		float[] b = new float[] { 4, 5 };
+		SequenceFloatDataSource seq = new SequenceFloatDataSource(new FloatDataSource[] { new BufferedFloatDataSource(a),
+				new BufferedFloatDataSource(b) });
+		assertEquals(5, seq.getDataLength());
+		assertArrayEquals(new float[] { 1, 2, 3, 4, 5 }, seq.getAllData(), 0);
+	}
+
+	@Test
+	public void datagramsGiveSameSamples() {
+		double[] expected = new DatagramDoubleDataSource(datagrams()).getAllData();
+		float[] actual = new DatagramFloatDataSource(datagrams()).getAllData();
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals((float) expected[i], actual[i], 0);
+		}
+	}
+
+	@Test
+	public void sameAudioFromFloats() throws Exception {
+		AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+		byte[] expected = readAll(new DDSAudioInputStream(new DatagramDoubleDataSource(datagrams()), format));
+		DDSAudioInputStream floatStream = new DDSAudioInputStream(new DatagramFloatDataSource(datagrams()), format);
+		assertEquals(expected.length / 2, floatStream.getFrameLength());
+		assertArrayEquals(expected, readAll(floatStream));
+	}
+
+	@Test
+	public void producerDeliversAllData() {
+		for (int length : new int[] { 0, 10, ProducingFloatDataSource.BLOCK_SIZE, 5000 }) {
+			double[] signal = signal(length);
+			FloatProducer producer = new FloatProducer(signal);
+			producer.start();
+			assertEquals(length, producer.getDataLength());
+			float[] data = producer.getAllData();
+			assertEquals(length, data.length);
+			for (int i = 0; i < length; i++) {
+				assertEquals(0.5 * signal[i], data[i], 1e-7);
+			}
+			assertFalse(producer.hasMoreData());
+			assertEquals(0, producer.available());
+		}
+	}
+
+	@Test
+	public void sameAudioFromProducers() throws Exception {
+		AudioFormat format = new AudioFormat(16000, 16, 1, true, false);
+		DoubleProducer doubles = new DoubleProducer(signal(5000));
+		doubles.start();
+		byte[] expected = readAll(new DDSAudioInputStream(doubles, format));
+		FloatProducer floats = new FloatProducer(signal(5000));
+		floats.start();
+		DDSAudioInputStream floatStream = new DDSAudioInputStream(floats, format);
+		assertEquals(5000, floatStream.getFrameLength());
+		byte[] actual = readAll(floatStream);
+		assertEquals(expected.length, actual.length);
+		// float rounding may differ by one step where the double value is close to a step boundary:
+		for (int i = 0; i < expected.length; i += 2) {
+			int e = (expected[i + 1] << 8) | (expected[i] & 0xFF);
+			int a = (actual[i + 1] << 8) | (actual[i] & 0xFF);
+			assertTrue(Math.abs(e - a) <= 1);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks the hand-off of blocks between one producer and one consumer thread.
+ */
+public class AudioBlockRingTest {
+
+	@Test
+	public void passesAllBlocksInOrder() throws Exception {
+		final AudioBlockRing ring = new AudioBlockRing(4);
+		final int numBlocks = 10000;
+		Thread producer = new Thread() {
+			public void run() {
+				try {
+					for (int i = 0; i < numBlocks; i++) {
+						ring.put(new byte[] { (byte) i, (byte) (i >> 8) }, 0);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				ring.close();
+			}
+		};
+		producer.start();
+		int count = 0;
+		byte[] block;
+		while ((block = ring.take()) != null) {
+			assertArrayEquals(new byte[] { (byte) count, (byte) (count >> 8) }, block);
+			assertTrue(ring.size() <= 4);
+			count++;
+		}
+		assertEquals(numBlocks, count);
+		assertTrue(ring.isFinished());
+		producer.join();
+	}
+
+	@Test
+	public void offerFailsWhenFull() {
+		AudioBlockRing ring = new AudioBlockRing(3);
+		assertEquals(4, ring.getCapacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(ring.offer(new byte[1]));
+		}
+		assertFalse(ring.offer(new byte[1]));
+		ring.poll();
+		assertTrue(ring.offer(new byte[1]));
+	}
+
+	@Test
+	public void putTimesOutWithoutConsumer() throws Exception {
+		AudioBlockRing ring = new AudioBlockRing(1);
+		assertTrue(ring.put(new byte[1], 10));
+		assertFalse(ring.put(new byte[1], 10));
+	}
+
+	@Test
+	public void cancelReleasesProducer() throws Exception {
+		final AudioBlockRing ring = new AudioBlockRing(1);
+		ring.put(new byte[1], 0);
+		Thread consumer = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+				ring.cancel();
+			}
+		};
+		consumer.start();
+		assertFalse(ring.put(new byte[1], 0));
+		assertNull(ring.take());
+		consumer.join();
+	}
+
+	@Test
+	public void notifiesListener() {
+		AudioBlockRing ring = new AudioBlockRing(2);
+		final AtomicInteger calls = new AtomicInteger();
+		ring.setListener(new Runnable() {
+			public void run() {
+				calls.incrementAndGet();
+			}
+		});
+		assertNull(ring.poll());
+		ring.offer(new byte[1]);
+		ring.close();
+		assertEquals(2, calls.get());
+		assertEquals(1, ring.poll().length);
+		assertTrue(ring.isFinished());
+	}
+}
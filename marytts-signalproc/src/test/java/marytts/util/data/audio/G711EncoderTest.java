@@ -0,0 +1,86 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.Test;
+
+/**
+ * Checks the G.711 code values and the AU stream written by {@link G711Encoder}.
+ */
+public class G711EncoderTest {
+
+	@Test
+	public void matchesReferenceValues() {
+		assertEquals((byte) 0xFF, G711Encoder.linear2ulaw((short) 0));
+		assertEquals((byte) 0x80, G711Encoder.linear2ulaw((short) 32767));
+		assertEquals((byte) 0x00, G711Encoder.linear2ulaw((short) -32768));
+		assertEquals((byte) 0xD5, G711Encoder.linear2alaw((short) 0));
+		assertEquals((byte) 0xAA, G711Encoder.linear2alaw((short) 32767));
+	}
+
+	@Test
+	public void writesAuHeaderAndSamples() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		G711Encoder encoder = new G711Encoder("ALAW");
+		encoder.start(new AudioFormat(8000, 16, 1, true, true), out);
+		encoder.encode(new byte[] { 0, 0, 0x7F, (byte) 0xFF }, 0, 4);
+		encoder.finish();
+		assertArrayEquals(new byte[] { '.', 's', 'n', 'd', 0, 0, 0, 24, -1, -1, -1, -1, 0, 0, 0, 27, 0, 0, 0x1F, 0x40, 0, 0, 0,
+				1, (byte) 0xD5, (byte) 0xAA }, out.toByteArray());
+	}
+
+	@Test
+	public void byteOrderDoesNotMatter() throws Exception {
+		byte[] bigEndian = new byte[2 * 1000];
+		byte[] littleEndian = new byte[bigEndian.length];
+		for (int i = 0; i < 1000; i++) {
+			short s = (short) (i * 65 - 32500);
+			bigEndian[2 * i] = littleEndian[2 * i + 1] = (byte) (s >> 8);
+			bigEndian[2 * i + 1] = littleEndian[2 * i] = (byte) s;
+		}
+		assertArrayEquals(encode(bigEndian, true), encode(littleEndian, false));
+	}
+
+	private static byte[] encode(byte[] pcm, boolean bigEndian) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		G711Encoder encoder = new G711Encoder("ULAW");
+		encoder.start(new AudioFormat(16000, 16, 1, true, bigEndian), out);
+		encoder.encode(pcm, 0, pcm.length);
+		encoder.finish();
+		return out.toByteArray();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsStereo() throws Exception {
+		new G711Encoder("ULAW").start(new AudioFormat(16000, 16, 2, true, false), new ByteArrayOutputStream());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEightBit() throws Exception {
+		new G711Encoder("ULAW").start(new AudioFormat(16000, 8, 1, true, false), new ByteArrayOutputStream());
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import java.util.Random;
+
+/**
+ * Compares the speed of converting samples to 16-bit PCM one at a time, as DDSAudioInputStream used to, and in blocks through
+ * {@link PcmConverter}. Not a unit test; run the main method by hand.
+ * <p>
+ * Usage: <code>PcmConverterBenchmark [numSamples]</code>
+ */
+public class PcmConverterBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int numSamples = args.length > 0 ? Integer.parseInt(args[0]) : 100000000;
+		int blockSize = 8192;
+		double[] samples = new double[blockSize];
+		Random random = new Random(1);
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = random.nextGaussian() * 0.3;
+		}
+		byte[] bytes = new byte[2 * blockSize];
+		int numBlocks = numSamples / blockSize;
+		for (boolean bigEndian : new boolean[] { false, true }) {
+			PcmConverter converter = new PcmConverter(16, true, bigEndian);
+			for (int round = 0; round < 5; round++) { // the first rounds warm up
+				for (int bulk = 0; bulk < 2; bulk++) {
+					int check = 0;
+					long start = System.nanoTime();
+					for (int n = 0; n < numBlocks; n++) {
+						if (bulk == 1) {
+							converter.convert(samples, 0, blockSize, bytes, 0);
+						} else {
+							perSample(samples, blockSize, bytes, bigEndian);
+						}
+						check += bytes[n % bytes.length];
+					}
+					long nanos = System.nanoTime() - start;
+					if (round > 1) {
+						System.out.printf("%s %-10s %6.2f ns/sample (%d)%n", bigEndian ? "BE" : "LE", bulk == 1 ? "bulk"
+								: "per-sample", (double) nanos / (numBlocks * blockSize), check);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The 16-bit conversion loop of DDSAudioInputStream before it used PcmConverter, less the console warning.
+	 */
+	private static void perSample(double[] samples, int len, byte[] b, boolean bigEndian) {
+		for (int i = 0, currentPos = 0; i < len; i++, currentPos += 2) {
+			int sample = (int) Math.round(samples[i] * 32767.0);
+			byte hibyte = (byte) (sample >> 8);
+			byte lobyte = (byte) (sample & 0xFF);
+			if (!bigEndian) {
+				b[currentPos] = lobyte;
+				b[currentPos + 1] = hibyte;
+			} else {
+				b[currentPos] = hibyte;
+				b[currentPos + 1] = lobyte;
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the byte layout, rounding and saturation of {@link PcmConverter}.
+ */
+public class PcmConverterTest {
+
+	@Test
+	public void sixteenBitMatchesRounding() {
+		Random random = new Random(3);
+		double[] samples = new double[1000];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = 2 * random.nextDouble() - 1;
+		}
+		for (boolean bigEndian : new boolean[] { false, true }) {
+			PcmConverter converter = new PcmConverter(16, true, bigEndian);
+			byte[] b = new byte[2 * samples.length + 1];
+			assertEquals(2 * samples.length, converter.convert(samples, 0, samples.length, b, 1));
+			for (int i = 0; i < samples.length; i++) {
+				int hi = b[1 + 2 * i + (bigEndian ? 0 : 1)];
+				int lo = b[1 + 2 * i + (bigEndian ? 1 : 0)] & 0xFF;
+				assertEquals(Math.round(samples[i] * 32767), (hi << 8) | lo);
+			}
+			assertEquals(0, converter.getClippedSamples());
+		}
+	}
+
+	@Test
+	public void saturatesAndCounts() {
+		PcmConverter converter = new PcmConverter(16, true, true);
+		long totalBefore = PcmConverter.getTotalClippedSamples();
+		byte[] b = new byte[8];
+		converter.convert(new double[] { 1.5, -1.5, 1, Double.POSITIVE_INFINITY }, 0, 4, b, 0);
+		assertArrayEquals(new byte[] { 0x7F, (byte) 0xFF, (byte) 0x80, 0x00, 0x7F, (byte) 0xFF, 0x7F, (byte) 0xFF }, b);
+		assertEquals(3, converter.getClippedSamples());
+		assertTrue(PcmConverter.getTotalClippedSamples() - totalBefore >= 3);
+	}
+
+	@Test
+	public void countsOnlySamplesRoundedBeyondTheRange() {
+		PcmConverter converter = new PcmConverter(16, true, true);
+		byte[] b = new byte[8];
+		double[] samples = new double[] { 32767.4 / 32767, -32768.4 / 32767, 32767.5 / 32767, -32768.6 / 32767 };
+		converter.convert(samples, 0, 4, b, 0);
+		assertArrayEquals(new byte[] { 0x7F, (byte) 0xFF, (byte) 0x80, 0x00, 0x7F, (byte) 0xFF, (byte) 0x80, 0x00 }, b);
+		assertEquals(2, converter.getClippedSamples());
+	}
+
+	@Test
+	public void turnsNaNIntoSilence() {
+		PcmConverter converter = new PcmConverter(16, true, false);
+		byte[] b = new byte[] { 1, 1, 1, 1 };
+		converter.convert(new double[] { Double.NaN }, 0, 1, b, 0);
+		converter.convert(new float[] { Float.NaN }, 0, 1, b, 2);
+		assertArrayEquals(new byte[4], b);
+		assertEquals(2, converter.getClippedSamples());
+		converter.setDither(true);
+		converter.convert(new double[] { Double.NaN }, 0, 1, b, 0);
+		assertTrue(Math.abs((b[1] << 8) | (b[0] & 0xFF)) <= 1);
+		assertEquals(3, converter.getClippedSamples());
+	}
+
+	@Test
+	public void otherSampleSizes() {
+		double[] samples = new double[] { 0.5, -1 };
+		byte[] b = new byte[6];
+		new PcmConverter(24, true, false).convert(samples, 0, 2, b, 0);
+		// 0.5 * 8388607 = 4194303.5, rounded up to 0x400000:
+		assertArrayEquals(new byte[] { 0x00, 0x00, 0x40, 0x01, 0x00, (byte) 0x80 }, b);
+		b = new byte[2];
+		new PcmConverter(8, true, false).convert(samples, 0, 2, b, 0);
+		assertArrayEquals(new byte[] { 64, -127 }, b);
+		new PcmConverter(8, false, false).convert(samples, 0, 2, b, 0);
+		assertArrayEquals(new byte[] { (byte) 192, 1 }, b);
+	}
+
+	@Test
+	public void ditherStaysWithinOneStep() {
+		PcmConverter converter = new PcmConverter(16, true, false);
+		converter.setDither(true);
+		double[] samples = new double[1000];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = 0.25 + i * 1e-6;
+		}
+		byte[] b = new byte[2 * samples.length];
+		converter.convert(samples, 0, samples.length, b, 0);
+		double sum = 0;
+		for (int i = 0; i < samples.length; i++) {
+			int s = (b[2 * i + 1] << 8) | (b[2 * i] & 0xFF);
+			double exact = samples[i] * 32767;
+			assertTrue(Math.abs(s - exact) <= 1.5);
+			sum += s - exact;
+		}
+		// dither is unbiased:
+		assertEquals(0, sum / samples.length, 0.1);
+	}
+}
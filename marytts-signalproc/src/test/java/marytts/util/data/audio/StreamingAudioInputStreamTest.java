@@ -0,0 +1,170 @@
+/**
+ * Copyright 2011 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.data.audio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Test;
+
+/**
+ * Checks that audio appended in one thread is read unchanged in another.
+ */
+public class StreamingAudioInputStreamTest {
+	private static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, true);
+
+	private static AudioInputStream audio(byte[] data) {
+		return new AudioInputStream(new ByteArrayInputStream(data), FORMAT, data.length / 2);
+	}
+
+	@Test
+	public void readsAppendedAudio() throws Exception {
+		final StreamingAudioInputStream stream = new StreamingAudioInputStream(FORMAT, 2, 100, 0);
+		Random random = new Random(5);
+		final byte[][] parts = new byte[20][];
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		for (int i = 0; i < parts.length; i++) {
+			parts[i] = new byte[2 * random.nextInt(300)];
+			random.nextBytes(parts[i]);
+			expected.write(parts[i]);
+		}
+		Thread producer = new Thread() {
+			public void run() {
+				for (byte[] part : parts) {
+					stream.append(audio(part));
+				}
+				stream.doneAppending();
+			}
+		};
+		producer.start();
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		// not a whole number of frames:
+		byte[] buf = new byte[77];
+		int n;
+		while ((n = stream.read(buf, 0, buf.length)) != -1) {
+			assertEquals(0, n % FORMAT.getFrameSize());
+			actual.write(buf, 0, n);
+		}
+		producer.join();
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+		assertEquals(expected.size() / 2, stream.getFrameLength());
+	}
+
+	@Test(expected = IOException.class)
+	public void passesOnReadProblems() throws Exception {
+		StreamingAudioInputStream stream = new StreamingAudioInputStream(FORMAT, 4, 100, 0);
+		stream.append(new AudioInputStream(new InputStream() {
+			public int read() throws IOException {
+				throw new IOException("broken");
+			}
+		}, FORMAT, AudioSystem.NOT_SPECIFIED));
+		stream.doneAppending();
+		stream.read(new byte[10], 0, 10);
+	}
+
+	@Test
+	public void passesOnAudioReadBeforeProblems() throws Exception {
+		StreamingAudioInputStream stream = new StreamingAudioInputStream(FORMAT, 4, 100, 0);
+		stream.append(new AudioInputStream(new InputStream() {
+			private boolean first = true;
+
+			public int read() throws IOException {
+				throw new IOException("broken");
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (!first) {
+					throw new IOException("broken");
+				}
+				first = false;
+				b[off] = 1;
+				b[off + 1] = 2;
+				b[off + 2] = 3; // half a frame
+				return 3;
+			}
+		}, FORMAT, AudioSystem.NOT_SPECIFIED));
+		stream.doneAppending();
+		byte[] buf = new byte[10];
+		assertEquals(2, stream.read(buf, 0, buf.length));
+		assertArrayEquals(new byte[] { 1, 2 }, new byte[] { buf[0], buf[1] });
+		try {
+			stream.read(buf, 0, buf.length);
+			fail("should have thrown");
+		} catch (IOException expected) {
+		}
+	}
+
+	@Test
+	public void readsWholeFramesOnly() throws Exception {
+		StreamingAudioInputStream stream = new StreamingAudioInputStream(FORMAT, 4, 100, 0);
+		stream.append(audio(new byte[] { 1, 2, 3, 4 }));
+		stream.doneAppending();
+		byte[] buf = new byte[3];
+		assertEquals(0, stream.read(buf, 0, 1));
+		assertEquals(2, stream.read(buf, 0, 3));
+		assertEquals(2, stream.read(buf, 0, 3));
+		assertEquals(-1, stream.read(buf, 0, 3));
+	}
+
+	@Test
+	public void availableCountsAllAppendedAudio() throws Exception {
+		StreamingAudioInputStream stream = new StreamingAudioInputStream(FORMAT, 4, 100, 0);
+		assertEquals(0, stream.available());
+		stream.append(audio(new byte[250]));
+		assertEquals(250, stream.available());
+		byte[] buf = new byte[60];
+		assertEquals(60, stream.read(buf, 0, buf.length));
+		assertEquals(190, stream.available());
+		assertEquals(40, stream.read(buf, 0, buf.length));
+		assertEquals(150, stream.available());
+		stream.doneAppending();
+		while (stream.read(buf, 0, buf.length) != -1) {
+		}
+		assertEquals(0, stream.available());
+	}
+
+	@Test(expected = IOException.class)
+	public void cannotReadSingleBytesOfLargerFrames() throws Exception {
+		new StreamingAudioInputStream(FORMAT, 4, 100, 0).read();
+	}
+
+	@Test
+	public void discardsAudioAfterClose() throws Exception {
+		StreamingAudioInputStream stream = new StreamingAudioInputStream(FORMAT, 1, 100, 0);
+		stream.close();
+		// would wait forever for a reader otherwise:
+		stream.append(audio(new byte[1000]));
+		stream.doneAppending();
+		assertEquals(-1, stream.read(new byte[2], 0, 2));
+		assertTrue(stream.getFrameLength() < 500);
+	}
+}
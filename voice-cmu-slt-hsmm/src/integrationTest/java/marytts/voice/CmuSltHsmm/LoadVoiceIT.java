@@ -12,6 +12,7 @@ import marytts.datatypes.MaryDataType;
 import marytts.htsengine.HMMVoice;
 import marytts.modules.synthesis.Voice;
 import marytts.util.MaryRuntimeUtils;
+import marytts.util.data.audio.StreamingAudioInputStream;
 import marytts.util.dom.DomUtils;
 
 import org.testng.Assert;
@@ -50,6 +51,29 @@ public class LoadVoiceIT {
         Assert.assertNotNull(audio);
     }
 
+    @Test
+    public void canStreamMoreAudioThanTheServerBuffers() throws Exception {
+        // the server's streaming buffer would hold only two blocks, and give up on a reader after one second:
+        System.setProperty("server.streaming.bufferblocks", "2");
+        System.setProperty("server.streaming.timeout", "1000");
+        try {
+            MaryInterface mary = new LocalMaryInterface();
+            mary.setVoice(new CmuSltHsmmConfig().getName());
+            mary.setStreamingAudio(true);
+            AudioInputStream audio = mary.generateAudio("Hello world. This is a longer text, which takes a few seconds to say.");
+            byte[] buf = new byte[4096];
+            long total = 0;
+            int nRead;
+            while ((nRead = audio.read(buf)) != -1) {
+                total += nRead;
+            }
+            Assert.assertTrue(total > 2 * StreamingAudioInputStream.DEFAULT_BLOCK_SIZE);
+        } finally {
+            System.clearProperty("server.streaming.bufferblocks");
+            System.clearProperty("server.streaming.timeout");
+        }
+    }
+
     @Test
     public void canProcessToTargetfeatures() throws Exception {
         MaryInterface mary = new LocalMaryInterface();